@@ -0,0 +1,158 @@
+package com.jamespizzurro.metrorailserver.benchmark;
+
+import com.google.gson.*;
+import com.jamespizzurro.metrorailserver.AnnotationExclusionStrategy;
+import com.jamespizzurro.metrorailserver.Application;
+import com.jamespizzurro.metrorailserver.StationUtil;
+import com.jamespizzurro.metrorailserver.domain.*;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.bind.DatatypeConverter;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// compares serialization throughput and allocation for our hottest response types: Gson's reflective type adapters (how we used to serialize
+// everything, with calendars going by way of a JsonElement) against our streaming ones (see StreamingTypeAdapter), as configured in Application
+// train statuses and station boards come from TrainServiceBenchmark's simulated rush hour; no network or database needed
+// e.g. mvn -Pbenchmark compile exec:exec -Dbenchmark=GsonSerializationBenchmark
+// per-serialization allocation is reported as gc.alloc.rate.norm
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class GsonSerializationBenchmark {
+
+    private static final String[] LINE_CODES = {"RD", "OR", "SV", "BL", "YL", "GR"};
+
+    private Gson reflectiveGson;
+    private Gson streamingGson;
+
+    private List<TrainStatus> trainStatuses;
+    private Map<String, List<TrainStatus>> stationTrainStatusesMap;
+    private List<SavedTrip> savedTrips;
+    private SystemMetrics systemMetrics;
+    private Map<String, StationTagReport> stationTagReports;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        this.reflectiveGson = new GsonBuilder()
+                .setExclusionStrategies(new AnnotationExclusionStrategy())
+                .registerTypeHierarchyAdapter(Calendar.class, (JsonSerializer<Calendar>) (calendar, typeOfSrc, context) -> new JsonPrimitive(DatatypeConverter.printDateTime(calendar)))
+                .create();
+        this.streamingGson = Application.getGson();
+
+        TrainServiceBenchmark trainServiceBenchmark = new TrainServiceBenchmark();
+        trainServiceBenchmark.setUp();
+        SystemSnapshot systemSnapshot = trainServiceBenchmark.update();
+        trainServiceBenchmark.tearDown();
+
+        this.trainStatuses = new ArrayList<>(systemSnapshot.getTrainStatusesMap().values());
+        this.stationTrainStatusesMap = systemSnapshot.getStationTrainStatusesMap();
+
+        Calendar now = Calendar.getInstance();
+
+        this.savedTrips = new ArrayList<>();
+        List<String> stationCodes = new ArrayList<>(StationUtil.getStationCodeMap().keySet());
+        for (int i = 0; i + 1 < stationCodes.size() && this.savedTrips.size() < 10; i += 2) {
+            String fromStationCode = stationCodes.get(i);
+            String toStationCode = stationCodes.get(i + 1);
+            List<ServiceGap> serviceGaps = Collections.singletonList(new ServiceGap("RD", 1, "Glenmont", fromStationCode, StationUtil.getStationName(fromStationCode), toStationCode, StationUtil.getStationName(toStationCode), "101", "102", 9.5, 6d, now));
+            this.savedTrips.add(new SavedTrip(StationUtil.getStationName(fromStationCode), fromStationCode, StationUtil.getStationName(toStationCode), toStationCode, Arrays.asList(fromStationCode, toStationCode), 12.5, 11d, new HashSet<>(Collections.singletonList("RD")), 3.5, 2d, new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), this.stationTrainStatusesMap.getOrDefault(fromStationCode, Collections.emptyList()), serviceGaps, now, new RecentTripStateData("1,2,3", "12,13,12", "11,11,11")));
+        }
+
+        Map<String, SystemMetrics.LineMetrics> lineMetricsByLine = new LinkedHashMap<>();
+        for (String lineCode : LINE_CODES) {
+            SystemMetrics.LineMetrics lineMetrics = new SystemMetrics.LineMetrics(lineCode, now);
+            lineMetrics.setAverageTrainFrequency(6.5);
+            lineMetrics.setTrainFrequencyStatus(SystemMetrics.TrainFrequencyStatus.OK);
+            lineMetrics.setPlatformWaitTimeTrendStatus(SystemMetrics.TrendStatus.NEUTRAL);
+            Map<Integer, SystemMetrics.DirectionMetrics> directionMetricsByDirection = new LinkedHashMap<>();
+            for (int directionNumber = 1; directionNumber <= 2; directionNumber++) {
+                SystemMetrics.DirectionMetrics directionMetrics = new SystemMetrics.DirectionMetrics(lineCode, directionNumber, now);
+                directionMetrics.setAverageTrainFrequency(6.5);
+                directionMetrics.setTrainFrequencyStatus(SystemMetrics.TrainFrequencyStatus.SLOW);
+                directionMetricsByDirection.put(directionNumber, directionMetrics);
+            }
+            lineMetrics.setDirectionMetricsByDirection(directionMetricsByDirection);
+            lineMetricsByLine.put(lineCode, lineMetrics);
+        }
+        this.systemMetrics = new SystemMetrics(lineMetricsByLine, now);
+
+        this.stationTagReports = new HashMap<>();
+        for (String stationCode : stationCodes) {
+            Map<StationTag.StationTagType, Integer> numTagsByType = new EnumMap<>(StationTag.StationTagType.class);
+            numTagsByType.put(StationTag.StationTagType.values()[0], 2);
+            this.stationTagReports.put(stationCode, new StationTagReport(numTagsByType, EnumSet.noneOf(StationTag.StationTagType.class), 2, 0));
+        }
+
+        // make sure we're comparing apples to apples
+        if (!reflectiveTrainStatuses().equals(streamingTrainStatuses()) || !reflectiveStationTrainStatuses().equals(streamingStationTrainStatuses())
+                || !reflectiveTrainStatusesTree().equals(streamingTrainStatusesTree()) || !reflectiveSavedTrips().equals(streamingSavedTrips())
+                || !reflectiveSystemMetrics().equals(streamingSystemMetrics()) || !reflectiveStationTagReports().equals(streamingStationTagReports())) {
+            throw new IllegalStateException("Streaming type adapters don't match Gson's reflective ones!");
+        }
+    }
+
+    @Benchmark
+    public String reflectiveTrainStatuses() {
+        return this.reflectiveGson.toJson(this.trainStatuses);
+    }
+
+    @Benchmark
+    public String streamingTrainStatuses() {
+        return this.streamingGson.toJson(this.trainStatuses);
+    }
+
+    @Benchmark
+    public String reflectiveStationTrainStatuses() {
+        return this.reflectiveGson.toJson(this.stationTrainStatusesMap);
+    }
+
+    @Benchmark
+    public String streamingStationTrainStatuses() {
+        return this.streamingGson.toJson(this.stationTrainStatusesMap);
+    }
+
+    // as SystemView does for every system snapshot
+    @Benchmark
+    public JsonElement reflectiveTrainStatusesTree() {
+        return this.reflectiveGson.toJsonTree(this.trainStatuses);
+    }
+
+    @Benchmark
+    public JsonElement streamingTrainStatusesTree() {
+        return this.streamingGson.toJsonTree(this.trainStatuses);
+    }
+
+    @Benchmark
+    public String reflectiveSavedTrips() {
+        return this.reflectiveGson.toJson(this.savedTrips);
+    }
+
+    @Benchmark
+    public String streamingSavedTrips() {
+        return this.streamingGson.toJson(this.savedTrips);
+    }
+
+    @Benchmark
+    public String reflectiveSystemMetrics() {
+        return this.reflectiveGson.toJson(this.systemMetrics);
+    }
+
+    @Benchmark
+    public String streamingSystemMetrics() {
+        return this.streamingGson.toJson(this.systemMetrics);
+    }
+
+    @Benchmark
+    public String reflectiveStationTagReports() {
+        return this.reflectiveGson.toJson(this.stationTagReports);
+    }
+
+    @Benchmark
+    public String streamingStationTagReports() {
+        return this.streamingGson.toJson(this.stationTagReports);
+    }
+}
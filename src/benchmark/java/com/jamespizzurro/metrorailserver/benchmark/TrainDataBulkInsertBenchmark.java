@@ -0,0 +1,159 @@
+package com.jamespizzurro.metrorailserver.benchmark;
+
+import com.jamespizzurro.metrorailserver.domain.TrainStatus;
+import com.jamespizzurro.metrorailserver.repository.TrainDataBulkInsertRepository;
+import com.jamespizzurro.metrorailserver.repository.TrainStatusRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// compares rows/second written to train_status by the old saveAll path against TrainDataBulkInsertRepository
+// needs a live Postgres database; everything is written to (and wiped from) a separate metrohero_benchmark schema
+// e.g. mvn -Pbenchmark compile exec:exec -Dbenchmark=TrainDataBulkInsertBenchmark
+// override the database with -Dbenchmark.datasource.url=... -Dbenchmark.datasource.username=... -Dbenchmark.datasource.password=...
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TrainDataBulkInsertBenchmark {
+
+    // roughly how many train statuses a single update produces system-wide during rush hour
+    private static final int NUM_ROWS_PER_INVOCATION = 150;
+
+    private ConfigurableApplicationContext context;
+    private TrainStatusRepository trainStatusRepository;
+    private TrainDataBulkInsertRepository trainDataBulkInsertRepository;
+    private JdbcTemplate jdbcTemplate;
+
+    private List<TrainStatus> trainStatuses;
+
+    @Configuration
+    @EnableAutoConfiguration
+    @EntityScan(basePackageClasses = TrainStatus.class)
+    @EnableJpaRepositories(basePackageClasses = TrainStatusRepository.class)
+    @Import(TrainDataBulkInsertRepository.class)
+    static class BenchmarkConfig {
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.context = new SpringApplicationBuilder(BenchmarkConfig.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=" + System.getProperty("benchmark.datasource.url", "jdbc:postgresql://localhost:5432/metrohero?currentSchema=metrohero_benchmark&reWriteBatchedInserts=true"),
+                        "spring.datasource.username=" + System.getProperty("benchmark.datasource.username", "postgres"),
+                        "spring.datasource.password=" + System.getProperty("benchmark.datasource.password", "postgres"),
+                        "spring.jpa.database-platform=com.jamespizzurro.metrorailserver.CustomPostgresDialect",
+                        "spring.jpa.hibernate.ddl-auto=update",
+                        "spring.jpa.open-in-view=false",
+                        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+                        "spring.sql.init.mode=never",
+                        "logging.level.org.hibernate=WARN"
+                )
+                .run();
+
+        this.trainStatusRepository = this.context.getBean(TrainStatusRepository.class);
+        this.trainDataBulkInsertRepository = this.context.getBean(TrainDataBulkInsertRepository.class);
+        this.jdbcTemplate = this.context.getBean(JdbcTemplate.class);
+
+        this.trainStatuses = buildTrainStatuses();
+    }
+
+    @TearDown(Level.Iteration)
+    public void truncate() {
+        this.jdbcTemplate.execute("TRUNCATE train_status");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_ROWS_PER_INVOCATION)
+    public void saveAll() {
+        // saveAll assigns IDs to the entities it's given, so give it fresh ones every time, like TrainService does
+        this.trainStatusRepository.saveAll(cloneTrainStatuses());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_ROWS_PER_INVOCATION)
+    public void bulkInsert() {
+        this.trainDataBulkInsertRepository.insertTrainStatuses(cloneTrainStatuses());
+    }
+
+    private List<TrainStatus> cloneTrainStatuses() {
+        List<TrainStatus> clones = new ArrayList<>(this.trainStatuses.size());
+        for (TrainStatus trainStatus : this.trainStatuses) {
+            clones.add(trainStatus.clone());
+        }
+        return clones;
+    }
+
+    private static List<TrainStatus> buildTrainStatuses() {
+        String[] lineCodes = new String[]{"RD", "OR", "SV", "BL", "YL", "GR"};
+        Random random = new Random(0);
+        Date now = new Date();
+        Calendar firstObserved = Calendar.getInstance();
+
+        List<TrainStatus> trainStatuses = new ArrayList<>(NUM_ROWS_PER_INVOCATION);
+        for (int i = 0; i < NUM_ROWS_PER_INVOCATION; i++) {
+            TrainStatus trainStatus = new TrainStatus(String.format("%03d", i));
+            trainStatus.setRealTrainId(String.valueOf(100 + i));
+            trainStatus.setCar(random.nextBoolean() ? "8" : "6");
+            trainStatus.setDestination("Glenmont");
+            trainStatus.setDestinationCode("B11");
+            trainStatus.setDestinationName("Glenmont");
+            trainStatus.setGroup(String.valueOf(1 + random.nextInt(2)));
+            trainStatus.setLine(lineCodes[i % lineCodes.length]);
+            trainStatus.setLocationCode("A01");
+            trainStatus.setLocationName("Metro Center");
+            trainStatus.setMin(String.valueOf(random.nextInt(20)));
+            trainStatus.setMinutesAway(random.nextDouble() * 20);
+            trainStatus.setDirectionNumber(1 + random.nextInt(2));
+            trainStatus.setMaxMinutesAway(20d);
+            trainStatus.setTrackNumber(1 + random.nextInt(2));
+            trainStatus.setTrackCircuitId(random.nextInt(3000));
+            trainStatus.setCurrentStationCode("A01");
+            trainStatus.setCurrentStationName("Metro Center");
+            trainStatus.setPreviousStationCode("A02");
+            trainStatus.setPreviousStationName("Farragut North");
+            trainStatus.setSecondsSinceLastMoved(random.nextInt(60));
+            trainStatus.setSecondsOffSchedule(random.nextInt(120));
+            trainStatus.setLastVisitedStationCode("A02");
+            trainStatus.setLastVisitedStation(now);
+            trainStatus.setTrainSpeed(random.nextInt(60));
+            trainStatus.setRawTrackCircuitId(random.nextInt(3000));
+            trainStatus.setCircuitName("A1-" + random.nextInt(100));
+            trainStatus.setDistanceFromNextStation(random.nextInt(10000));
+            trainStatus.setSecondsAtLastVisitedStation(random.nextInt(60));
+            trainStatus.setSecondsDelayed(random.nextInt(300));
+            trainStatus.setDestinationId("1");
+            trainStatus.setAreDoorsOpenOnLeft(false);
+            trainStatus.setAreDoorsOpenOnRight(false);
+            trainStatus.setAdjustingOnPlatform(false);
+            trainStatus.setAreDoorsOperatingManually(false);
+            trainStatus.setLat(38.8983 + random.nextDouble() / 10);
+            trainStatus.setLon(-77.0281 + random.nextDouble() / 10);
+            trainStatus.setDirection(random.nextInt(360));
+            trainStatus.setTripId(UUID.randomUUID());
+            trainStatus.setFirstObservedTrain(firstObserved);
+            trainStatus.setDestinationStationAbbreviation("Glenmont");
+            trainStatus.setObservedDate(now);
+            trainStatuses.add(trainStatus);
+        }
+        return trainStatuses;
+    }
+}
@@ -0,0 +1,343 @@
+package com.jamespizzurro.metrorailserver.benchmark;
+
+import com.google.gson.Gson;
+import com.jamespizzurro.metrorailserver.ConfigUtil;
+import com.jamespizzurro.metrorailserver.FeedRecorder;
+import com.jamespizzurro.metrorailserver.RequestHandler;
+import com.jamespizzurro.metrorailserver.domain.*;
+import com.jamespizzurro.metrorailserver.repository.*;
+import com.jamespizzurro.metrorailserver.service.*;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// measures TrainService's hot paths against the real rail network, built from Track_Circuits.csv and StandardRoutes.json
+// the database and external services are mocked out; train positions come from a FeedRecorder recording if one is specified,
+// otherwise from a deterministic simulation of trains moving along the rail network
+// e.g. mvn -Pbenchmark compile exec:exec -Dbenchmark=TrainServiceBenchmark
+// replay a recording with -Dbenchmark.recordings=/path/to/recordings
+// throughput is reported per operation, and allocation per operation as gc.alloc.rate.norm
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class TrainServiceBenchmark {
+
+    // roughly how many trains are in service system-wide during rush hour
+    private static final int NUM_SIMULATED_TRAINS = 150;
+    private static final int NUM_SIMULATED_TICKS = 1800;    // an hour's worth
+    private static final int NUM_WARMUP_TICKS = 60;
+    private static final int NUM_SAMPLES = 1024;
+
+    private TrainService trainService;
+    private List<byte[]> trainPositionsBodies;
+    private int nextTrainPositionsBodyIndex;
+
+    private MethodHandle update;
+    private MethodHandle getMinDistanceCovered;
+    private MethodHandle buildStationTrainStatusesMap;
+    private MethodHandle buildStationToStationMaps;
+
+    private TrackCircuit[][] trackCircuitPairs;
+    private TrainStatus[] estimateTrainStatuses;
+    private String[] estimateStationCodes;
+    private String[][] stationCodePairs;
+    private Calendar now;
+    private Map<String, TrainStatus> trainStatusesMap;
+    private int sampleIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        String recordingsDirectory = System.getProperty("benchmark.recordings");
+        if (recordingsDirectory != null && !recordingsDirectory.isEmpty()) {
+            this.trainPositionsBodies = FeedRecorder.readRecordedResponses(Paths.get(recordingsDirectory)).stream()
+                    .filter(recordedResponse -> recordedResponse.getFeed() == RequestHandler.Feed.TRAIN_POSITIONS && recordedResponse.getBody().length > 0)
+                    .map(FeedRecorder.RecordedResponse::getBody)
+                    .collect(Collectors.toList());
+            if (this.trainPositionsBodies.isEmpty()) {
+                throw new IllegalStateException("No recorded train positions found in " + recordingsDirectory + "!");
+            }
+        }
+
+        this.trainService = buildTrainService();
+
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(TrainService.class, MethodHandles.lookup());
+        this.update = lookup.findVirtual(TrainService.class, "update", MethodType.methodType(void.class));
+        this.getMinDistanceCovered = lookup.findVirtual(TrainService.class, "getMinDistanceCovered", MethodType.methodType(Double.class, TrackCircuit.class, TrackCircuit.class));
+        this.buildStationTrainStatusesMap = lookup.findVirtual(TrainService.class, "buildStationTrainStatusesMap", MethodType.methodType(Map.class, Calendar.class, Map.class));
+        this.buildStationToStationMaps = lookup.findVirtual(TrainService.class, "buildStationToStationMaps", MethodType.methodType(void.class));
+        MethodHandle init = lookup.findVirtual(TrainService.class, "init", MethodType.methodType(void.class));
+        MethodHandle buildDestinationCodeMap = lookup.findVirtual(TrainService.class, "buildDestinationCodeMap", MethodType.methodType(void.class));
+
+        init.invoke(this.trainService);
+        buildDestinationCodeMap.invoke(this.trainService);
+
+        if (this.trainPositionsBodies == null) {
+            this.trainPositionsBodies = simulateTrainPositionsBodies(this.trainService.getRailNetwork());
+        }
+
+        // get some trains moving, so there's something to estimate and predict with
+        for (int i = 0; i < NUM_WARMUP_TICKS; i++) {
+            this.update.invoke(this.trainService);
+        }
+
+        buildSamples();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        MethodHandles.privateLookupIn(TrainService.class, MethodHandles.lookup())
+                .findVirtual(TrainService.class, "shutdown", MethodType.methodType(void.class))
+                .invoke(this.trainService);
+    }
+
+    @Benchmark
+    public Double getMinDistanceCovered() throws Throwable {
+        TrackCircuit[] trackCircuitPair = this.trackCircuitPairs[nextSampleIndex()];
+        return (Double) this.getMinDistanceCovered.invoke(this.trainService, trackCircuitPair[0], trackCircuitPair[1]);
+    }
+
+    @Benchmark
+    public Double getEstimatedTimeToStation() {
+        int i = nextSampleIndex();
+        return this.trainService.getEstimatedTimeToStation(this.estimateTrainStatuses[i], this.estimateStationCodes[i]);
+    }
+
+    @Benchmark
+    public Double getPredictedRideTime() {
+        String[] stationCodePair = this.stationCodePairs[nextSampleIndex()];
+        return this.trainService.getPredictedRideTime(this.now, stationCodePair[0], stationCodePair[1], null);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, List<TrainStatus>> buildStationBoards() throws Throwable {
+        return (Map<String, List<TrainStatus>>) this.buildStationTrainStatusesMap.invoke(this.trainService, this.now, this.trainStatusesMap);
+    }
+
+    @Benchmark
+    public void buildStationToStationMaps() throws Throwable {
+        this.buildStationToStationMaps.invoke(this.trainService);
+    }
+
+    @Benchmark
+    public SystemSnapshot update() throws Throwable {
+        this.update.invoke(this.trainService);
+        return this.trainService.getSystemSnapshot();
+    }
+
+    private int nextSampleIndex() {
+        this.sampleIndex = (this.sampleIndex + 1) % NUM_SAMPLES;
+        return this.sampleIndex;
+    }
+
+    private void buildSamples() {
+        Random random = new Random(0);
+        RailNetwork railNetwork = this.trainService.getRailNetwork();
+        SystemSnapshot systemSnapshot = this.trainService.getSystemSnapshot();
+        List<String> stationCodes = new ArrayList<>(new TreeSet<>(this.trainService.getStationCodesSet()));
+        List<TrainStatus> trainStatuses = systemSnapshot.getTrainStatusesMap().values().stream()
+                .filter(trainStatus -> trainStatus.getCurrentTrackCircuit() != null && trainStatus.getLocationCode() != null)
+                .sorted(Comparator.comparing(TrainStatus::getTrainId))
+                .collect(Collectors.toList());
+        if (trainStatuses.isEmpty()) {
+            throw new IllegalStateException("No trains with known locations after " + NUM_WARMUP_TICKS + " updates!");
+        }
+
+        this.trackCircuitPairs = new TrackCircuit[NUM_SAMPLES][];
+        this.estimateTrainStatuses = new TrainStatus[NUM_SAMPLES];
+        this.estimateStationCodes = new String[NUM_SAMPLES];
+        this.stationCodePairs = new String[NUM_SAMPLES][];
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            this.trackCircuitPairs[i] = new TrackCircuit[]{
+                    railNetwork.getTrackCircuit(random.nextInt(railNetwork.getNumCircuits())),
+                    railNetwork.getTrackCircuit(random.nextInt(railNetwork.getNumCircuits()))
+            };
+            this.estimateTrainStatuses[i] = trainStatuses.get(random.nextInt(trainStatuses.size()));
+            this.estimateStationCodes[i] = stationCodes.get(random.nextInt(stationCodes.size()));
+            this.stationCodePairs[i] = new String[]{stationCodes.get(random.nextInt(stationCodes.size())), stationCodes.get(random.nextInt(stationCodes.size()))};
+        }
+
+        this.now = Calendar.getInstance();
+        this.trainStatusesMap = systemSnapshot.getTrainStatusesMap();
+    }
+
+    private TrainService buildTrainService() throws ReflectiveOperationException {
+        ConfigUtil configUtil = new ConfigUtil();
+        setField(configUtil, "developmentmode", true);
+        setField(configUtil, "wmataTrainPositionsApiUrl", "http://localhost/TRAIN_POSITIONS");
+        setField(configUtil, "wmataGISTrainLocationsApiUrl", "http://localhost/GIS_TRAIN_LOCATIONS");
+        setField(configUtil, "gisTrainDataDeadlineMillis", 100);
+
+        // train positions are served from memory; GIS train data never shows up
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), eq(byte[].class))).thenAnswer(invocation -> ResponseEntity.ok(nextTrainPositionsBody()));
+        RequestHandler requestHandler = mock(RequestHandler.class);
+        when(requestHandler.getRestTemplate(any())).thenReturn(restTemplate);
+
+        // every pair of neighboring stations is about a mile apart and takes 2 minutes, give or take, to travel between
+        // (distances are normally filled in by hand in the database, so buildStationToStationMaps never sets them)
+        Map<String, StationToStationTravelTime> stationToStationTravelTimes = new HashMap<>();
+        StationToStationTravelTimeRepository stationToStationTravelTimeRepository = mock(StationToStationTravelTimeRepository.class);
+        when(stationToStationTravelTimeRepository.findById(anyString())).thenAnswer(invocation -> Optional.ofNullable(stationToStationTravelTimes.get(invocation.<String>getArgument(0))));
+        when(stationToStationTravelTimeRepository.saveAll(any())).thenAnswer(invocation -> {
+            for (StationToStationTravelTime stationToStationTravelTime : invocation.<Iterable<StationToStationTravelTime>>getArgument(0)) {
+                if (stationToStationTravelTime.getDistance() == null) {
+                    stationToStationTravelTime.setDistance(5280L);
+                }
+                stationToStationTravelTimes.put(stationToStationTravelTime.getStationCodesKey(), stationToStationTravelTime);
+            }
+            return invocation.getArgument(0);
+        });
+        when(stationToStationTravelTimeRepository.findAll()).thenAnswer(invocation -> new ArrayList<>(stationToStationTravelTimes.values()));
+        StationToStationTripRepository stationToStationTripRepository = mock(StationToStationTripRepository.class);
+        when(stationToStationTripRepository.getRecentAverageTripDuration(anyString(), anyString())).thenAnswer(invocation -> BigDecimal.valueOf(1.5 + (Math.abs((invocation.<String>getArgument(0) + invocation.<String>getArgument(1)).hashCode()) % 100) / 100d));
+        when(stationToStationTripRepository.getMedianTripDuration(anyString(), anyString())).thenReturn(BigDecimal.valueOf(2));
+
+        return new TrainService(
+                configUtil,
+                requestHandler,
+                mock(TrainStatusRepository.class),
+                mock(TrainTaggingService.class),
+                stationToStationTravelTimeRepository,
+                stationToStationTripRepository,
+                mock(TrackCircuitInfoRepository.class),
+                mock(GtfsService.class),
+                mock(TwitterBotService.class),
+                mock(WriteBehindPersistenceService.class),
+                mock(DestinationCodeMappingRepository.class),
+                mock(TrackCircuitService.class),
+                mock(TwitterService.class),
+                mock(NamedParameterJdbcTemplate.class)
+        );
+    }
+
+    private byte[] nextTrainPositionsBody() {
+        byte[] body = this.trainPositionsBodies.get(this.nextTrainPositionsBodyIndex);
+        this.nextTrainPositionsBodyIndex = (this.nextTrainPositionsBodyIndex + 1) % this.trainPositionsBodies.size();
+        return body;
+    }
+
+    private static void setField(Object object, String fieldName, Object value) throws ReflectiveOperationException {
+        Field field = object.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(object, value);
+    }
+
+    // trains that run along the rail network in their direction of travel, dwelling at stations, and start over from somewhere else when they run out of track
+    private static List<byte[]> simulateTrainPositionsBodies(RailNetwork railNetwork) throws IOException {
+        Random random = new Random(0);
+
+        List<Integer> startingCircuitIds = new ArrayList<>();
+        for (int circuitId = 0; circuitId < railNetwork.getNumCircuits(); circuitId++) {
+            TrackCircuit trackCircuit = railNetwork.getTrackCircuit(circuitId);
+            if (!trackCircuit.getLineCodes().isEmpty() && railNetwork.getNumChildCircuits(circuitId) > 0) {
+                startingCircuitIds.add(circuitId);
+            }
+        }
+
+        SimulatedTrain[] trains = new SimulatedTrain[NUM_SIMULATED_TRAINS];
+        for (int i = 0; i < trains.length; i++) {
+            trains[i] = new SimulatedTrain(String.format("%03d", i), String.valueOf(100 + i));
+            trains[i].startOver(railNetwork, startingCircuitIds.get(random.nextInt(startingCircuitIds.size())));
+        }
+
+        Gson gson = new Gson();
+        List<byte[]> bodies = new ArrayList<>(NUM_SIMULATED_TICKS);
+        for (int tick = 0; tick < NUM_SIMULATED_TICKS; tick++) {
+            List<Map<String, Object>> trainPositions = new ArrayList<>(trains.length);
+            for (SimulatedTrain train : trains) {
+                train.move(railNetwork, random, startingCircuitIds);
+                trainPositions.add(train.toTrainPosition(railNetwork));
+            }
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(body)) {
+                gzip.write(gson.toJson(Collections.singletonMap("TrainPositions", trainPositions)).getBytes(StandardCharsets.UTF_8));
+            }
+            bodies.add(body.toByteArray());
+        }
+        return bodies;
+    }
+
+    private static class SimulatedTrain {
+        private final String trainId;
+        private final String trainNumber;
+        private int circuitId;
+        private String lineCode;
+        private String destinationStationCode;
+        private int secondsAtLocation;
+
+        SimulatedTrain(String trainId, String trainNumber) {
+            this.trainId = trainId;
+            this.trainNumber = trainNumber;
+        }
+
+        void startOver(RailNetwork railNetwork, int circuitId) {
+            this.circuitId = circuitId;
+            this.lineCode = new TreeSet<>(railNetwork.getTrackCircuit(circuitId).getLineCodes()).first();
+            this.secondsAtLocation = 0;
+
+            // headed for the last station down the line
+            this.destinationStationCode = null;
+            Set<Integer> visitedCircuitIds = new HashSet<>();
+            for (int id = circuitId; visitedCircuitIds.add(id) && railNetwork.getNumChildCircuits(id) > 0; id = railNetwork.getChildCircuitId(id, 0)) {
+                String stationCode = railNetwork.getTrackCircuit(id).getStationCode();
+                if (stationCode != null) {
+                    this.destinationStationCode = stationCode;
+                }
+            }
+        }
+
+        void move(RailNetwork railNetwork, Random random, List<Integer> startingCircuitIds) {
+            boolean isAtStation = railNetwork.getTrackCircuit(this.circuitId).getStationCode() != null;
+            if (random.nextDouble() < (isAtStation ? 0.2 : 0.7)) {
+                if (railNetwork.getNumChildCircuits(this.circuitId) <= 0) {
+                    startOver(railNetwork, startingCircuitIds.get(random.nextInt(startingCircuitIds.size())));
+                    return;
+                }
+                this.circuitId = railNetwork.getChildCircuitId(this.circuitId, random.nextInt(railNetwork.getNumChildCircuits(this.circuitId)));
+                this.secondsAtLocation = 0;
+            } else {
+                this.secondsAtLocation += 2;
+            }
+        }
+
+        Map<String, Object> toTrainPosition(RailNetwork railNetwork) {
+            Map<String, Object> trainPosition = new LinkedHashMap<>();
+            trainPosition.put("TrainId", this.trainId);
+            trainPosition.put("TrainNumber", this.trainNumber);
+            trainPosition.put("CarCount", 8);
+            trainPosition.put("DirectionNum", 1);
+            trainPosition.put("CircuitId", railNetwork.getTrackCircuit(this.circuitId).getId());
+            trainPosition.put("DestinationStationCode", this.destinationStationCode);
+            trainPosition.put("LineCode", this.lineCode);
+            trainPosition.put("SecondsAtLocation", this.secondsAtLocation);
+            trainPosition.put("ServiceType", "Normal");
+            return trainPosition;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.jamespizzurro.metrorailserver.benchmark;
+
+import com.google.gson.Gson;
+import com.jamespizzurro.metrorailserver.GzipGsonHttpMessageConverter;
+import com.jamespizzurro.metrorailserver.NetworkUtil;
+import com.jamespizzurro.metrorailserver.domain.ProcessedGISTrainData;
+import com.jamespizzurro.metrorailserver.domain.marshallers.GISTrainData;
+import com.jamespizzurro.metrorailserver.domain.marshallers.GISTrainsData;
+import com.jamespizzurro.metrorailserver.domain.marshallers.TrainPositions;
+import com.jamespizzurro.metrorailserver.domain.marshallers.WmataFeedDecoder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// compares decode time and allocation per update for WMATA's train feeds: reflective Gson binding through GzipGsonHttpMessageConverter
+// (plus copying GIS data into ProcessedGISTrainData) against streaming them through WmataFeedDecoder
+// feeds are synthetic, but shaped and sized like the real thing during rush hour; no network or database needed
+// e.g. mvn -Pbenchmark compile exec:exec -Dbenchmark=WmataFeedDecodeBenchmark
+// per-update allocation is reported as gc.alloc.rate.norm
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WmataFeedDecodeBenchmark {
+
+    private static final int NUM_TRAINS = 150;
+
+    private GzipGsonHttpMessageConverter converter;
+    private WmataFeedDecoder decoder;
+    private TrainPositions reusableTrainPositions;
+
+    private byte[] trainPositionsBody;
+    private byte[] gisTrainDataBody;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.converter = new GzipGsonHttpMessageConverter();
+        this.decoder = new WmataFeedDecoder();
+        this.reusableTrainPositions = new TrainPositions();
+
+        this.trainPositionsBody = gzip(buildTrainPositionsJson());
+        this.gisTrainDataBody = gzip(buildGISTrainDataJson());
+
+        // make sure we're comparing apples to apples
+        if (!gsonTrainPositions().equals(streamingTrainPositions())) {
+            throw new IllegalStateException("Streamed train positions don't match Gson's!");
+        }
+        if (gsonGISTrainData().size() != streamingGISTrainData().size()) {
+            throw new IllegalStateException("Streamed GIS train data doesn't match Gson's!");
+        }
+    }
+
+    @Benchmark
+    public TrainPositions gsonTrainPositions() throws IOException {
+        return (TrainPositions) this.converter.read(TrainPositions.class, toHttpInputMessage(this.trainPositionsBody));
+    }
+
+    @Benchmark
+    public TrainPositions streamingTrainPositions() throws IOException {
+        try (InputStream json = new GZIPInputStream(new ByteArrayInputStream(this.trainPositionsBody))) {
+            return this.decoder.decodeTrainPositions(json, this.reusableTrainPositions);
+        }
+    }
+
+    @Benchmark
+    public List<ProcessedGISTrainData> gsonGISTrainData() throws IOException {
+        GISTrainsData gisTrainsData = (GISTrainsData) this.converter.read(GISTrainsData.class, toHttpInputMessage(this.gisTrainDataBody));
+
+        List<ProcessedGISTrainData> processedGISTrainData = new ArrayList<>(gisTrainsData.getTrainsData().size());
+        for (GISTrainData trainData : gisTrainsData.getTrainsData()) {
+            processedGISTrainData.add(new ProcessedGISTrainData(trainData));
+        }
+        return processedGISTrainData;
+    }
+
+    @Benchmark
+    public List<ProcessedGISTrainData> streamingGISTrainData() throws IOException {
+        try (InputStream json = NetworkUtil.decompressIfGzipped(new ByteArrayInputStream(this.gisTrainDataBody))) {
+            return this.decoder.decodeGISTrainData(json);
+        }
+    }
+
+    private static HttpInputMessage toHttpInputMessage(byte[] body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return new HttpInputMessage() {
+            @Override
+            public InputStream getBody() {
+                return new ByteArrayInputStream(body);
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+        };
+    }
+
+    private static byte[] gzip(String json) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String buildTrainPositionsJson() {
+        String[] lineCodes = new String[]{"RD", "OR", "SV", "BL", "YL", "GR"};
+        String[] destinationStationCodes = new String[]{"A15", "B11", "K08", "D13", "N12", "G05", "J03", "C15", "E10", "F11"};
+        Random random = new Random(0);
+
+        List<Map<String, Object>> trainPositions = new ArrayList<>(NUM_TRAINS);
+        for (int i = 0; i < NUM_TRAINS; i++) {
+            Map<String, Object> trainPosition = new LinkedHashMap<>();
+            trainPosition.put("TrainId", String.format("%03d", i));
+            trainPosition.put("TrainNumber", String.valueOf(100 + random.nextInt(900)));
+            trainPosition.put("CarCount", random.nextBoolean() ? 8 : 6);
+            trainPosition.put("DirectionNum", 1 + random.nextInt(2));
+            trainPosition.put("CircuitId", random.nextInt(3500));
+            trainPosition.put("DestinationStationCode", destinationStationCodes[random.nextInt(destinationStationCodes.length)]);
+            trainPosition.put("LineCode", lineCodes[i % lineCodes.length]);
+            trainPosition.put("SecondsAtLocation", random.nextInt(120));
+            trainPosition.put("ServiceType", "Normal");
+            trainPositions.add(trainPosition);
+        }
+
+        return new Gson().toJson(Collections.singletonMap("TrainPositions", trainPositions));
+    }
+
+    private static String buildGISTrainDataJson() {
+        String[] lineNames = new String[]{"RED", "ORANGE", "SILVER", "BLUE", "YELLOW", "GREEN"};
+        String[] descriptions = new String[]{"", "Doors open left", "Doors open right; motion", "Doors operating manually"};
+        Random random = new Random(0);
+        String dateTimeString = new SimpleDateFormat("M/dd/yyyy h:mm:ss a").format(new Date());
+
+        List<Map<String, Object>> features = new ArrayList<>(NUM_TRAINS);
+        for (int i = 0; i < NUM_TRAINS; i++) {
+            Map<String, Object> attributes = new LinkedHashMap<>();
+            attributes.put("ITT", String.valueOf(i));
+            attributes.put("DATE_TIME", dateTimeString);
+            attributes.put("CARNO", random.nextBoolean() ? 8 : 6);
+            attributes.put("TRACKLINE", lineNames[i % lineNames.length]);
+            attributes.put("TRACKNAME", "Track " + (1 + random.nextInt(2)));
+            attributes.put("DESTINATIONID", String.valueOf(random.nextInt(200)));
+            attributes.put("DEST_STATION", "Glenmont");
+            attributes.put("DESTSTATIONCODE", "B11");
+            attributes.put("DESCRIPTION", descriptions[random.nextInt(descriptions.length)]);
+            attributes.put("DIRECTION", random.nextInt(360));
+            attributes.put("TRIP_DIRECTION", String.valueOf(1 + random.nextInt(2)));
+
+            Map<String, Object> geometry = new LinkedHashMap<>();
+            geometry.put("x", -8575000 + random.nextDouble() * 50000);
+            geometry.put("y", 4705000 + random.nextDouble() * 50000);
+
+            Map<String, Object> feature = new LinkedHashMap<>();
+            feature.put("attributes", attributes);
+            feature.put("geometry", geometry);
+            features.add(feature);
+        }
+
+        Map<String, Object> gisTrainData = new LinkedHashMap<>();
+        gisTrainData.put("displayFieldName", "ITT");
+        gisTrainData.put("geometryType", "esriGeometryPoint");
+        gisTrainData.put("spatialReference", Collections.singletonMap("wkid", 102100));
+        gisTrainData.put("features", features);
+        return new Gson().toJson(gisTrainData);
+    }
+}
@@ -25,7 +25,6 @@ import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.filter.ShallowEtagHeaderFilter;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
@@ -52,7 +51,8 @@ public class Application implements WebMvcConfigurer, AsyncConfigurer {
     private static GsonHttpMessageConverter createGsonHttpMessageConverter() {
         Gson gson = new GsonBuilder()
                 .setExclusionStrategies(new AnnotationExclusionStrategy())
-                .registerTypeHierarchyAdapter(Calendar.class, new CalendarGsonConverter())
+                .registerTypeHierarchyAdapter(Calendar.class, new CalendarTypeAdapter().nullSafe())
+                .registerTypeAdapterFactory(new StreamingTypeAdapterFactory())
                 .create();
         GsonHttpMessageConverter gsonConverter = new GsonHttpMessageConverter();
         gsonConverter.setGson(gson);
@@ -189,8 +189,8 @@ public class Application implements WebMvcConfigurer, AsyncConfigurer {
     }
 
     @Bean
-    public ThreadPoolTaskScheduler taskScheduler() {
-        ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+    public InstrumentedTaskScheduler taskScheduler() {
+        InstrumentedTaskScheduler taskScheduler = new InstrumentedTaskScheduler();
         taskScheduler.setPoolSize(8);
         return taskScheduler;
     }
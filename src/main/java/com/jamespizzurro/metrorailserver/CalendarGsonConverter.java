@@ -1,51 +0,0 @@
-/***
- * Copyright (c) 2009 Caelum - www.caelum.com.br/opensource All rights reserved.
- *
- * Licensed under the Apache License, Version 2.0 (the "License"); you may not
- * use this file except in compliance with the License. You may obtain a copy of
- * the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
- * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
- * License for the specific language governing permissions and limitations under
- * the License.
- */
-//package br.com.caelum.vraptor.serialization.gson;
-package com.jamespizzurro.metrorailserver;
-
-import com.google.gson.*;
-
-import javax.xml.bind.DatatypeConverter;
-import java.lang.reflect.Type;
-import java.util.Calendar;
-
-//import javax.annotation.Priority;
-//import javax.enterprise.context.Dependent;
-//import javax.enterprise.inject.Alternative;
-//import javax.interceptor.Interceptor;
-
-/**
- * Deserialize {@link Calendar} using ISO8601 format. This class must be in {@link Dependent} to allow us to
- * discover generic type.
- *
- * @author Otávio Garcia
- * @since 4.0.0
- */
-//@Dependent
-//@Alternative
-//@Priority(Interceptor.Priority.LIBRARY_BEFORE)
-public class CalendarGsonConverter implements JsonDeserializer<Calendar>, JsonSerializer<Calendar>{
-
-    @Override
-    public Calendar deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-        return DatatypeConverter.parseDate(json.getAsString());
-    }
-
-    @Override
-    public JsonElement serialize(Calendar calendar, Type typeOfSrc, JsonSerializationContext context) {
-        return new JsonPrimitive(DatatypeConverter.printDateTime(calendar));
-    }
-}
@@ -0,0 +1,24 @@
+package com.jamespizzurro.metrorailserver;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
+import java.util.Calendar;
+
+// (de)serializes calendars as ISO 8601 strings, straight to and from the JSON stream rather than by way of a JsonElement
+// register with nullSafe()
+public class CalendarTypeAdapter extends TypeAdapter<Calendar> {
+
+    @Override
+    public void write(JsonWriter out, Calendar calendar) throws IOException {
+        out.value(DatatypeConverter.printDateTime(calendar));
+    }
+
+    @Override
+    public Calendar read(JsonReader in) throws IOException {
+        return DatatypeConverter.parseDate(in.nextString());
+    }
+}
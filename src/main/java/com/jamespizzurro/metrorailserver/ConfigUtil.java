@@ -17,18 +17,60 @@ public class ConfigUtil {
     @Value("${wmata.development.apikey}")
     private String wmataDevelopmentApiKey;
 
+    @Value("${wmata.api.trainpredictions}")
+    private String wmataTrainPredictionsApiUrl;
+
     @Value("${wmata.api.railincidents}")
     private String wmataRailIncidentsApiUrl;
 
     @Value("${wmata.api.trainpositions}")
     private String wmataTrainPositionsApiUrl;
 
+    @Value("${wmata.api.gistrainlocations}")
+    private String wmataGISTrainLocationsApiUrl;
+
     @Value("${wmata.api.elevatorescalatoroutages}")
     private String wmataElevatorEscalatorOutagesApiUrl;
 
     @Value("${wmata.api.newgtfsfeed}")
     private String wmataNewGTFSFeedUrl;
 
+    @Value("${server.metrics.apikey}")
+    private String serverMetricsApiKey;
+
+    @Value("${partitions.convertexisting}")
+    private Boolean partitionConversionEnabled;
+
+    @Value("${persistence.queue.capacity}")
+    private Integer persistenceQueueCapacity;
+
+    @Value("${persistence.queue.maxticksperflush}")
+    private Integer persistenceQueueMaxTicksPerFlush;
+
+    @Value("${savedtrips.numpopulartripstorefresh}")
+    private Integer numPopularSavedTripsToRefresh;
+
+    @Value("${savedtrips.build.parallelism}")
+    private Integer savedTripBuildParallelism;
+
+    @Value("${wmata.gis.deadlinemillis}")
+    private Integer gisTrainDataDeadlineMillis;
+
+    @Value("${feeds.record.directory}")
+    private String feedRecordingDirectory;
+
+    @Value("${feeds.replay.directory}")
+    private String feedReplayDirectory;
+
+    @Value("${feeds.replay.port}")
+    private Integer feedReplayPort;
+
+    @Value("${feeds.replay.speed}")
+    private Double feedReplaySpeed;
+
+    @Value("${feeds.replay.loop}")
+    private Boolean feedReplayLoop;
+
     public boolean isDevelopmentMode() {
         return developmentmode;
     }
@@ -41,6 +83,10 @@ public class ConfigUtil {
         }
     }
 
+    public String getWmataTrainPredictionsApiUrl() {
+        return wmataTrainPredictionsApiUrl;
+    }
+
     public String getWmataRailIncidentsApiUrl() {
         return wmataRailIncidentsApiUrl;
     }
@@ -49,6 +95,10 @@ public class ConfigUtil {
         return wmataTrainPositionsApiUrl;
     }
 
+    public String getWmataGISTrainLocationsApiUrl() {
+        return wmataGISTrainLocationsApiUrl;
+    }
+
     public String getWmataElevatorEscalatorOutagesApiUrl() {
         return wmataElevatorEscalatorOutagesApiUrl;
     }
@@ -56,4 +106,52 @@ public class ConfigUtil {
     public String getWmataNewGTFSFeedUrl() {
         return wmataNewGTFSFeedUrl;
     }
+
+    public String getServerMetricsApiKey() {
+        return serverMetricsApiKey;
+    }
+
+    public boolean isPartitionConversionEnabled() {
+        return partitionConversionEnabled;
+    }
+
+    public int getPersistenceQueueCapacity() {
+        return persistenceQueueCapacity;
+    }
+
+    public int getPersistenceQueueMaxTicksPerFlush() {
+        return persistenceQueueMaxTicksPerFlush;
+    }
+
+    public int getNumPopularSavedTripsToRefresh() {
+        return numPopularSavedTripsToRefresh;
+    }
+
+    public int getSavedTripBuildParallelism() {
+        return savedTripBuildParallelism;
+    }
+
+    public int getGisTrainDataDeadlineMillis() {
+        return gisTrainDataDeadlineMillis;
+    }
+
+    public String getFeedRecordingDirectory() {
+        return feedRecordingDirectory;
+    }
+
+    public String getFeedReplayDirectory() {
+        return feedReplayDirectory;
+    }
+
+    public int getFeedReplayPort() {
+        return feedReplayPort;
+    }
+
+    public double getFeedReplaySpeed() {
+        return feedReplaySpeed;
+    }
+
+    public boolean isFeedReplayLooping() {
+        return feedReplayLoop;
+    }
 }
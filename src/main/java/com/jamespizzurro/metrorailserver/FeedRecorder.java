@@ -0,0 +1,237 @@
+package com.jamespizzurro.metrorailserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// records raw responses from WMATA's feeds, exactly as we received them, so they can be replayed later by FeedReplayServer
+// responses are written in the background to gzipped segment files, a new one every so often so no one file gets too big
+// each response is flushed as soon as it's written, so a segment is still readable up to that point if we're killed mid-write
+@Component
+public class FeedRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeedRecorder.class);
+
+    private static final String SEGMENT_FILE_NAME_PREFIX = "wmata-feeds-";
+    private static final String SEGMENT_FILE_NAME_SUFFIX = ".seg.gz";
+    private static final long SEGMENT_DURATION_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    // the feeds FeedReplayServer can stand in for, i.e. the ones with configurable URLs
+    private static final Set<RequestHandler.Feed> RECORDED_FEEDS = EnumSet.of(
+            RequestHandler.Feed.TRAIN_POSITIONS,
+            RequestHandler.Feed.GIS_TRAIN_LOCATIONS,
+            RequestHandler.Feed.TRAIN_PREDICTIONS,
+            RequestHandler.Feed.RAIL_INCIDENTS,
+            RequestHandler.Feed.ELEVATOR_ESCALATOR_OUTAGES
+    );
+
+    private final ConfigUtil configUtil;
+
+    private Path directory;
+    private ExecutorService writer;
+    private DataOutputStream segment;   // only ever touched by the writer
+    private long segmentStartTime;
+    private final AtomicLong numRecordedResponses = new AtomicLong();
+
+    @Autowired
+    public FeedRecorder(ConfigUtil configUtil) {
+        this.configUtil = configUtil;
+    }
+
+    @PostConstruct
+    private void init() {
+        if (StringUtils.isEmpty(this.configUtil.getFeedRecordingDirectory())) {
+            return;
+        }
+
+        logger.info("Initializing feed recorder...");
+
+        this.directory = Paths.get(this.configUtil.getFeedRecordingDirectory());
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            logger.error("Failed to create feed recording directory " + this.directory + "! WMATA feeds will not be recorded.", e);
+            return;
+        }
+
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MetroHeroFeedRecorder");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        logger.info("...feed recorder initialized! Recording WMATA feeds to " + this.directory.toAbsolutePath());
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        if (this.writer == null) {
+            return;
+        }
+
+        this.writer.shutdown();
+        try {
+            this.writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeSegment();
+
+        logger.info("Recorded " + this.numRecordedResponses.get() + " responses from WMATA feeds.");
+    }
+
+    public boolean isRecording(RequestHandler.Feed feed) {
+        return this.writer != null && RECORDED_FEEDS.contains(feed);
+    }
+
+    // never blocks on disk
+    public void record(RecordedResponse recordedResponse) {
+        try {
+            this.writer.execute(() -> write(recordedResponse));
+        } catch (RejectedExecutionException ignored) {
+            // we're shutting down
+        }
+    }
+
+    private void write(RecordedResponse recordedResponse) {
+        try {
+            if (this.segment == null || (recordedResponse.getTimeMillis() - this.segmentStartTime) >= SEGMENT_DURATION_MILLIS) {
+                closeSegment();
+
+                Path segmentPath = this.directory.resolve(SEGMENT_FILE_NAME_PREFIX + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date(recordedResponse.getTimeMillis())) + SEGMENT_FILE_NAME_SUFFIX);
+                this.segment = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(segmentPath)), true));
+                this.segmentStartTime = recordedResponse.getTimeMillis();
+            }
+
+            recordedResponse.writeTo(this.segment);
+            this.segment.flush();
+            this.numRecordedResponses.incrementAndGet();
+        } catch (IOException e) {
+            logger.warn("Failed to record response from WMATA " + recordedResponse.getFeed() + " feed!", e);
+            closeSegment();
+        }
+    }
+
+    private void closeSegment() {
+        if (this.segment == null) {
+            return;
+        }
+
+        try {
+            this.segment.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close feed recording segment!", e);
+        }
+        this.segment = null;
+    }
+
+    public long getNumRecordedResponses() {
+        return numRecordedResponses.get();
+    }
+
+    // every response recorded to the specified directory, in the order they were recorded
+    public static List<RecordedResponse> readRecordedResponses(Path directory) throws IOException {
+        List<Path> segmentPaths;
+        try (Stream<Path> paths = Files.list(directory)) {
+            segmentPaths = paths
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_FILE_NAME_PREFIX) && path.getFileName().toString().endsWith(SEGMENT_FILE_NAME_SUFFIX))
+                    .sorted()   // segment file names sort chronologically
+                    .collect(Collectors.toList());
+        }
+
+        List<RecordedResponse> recordedResponses = new ArrayList<>();
+        for (Path segmentPath : segmentPaths) {
+            try (DataInputStream segment = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(segmentPath))))) {
+                while (true) {
+                    recordedResponses.add(RecordedResponse.readFrom(segment));
+                }
+            } catch (EOFException e) {
+                // end of the segment, or as far as we got before we stopped recording to it
+            }
+        }
+        return recordedResponses;
+    }
+
+    public static class RecordedResponse {
+        private final RequestHandler.Feed feed;
+        private final long timeMillis;
+        private final int statusCode;
+        private final String contentType;
+        private final String contentEncoding;
+        private final byte[] body;  // as we received it, i.e. usually gzipped
+
+        public RecordedResponse(RequestHandler.Feed feed, long timeMillis, int statusCode, String contentType, String contentEncoding, byte[] body) {
+            this.feed = feed;
+            this.timeMillis = timeMillis;
+            this.statusCode = statusCode;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+            this.body = body;
+        }
+
+        void writeTo(DataOutput output) throws IOException {
+            output.writeUTF(this.feed.name());
+            output.writeLong(this.timeMillis);
+            output.writeShort(this.statusCode);
+            output.writeUTF((this.contentType != null) ? this.contentType : "");
+            output.writeUTF((this.contentEncoding != null) ? this.contentEncoding : "");
+            output.writeInt(this.body.length);
+            output.write(this.body);
+        }
+
+        static RecordedResponse readFrom(DataInput input) throws IOException {
+            RequestHandler.Feed feed = RequestHandler.Feed.valueOf(input.readUTF());
+            long timeMillis = input.readLong();
+            int statusCode = input.readShort();
+            String contentType = input.readUTF();
+            String contentEncoding = input.readUTF();
+            byte[] body = new byte[input.readInt()];
+            input.readFully(body);
+            return new RecordedResponse(feed, timeMillis, statusCode, !contentType.isEmpty() ? contentType : null, !contentEncoding.isEmpty() ? contentEncoding : null, body);
+        }
+
+        public RequestHandler.Feed getFeed() {
+            return feed;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getContentEncoding() {
+            return contentEncoding;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.jamespizzurro.metrorailserver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// a local stand-in for WMATA's feeds, serving responses previously recorded by FeedRecorder on the same schedule they were recorded on
+// (or faster), so a rush hour can be reproduced offline, e.g. for load testing or profiling
+// each feed is served at /<feed name>, e.g. /TRAIN_POSITIONS; see application-replay.properties
+@Component
+public class FeedReplayServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeedReplayServer.class);
+
+    private final ConfigUtil configUtil;
+
+    private Map<RequestHandler.Feed, RecordedFeed> recordedFeeds;
+    private long firstRecordedTime;
+    private long lastRecordedTime;
+    private long replayStartTime;
+    private double replaySpeed;
+    private boolean isLooping;
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+
+    @Autowired
+    public FeedReplayServer(ConfigUtil configUtil) {
+        this.configUtil = configUtil;
+    }
+
+    @PostConstruct
+    private void init() {
+        if (StringUtils.isEmpty(this.configUtil.getFeedReplayDirectory())) {
+            return;
+        }
+
+        logger.info("Initializing feed replay server...");
+
+        List<FeedRecorder.RecordedResponse> recordedResponses;
+        try {
+            recordedResponses = FeedRecorder.readRecordedResponses(Paths.get(this.configUtil.getFeedReplayDirectory()));
+        } catch (IOException e) {
+            logger.error("Failed to read recorded WMATA feeds from " + this.configUtil.getFeedReplayDirectory() + "! Nothing will be replayed.", e);
+            return;
+        }
+        if (recordedResponses.isEmpty()) {
+            logger.warn("No recorded WMATA feeds found in " + this.configUtil.getFeedReplayDirectory() + "! Nothing will be replayed.");
+            return;
+        }
+
+        Map<RequestHandler.Feed, List<FeedRecorder.RecordedResponse>> recordedResponsesByFeed = new EnumMap<>(RequestHandler.Feed.class);
+        for (FeedRecorder.RecordedResponse recordedResponse : recordedResponses) {
+            recordedResponsesByFeed.computeIfAbsent(recordedResponse.getFeed(), feed -> new ArrayList<>()).add(recordedResponse);
+        }
+        this.recordedFeeds = new EnumMap<>(RequestHandler.Feed.class);
+        recordedResponsesByFeed.forEach((feed, responses) -> this.recordedFeeds.put(feed, new RecordedFeed(responses)));
+
+        this.firstRecordedTime = recordedResponses.stream().mapToLong(FeedRecorder.RecordedResponse::getTimeMillis).min().getAsLong();
+        this.lastRecordedTime = recordedResponses.stream().mapToLong(FeedRecorder.RecordedResponse::getTimeMillis).max().getAsLong();
+        this.replaySpeed = Math.max(this.configUtil.getFeedReplaySpeed(), 0);
+        this.isLooping = this.configUtil.isFeedReplayLooping();
+
+        this.serverExecutor = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "MetroHeroFeedReplayServer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), this.configUtil.getFeedReplayPort()), 0);
+        } catch (IOException e) {
+            logger.error("Failed to start feed replay server on port " + this.configUtil.getFeedReplayPort() + "! Nothing will be replayed.", e);
+            this.serverExecutor.shutdown();
+            return;
+        }
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(this.serverExecutor);
+        this.replayStartTime = System.currentTimeMillis();
+        this.server.start();
+
+        logger.info("...feed replay server initialized! Replaying " + recordedResponses.size() + " responses from " + this.recordedFeeds.keySet() + " spanning " +
+                TimeUnit.MILLISECONDS.toMinutes(this.lastRecordedTime - this.firstRecordedTime) + " minutes at " + this.replaySpeed + "x speed on port " + this.configUtil.getFeedReplayPort());
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        if (this.server != null) {
+            this.server.stop(0);
+            this.serverExecutor.shutdownNow();
+        }
+    }
+
+    // the point in the recording we're currently replaying
+    public long getReplayTimeMillis() {
+        long recordingDuration = this.lastRecordedTime - this.firstRecordedTime;
+        long elapsedReplayTime = (long) ((System.currentTimeMillis() - this.replayStartTime) * this.replaySpeed);
+        if (this.isLooping && recordingDuration > 0) {
+            elapsedReplayTime %= recordingDuration;
+        }
+        return this.firstRecordedTime + Math.min(elapsedReplayTime, recordingDuration);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            RequestHandler.Feed feed;
+            try {
+                feed = RequestHandler.Feed.valueOf(exchange.getRequestURI().getPath().substring(1));
+            } catch (IllegalArgumentException e) {
+                feed = null;
+            }
+            RecordedFeed recordedFeed = (feed != null) ? this.recordedFeeds.get(feed) : null;
+            if (recordedFeed == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            FeedRecorder.RecordedResponse recordedResponse = recordedFeed.getLatestResponse(getReplayTimeMillis());
+            if (recordedResponse.getContentType() != null) {
+                exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, recordedResponse.getContentType());
+            }
+            if (recordedResponse.getContentEncoding() != null) {
+                exchange.getResponseHeaders().set(HttpHeaders.CONTENT_ENCODING, recordedResponse.getContentEncoding());
+            }
+            exchange.sendResponseHeaders(recordedResponse.getStatusCode(), (recordedResponse.getBody().length > 0) ? recordedResponse.getBody().length : -1);
+            if (recordedResponse.getBody().length > 0) {
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(recordedResponse.getBody());
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static class RecordedFeed {
+        private final List<FeedRecorder.RecordedResponse> responses;
+        private final long[] responseTimes;
+
+        RecordedFeed(List<FeedRecorder.RecordedResponse> responses) {
+            responses.sort(Comparator.comparingLong(FeedRecorder.RecordedResponse::getTimeMillis));
+            this.responses = responses;
+            this.responseTimes = responses.stream().mapToLong(FeedRecorder.RecordedResponse::getTimeMillis).toArray();
+        }
+
+        // the latest response recorded at or before the specified time, or the first one if there aren't any yet
+        FeedRecorder.RecordedResponse getLatestResponse(long timeMillis) {
+            int index = Arrays.binarySearch(this.responseTimes, timeMillis);
+            if (index < 0) {
+                index = -index - 2;  // just before the insertion point
+            } else {
+                // several responses may have been recorded in the same millisecond; use the last of them
+                while (index + 1 < this.responseTimes.length && this.responseTimes[index + 1] == timeMillis) {
+                    index++;
+                }
+            }
+            return this.responses.get(Math.max(index, 0));
+        }
+    }
+}
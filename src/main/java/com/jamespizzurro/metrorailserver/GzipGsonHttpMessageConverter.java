@@ -14,7 +14,6 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.Arrays;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
 
 // Based on GsonHttpMessageConverter
 public class GzipGsonHttpMessageConverter extends AbstractJsonHttpMessageConverter {
@@ -53,9 +52,9 @@ public class GzipGsonHttpMessageConverter extends AbstractJsonHttpMessageConvert
 
     }
 
+    // reads the response as-is if it turns out not to be gzipped, so callers don't have to retry without gzip
     @Override
     protected Reader getReader(HttpInputMessage inputMessage) throws IOException {
-        GZIPInputStream json = new GZIPInputStream(inputMessage.getBody());
-        return new InputStreamReader(json, getCharset(inputMessage.getHeaders()));
+        return new InputStreamReader(NetworkUtil.decompressIfGzipped(inputMessage.getBody()), getCharset(inputMessage.getHeaders()));
     }
 }
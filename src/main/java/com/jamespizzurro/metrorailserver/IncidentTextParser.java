@@ -239,7 +239,7 @@ public class IncidentTextParser {
         Set<String> lineCodes = new HashSet<>(Arrays.asList("RD", "OR", "SV", "BL", "YL", "GR"));
 
         for (String stationCode : stationCodes) {
-            TrackCircuit stationTrackCircuit = this.trainService.getStationTrackCircuitMap().get(stationCode + "_1");  // HACK: it doesn't matter which track (1 or 2) we use here
+            TrackCircuit stationTrackCircuit = this.trainService.getRailNetwork().getStationTrackCircuit(stationCode, 1);  // HACK: it doesn't matter which track (1 or 2) we use here
             lineCodes.retainAll(stationTrackCircuit.getLineCodes());
         }
 
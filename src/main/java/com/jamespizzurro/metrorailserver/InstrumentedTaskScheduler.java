@@ -0,0 +1,192 @@
+package com.jamespizzurro.metrorailserver;
+
+import com.jamespizzurro.metrorailserver.domain.ScheduledJobMetrics;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// the scheduler all of our @Scheduled jobs share, recording how long each of their runs took, how late they started, and whether any
+// overran their schedule, as well as how busy the scheduler's threads are; see ScheduledJobMetrics
+// one-off tasks, i.e. schedule(Runnable, Date), aren't recorded
+public class InstrumentedTaskScheduler extends ThreadPoolTaskScheduler {
+
+    // in case a cron job overran by a lot more than we'd ever expect, e.g. a job that runs every second being stuck for an hour
+    private static final int MAX_NUM_MISSED_RUNS_TO_COUNT = 3600;
+
+    private final List<ScheduledJobMetrics> jobMetrics = new CopyOnWriteArrayList<>();
+    private final AtomicInteger numRunningJobs = new AtomicInteger();
+    private final AtomicInteger peakNumRunningJobs = new AtomicInteger();
+    private final AtomicLong numRunsStartedWithNoThreadsLeft = new AtomicLong();
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+        InstrumentedJob job = new InstrumentedJob(task, trigger.toString(), getClock().millis());
+        return super.schedule(job, new InstrumentedTrigger(trigger, job));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Date startTime, long period) {
+        InstrumentedJob job = new InstrumentedJob(task, "fixedRate=" + period + "ms", startTime.getTime());
+        job.period = period;
+        return super.scheduleAtFixedRate(job, startTime, period);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+        InstrumentedJob job = new InstrumentedJob(task, "fixedRate=" + period + "ms", getClock().millis());
+        job.period = period;
+        return super.scheduleAtFixedRate(job, period);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Date startTime, long delay) {
+        InstrumentedJob job = new InstrumentedJob(task, "fixedDelay=" + delay + "ms", startTime.getTime());
+        job.delay = delay;
+        return super.scheduleWithFixedDelay(job, startTime, delay);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+        InstrumentedJob job = new InstrumentedJob(task, "fixedDelay=" + delay + "ms", getClock().millis());
+        job.delay = delay;
+        return super.scheduleWithFixedDelay(job, delay);
+    }
+
+    private static String getJobName(Runnable task) {
+        if (task instanceof ScheduledMethodRunnable) {
+            ScheduledMethodRunnable scheduledMethodRunnable = (ScheduledMethodRunnable) task;
+            return scheduledMethodRunnable.getMethod().getDeclaringClass().getSimpleName() + "." + scheduledMethodRunnable.getMethod().getName();
+        }
+        return task.toString();
+    }
+
+    public List<ScheduledJobMetrics> getJobMetrics() {
+        List<ScheduledJobMetrics> jobMetrics = new ArrayList<>(this.jobMetrics);
+        jobMetrics.sort(Comparator.comparing(ScheduledJobMetrics::getName));
+        return jobMetrics;
+    }
+
+    public int getNumRunningJobs() {
+        return numRunningJobs.get();
+    }
+
+    public int getPeakNumRunningJobs() {
+        return peakNumRunningJobs.get();
+    }
+
+    // how many times a job started by taking the last free thread, i.e. anything else due right then had to wait
+    public long getNumRunsStartedWithNoThreadsLeft() {
+        return numRunsStartedWithNoThreadsLeft.get();
+    }
+
+    // how many jobs are past due and still waiting for a free thread right now
+    public int getNumOverdueJobs() {
+        int numOverdueJobs = 0;
+        for (Runnable queuedTask : getScheduledThreadPoolExecutor().getQueue()) {
+            if (queuedTask instanceof Delayed && ((Delayed) queuedTask).getDelay(TimeUnit.MILLISECONDS) < 0) {
+                numOverdueJobs++;
+            }
+        }
+        return numOverdueJobs;
+    }
+
+    private class InstrumentedJob implements Runnable {
+        private final Runnable task;
+        private final ScheduledJobMetrics metrics;
+        private long period;    // for fixed rate jobs
+        private long delay;     // for fixed delay jobs
+        private volatile long nextIntendedStartTime;
+
+        InstrumentedJob(Runnable task, String schedule, long firstIntendedStartTime) {
+            this.task = task;
+            this.metrics = new ScheduledJobMetrics(getJobName(task), schedule);
+            this.nextIntendedStartTime = firstIntendedStartTime;
+            jobMetrics.add(this.metrics);
+        }
+
+        @Override
+        public void run() {
+            long startTime = getClock().millis();
+            this.metrics.recordStart(startTime, this.nextIntendedStartTime);
+            int numRunningJobs = InstrumentedTaskScheduler.this.numRunningJobs.incrementAndGet();
+            peakNumRunningJobs.accumulateAndGet(numRunningJobs, Math::max);
+            if (numRunningJobs >= getScheduledThreadPoolExecutor().getCorePoolSize()) {
+                numRunsStartedWithNoThreadsLeft.incrementAndGet();
+            }
+
+            long startNanos = System.nanoTime();
+            boolean failed = true;
+            try {
+                this.task.run();
+                failed = false;
+            } finally {
+                long durationNanos = System.nanoTime() - startNanos;
+                InstrumentedTaskScheduler.this.numRunningJobs.decrementAndGet();
+                this.metrics.recordEnd(durationNanos, failed);
+
+                long endTime = getClock().millis();
+                if (this.period > 0) {
+                    // fixed rate jobs never skip a run; they just start the next one late
+                    this.nextIntendedStartTime += this.period;
+                    if (endTime > this.nextIntendedStartTime) {
+                        this.metrics.recordOverrun(0);
+                    }
+                } else if (this.delay > 0) {
+                    this.nextIntendedStartTime = endTime + this.delay;
+                }
+                // otherwise, InstrumentedTrigger will tell us when the next run should start
+            }
+        }
+    }
+
+    private static class InstrumentedTrigger implements Trigger {
+        private final Trigger trigger;
+        private final InstrumentedJob job;
+
+        InstrumentedTrigger(Trigger trigger, InstrumentedJob job) {
+            this.trigger = trigger;
+            this.job = job;
+        }
+
+        @Override
+        public Date nextExecutionTime(TriggerContext triggerContext) {
+            Date nextExecutionTime = this.trigger.nextExecutionTime(triggerContext);
+            if (nextExecutionTime == null) {
+                return null;
+            }
+
+            // cron jobs skip any runs they were due for while they were still running, so count them
+            Date lastScheduledExecutionTime = triggerContext.lastScheduledExecutionTime();
+            if (this.trigger instanceof CronTrigger && lastScheduledExecutionTime != null) {
+                int numMissedRuns = 0;
+                Date missedExecutionTime = this.trigger.nextExecutionTime(new SimpleTriggerContext(lastScheduledExecutionTime, lastScheduledExecutionTime, lastScheduledExecutionTime));
+                while (missedExecutionTime != null && missedExecutionTime.before(nextExecutionTime) && numMissedRuns < MAX_NUM_MISSED_RUNS_TO_COUNT) {
+                    numMissedRuns++;
+                    missedExecutionTime = this.trigger.nextExecutionTime(new SimpleTriggerContext(missedExecutionTime, missedExecutionTime, missedExecutionTime));
+                }
+                if (numMissedRuns > 0) {
+                    this.job.metrics.recordOverrun(numMissedRuns);
+                }
+            }
+
+            this.job.nextIntendedStartTime = nextExecutionTime.getTime();
+            return nextExecutionTime;
+        }
+
+        @Override
+        public String toString() {
+            return this.trigger.toString();
+        }
+    }
+}
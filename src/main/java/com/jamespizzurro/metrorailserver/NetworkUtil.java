@@ -5,10 +5,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.http.converter.json.GsonHttpMessageConverter;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
 
 public class NetworkUtil {
 
@@ -22,14 +25,55 @@ public class NetworkUtil {
         return new HttpEntity<>("parameters", requestHeaders);
     }
 
-    public static RestTemplate createNewRestTemplate(boolean useGzip) {
-        RestTemplate restTemplate = (new RequestHandler()).getRestTemplate();
-        restTemplate.getMessageConverters().clear();
-        if (useGzip) {
-            restTemplate.getMessageConverters().add(new GzipGsonHttpMessageConverter());
-        } else {
-            restTemplate.getMessageConverters().add(new GsonHttpMessageConverter());
+    // we always ask for gzip, but don't always get it, so only decompress the response body if it actually is gzipped
+    public static InputStream decompressIfGzipped(InputStream body) throws IOException {
+        BufferedInputStream bufferedBody = new BufferedInputStream(body);
+        bufferedBody.mark(2);
+        int firstByte = bufferedBody.read();
+        int secondByte = bufferedBody.read();
+        bufferedBody.reset();
+
+        boolean isGzipped = (firstByte != -1 && secondByte != -1) && ((firstByte | (secondByte << 8)) == GZIPInputStream.GZIP_MAGIC);
+        return isGzipped ? new GZIPInputStream(bufferedBody) : bufferedBody;
+    }
+
+    // whether a client's Accept-Encoding header allows a gzipped response, going by the quality values it gives each coding (see RFC 7231, section 5.3.4)
+    // e.g. "gzip, deflate" and "*" do, but "gzip;q=0", "identity" and "x-gzipped" don't
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        Double gzipQuality = null;
+        Double wildcardQuality = null;
+        for (String codingWithParameters : acceptEncoding.split(",")) {
+            String[] codingAndParameters = codingWithParameters.split(";");
+            String coding = codingAndParameters[0].trim().toLowerCase(Locale.ROOT);
+
+            double quality = 1;
+            for (int i = 1; i < codingAndParameters.length; i++) {
+                String parameter = codingAndParameters[i].replaceAll("\\s", "").toLowerCase(Locale.ROOT);
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        // if we can't tell how acceptable it is, assume it isn't
+                        quality = 0;
+                    }
+                }
+            }
+
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzipQuality = (gzipQuality != null) ? Math.max(gzipQuality, quality) : quality;
+            } else if (coding.equals("*")) {
+                wildcardQuality = quality;
+            }
+        }
+
+        // a wildcard only covers codings that aren't listed explicitly
+        if (gzipQuality != null) {
+            return gzipQuality > 0;
         }
-        return restTemplate;
+        return wildcardQuality != null && wildcardQuality > 0;
     }
 }
@@ -1,27 +1,199 @@
 package com.jamespizzurro.metrorailserver;
 
-import org.springframework.http.client.ClientHttpRequestFactory;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+// the one HTTP client we use to poll WMATA's feeds
+// connections are pooled and kept alive between polls, so we aren't doing a new TCP and TLS handshake every couple of seconds
+// each feed gets its own RestTemplate with its own timeouts, but they all share the same connection pool and message converters
+@Component
 public class RequestHandler {
 
-    private final RestTemplate restTemplate;
+    private static final Logger logger = LoggerFactory.getLogger(RequestHandler.class);
 
-    public RequestHandler() {
-        this.restTemplate = new RestTemplate(clientHttpRequestFactory());
+    // which feed a request is for, so responses can be recorded by feed
+    private static final String FEED_CONTEXT_ATTRIBUTE = "metrohero.feed";
+
+    public enum Feed {
+        TRAIN_POSITIONS(5, 5),
+        GIS_TRAIN_LOCATIONS(5, 5),
+        TRAIN_PREDICTIONS(5, 10),
+        RAIL_INCIDENTS(5, 10),
+        ELEVATOR_ESCALATOR_OUTAGES(5, 10);
+
+        private final int connectTimeoutSeconds;
+        private final int readTimeoutSeconds;
+
+        Feed(int connectTimeoutSeconds, int readTimeoutSeconds) {
+            this.connectTimeoutSeconds = connectTimeoutSeconds;
+            this.readTimeoutSeconds = readTimeoutSeconds;
+        }
+    }
+
+    private final FeedRecorder feedRecorder;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final Map<Feed, RestTemplate> restTemplates;
+
+    private final AtomicLong numRequests = new AtomicLong();
+    private final AtomicLong numConnectionsOpened = new AtomicLong();
+
+    @Autowired
+    public RequestHandler(FeedRecorder feedRecorder) {
+        this.feedRecorder = feedRecorder;
+
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", new CountingPlainConnectionSocketFactory())
+                .register("https", new CountingSSLConnectionSocketFactory())
+                .build();
+        this.connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        this.connectionManager.setMaxTotal(20);
+        this.connectionManager.setDefaultMaxPerRoute(10);
+        this.connectionManager.setValidateAfterInactivity((int) TimeUnit.SECONDS.toMillis(2));
+
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(this.connectionManager)
+                .evictIdleConnections(1, TimeUnit.MINUTES)
+                .disableContentCompression()    // we ask for gzip ourselves, and GzipGsonHttpMessageConverter (or TrainService) decompresses it
+                .disableCookieManagement()
+                .addInterceptorFirst((HttpRequestInterceptor) (request, context) -> this.numRequests.incrementAndGet())
+                .addInterceptorLast((HttpResponseInterceptor) this::recordResponse)
+                .build();
+
+        List<HttpMessageConverter<?>> messageConverters = Arrays.asList(
+                new ByteArrayHttpMessageConverter(),
+                new StringHttpMessageConverter(),
+                new GzipGsonHttpMessageConverter()
+        );
+
+        this.restTemplates = new EnumMap<>(Feed.class);
+        for (Feed feed : Feed.values()) {
+            HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(this.httpClient);
+            requestFactory.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(feed.connectTimeoutSeconds));
+            requestFactory.setConnectionRequestTimeout((int) TimeUnit.SECONDS.toMillis(feed.connectTimeoutSeconds));
+            requestFactory.setReadTimeout((int) TimeUnit.SECONDS.toMillis(feed.readTimeoutSeconds));
+            requestFactory.setHttpContextFactory((httpMethod, uri) -> {
+                HttpClientContext context = HttpClientContext.create();
+                context.setAttribute(FEED_CONTEXT_ATTRIBUTE, feed);
+                return context;
+            });
+
+            RestTemplate restTemplate = new RestTemplate(requestFactory);
+            restTemplate.setMessageConverters(messageConverters);
+            this.restTemplates.put(feed, restTemplate);
+        }
     }
 
-    private ClientHttpRequestFactory clientHttpRequestFactory() {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(5));
-        factory.setReadTimeout((int) TimeUnit.SECONDS.toMillis(5));
-        return factory;
+    @PreDestroy
+    private void shutdown() {
+        try {
+            this.httpClient.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close HTTP client!", e);
+        }
+    }
+
+    // buffers the response so a copy of it can be handed off to the feed recorder, if we're recording this feed
+    private void recordResponse(HttpResponse response, HttpContext context) throws IOException {
+        Feed feed = (Feed) context.getAttribute(FEED_CONTEXT_ATTRIBUTE);
+        HttpEntity entity = response.getEntity();
+        if (feed == null || entity == null || !this.feedRecorder.isRecording(feed)) {
+            return;
+        }
+
+        byte[] body = EntityUtils.toByteArray(entity);
+        ByteArrayEntity bufferedEntity = new ByteArrayEntity(body);
+        bufferedEntity.setContentType(entity.getContentType());
+        bufferedEntity.setContentEncoding(entity.getContentEncoding());
+        response.setEntity(bufferedEntity);
+
+        this.feedRecorder.record(new FeedRecorder.RecordedResponse(feed, System.currentTimeMillis(), response.getStatusLine().getStatusCode(),
+                getHeaderValue(entity.getContentType()), getHeaderValue(entity.getContentEncoding()), body));
     }
 
-    public RestTemplate getRestTemplate() {
-        return this.restTemplate;
+    private static String getHeaderValue(Header header) {
+        return (header != null) ? header.getValue() : null;
+    }
+
+    public RestTemplate getRestTemplate(Feed feed) {
+        return this.restTemplates.get(feed);
+    }
+
+    public long getNumRequests() {
+        return numRequests.get();
+    }
+
+    public long getNumConnectionsOpened() {
+        return numConnectionsOpened.get();
+    }
+
+    // fraction of requests that were sent over an already-open connection
+    public double getConnectionReuseRatio() {
+        long numRequests = this.numRequests.get();
+        return (numRequests > 0) ? Math.max(0, 1 - (this.numConnectionsOpened.get() / (double) numRequests)) : 0;
+    }
+
+    public PoolStats getConnectionPoolStats() {
+        return this.connectionManager.getTotalStats();
+    }
+
+    private class CountingPlainConnectionSocketFactory extends PlainConnectionSocketFactory {
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress, InetSocketAddress localAddress, HttpContext context) throws IOException {
+            Socket connectedSocket = super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            numConnectionsOpened.incrementAndGet();
+            return connectedSocket;
+        }
+    }
+
+    private class CountingSSLConnectionSocketFactory extends SSLConnectionSocketFactory {
+        CountingSSLConnectionSocketFactory() {
+            super(SSLContexts.createDefault(), SSLConnectionSocketFactory.getDefaultHostnameVerifier());
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress, InetSocketAddress localAddress, HttpContext context) throws IOException {
+            Socket connectedSocket = super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            numConnectionsOpened.incrementAndGet();
+            return connectedSocket;
+        }
     }
 }
@@ -0,0 +1,43 @@
+package com.jamespizzurro.metrorailserver;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.List;
+
+// a hand-written Gson type adapter that writes an object exactly like Gson's reflective type adapter would, field by field, just without the reflection
+// fields with null values should still be written; like Gson, JsonWriter leaves them out for us unless we're serializing nulls
+// see StreamingTypeAdapterFactory for how these are registered and kept in sync with the classes they write
+public abstract class StreamingTypeAdapter<T> extends TypeAdapter<T> {
+
+    private TypeAdapter<T> reflectiveTypeAdapter;
+
+    // the names of the fields writeFields writes, in the order it writes them
+    protected abstract List<String> getFieldNames();
+
+    protected abstract void writeFields(JsonWriter out, T value) throws IOException;
+
+    void setReflectiveTypeAdapter(TypeAdapter<T> reflectiveTypeAdapter) {
+        this.reflectiveTypeAdapter = reflectiveTypeAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, T value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        writeFields(out, value);
+        out.endObject();
+    }
+
+    // we rarely (if ever) read these types back in, so leave that to Gson
+    @Override
+    public T read(JsonReader in) throws IOException {
+        return this.reflectiveTypeAdapter.read(in);
+    }
+}
@@ -0,0 +1,82 @@
+package com.jamespizzurro.metrorailserver;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.jamespizzurro.metrorailserver.domain.SavedTrip;
+import com.jamespizzurro.metrorailserver.domain.StationTagReport;
+import com.jamespizzurro.metrorailserver.domain.SystemMetrics;
+import com.jamespizzurro.metrorailserver.domain.TrainStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+// provides our hand-written streaming type adapters (see StreamingTypeAdapter) for the types we serialize the most of
+// each one is checked against the fields Gson would've serialized by reflection when it's created; if they don't match, e.g. because a field was added
+// to a class but not to its type adapter, we complain and fall back to Gson's reflective type adapter rather than quietly leave that field out
+public class StreamingTypeAdapterFactory implements TypeAdapterFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingTypeAdapterFactory.class);
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        StreamingTypeAdapter<T> streamingTypeAdapter = (StreamingTypeAdapter<T>) createStreamingTypeAdapter(gson, type.getRawType());
+        if (streamingTypeAdapter == null) {
+            return null;
+        }
+
+        TypeAdapter<T> reflectiveTypeAdapter = gson.getDelegateAdapter(this, type);
+
+        List<String> serializedFieldNames = getSerializedFieldNames(type.getRawType());
+        if (!streamingTypeAdapter.getFieldNames().equals(serializedFieldNames)) {
+            logger.error("Streaming type adapter for " + type.getRawType().getName() + " writes " + streamingTypeAdapter.getFieldNames() + ", but Gson would write " + serializedFieldNames + "! Falling back to Gson's reflective type adapter...");
+            return reflectiveTypeAdapter;
+        }
+
+        streamingTypeAdapter.setReflectiveTypeAdapter(reflectiveTypeAdapter);
+        return streamingTypeAdapter;
+    }
+
+    // only exact matches; subclasses, e.g. Hibernate proxies, are left to Gson
+    private static StreamingTypeAdapter<?> createStreamingTypeAdapter(Gson gson, Class<?> rawType) {
+        if (rawType == TrainStatus.class) {
+            return new TrainStatus.GsonTypeAdapter(gson);
+        } else if (rawType == SavedTrip.class) {
+            return new SavedTrip.GsonTypeAdapter(gson);
+        } else if (rawType == SystemMetrics.class) {
+            return new SystemMetrics.GsonTypeAdapter(gson);
+        } else if (rawType == SystemMetrics.LineMetrics.class) {
+            return new SystemMetrics.LineMetrics.GsonTypeAdapter(gson);
+        } else if (rawType == SystemMetrics.DirectionMetrics.class) {
+            return new SystemMetrics.DirectionMetrics.GsonTypeAdapter(gson);
+        } else if (rawType == StationTagReport.class) {
+            return new StationTagReport.GsonTypeAdapter(gson);
+        }
+        return null;
+    }
+
+    // the same fields, in the same order, as Gson's reflective type adapter: a class's own fields first, then its superclasses' fields,
+    // skipping static, transient, and synthetic fields, and (see AnnotationExclusionStrategy) ones annotated with @Exclude
+    private static List<String> getSerializedFieldNames(Class<?> rawType) {
+        List<String> fieldNames = new ArrayList<>();
+        for (Class<?> clazz = rawType; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic() || field.getAnnotation(Exclude.class) != null) {
+                    continue;
+                }
+
+                SerializedName serializedName = field.getAnnotation(SerializedName.class);
+                fieldNames.add((serializedName != null) ? serializedName.value() : field.getName());
+            }
+        }
+        return fieldNames;
+    }
+}
@@ -0,0 +1,191 @@
+package com.jamespizzurro.metrorailserver.domain;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.*;
+
+// what changed between two versions of a collection of JSON objects, by key, e.g. train statuses by train ID
+// only top-level fields are compared, so a nested object that changed at all is sent again in full
+// a client applies one by removing every key in 'removed', replacing every object in 'added', then setting every field in 'changed' and removing every field in 'removedFields'
+// removing a key a client doesn't have is harmless, so deltas can be chained together (see then)
+public class KeyedDelta {
+
+    private Map<String, JsonObject> added;  // objects in full; replaces anything already there by the same key
+    private Map<String, JsonObject> changed;    // only the fields that changed
+    private Map<String, Set<String>> removedFields;     // fields that no longer have a value, i.e. are now null
+    private Set<String> removed;
+    private List<String> keys;  // for ordered collections, e.g. station boards, the new order of keys, but only if it changed
+
+    private KeyedDelta(Map<String, JsonObject> added, Map<String, JsonObject> changed, Map<String, Set<String>> removedFields, Set<String> removed, List<String> keys) {
+        this.added = added.isEmpty() ? null : added;
+        this.changed = changed.isEmpty() ? null : changed;
+        this.removedFields = removedFields.isEmpty() ? null : removedFields;
+        this.removed = removed.isEmpty() ? null : removed;
+        this.keys = keys;
+    }
+
+    public static KeyedDelta between(Map<String, JsonObject> previous, Map<String, JsonObject> current, boolean isOrdered) {
+        Map<String, JsonObject> added = new LinkedHashMap<>();
+        Map<String, JsonObject> changed = new HashMap<>();
+        Map<String, Set<String>> removedFields = new HashMap<>();
+        Set<String> removed = new HashSet<>();
+
+        for (Map.Entry<String, JsonObject> entry : current.entrySet()) {
+            JsonObject previousObject = previous.get(entry.getKey());
+            if (previousObject == null) {
+                added.put(entry.getKey(), entry.getValue());
+                continue;
+            }
+
+            JsonObject currentObject = entry.getValue();
+            if (previousObject.equals(currentObject)) {
+                continue;
+            }
+
+            JsonObject changedFields = new JsonObject();
+            for (Map.Entry<String, JsonElement> field : currentObject.entrySet()) {
+                if (!field.getValue().equals(previousObject.get(field.getKey()))) {
+                    changedFields.add(field.getKey(), field.getValue());
+                }
+            }
+            if (changedFields.size() > 0) {
+                changed.put(entry.getKey(), changedFields);
+            }
+
+            Set<String> removedFieldNames = new HashSet<>();
+            for (String fieldName : previousObject.keySet()) {
+                if (!currentObject.has(fieldName)) {
+                    removedFieldNames.add(fieldName);
+                }
+            }
+            if (!removedFieldNames.isEmpty()) {
+                removedFields.put(entry.getKey(), removedFieldNames);
+            }
+        }
+
+        for (String key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+
+        List<String> keys = null;
+        if (isOrdered && !new ArrayList<>(previous.keySet()).equals(new ArrayList<>(current.keySet()))) {
+            keys = new ArrayList<>(current.keySet());
+        }
+
+        return new KeyedDelta(added, changed, removedFields, removed, keys);
+    }
+
+    // the result of applying this delta, then the next one
+    public KeyedDelta then(KeyedDelta next) {
+        Map<String, JsonObject> added = (this.added != null) ? new LinkedHashMap<>(this.added) : new LinkedHashMap<>();
+        Map<String, JsonObject> changed = (this.changed != null) ? new HashMap<>(this.changed) : new HashMap<>();
+        Map<String, Set<String>> removedFields = new HashMap<>();
+        if (this.removedFields != null) {
+            this.removedFields.forEach((key, fieldNames) -> removedFields.put(key, new HashSet<>(fieldNames)));
+        }
+        Set<String> removed = (this.removed != null) ? new HashSet<>(this.removed) : new HashSet<>();
+
+        if (next.removed != null) {
+            for (String key : next.removed) {
+                added.remove(key);
+                changed.remove(key);
+                removedFields.remove(key);
+                removed.add(key);
+            }
+        }
+
+        if (next.added != null) {
+            for (Map.Entry<String, JsonObject> entry : next.added.entrySet()) {
+                changed.remove(entry.getKey());
+                removedFields.remove(entry.getKey());
+                removed.remove(entry.getKey());
+                added.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        Set<String> nextChangedKeys = new HashSet<>();
+        if (next.changed != null) {
+            nextChangedKeys.addAll(next.changed.keySet());
+        }
+        if (next.removedFields != null) {
+            nextChangedKeys.addAll(next.removedFields.keySet());
+        }
+        for (String key : nextChangedKeys) {
+            JsonObject nextChangedFields = (next.changed != null) ? next.changed.get(key) : null;
+            Set<String> nextRemovedFieldNames = (next.removedFields != null) ? next.removedFields.get(key) : null;
+
+            JsonObject addedObject = added.get(key);
+            if (addedObject != null) {
+                // they're getting this object in full anyway, so just send the latest version of it
+                JsonObject object = addedObject.deepCopy();
+                applyFields(object, nextChangedFields, nextRemovedFieldNames);
+                added.put(key, object);
+                continue;
+            }
+
+            JsonObject changedFields = changed.containsKey(key) ? changed.get(key).deepCopy() : new JsonObject();
+            applyFields(changedFields, nextChangedFields, nextRemovedFieldNames);
+            Set<String> removedFieldNames = removedFields.computeIfAbsent(key, k -> new HashSet<>());
+            if (nextChangedFields != null) {
+                removedFieldNames.removeAll(nextChangedFields.keySet());
+            }
+            if (nextRemovedFieldNames != null) {
+                removedFieldNames.addAll(nextRemovedFieldNames);
+            }
+
+            if (changedFields.size() > 0) {
+                changed.put(key, changedFields);
+            } else {
+                changed.remove(key);
+            }
+            if (removedFieldNames.isEmpty()) {
+                removedFields.remove(key);
+            }
+        }
+
+        // if the next delta didn't reorder anything, it didn't add or remove anything either, so any new order from this delta still stands
+        List<String> keys = (next.keys != null) ? next.keys : this.keys;
+
+        return new KeyedDelta(added, changed, removedFields, removed, keys);
+    }
+
+    private static void applyFields(JsonObject object, JsonObject changedFields, Set<String> removedFieldNames) {
+        if (changedFields != null) {
+            for (Map.Entry<String, JsonElement> field : changedFields.entrySet()) {
+                object.add(field.getKey(), field.getValue());
+            }
+        }
+        if (removedFieldNames != null) {
+            for (String fieldName : removedFieldNames) {
+                object.remove(fieldName);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return this.added == null && this.changed == null && this.removedFields == null && this.removed == null && this.keys == null;
+    }
+
+    public Map<String, JsonObject> getAdded() {
+        return added;
+    }
+
+    public Map<String, JsonObject> getChanged() {
+        return changed;
+    }
+
+    public Map<String, Set<String>> getRemovedFields() {
+        return removedFields;
+    }
+
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    public List<String> getKeys() {
+        return keys;
+    }
+}
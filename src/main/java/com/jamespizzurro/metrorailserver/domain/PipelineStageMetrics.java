@@ -0,0 +1,88 @@
+package com.jamespizzurro.metrorailserver.domain;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+// timing and allocation counters for one stage of a processing pipeline, e.g. one stage of TrainService's update loop
+public class PipelineStageMetrics {
+
+    private static final com.sun.management.ThreadMXBean threadMXBean = getThreadMXBean();
+
+    private final String name;
+
+    private long numRuns;
+    private long lastDurationNanos;
+    private long maxDurationNanos;
+    private long totalDurationNanos;
+    private long lastAllocatedBytes;    // or -1 if allocations can't be measured by this JVM
+    private long totalAllocatedBytes;
+
+    public PipelineStageMetrics(String name) {
+        this.name = name;
+        this.lastAllocatedBytes = -1;
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadMXBean() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threadMXBean.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        if (!threadMXBean.isThreadAllocatedMemoryEnabled()) {
+            threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        return threadMXBean;
+    }
+
+    // total bytes allocated so far by the calling thread, or -1 if this JVM can't tell us
+    public static long getCurrentThreadAllocatedBytes() {
+        return (threadMXBean != null) ? threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    public synchronized void record(long durationNanos, long allocatedBytes) {
+        this.numRuns++;
+        this.lastDurationNanos = durationNanos;
+        this.maxDurationNanos = Math.max(this.maxDurationNanos, durationNanos);
+        this.totalDurationNanos += durationNanos;
+        this.lastAllocatedBytes = allocatedBytes;
+        if (allocatedBytes >= 0) {
+            this.totalAllocatedBytes += allocatedBytes;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized long getNumRuns() {
+        return numRuns;
+    }
+
+    public synchronized long getLastDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastDurationNanos);
+    }
+
+    public synchronized long getMaxDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxDurationNanos);
+    }
+
+    public synchronized double getAverageDurationMillis() {
+        return (numRuns > 0) ? (totalDurationNanos / (double) numRuns) / TimeUnit.MILLISECONDS.toNanos(1) : 0;
+    }
+
+    public synchronized long getLastAllocatedBytes() {
+        return lastAllocatedBytes;
+    }
+
+    public synchronized double getAverageAllocatedBytes() {
+        return (numRuns > 0) ? totalAllocatedBytes / (double) numRuns : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return name + " " + getLastDurationMillis() + "ms" + ((lastAllocatedBytes >= 0) ? (" " + (lastAllocatedBytes / 1024) + "KB") : "");
+    }
+}
@@ -23,25 +23,32 @@ public class ProcessedGISTrainData {
     private Calendar observedDate;
 
     public ProcessedGISTrainData(GISTrainData trainData) {
-        if (trainData.getAttributes().getTrainId() != null) {
-            switch (trainData.getAttributes().getTrainId().length()) {
+        this(trainData.getAttributes().getTrainId(), trainData.getAttributes().getDestinationId(), trainData.getAttributes().getDestinationStationCode(),
+                trainData.getAttributes().getDescription(), trainData.getPosition().getX(), trainData.getPosition().getY(),
+                trainData.getAttributes().getDirection(), trainData.getAttributes().getObservedDate());
+    }
+
+    // x and y are Web Mercator coordinates, as provided by WMATA's GIS service
+    public ProcessedGISTrainData(String trainId, String destinationId, String destinationStationCode, String description, Double x, Double y, Integer direction, Calendar observedDate) {
+        if (trainId != null) {
+            switch (trainId.length()) {
                 case 1:
-                    this.id = "00" + trainData.getAttributes().getTrainId();
+                    this.id = "00" + trainId;
                     break;
                 case 2:
-                    this.id = "0" + trainData.getAttributes().getTrainId();
+                    this.id = "0" + trainId;
                     break;
                 default:
-                    this.id = trainData.getAttributes().getTrainId();
+                    this.id = trainId;
                     break;
             }
         }
 
-        this.destinationId = trainData.getAttributes().getDestinationId();
-        this.destinationStationCode = trainData.getAttributes().getDestinationStationCode();
+        this.destinationId = destinationId;
+        this.destinationStationCode = destinationStationCode;
 
-        if (!StringUtils.isEmpty(trainData.getAttributes().getDescription())) {
-            for (String element : trainData.getAttributes().getDescription().split(";")) {
+        if (!StringUtils.isEmpty(description)) {
+            for (String element : description.split(";")) {
                 element = element.trim();
 
                 if (element.equals("Doors open left")) {
@@ -63,12 +70,12 @@ public class ProcessedGISTrainData {
         }
 
         // SOURCE: http://wiki.openstreetmap.org/wiki/Mercator#Java
-        this.lat = ((trainData.getPosition().getY() != null) && (Math.abs(trainData.getPosition().getY()) > 1)) ? Math.toDegrees(Math.atan(Math.exp(trainData.getPosition().getY() / RADIUS)) * 2 - Math.PI/2) : null;
-        this.lon = ((trainData.getPosition().getX() != null) && (Math.abs(trainData.getPosition().getX()) > 1)) ? Math.toDegrees(trainData.getPosition().getX() / RADIUS) : null;
+        this.lat = ((y != null) && (Math.abs(y) > 1)) ? Math.toDegrees(Math.atan(Math.exp(y / RADIUS)) * 2 - Math.PI/2) : null;
+        this.lon = ((x != null) && (Math.abs(x) > 1)) ? Math.toDegrees(x / RADIUS) : null;
 
-        this.direction = trainData.getAttributes().getDirection();
+        this.direction = direction;
 
-        this.observedDate = trainData.getAttributes().getObservedDate();
+        this.observedDate = observedDate;
     }
 
     public String getId() {
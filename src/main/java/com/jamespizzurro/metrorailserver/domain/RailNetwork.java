@@ -0,0 +1,263 @@
+package com.jamespizzurro.metrorailserver.domain;
+
+import com.jamespizzurro.metrorailserver.StationUtil;
+
+import java.util.*;
+
+// immutable, int-indexed model of the rail network, built once at startup
+// stations, lines and track circuits each get dense ids starting from 0 so that hot paths can use plain array indexing;
+// circuit adjacency is stored CSR-style, i.e. the children of circuit c are childCircuitIds[childOffsets[c]] to childCircuitIds[childOffsets[c + 1] - 1]
+public class RailNetwork {
+
+    public static final int NO_ID = -1;
+
+    private final String[] stationCodes;
+    private final String[] stationNames;
+    private final Map<String, Integer> stationIdByStationCode;
+    private final int[] stationCircuitIds;  // [stationId * 2 + (trackNumber - 1)]
+    private final int[] stationLineMasks;   // bit i is set if the station is served by the line with id i
+
+    private final String[] lineCodes;
+    private final Map<String, Integer> lineIdByLineCode;
+
+    private final TrackCircuit[] circuits;
+    private final int[] circuitIdByApiId;
+    private final int[] circuitTrackNumbers;
+    private final int[] circuitStationIds;
+    private final double[] circuitLengths;  // in feet
+    private final int[] circuitLineMasks;   // bit i is set if the circuit is part of the line with id i
+    private final int[] childOffsets;
+    private final int[] childCircuitIds;
+    private final int[] parentOffsets;
+    private final int[] parentCircuitIds;
+
+    public RailNetwork(Map<Integer, TrackCircuit> trackCircuitMap, Map<Integer, TrackCircuitInfo> trackCircuitInfoMap, Map<String, TrackCircuit> stationTrackCircuitMap) {
+        // stations
+
+        SortedSet<String> allStationCodes = new TreeSet<>(StationUtil.getStationCodeMap().keySet());
+        for (TrackCircuit trackCircuit : trackCircuitMap.values()) {
+            if (trackCircuit.getStationCode() != null) {
+                allStationCodes.add(trackCircuit.getStationCode());
+            }
+        }
+
+        this.stationCodes = allStationCodes.toArray(new String[0]);
+        this.stationNames = new String[this.stationCodes.length];
+        this.stationIdByStationCode = new HashMap<>(this.stationCodes.length);
+        for (int stationId = 0; stationId < this.stationCodes.length; stationId++) {
+            this.stationNames[stationId] = StationUtil.getStationName(this.stationCodes[stationId]);
+            this.stationIdByStationCode.put(this.stationCodes[stationId], stationId);
+        }
+
+        // lines
+
+        SortedSet<String> allLineCodes = new TreeSet<>();
+        for (TrackCircuit trackCircuit : trackCircuitMap.values()) {
+            allLineCodes.addAll(trackCircuit.getLineCodes());
+        }
+
+        this.lineCodes = allLineCodes.toArray(new String[0]);
+        if (this.lineCodes.length > Integer.SIZE) {
+            throw new IllegalStateException("Too many lines to fit in a line mask: " + this.lineCodes.length);
+        }
+        this.lineIdByLineCode = new HashMap<>(this.lineCodes.length);
+        for (int lineId = 0; lineId < this.lineCodes.length; lineId++) {
+            this.lineIdByLineCode.put(this.lineCodes[lineId], lineId);
+        }
+
+        // track circuits
+
+        this.circuits = trackCircuitMap.values().stream().sorted(Comparator.comparing(TrackCircuit::getId)).toArray(TrackCircuit[]::new);
+        int numCircuits = this.circuits.length;
+        int maxApiId = (numCircuits > 0) ? this.circuits[numCircuits - 1].getId() : -1;
+
+        this.circuitIdByApiId = new int[maxApiId + 1];
+        Arrays.fill(this.circuitIdByApiId, NO_ID);
+        this.circuitTrackNumbers = new int[numCircuits];
+        this.circuitStationIds = new int[numCircuits];
+        this.circuitLengths = new double[numCircuits];
+        this.circuitLineMasks = new int[numCircuits];
+        for (int circuitId = 0; circuitId < numCircuits; circuitId++) {
+            TrackCircuit trackCircuit = this.circuits[circuitId];
+            trackCircuit.setIndex(circuitId);
+            this.circuitIdByApiId[trackCircuit.getId()] = circuitId;
+            this.circuitTrackNumbers[circuitId] = (trackCircuit.getTrackNumber() != null) ? trackCircuit.getTrackNumber() : 0;
+            this.circuitStationIds[circuitId] = getStationId(trackCircuit.getStationCode());
+
+            // circuits without any known length don't cover any distance
+            TrackCircuitInfo trackCircuitInfo = trackCircuitInfoMap.get(trackCircuit.getId());
+            this.circuitLengths[circuitId] = (trackCircuitInfo != null) ? trackCircuitInfo.getLength() : 0;
+
+            for (String lineCode : trackCircuit.getLineCodes()) {
+                this.circuitLineMasks[circuitId] |= (1 << this.lineIdByLineCode.get(lineCode));
+            }
+        }
+
+        this.childOffsets = new int[numCircuits + 1];
+        this.parentOffsets = new int[numCircuits + 1];
+        for (int circuitId = 0; circuitId < numCircuits; circuitId++) {
+            this.childOffsets[circuitId + 1] = this.childOffsets[circuitId] + this.circuits[circuitId].getChildNeighbors().size();
+            this.parentOffsets[circuitId + 1] = this.parentOffsets[circuitId] + this.circuits[circuitId].getParentNeighbors().size();
+        }
+        this.childCircuitIds = new int[this.childOffsets[numCircuits]];
+        this.parentCircuitIds = new int[this.parentOffsets[numCircuits]];
+        for (int circuitId = 0; circuitId < numCircuits; circuitId++) {
+            int i = this.childOffsets[circuitId];
+            for (TrackCircuit childNeighbor : this.circuits[circuitId].getChildNeighbors()) {
+                this.childCircuitIds[i++] = childNeighbor.getIndex();
+            }
+            i = this.parentOffsets[circuitId];
+            for (TrackCircuit parentNeighbor : this.circuits[circuitId].getParentNeighbors()) {
+                this.parentCircuitIds[i++] = parentNeighbor.getIndex();
+            }
+        }
+
+        // station platforms
+
+        this.stationCircuitIds = new int[this.stationCodes.length * 2];
+        Arrays.fill(this.stationCircuitIds, NO_ID);
+        this.stationLineMasks = new int[this.stationCodes.length];
+        for (Map.Entry<String, TrackCircuit> entry : stationTrackCircuitMap.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+
+            int separatorIndex = entry.getKey().lastIndexOf('_');
+            int stationId = getStationId(entry.getKey().substring(0, separatorIndex));
+            int trackNumber = Integer.parseInt(entry.getKey().substring(separatorIndex + 1));
+            if (stationId == NO_ID || trackNumber < 1 || trackNumber > 2) {
+                continue;
+            }
+
+            int circuitId = entry.getValue().getIndex();
+            this.stationCircuitIds[stationId * 2 + (trackNumber - 1)] = circuitId;
+            this.stationLineMasks[stationId] |= this.circuitLineMasks[circuitId];
+        }
+    }
+
+    // stations
+
+    public int getNumStations() {
+        return this.stationCodes.length;
+    }
+
+    public int getStationId(String stationCode) {
+        if (stationCode == null) {
+            return NO_ID;
+        }
+
+        Integer stationId = this.stationIdByStationCode.get(stationCode);
+        return (stationId != null) ? stationId : NO_ID;
+    }
+
+    public String getStationCode(int stationId) {
+        return this.stationCodes[stationId];
+    }
+
+    public String getStationName(int stationId) {
+        return this.stationNames[stationId];
+    }
+
+    public boolean isStation(String stationCode) {
+        return getStationId(stationCode) != NO_ID;
+    }
+
+    public int getStationCircuitId(int stationId, int trackNumber) {
+        if (stationId < 0 || stationId >= this.stationCodes.length || trackNumber < 1 || trackNumber > 2) {
+            return NO_ID;
+        }
+
+        return this.stationCircuitIds[stationId * 2 + (trackNumber - 1)];
+    }
+
+    public TrackCircuit getStationTrackCircuit(int stationId, int trackNumber) {
+        int circuitId = getStationCircuitId(stationId, trackNumber);
+        return (circuitId != NO_ID) ? this.circuits[circuitId] : null;
+    }
+
+    public TrackCircuit getStationTrackCircuit(String stationCode, Integer trackNumber) {
+        if (trackNumber == null) {
+            return null;
+        }
+
+        return getStationTrackCircuit(getStationId(stationCode), trackNumber);
+    }
+
+    public int getStationLineMask(int stationId) {
+        return this.stationLineMasks[stationId];
+    }
+
+    // lines
+
+    public int getNumLines() {
+        return this.lineCodes.length;
+    }
+
+    public int getLineId(String lineCode) {
+        if (lineCode == null) {
+            return NO_ID;
+        }
+
+        Integer lineId = this.lineIdByLineCode.get(lineCode);
+        return (lineId != null) ? lineId : NO_ID;
+    }
+
+    public String getLineCode(int lineId) {
+        return this.lineCodes[lineId];
+    }
+
+    // track circuits
+
+    public int getNumCircuits() {
+        return this.circuits.length;
+    }
+
+    public int getCircuitId(int apiId) {
+        return (apiId >= 0 && apiId < this.circuitIdByApiId.length) ? this.circuitIdByApiId[apiId] : NO_ID;
+    }
+
+    public TrackCircuit getTrackCircuit(int circuitId) {
+        return this.circuits[circuitId];
+    }
+
+    public TrackCircuit getTrackCircuitByApiId(Integer apiId) {
+        if (apiId == null) {
+            return null;
+        }
+
+        int circuitId = getCircuitId(apiId);
+        return (circuitId != NO_ID) ? this.circuits[circuitId] : null;
+    }
+
+    public int getCircuitTrackNumber(int circuitId) {
+        return this.circuitTrackNumbers[circuitId];
+    }
+
+    public int getCircuitStationId(int circuitId) {
+        return this.circuitStationIds[circuitId];
+    }
+
+    public double getCircuitLength(int circuitId) {
+        return this.circuitLengths[circuitId];
+    }
+
+    public int getCircuitLineMask(int circuitId) {
+        return this.circuitLineMasks[circuitId];
+    }
+
+    public int getNumChildCircuits(int circuitId) {
+        return this.childOffsets[circuitId + 1] - this.childOffsets[circuitId];
+    }
+
+    public int getChildCircuitId(int circuitId, int i) {
+        return this.childCircuitIds[this.childOffsets[circuitId] + i];
+    }
+
+    public int getNumParentCircuits(int circuitId) {
+        return this.parentOffsets[circuitId + 1] - this.parentOffsets[circuitId];
+    }
+
+    public int getParentCircuitId(int circuitId, int i) {
+        return this.parentCircuitIds[this.parentOffsets[circuitId] + i];
+    }
+}
@@ -6,9 +6,9 @@ public class RecentTripStateData {
     private String predictedRideTimes;
     private String expectedRideTimes;
 
-    public RecentTripStateData(Object[] values) {
-        this.times = String.valueOf(values[0]);
-        this.predictedRideTimes = String.valueOf(values[1]);
-        this.expectedRideTimes = String.valueOf(values[2]);
+    public RecentTripStateData(String times, String predictedRideTimes, String expectedRideTimes) {
+        this.times = String.valueOf(times);
+        this.predictedRideTimes = String.valueOf(predictedRideTimes);
+        this.expectedRideTimes = String.valueOf(expectedRideTimes);
     }
 }
@@ -1,8 +1,14 @@
 package com.jamespizzurro.metrorailserver.domain;
 
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 import com.jamespizzurro.metrorailserver.Exclude;
+import com.jamespizzurro.metrorailserver.StreamingTypeAdapter;
 
 import javax.persistence.*;
+import java.io.IOException;
 import java.util.*;
 
 @Entity
@@ -300,4 +306,82 @@ public class SavedTrip {
     public void setRecentData(RecentTripStateData recentData) {
         this.recentData = recentData;
     }
+
+    // see StreamingTypeAdapter
+    public static class GsonTypeAdapter extends StreamingTypeAdapter<SavedTrip> {
+
+        private static final List<String> FIELD_NAMES = Arrays.asList(
+                "fromStationName", "fromStationCode", "toStationName", "toStationCode", "tripStationCodes", "predictedRideTime", "expectedRideTime",
+                "lineCodes", "timeSinceLastTrain", "timeUntilNextTrain", "metroAlerts", "metroAlertKeywords", "tweets", "tweetKeywords",
+                "fromStationElevatorOutages", "toStationElevatorOutages", "fromStationEscalatorOutages", "toStationEscalatorOutages",
+                "fromStationTrainStatuses", "serviceGaps", "date", "recentData"
+        );
+
+        private final TypeAdapter<List<String>> stringListTypeAdapter;
+        private final TypeAdapter<Set<String>> stringSetTypeAdapter;
+        private final TypeAdapter<List<RailIncident>> metroAlertsTypeAdapter;
+        private final TypeAdapter<List<StationProblem>> tweetsTypeAdapter;
+        private final TypeAdapter<List<ElevatorEscalatorOutage>> outagesTypeAdapter;
+        private final TypeAdapter<List<TrainStatus>> trainStatusesTypeAdapter;
+        private final TypeAdapter<List<ServiceGap>> serviceGapsTypeAdapter;
+        private final TypeAdapter<Calendar> dateTypeAdapter;
+        private final TypeAdapter<RecentTripStateData> recentDataTypeAdapter;
+
+        public GsonTypeAdapter(Gson gson) {
+            this.stringListTypeAdapter = gson.getAdapter(new TypeToken<List<String>>() {});
+            this.stringSetTypeAdapter = gson.getAdapter(new TypeToken<Set<String>>() {});
+            this.metroAlertsTypeAdapter = gson.getAdapter(new TypeToken<List<RailIncident>>() {});
+            this.tweetsTypeAdapter = gson.getAdapter(new TypeToken<List<StationProblem>>() {});
+            this.outagesTypeAdapter = gson.getAdapter(new TypeToken<List<ElevatorEscalatorOutage>>() {});
+            this.trainStatusesTypeAdapter = gson.getAdapter(new TypeToken<List<TrainStatus>>() {});
+            this.serviceGapsTypeAdapter = gson.getAdapter(new TypeToken<List<ServiceGap>>() {});
+            this.dateTypeAdapter = gson.getAdapter(Calendar.class);
+            this.recentDataTypeAdapter = gson.getAdapter(RecentTripStateData.class);
+        }
+
+        @Override
+        protected List<String> getFieldNames() {
+            return FIELD_NAMES;
+        }
+
+        @Override
+        protected void writeFields(JsonWriter out, SavedTrip value) throws IOException {
+            out.name("fromStationName").value(value.fromStationName);
+            out.name("fromStationCode").value(value.fromStationCode);
+            out.name("toStationName").value(value.toStationName);
+            out.name("toStationCode").value(value.toStationCode);
+            out.name("tripStationCodes");
+            this.stringListTypeAdapter.write(out, value.tripStationCodes);
+            out.name("predictedRideTime").value(value.predictedRideTime);
+            out.name("expectedRideTime").value(value.expectedRideTime);
+            out.name("lineCodes");
+            this.stringSetTypeAdapter.write(out, value.lineCodes);
+            out.name("timeSinceLastTrain").value(value.timeSinceLastTrain);
+            out.name("timeUntilNextTrain").value(value.timeUntilNextTrain);
+            out.name("metroAlerts");
+            this.metroAlertsTypeAdapter.write(out, value.metroAlerts);
+            out.name("metroAlertKeywords");
+            this.stringSetTypeAdapter.write(out, value.metroAlertKeywords);
+            out.name("tweets");
+            this.tweetsTypeAdapter.write(out, value.tweets);
+            out.name("tweetKeywords");
+            this.stringSetTypeAdapter.write(out, value.tweetKeywords);
+            out.name("fromStationElevatorOutages");
+            this.outagesTypeAdapter.write(out, value.fromStationElevatorOutages);
+            out.name("toStationElevatorOutages");
+            this.outagesTypeAdapter.write(out, value.toStationElevatorOutages);
+            out.name("fromStationEscalatorOutages");
+            this.outagesTypeAdapter.write(out, value.fromStationEscalatorOutages);
+            out.name("toStationEscalatorOutages");
+            this.outagesTypeAdapter.write(out, value.toStationEscalatorOutages);
+            out.name("fromStationTrainStatuses");
+            this.trainStatusesTypeAdapter.write(out, value.fromStationTrainStatuses);
+            out.name("serviceGaps");
+            this.serviceGapsTypeAdapter.write(out, value.serviceGaps);
+            out.name("date");
+            this.dateTypeAdapter.write(out, value.date);
+            out.name("recentData");
+            this.recentDataTypeAdapter.write(out, value.recentData);
+        }
+    }
 }
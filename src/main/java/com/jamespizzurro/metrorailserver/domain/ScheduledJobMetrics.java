@@ -0,0 +1,184 @@
+package com.jamespizzurro.metrorailserver.domain;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// timing counters for one scheduled job, e.g. TrainService.update, as recorded by InstrumentedTaskScheduler
+// start lag is how much later a run started than it was supposed to according to its schedule, e.g. because the job before it overran or every
+// scheduler thread was busy; a 2-second job that's actually running every 4 seconds will show it here
+public class ScheduledJobMetrics {
+
+    // upper bounds of the run time histogram's buckets, in milliseconds; the last bucket catches everything else
+    private static final long[] DURATION_BUCKET_BOUNDS_MILLIS = new long[]{5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    private final String name;
+    private final String schedule;
+
+    private int numRunning;
+    private long numRuns;
+    private long numFailedRuns;
+    private long numOverlappingRuns;    // runs that started while a previous run of the same job was still going
+    private long numOverruns;           // runs that went on past when the next run was supposed to start
+    private long numMissedRuns;         // runs that never happened because a previous run overran them
+
+    private long lastStartTimeMillis;
+    private long lastIntervalMillis;    // between the starts of the last two runs
+    private long maxIntervalMillis;
+    private long lastStartLagMillis;
+    private long maxStartLagMillis;
+    private long totalStartLagMillis;
+    private long lastDurationNanos;
+    private long maxDurationNanos;
+    private long totalDurationNanos;
+    private final long[] durationBucketCounts;
+
+    public ScheduledJobMetrics(String name, String schedule) {
+        this.name = name;
+        this.schedule = schedule;
+        this.durationBucketCounts = new long[DURATION_BUCKET_BOUNDS_MILLIS.length + 1];
+    }
+
+    public synchronized void recordStart(long startTimeMillis, long intendedStartTimeMillis) {
+        if (this.numRunning > 0) {
+            this.numOverlappingRuns++;
+        }
+        this.numRunning++;
+
+        if (this.lastStartTimeMillis > 0) {
+            this.lastIntervalMillis = startTimeMillis - this.lastStartTimeMillis;
+            this.maxIntervalMillis = Math.max(this.maxIntervalMillis, this.lastIntervalMillis);
+        }
+        this.lastStartTimeMillis = startTimeMillis;
+
+        this.lastStartLagMillis = Math.max(startTimeMillis - intendedStartTimeMillis, 0);
+        this.maxStartLagMillis = Math.max(this.maxStartLagMillis, this.lastStartLagMillis);
+        this.totalStartLagMillis += this.lastStartLagMillis;
+    }
+
+    public synchronized void recordEnd(long durationNanos, boolean failed) {
+        this.numRunning--;
+        this.numRuns++;
+        if (failed) {
+            this.numFailedRuns++;
+        }
+
+        this.lastDurationNanos = durationNanos;
+        this.maxDurationNanos = Math.max(this.maxDurationNanos, durationNanos);
+        this.totalDurationNanos += durationNanos;
+
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        int bucket = 0;
+        while (bucket < DURATION_BUCKET_BOUNDS_MILLIS.length && durationMillis > DURATION_BUCKET_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        this.durationBucketCounts[bucket]++;
+    }
+
+    public synchronized void recordOverrun(long numMissedRuns) {
+        this.numOverruns++;
+        this.numMissedRuns += numMissedRuns;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSchedule() {
+        return schedule;
+    }
+
+    public synchronized boolean isRunning() {
+        return numRunning > 0;
+    }
+
+    public synchronized long getNumRuns() {
+        return numRuns;
+    }
+
+    public synchronized long getNumFailedRuns() {
+        return numFailedRuns;
+    }
+
+    public synchronized long getNumOverlappingRuns() {
+        return numOverlappingRuns;
+    }
+
+    public synchronized long getNumOverruns() {
+        return numOverruns;
+    }
+
+    public synchronized long getNumMissedRuns() {
+        return numMissedRuns;
+    }
+
+    public synchronized long getLastStartTimeMillis() {
+        return lastStartTimeMillis;
+    }
+
+    public synchronized long getLastIntervalMillis() {
+        return lastIntervalMillis;
+    }
+
+    public synchronized long getMaxIntervalMillis() {
+        return maxIntervalMillis;
+    }
+
+    public synchronized long getLastStartLagMillis() {
+        return lastStartLagMillis;
+    }
+
+    public synchronized long getMaxStartLagMillis() {
+        return maxStartLagMillis;
+    }
+
+    public synchronized double getAverageStartLagMillis() {
+        long numStarts = numRuns + numRunning;
+        return (numStarts > 0) ? totalStartLagMillis / (double) numStarts : 0;
+    }
+
+    public synchronized long getLastDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastDurationNanos);
+    }
+
+    public synchronized long getMaxDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxDurationNanos);
+    }
+
+    public synchronized double getAverageDurationMillis() {
+        return (numRuns > 0) ? (totalDurationNanos / (double) numRuns) / TimeUnit.MILLISECONDS.toNanos(1) : 0;
+    }
+
+    // the upper bound of the histogram bucket the specified percentile of runs fell into, e.g. 0.95 for the 95th percentile
+    // runs longer than the last bucket's bound report the longest run we've seen instead
+    public synchronized long getDurationPercentileMillis(double percentile) {
+        if (numRuns <= 0) {
+            return 0;
+        }
+
+        long numRunsAtOrBelowPercentile = (long) Math.ceil(percentile * numRuns);
+        long numRunsSoFar = 0;
+        for (int bucket = 0; bucket < DURATION_BUCKET_BOUNDS_MILLIS.length; bucket++) {
+            numRunsSoFar += durationBucketCounts[bucket];
+            if (numRunsSoFar >= numRunsAtOrBelowPercentile) {
+                return DURATION_BUCKET_BOUNDS_MILLIS[bucket];
+            }
+        }
+        return getMaxDurationMillis();
+    }
+
+    // number of runs by how long they took, keyed by each bucket's upper bound, e.g. "<=250ms"
+    public synchronized Map<String, Long> getDurationHistogram() {
+        Map<String, Long> durationHistogram = new LinkedHashMap<>();
+        for (int bucket = 0; bucket < DURATION_BUCKET_BOUNDS_MILLIS.length; bucket++) {
+            durationHistogram.put("<=" + DURATION_BUCKET_BOUNDS_MILLIS[bucket] + "ms", durationBucketCounts[bucket]);
+        }
+        durationHistogram.put(">" + DURATION_BUCKET_BOUNDS_MILLIS[DURATION_BUCKET_BOUNDS_MILLIS.length - 1] + "ms", durationBucketCounts[DURATION_BUCKET_BOUNDS_MILLIS.length]);
+        return durationHistogram;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return name + " (" + schedule + ") " + getLastDurationMillis() + "ms, " + lastStartLagMillis + "ms late";
+    }
+}
@@ -0,0 +1,183 @@
+package com.jamespizzurro.metrorailserver.domain;
+
+import org.apache.http.pool.PoolStats;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// a point-in-time snapshot of how the server itself is holding up, as opposed to how Metrorail is (see SystemMetrics)
+public class ServerMetrics {
+
+    private long generatedTime;
+    private SchedulerMetrics scheduler;
+    private List<StageMetrics> trainUpdateStages;
+    private long numLateGISTrainDataResponses;
+    private long numSkippedUnchangedTrainPositions;
+    private int numDuplicateTrainCandidateComparisons;  // in the last train update
+    private WriteBehindMetrics writeBehind;
+    private List<StageMetrics> savedTripBuilds;
+    private WmataRequestMetrics wmataRequests;
+    private long numRecordedFeedResponses;
+    private long numSystemInfoResponseBuilds;
+    private SystemUpdateStreamMetrics systemUpdateStream;
+
+    public ServerMetrics(long generatedTime, SchedulerMetrics scheduler, List<PipelineStageMetrics> trainUpdateStages, long numLateGISTrainDataResponses, long numSkippedUnchangedTrainPositions, int numDuplicateTrainCandidateComparisons, WriteBehindMetrics writeBehind, List<PipelineStageMetrics> savedTripBuilds, WmataRequestMetrics wmataRequests, long numRecordedFeedResponses, long numSystemInfoResponseBuilds, SystemUpdateStreamMetrics systemUpdateStream) {
+        this.generatedTime = generatedTime;
+        this.scheduler = scheduler;
+        this.trainUpdateStages = trainUpdateStages.stream().map(StageMetrics::new).collect(Collectors.toList());
+        this.numLateGISTrainDataResponses = numLateGISTrainDataResponses;
+        this.numSkippedUnchangedTrainPositions = numSkippedUnchangedTrainPositions;
+        this.numDuplicateTrainCandidateComparisons = numDuplicateTrainCandidateComparisons;
+        this.writeBehind = writeBehind;
+        this.savedTripBuilds = savedTripBuilds.stream().map(StageMetrics::new).collect(Collectors.toList());
+        this.wmataRequests = wmataRequests;
+        this.numRecordedFeedResponses = numRecordedFeedResponses;
+        this.numSystemInfoResponseBuilds = numSystemInfoResponseBuilds;
+        this.systemUpdateStream = systemUpdateStream;
+    }
+
+    public static class SchedulerMetrics {
+        private int poolSize;
+        private int numRunningJobs;
+        private int peakNumRunningJobs;
+        private long numRunsStartedWithNoThreadsLeft;
+        private int numOverdueJobs;
+        private List<JobMetrics> jobs;
+
+        public SchedulerMetrics(int poolSize, int numRunningJobs, int peakNumRunningJobs, long numRunsStartedWithNoThreadsLeft, int numOverdueJobs, List<ScheduledJobMetrics> jobs) {
+            this.poolSize = poolSize;
+            this.numRunningJobs = numRunningJobs;
+            this.peakNumRunningJobs = peakNumRunningJobs;
+            this.numRunsStartedWithNoThreadsLeft = numRunsStartedWithNoThreadsLeft;
+            this.numOverdueJobs = numOverdueJobs;
+            this.jobs = jobs.stream().map(JobMetrics::new).collect(Collectors.toList());
+        }
+    }
+
+    private static class JobMetrics {
+        private String name;
+        private String schedule;
+        private boolean isRunning;
+        private long numRuns;
+        private long numFailedRuns;
+        private long numOverlappingRuns;
+        private long numOverruns;
+        private long numMissedRuns;
+        private long lastStartTime;
+        private long lastIntervalMillis;
+        private long maxIntervalMillis;
+        private long lastStartLagMillis;
+        private long maxStartLagMillis;
+        private double averageStartLagMillis;
+        private long lastDurationMillis;
+        private long maxDurationMillis;
+        private double averageDurationMillis;
+        private long p50DurationMillis;
+        private long p95DurationMillis;
+        private long p99DurationMillis;
+        private Map<String, Long> durationHistogram;
+
+        JobMetrics(ScheduledJobMetrics metrics) {
+            this.name = metrics.getName();
+            this.schedule = metrics.getSchedule();
+            this.isRunning = metrics.isRunning();
+            this.numRuns = metrics.getNumRuns();
+            this.numFailedRuns = metrics.getNumFailedRuns();
+            this.numOverlappingRuns = metrics.getNumOverlappingRuns();
+            this.numOverruns = metrics.getNumOverruns();
+            this.numMissedRuns = metrics.getNumMissedRuns();
+            this.lastStartTime = metrics.getLastStartTimeMillis();
+            this.lastIntervalMillis = metrics.getLastIntervalMillis();
+            this.maxIntervalMillis = metrics.getMaxIntervalMillis();
+            this.lastStartLagMillis = metrics.getLastStartLagMillis();
+            this.maxStartLagMillis = metrics.getMaxStartLagMillis();
+            this.averageStartLagMillis = metrics.getAverageStartLagMillis();
+            this.lastDurationMillis = metrics.getLastDurationMillis();
+            this.maxDurationMillis = metrics.getMaxDurationMillis();
+            this.averageDurationMillis = metrics.getAverageDurationMillis();
+            this.p50DurationMillis = metrics.getDurationPercentileMillis(0.5);
+            this.p95DurationMillis = metrics.getDurationPercentileMillis(0.95);
+            this.p99DurationMillis = metrics.getDurationPercentileMillis(0.99);
+            this.durationHistogram = metrics.getDurationHistogram();
+        }
+    }
+
+    private static class StageMetrics {
+        private String name;
+        private long numRuns;
+        private long lastDurationMillis;
+        private long maxDurationMillis;
+        private double averageDurationMillis;
+        private long lastAllocatedBytes;
+        private double averageAllocatedBytes;
+
+        StageMetrics(PipelineStageMetrics metrics) {
+            this.name = metrics.getName();
+            this.numRuns = metrics.getNumRuns();
+            this.lastDurationMillis = metrics.getLastDurationMillis();
+            this.maxDurationMillis = metrics.getMaxDurationMillis();
+            this.averageDurationMillis = metrics.getAverageDurationMillis();
+            this.lastAllocatedBytes = metrics.getLastAllocatedBytes();
+            this.averageAllocatedBytes = metrics.getAverageAllocatedBytes();
+        }
+    }
+
+    public static class WriteBehindMetrics {
+        private int queueDepth;
+        private long numEnqueuedWrites;
+        private long numShedWrites;
+        private long numShedRows;
+        private long numFlushedRows;
+        private long numFailedFlushes;
+        private long numDroppedRows;
+        private long lastFlushDurationMillis;
+        private long maxFlushDurationMillis;
+        private int lastFlushNumWrites;
+
+        public WriteBehindMetrics(int queueDepth, long numEnqueuedWrites, long numShedWrites, long numShedRows, long numFlushedRows, long numFailedFlushes, long numDroppedRows, long lastFlushDurationMillis, long maxFlushDurationMillis, int lastFlushNumWrites) {
+            this.queueDepth = queueDepth;
+            this.numEnqueuedWrites = numEnqueuedWrites;
+            this.numShedWrites = numShedWrites;
+            this.numShedRows = numShedRows;
+            this.numFlushedRows = numFlushedRows;
+            this.numFailedFlushes = numFailedFlushes;
+            this.numDroppedRows = numDroppedRows;
+            this.lastFlushDurationMillis = lastFlushDurationMillis;
+            this.maxFlushDurationMillis = maxFlushDurationMillis;
+            this.lastFlushNumWrites = lastFlushNumWrites;
+        }
+    }
+
+    public static class WmataRequestMetrics {
+        private long numRequests;
+        private long numConnectionsOpened;
+        private double connectionReuseRatio;
+        private int numLeasedConnections;
+        private int numAvailableConnections;
+        private int numPendingConnections;
+        private int maxNumConnections;
+
+        public WmataRequestMetrics(long numRequests, long numConnectionsOpened, double connectionReuseRatio, PoolStats connectionPoolStats) {
+            this.numRequests = numRequests;
+            this.numConnectionsOpened = numConnectionsOpened;
+            this.connectionReuseRatio = connectionReuseRatio;
+            this.numLeasedConnections = connectionPoolStats.getLeased();
+            this.numAvailableConnections = connectionPoolStats.getAvailable();
+            this.numPendingConnections = connectionPoolStats.getPending();
+            this.maxNumConnections = connectionPoolStats.getMax();
+        }
+    }
+
+    public static class SystemUpdateStreamMetrics {
+        private int numSubscribers;
+        private long numSentEvents;
+        private long numEvictedSubscribers;
+
+        public SystemUpdateStreamMetrics(int numSubscribers, long numSentEvents, long numEvictedSubscribers) {
+            this.numSubscribers = numSubscribers;
+            this.numSentEvents = numSentEvents;
+            this.numEvictedSubscribers = numEvictedSubscribers;
+        }
+    }
+}
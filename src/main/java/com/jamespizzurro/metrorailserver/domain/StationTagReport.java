@@ -1,5 +1,14 @@
 package com.jamespizzurro.metrorailserver.domain;
 
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+import com.jamespizzurro.metrorailserver.StreamingTypeAdapter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -32,4 +41,33 @@ public class StationTagReport {
     public long getNumNegativeTags() {
         return numNegativeTags;
     }
+
+    // see StreamingTypeAdapter
+    public static class GsonTypeAdapter extends StreamingTypeAdapter<StationTagReport> {
+
+        private static final List<String> FIELD_NAMES = Arrays.asList("numTagsByType", "userTaggedTypes", "numPositiveTags", "numNegativeTags");
+
+        private final TypeAdapter<Map<StationTag.StationTagType, Integer>> numTagsByTypeTypeAdapter;
+        private final TypeAdapter<Set<StationTag.StationTagType>> userTaggedTypesTypeAdapter;
+
+        public GsonTypeAdapter(Gson gson) {
+            this.numTagsByTypeTypeAdapter = gson.getAdapter(new TypeToken<Map<StationTag.StationTagType, Integer>>() {});
+            this.userTaggedTypesTypeAdapter = gson.getAdapter(new TypeToken<Set<StationTag.StationTagType>>() {});
+        }
+
+        @Override
+        protected List<String> getFieldNames() {
+            return FIELD_NAMES;
+        }
+
+        @Override
+        protected void writeFields(JsonWriter out, StationTagReport value) throws IOException {
+            out.name("numTagsByType");
+            this.numTagsByTypeTypeAdapter.write(out, value.numTagsByType);
+            out.name("userTaggedTypes");
+            this.userTaggedTypesTypeAdapter.write(out, value.userTaggedTypes);
+            out.name("numPositiveTags").value(value.numPositiveTags);
+            out.name("numNegativeTags").value(value.numNegativeTags);
+        }
+    }
 }
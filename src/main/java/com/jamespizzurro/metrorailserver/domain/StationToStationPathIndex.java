@@ -0,0 +1,207 @@
+package com.jamespizzurro.metrorailserver.domain;
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+// trip durations and trip paths between every pair of stations, stored in dense arrays keyed by RailNetwork station id
+// built with a single-source shortest path search (Dijkstra) from every station over the neighboring station graph
+public class StationToStationPathIndex {
+
+    private final RailNetwork railNetwork;
+    private final int numStations;
+
+    private final double[] durations;   // [fromStation * numStations + toStation], or NaN if there's no trip between them
+    private final double[] medianDurations;   // [fromStation * numStations + toStation], or NaN if there's no trip between them
+    private final String[][] tripStationCodes;  // [fromStation * numStations + toStation]: every station along the trip, in order, including both ends
+    private final String[][] tripLegKeys;   // [fromStation * numStations + toStation]: "<station>_<nextStation>" key of every leg along the trip, in order
+
+    // neighboringStationDurationMap and neighboringStationMedianDurationMap are keyed by "<fromStationCode>_<toStationCode>"
+    // tripStationCodesFunction returns every station physically along the track between two stations, or null if there is no such trip
+    public StationToStationPathIndex(RailNetwork railNetwork, Collection<String> tripEndpointStationCodes, Map<String, Double> neighboringStationDurationMap, Map<String, Double> neighboringStationMedianDurationMap, BiFunction<String, String, Set<String>> tripStationCodesFunction) {
+        this.railNetwork = railNetwork;
+        this.numStations = railNetwork.getNumStations();
+
+        // neighboring station durations as adjacency matrices
+        double[] neighborDurations = new double[this.numStations * this.numStations];
+        double[] neighborMedianDurations = new double[this.numStations * this.numStations];
+        Arrays.fill(neighborDurations, Double.NaN);
+        Arrays.fill(neighborMedianDurations, Double.NaN);
+        for (Map.Entry<String, Double> entry : neighboringStationDurationMap.entrySet()) {
+            String[] stationCodesKeyParts = entry.getKey().split("_");
+            if (stationCodesKeyParts.length != 2 || entry.getValue() == null) {
+                continue;
+            }
+            int fromStation = railNetwork.getStationId(stationCodesKeyParts[0]);
+            int toStation = railNetwork.getStationId(stationCodesKeyParts[1]);
+            if (fromStation == RailNetwork.NO_ID || toStation == RailNetwork.NO_ID) {
+                continue;
+            }
+
+            int index = fromStation * this.numStations + toStation;
+            neighborDurations[index] = entry.getValue();
+
+            Double medianDuration = neighboringStationMedianDurationMap.get(entry.getKey());
+            if (medianDuration != null) {
+                neighborMedianDurations[index] = medianDuration;
+            }
+        }
+
+        this.durations = new double[this.numStations * this.numStations];
+        this.medianDurations = new double[this.numStations * this.numStations];
+        this.tripStationCodes = new String[this.numStations * this.numStations][];
+        this.tripLegKeys = new String[this.numStations * this.numStations][];
+        Arrays.fill(this.durations, Double.NaN);
+        Arrays.fill(this.medianDurations, Double.NaN);
+
+        double[] distances = new double[this.numStations];
+        int[] previousStations = new int[this.numStations];
+        boolean[] allowedStations = new boolean[this.numStations];
+        for (String fromStationCode : tripEndpointStationCodes) {
+            int fromStation = railNetwork.getStationId(fromStationCode);
+            if (fromStation == RailNetwork.NO_ID) {
+                continue;
+            }
+            findShortestPaths(fromStation, neighborDurations, null, distances, previousStations);
+
+            for (String toStationCode : tripEndpointStationCodes) {
+                if (fromStationCode.equals(toStationCode)) {
+                    continue;
+                }
+                int toStation = railNetwork.getStationId(toStationCode);
+                if (toStation == RailNetwork.NO_ID) {
+                    continue;
+                }
+
+                // trips are only valid if they stay on the track between both stations, i.e. no transfers or reversing direction
+                Set<String> validTripStationCodes = tripStationCodesFunction.apply(fromStationCode, toStationCode);
+                if (validTripStationCodes == null || validTripStationCodes.isEmpty()) {
+                    continue;
+                }
+
+                int[] trip = getTrip(fromStation, toStation, distances, previousStations);
+                if (trip != null && !isTripValid(trip, validTripStationCodes)) {
+                    // the shortest trip strays off the track, so search again without the stations we can't use
+                    for (int i = 0; i < this.numStations; i++) {
+                        allowedStations[i] = validTripStationCodes.contains(railNetwork.getStationCode(i));
+                    }
+                    double[] restrictedDistances = new double[this.numStations];
+                    int[] restrictedPreviousStations = new int[this.numStations];
+                    findShortestPaths(fromStation, neighborDurations, allowedStations, restrictedDistances, restrictedPreviousStations);
+                    trip = getTrip(fromStation, toStation, restrictedDistances, restrictedPreviousStations);
+                }
+                if (trip == null) {
+                    continue;
+                }
+
+                int index = fromStation * this.numStations + toStation;
+                this.durations[index] = getTripDuration(trip, neighborDurations);
+                this.medianDurations[index] = getTripDuration(trip, neighborMedianDurations);
+
+                String[] tripStationCodes = new String[trip.length];
+                String[] tripLegKeys = new String[trip.length - 1];
+                for (int i = 0; i < trip.length; i++) {
+                    tripStationCodes[i] = railNetwork.getStationCode(trip[i]);
+                    if (i > 0) {
+                        tripLegKeys[i - 1] = String.join("_", tripStationCodes[i - 1], tripStationCodes[i]);
+                    }
+                }
+                this.tripStationCodes[index] = tripStationCodes;
+                this.tripLegKeys[index] = tripLegKeys;
+            }
+        }
+    }
+
+    // plain O(V^2) Dijkstra; there are only ~100 stations, so a priority queue isn't worth it
+    private void findShortestPaths(int fromStation, double[] neighborDurations, boolean[] allowedStations, double[] distances, int[] previousStations) {
+        boolean[] visited = new boolean[this.numStations];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        Arrays.fill(previousStations, -1);
+        distances[fromStation] = 0;
+
+        while (true) {
+            int station = -1;
+            for (int i = 0; i < this.numStations; i++) {
+                if (!visited[i] && distances[i] != Double.POSITIVE_INFINITY && (station < 0 || distances[i] < distances[station])) {
+                    station = i;
+                }
+            }
+            if (station < 0) {
+                break;
+            }
+            visited[station] = true;
+
+            for (int neighbor = 0; neighbor < this.numStations; neighbor++) {
+                double neighborDuration = neighborDurations[station * this.numStations + neighbor];
+                if (visited[neighbor] || Double.isNaN(neighborDuration) || (allowedStations != null && !allowedStations[neighbor])) {
+                    continue;
+                }
+
+                // factor in estimated station boarding time at each stop along the way
+                double distance = distances[station] + neighborDuration + 1d;
+                if (distance < distances[neighbor]) {
+                    distances[neighbor] = distance;
+                    previousStations[neighbor] = station;
+                }
+            }
+        }
+    }
+
+    private int[] getTrip(int fromStation, int toStation, double[] distances, int[] previousStations) {
+        if (distances[toStation] == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+
+        int numTripStations = 1;
+        for (int station = toStation; station != fromStation; station = previousStations[station]) {
+            numTripStations++;
+        }
+
+        int[] trip = new int[numTripStations];
+        for (int station = toStation, i = numTripStations - 1; i >= 0; station = previousStations[station], i--) {
+            trip[i] = station;
+        }
+        return trip;
+    }
+
+    private boolean isTripValid(int[] trip, Set<String> validTripStationCodes) {
+        for (int station : trip) {
+            if (!validTripStationCodes.contains(railNetwork.getStationCode(station))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private double getTripDuration(int[] trip, double[] neighborDurations) {
+        double tripDuration = 0;
+        for (int i = 1; i < trip.length; i++) {
+            tripDuration += neighborDurations[trip[i - 1] * this.numStations + trip[i]];
+
+            // factor in estimated station boarding time
+            if (i > 1) {
+                tripDuration += 1d;
+            } else {
+                // at any given time, we can expect a train boarding at its current station to be there for about
+                // half the time we normally factor in for boarding time (assuming a normal distribution)
+                tripDuration += 0.5d;
+            }
+        }
+        return tripDuration;
+    }
+
+    public double getDuration(int fromStationId, int toStationId) {
+        return this.durations[fromStationId * this.numStations + toStationId];
+    }
+
+    public double getMedianDuration(int fromStationId, int toStationId) {
+        return this.medianDurations[fromStationId * this.numStations + toStationId];
+    }
+
+    public String[] getTripStationCodes(int fromStationId, int toStationId) {
+        return this.tripStationCodes[fromStationId * this.numStations + toStationId];
+    }
+
+    public String[] getTripLegKeys(int fromStationId, int toStationId) {
+        return this.tripLegKeys[fromStationId * this.numStations + toStationId];
+    }
+}
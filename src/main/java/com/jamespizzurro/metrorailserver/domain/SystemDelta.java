@@ -0,0 +1,103 @@
+package com.jamespizzurro.metrorailserver.domain;
+
+import com.google.gson.JsonObject;
+
+import java.util.*;
+
+// what changed between two views of the system (see SystemView), so clients only have to download and parse that rather than everything again
+// a full resync is a delta from nothing, i.e. a client should throw away whatever it had and start over with just this
+public class SystemDelta {
+
+    private String bootId;  // versions start over whenever the server restarts, so clients need this to know whether a version is still meaningful
+    private long version;
+    private Long sinceVersion;  // or null if this is a full resync
+    private boolean isFullResync;
+    private Long lastUpdatedTimestamp;
+    private KeyedDelta trainStatuses;   // by train ID
+    private Map<String, KeyedDelta> stationTrainStatuses;   // by station code; a client should treat a board it doesn't have yet as empty
+    private KeyedDelta betweenStationDelayStatuses;
+
+    private SystemDelta(String bootId, long version, Long sinceVersion, Long lastUpdatedTimestamp, KeyedDelta trainStatuses, Map<String, KeyedDelta> stationTrainStatuses, KeyedDelta betweenStationDelayStatuses) {
+        this.bootId = bootId;
+        this.version = version;
+        this.sinceVersion = sinceVersion;
+        this.isFullResync = (sinceVersion == null);
+        this.lastUpdatedTimestamp = lastUpdatedTimestamp;
+        this.trainStatuses = trainStatuses;
+        this.stationTrainStatuses = stationTrainStatuses;
+        this.betweenStationDelayStatuses = betweenStationDelayStatuses;
+    }
+
+    // previous is null for a full resync
+    // both views are expected to include the same parts of the system, i.e. to have been filtered the same way
+    public static SystemDelta between(String bootId, SystemView previous, SystemView current) {
+        KeyedDelta trainStatuses = null;
+        if (current.getTrainStatuses() != null) {
+            trainStatuses = nullIfEmpty(KeyedDelta.between((previous != null) ? previous.getTrainStatuses() : Collections.emptyMap(), current.getTrainStatuses(), false));
+        }
+
+        Map<String, KeyedDelta> stationTrainStatuses = null;
+        if (current.getStationTrainStatuses() != null) {
+            Map<String, Map<String, JsonObject>> previousStationTrainStatuses = (previous != null) ? previous.getStationTrainStatuses() : Collections.emptyMap();
+            stationTrainStatuses = new HashMap<>();
+            for (Map.Entry<String, Map<String, JsonObject>> entry : current.getStationTrainStatuses().entrySet()) {
+                KeyedDelta delta = KeyedDelta.between(previousStationTrainStatuses.getOrDefault(entry.getKey(), Collections.emptyMap()), entry.getValue(), true);
+                if (!delta.isEmpty()) {
+                    stationTrainStatuses.put(entry.getKey(), delta);
+                }
+            }
+            for (Map.Entry<String, Map<String, JsonObject>> entry : previousStationTrainStatuses.entrySet()) {
+                if (!current.getStationTrainStatuses().containsKey(entry.getKey()) && !entry.getValue().isEmpty()) {
+                    stationTrainStatuses.put(entry.getKey(), KeyedDelta.between(entry.getValue(), Collections.emptyMap(), true));
+                }
+            }
+            if (stationTrainStatuses.isEmpty()) {
+                stationTrainStatuses = null;
+            }
+        }
+
+        KeyedDelta betweenStationDelayStatuses = null;
+        if (current.getBetweenStationDelayStatuses() != null) {
+            betweenStationDelayStatuses = nullIfEmpty(KeyedDelta.between((previous != null) ? previous.getBetweenStationDelayStatuses() : Collections.emptyMap(), current.getBetweenStationDelayStatuses(), false));
+        }
+
+        return new SystemDelta(bootId, current.getVersion(), (previous != null) ? previous.getVersion() : null, current.getLastUpdatedTimestamp(), trainStatuses, stationTrainStatuses, betweenStationDelayStatuses);
+    }
+
+    // the result of applying this delta, then the next one, i.e. a delta that skips straight from this one's starting point to the next one's version
+    public SystemDelta then(SystemDelta next) {
+        Map<String, KeyedDelta> stationTrainStatuses = null;
+        if (this.stationTrainStatuses != null || next.stationTrainStatuses != null) {
+            stationTrainStatuses = (this.stationTrainStatuses != null) ? new HashMap<>(this.stationTrainStatuses) : new HashMap<>();
+            if (next.stationTrainStatuses != null) {
+                for (Map.Entry<String, KeyedDelta> entry : next.stationTrainStatuses.entrySet()) {
+                    stationTrainStatuses.merge(entry.getKey(), entry.getValue(), KeyedDelta::then);
+                }
+            }
+        }
+
+        return new SystemDelta(next.bootId, next.version, this.sinceVersion, next.lastUpdatedTimestamp, then(this.trainStatuses, next.trainStatuses), stationTrainStatuses, then(this.betweenStationDelayStatuses, next.betweenStationDelayStatuses));
+    }
+
+    private static KeyedDelta then(KeyedDelta delta, KeyedDelta nextDelta) {
+        if (delta == null) {
+            return nextDelta;
+        }
+        if (nextDelta == null) {
+            return delta;
+        }
+        return nullIfEmpty(delta.then(nextDelta));
+    }
+
+    private static KeyedDelta nullIfEmpty(KeyedDelta delta) {
+        return delta.isEmpty() ? null : delta;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Long getSinceVersion() {
+        return sinceVersion;
+    }
+}
@@ -1,10 +1,16 @@
 package com.jamespizzurro.metrorailserver.domain;
 
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 import com.jamespizzurro.metrorailserver.Exclude;
+import com.jamespizzurro.metrorailserver.StreamingTypeAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.persistence.*;
+import java.io.IOException;
 import java.util.*;
 
 @Entity
@@ -70,6 +76,85 @@ public class SystemMetrics {
         this.date = date;
     }
 
+    // see StreamingTypeAdapter
+    public static class GsonTypeAdapter extends StreamingTypeAdapter<SystemMetrics> {
+
+        private static final List<String> FIELD_NAMES = Arrays.asList("lineMetricsByLine", "date");
+
+        private final TypeAdapter<Map<String, LineMetrics>> lineMetricsByLineTypeAdapter;
+        private final TypeAdapter<Calendar> dateTypeAdapter;
+
+        public GsonTypeAdapter(Gson gson) {
+            this.lineMetricsByLineTypeAdapter = gson.getAdapter(new TypeToken<Map<String, LineMetrics>>() {});
+            this.dateTypeAdapter = gson.getAdapter(Calendar.class);
+        }
+
+        @Override
+        protected List<String> getFieldNames() {
+            return FIELD_NAMES;
+        }
+
+        @Override
+        protected void writeFields(JsonWriter out, SystemMetrics value) throws IOException {
+            out.name("lineMetricsByLine");
+            this.lineMetricsByLineTypeAdapter.write(out, value.lineMetricsByLine);
+            out.name("date");
+            this.dateTypeAdapter.write(out, value.date);
+        }
+    }
+
+    // writes the fields of Metrics, which (like Gson) the type adapters for its subclasses write after their own fields (see StreamingTypeAdapter)
+    private abstract static class MetricsGsonTypeAdapter<T extends Metrics> extends StreamingTypeAdapter<T> {
+
+        private static final List<String> METRICS_FIELD_NAMES = Arrays.asList(
+                "numTrains", "numCars", "numEightCarTrains", "numDelayedTrains", "minimumTrainDelay", "averageTrainDelay", "medianTrainDelay",
+                "maximumTrainDelay", "averageMinimumHeadways", "averageTrainFrequency", "averagePlatformWaitTime", "trainFrequencyStatus",
+                "expectedTrainFrequency", "expectedPlatformWaitTime", "platformWaitTimeTrendStatus", "averageOnTimePerformance",
+                "averageHeadwayAdherence", "expectedNumTrains", "averageScheduleAdherence", "standardDeviationTrainFrequency",
+                "expectedStandardDeviationTrainFrequency"
+        );
+
+        private final TypeAdapter<TrainFrequencyStatus> trainFrequencyStatusTypeAdapter;
+        private final TypeAdapter<TrendStatus> trendStatusTypeAdapter;
+
+        MetricsGsonTypeAdapter(Gson gson) {
+            this.trainFrequencyStatusTypeAdapter = gson.getAdapter(TrainFrequencyStatus.class);
+            this.trendStatusTypeAdapter = gson.getAdapter(TrendStatus.class);
+        }
+
+        static List<String> withMetricsFieldNames(String... fieldNames) {
+            List<String> allFieldNames = new ArrayList<>(Arrays.asList(fieldNames));
+            allFieldNames.addAll(METRICS_FIELD_NAMES);
+            return allFieldNames;
+        }
+
+        void writeMetricsFields(JsonWriter out, Metrics value) throws IOException {
+            out.name("numTrains").value(value.numTrains);
+            out.name("numCars").value(value.numCars);
+            out.name("numEightCarTrains").value(value.numEightCarTrains);
+            out.name("numDelayedTrains").value(value.numDelayedTrains);
+            out.name("minimumTrainDelay").value(value.minimumTrainDelay);
+            out.name("averageTrainDelay").value(value.averageTrainDelay);
+            out.name("medianTrainDelay").value(value.medianTrainDelay);
+            out.name("maximumTrainDelay").value(value.maximumTrainDelay);
+            out.name("averageMinimumHeadways").value(value.averageMinimumHeadways);
+            out.name("averageTrainFrequency").value(value.averageTrainFrequency);
+            out.name("averagePlatformWaitTime").value(value.averagePlatformWaitTime);
+            out.name("trainFrequencyStatus");
+            this.trainFrequencyStatusTypeAdapter.write(out, value.trainFrequencyStatus);
+            out.name("expectedTrainFrequency").value(value.expectedTrainFrequency);
+            out.name("expectedPlatformWaitTime").value(value.expectedPlatformWaitTime);
+            out.name("platformWaitTimeTrendStatus");
+            this.trendStatusTypeAdapter.write(out, value.platformWaitTimeTrendStatus);
+            out.name("averageOnTimePerformance").value(value.averageOnTimePerformance);
+            out.name("averageHeadwayAdherence").value(value.averageHeadwayAdherence);
+            out.name("expectedNumTrains").value(value.expectedNumTrains);
+            out.name("averageScheduleAdherence").value(value.averageScheduleAdherence);
+            out.name("standardDeviationTrainFrequency").value(value.standardDeviationTrainFrequency);
+            out.name("expectedStandardDeviationTrainFrequency").value(value.expectedStandardDeviationTrainFrequency);
+        }
+    }
+
     @MappedSuperclass
     private static class Metrics {
 
@@ -389,6 +474,44 @@ public class SystemMetrics {
         public void setDate(Calendar date) {
             this.date = date;
         }
+
+        public static class GsonTypeAdapter extends MetricsGsonTypeAdapter<LineMetrics> {
+
+            private static final List<String> FIELD_NAMES = withMetricsFieldNames(
+                    "lineCode", "budgetedNumCars", "budgetedNumTrains", "budgetedNumEightCarTrains", "serviceGaps", "directionMetricsByDirection", "date"
+            );
+
+            private final TypeAdapter<List<ServiceGap>> serviceGapsTypeAdapter;
+            private final TypeAdapter<Map<Integer, DirectionMetrics>> directionMetricsByDirectionTypeAdapter;
+            private final TypeAdapter<Calendar> dateTypeAdapter;
+
+            public GsonTypeAdapter(Gson gson) {
+                super(gson);
+                this.serviceGapsTypeAdapter = gson.getAdapter(new TypeToken<List<ServiceGap>>() {});
+                this.directionMetricsByDirectionTypeAdapter = gson.getAdapter(new TypeToken<Map<Integer, DirectionMetrics>>() {});
+                this.dateTypeAdapter = gson.getAdapter(Calendar.class);
+            }
+
+            @Override
+            protected List<String> getFieldNames() {
+                return FIELD_NAMES;
+            }
+
+            @Override
+            protected void writeFields(JsonWriter out, LineMetrics value) throws IOException {
+                out.name("lineCode").value(value.lineCode);
+                out.name("budgetedNumCars").value(value.budgetedNumCars);
+                out.name("budgetedNumTrains").value(value.budgetedNumTrains);
+                out.name("budgetedNumEightCarTrains").value(value.budgetedNumEightCarTrains);
+                out.name("serviceGaps");
+                this.serviceGapsTypeAdapter.write(out, value.serviceGaps);
+                out.name("directionMetricsByDirection");
+                this.directionMetricsByDirectionTypeAdapter.write(out, value.directionMetricsByDirection);
+                out.name("date");
+                this.dateTypeAdapter.write(out, value.date);
+                writeMetricsFields(out, value);
+            }
+        }
     }
 
     @Entity
@@ -487,5 +610,33 @@ public class SystemMetrics {
         public void setDate(Calendar date) {
             this.date = date;
         }
+
+        public static class GsonTypeAdapter extends MetricsGsonTypeAdapter<DirectionMetrics> {
+
+            private static final List<String> FIELD_NAMES = withMetricsFieldNames("lineCode", "directionNumber", "direction", "towardsStationName", "date");
+
+            private final TypeAdapter<Calendar> dateTypeAdapter;
+
+            public GsonTypeAdapter(Gson gson) {
+                super(gson);
+                this.dateTypeAdapter = gson.getAdapter(Calendar.class);
+            }
+
+            @Override
+            protected List<String> getFieldNames() {
+                return FIELD_NAMES;
+            }
+
+            @Override
+            protected void writeFields(JsonWriter out, DirectionMetrics value) throws IOException {
+                out.name("lineCode").value(value.lineCode);
+                out.name("directionNumber").value(value.directionNumber);
+                out.name("direction").value(value.direction);
+                out.name("towardsStationName").value(value.towardsStationName);
+                out.name("date");
+                this.dateTypeAdapter.write(out, value.date);
+                writeMetricsFields(out, value);
+            }
+        }
     }
 }
@@ -0,0 +1,54 @@
+package com.jamespizzurro.metrorailserver.domain;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// everything TrainService publishes about the state of the system as of one update, swapped in all at once
+// readers should grab a snapshot once and read everything they need from it so they never see a mix of two updates
+public class SystemSnapshot {
+
+    private final long version;    // increases every time a new snapshot is published
+    private final Map<String, TrainStatus> trainStatusesMap;
+    private final Map<String, List<TrainStatus>> stationTrainStatusesMap;
+    private final Map<String, SystemInfo.BetweenStationDelayStatus> betweenStationDelayStatuses;
+    private final Long lastUpdatedTimestamp;    // in epoch seconds, or null if train data has never been updated
+
+    public SystemSnapshot(long version, Map<String, TrainStatus> trainStatusesMap, Map<String, List<TrainStatus>> stationTrainStatusesMap, Map<String, SystemInfo.BetweenStationDelayStatus> betweenStationDelayStatuses, Long lastUpdatedTimestamp) {
+        this.version = version;
+        this.trainStatusesMap = Collections.unmodifiableMap(trainStatusesMap);
+        this.stationTrainStatusesMap = Collections.unmodifiableMap(stationTrainStatusesMap);
+        this.betweenStationDelayStatuses = Collections.unmodifiableMap(betweenStationDelayStatuses);
+        this.lastUpdatedTimestamp = lastUpdatedTimestamp;
+    }
+
+    public static SystemSnapshot empty() {
+        return new SystemSnapshot(0, Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), null);
+    }
+
+    // same update, newer version; for when some train statuses have changed since, e.g. their tags
+    // train statuses in a published snapshot must never be modified, as they may be being read at the same time, so the changed ones should be copies
+    public SystemSnapshot withTrainStatuses(Map<String, TrainStatus> trainStatusesMap, Map<String, List<TrainStatus>> stationTrainStatusesMap) {
+        return new SystemSnapshot(this.version + 1, trainStatusesMap, stationTrainStatusesMap, this.betweenStationDelayStatuses, this.lastUpdatedTimestamp);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Map<String, TrainStatus> getTrainStatusesMap() {
+        return trainStatusesMap;
+    }
+
+    public Map<String, List<TrainStatus>> getStationTrainStatusesMap() {
+        return stationTrainStatusesMap;
+    }
+
+    public Map<String, SystemInfo.BetweenStationDelayStatus> getBetweenStationDelayStatuses() {
+        return betweenStationDelayStatuses;
+    }
+
+    public Long getLastUpdatedTimestamp() {
+        return lastUpdatedTimestamp;
+    }
+}
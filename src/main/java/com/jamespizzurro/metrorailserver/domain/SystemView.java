@@ -0,0 +1,107 @@
+package com.jamespizzurro.metrorailserver.domain;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.util.*;
+
+// a system snapshot as JSON objects, keyed so that it can be diffed against another one (see SystemDelta)
+// a view may only include some parts of a snapshot, e.g. only trains on certain lines; parts that aren't included are null
+public class SystemView {
+
+    private final long version;
+    private final Long lastUpdatedTimestamp;
+    private final Map<String, JsonObject> trainStatuses;    // by train ID
+    private final Map<String, String> trainLineCodes;   // by train ID
+    private final Map<String, Map<String, JsonObject>> stationTrainStatuses;    // by station code, then by train ID, in the order they're displayed
+    private final Map<String, JsonObject> betweenStationDelayStatuses;
+
+    private SystemView(long version, Long lastUpdatedTimestamp, Map<String, JsonObject> trainStatuses, Map<String, String> trainLineCodes, Map<String, Map<String, JsonObject>> stationTrainStatuses, Map<String, JsonObject> betweenStationDelayStatuses) {
+        this.version = version;
+        this.lastUpdatedTimestamp = lastUpdatedTimestamp;
+        this.trainStatuses = trainStatuses;
+        this.trainLineCodes = trainLineCodes;
+        this.stationTrainStatuses = stationTrainStatuses;
+        this.betweenStationDelayStatuses = betweenStationDelayStatuses;
+    }
+
+    public static SystemView of(SystemSnapshot systemSnapshot, Gson gson) {
+        Map<String, JsonObject> trainStatuses = new LinkedHashMap<>();
+        Map<String, String> trainLineCodes = new HashMap<>();
+        for (Map.Entry<String, TrainStatus> entry : systemSnapshot.getTrainStatusesMap().entrySet()) {
+            trainStatuses.put(entry.getKey(), gson.toJsonTree(entry.getValue()).getAsJsonObject());
+            trainLineCodes.put(entry.getKey(), entry.getValue().getLine());
+        }
+
+        // boards for transfer stations, e.g. A01|C01, reuse the same train statuses as the boards they're made of, so only serialize those once
+        Map<TrainStatus, JsonObject> serializedTrainStatuses = new IdentityHashMap<>();
+        Map<String, Map<String, JsonObject>> stationTrainStatuses = new HashMap<>();
+        for (Map.Entry<String, List<TrainStatus>> entry : systemSnapshot.getStationTrainStatusesMap().entrySet()) {
+            Map<String, JsonObject> board = new LinkedHashMap<>();
+            for (TrainStatus trainStatus : entry.getValue()) {
+                String key = trainStatus.getTrainId();
+                for (int i = 2; board.containsKey(key); i++) {
+                    // shouldn't happen, but just in case the same train is on the same board more than once
+                    key = trainStatus.getTrainId() + "#" + i;
+                }
+                board.put(key, serializedTrainStatuses.computeIfAbsent(trainStatus, ts -> gson.toJsonTree(ts).getAsJsonObject()));
+            }
+            stationTrainStatuses.put(entry.getKey(), board);
+        }
+
+        Map<String, JsonObject> betweenStationDelayStatuses = new HashMap<>();
+        for (Map.Entry<String, SystemInfo.BetweenStationDelayStatus> entry : systemSnapshot.getBetweenStationDelayStatuses().entrySet()) {
+            betweenStationDelayStatuses.put(entry.getKey(), gson.toJsonTree(entry.getValue()).getAsJsonObject());
+        }
+
+        return new SystemView(systemSnapshot.getVersion(), systemSnapshot.getLastUpdatedTimestamp(), trainStatuses, trainLineCodes, stationTrainStatuses, betweenStationDelayStatuses);
+    }
+
+    // empty line and station codes mean no filtering by either, i.e. everything
+    // filtering by line only includes trains on those lines; filtering by station only includes the boards for those stations; filtering by both includes both
+    public SystemView filter(Set<String> lineCodes, Set<String> stationCodes) {
+        if (lineCodes.isEmpty() && stationCodes.isEmpty()) {
+            return this;
+        }
+
+        Map<String, JsonObject> trainStatuses = null;
+        if (!lineCodes.isEmpty()) {
+            trainStatuses = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonObject> entry : this.trainStatuses.entrySet()) {
+                if (lineCodes.contains(this.trainLineCodes.get(entry.getKey()))) {
+                    trainStatuses.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        Map<String, Map<String, JsonObject>> stationTrainStatuses = null;
+        if (!stationCodes.isEmpty()) {
+            stationTrainStatuses = new HashMap<>();
+            for (String stationCode : stationCodes) {
+                stationTrainStatuses.put(stationCode, this.stationTrainStatuses.getOrDefault(stationCode, Collections.emptyMap()));
+            }
+        }
+
+        return new SystemView(this.version, this.lastUpdatedTimestamp, trainStatuses, this.trainLineCodes, stationTrainStatuses, null);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Long getLastUpdatedTimestamp() {
+        return lastUpdatedTimestamp;
+    }
+
+    public Map<String, JsonObject> getTrainStatuses() {
+        return trainStatuses;
+    }
+
+    public Map<String, Map<String, JsonObject>> getStationTrainStatuses() {
+        return stationTrainStatuses;
+    }
+
+    public Map<String, JsonObject> getBetweenStationDelayStatuses() {
+        return betweenStationDelayStatuses;
+    }
+}
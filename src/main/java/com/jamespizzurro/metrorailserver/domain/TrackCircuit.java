@@ -26,6 +26,8 @@ public class TrackCircuit {
 
     private int numSecondsEstimatedTrackDelays;
 
+    private int index;  // dense circuit id assigned by RailNetwork, or -1 if not part of one
+
     public TrackCircuit(Integer id, Integer trackNumber, String stationCode, Set<String> lineCodes) {
         this.id = id;
         this.trackNumber = trackNumber;
@@ -40,6 +42,8 @@ public class TrackCircuit {
         this.nextChildStationCodes = new HashSet<>();
 
         this.numSecondsEstimatedTrackDelays = 0;
+
+        this.index = -1;
     }
 
     @Override
@@ -216,4 +220,12 @@ public class TrackCircuit {
     public void setNumSecondsEstimatedTrackDelays(int numSecondsEstimatedTrackDelays) {
         this.numSecondsEstimatedTrackDelays = numSecondsEstimatedTrackDelays;
     }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
 }
@@ -0,0 +1,189 @@
+package com.jamespizzurro.metrorailserver.domain;
+
+import java.util.*;
+
+// precomputed distances (in feet) between any two track circuits, built once from the track circuit graph
+// the graph is almost entirely made of long unbranching runs of circuits, so each run ("chain") gets a cumulative position array
+// and only the handful of chains themselves need an all-pairs table; lookups are then O(1) and allocation-free
+public class TrackCircuitDistanceIndex {
+
+    public static final double NO_PATH = -1;
+
+    private final RailNetwork railNetwork;
+    private final DirectionalIndex childIndex;
+    private final DirectionalIndex parentIndex;
+
+    public TrackCircuitDistanceIndex(RailNetwork railNetwork) {
+        this.railNetwork = railNetwork;
+        this.childIndex = new DirectionalIndex(railNetwork, true);
+        this.parentIndex = new DirectionalIndex(railNetwork, false);
+    }
+
+    // distance covered from the start of one circuit to the start of another, looking forward (by children) first, then backward (by parents)
+    public double getDistance(TrackCircuit fromTrackCircuit, TrackCircuit toTrackCircuit) {
+        if (fromTrackCircuit == null || toTrackCircuit == null || fromTrackCircuit.getIndex() < 0 || toTrackCircuit.getIndex() < 0) {
+            return NO_PATH;
+        }
+
+        return getDistance(fromTrackCircuit.getIndex(), toTrackCircuit.getIndex());
+    }
+
+    // distance covered from the start of a circuit to the start of some station's circuit on the same track
+    public double getDistanceToStation(TrackCircuit fromTrackCircuit, String stationCode) {
+        if (fromTrackCircuit == null || stationCode == null || fromTrackCircuit.getIndex() < 0 || fromTrackCircuit.getTrackNumber() == null) {
+            return NO_PATH;
+        }
+
+        int stationCircuitId = this.railNetwork.getStationCircuitId(this.railNetwork.getStationId(stationCode), fromTrackCircuit.getTrackNumber());
+        if (stationCircuitId == RailNetwork.NO_ID) {
+            return NO_PATH;
+        }
+
+        return getDistance(fromTrackCircuit.getIndex(), stationCircuitId);
+    }
+
+    private double getDistance(int fromIndex, int toIndex) {
+        double distance = this.childIndex.getDistance(fromIndex, toIndex);
+        if (distance == NO_PATH) {
+            distance = this.parentIndex.getDistance(fromIndex, toIndex);
+        }
+        return distance;
+    }
+
+    private static class DirectionalIndex {
+
+        private final int[] chainIdByCircuit;
+        private final int[] positionByCircuit;  // position of a circuit within its chain
+        private final double[] offsetByCircuit;   // distance from the start of a circuit's chain to the start of the circuit
+        private final double[] lengthByChain;
+        private final int numChains;
+        private final double[] exitToEntryDistances;    // [fromChain * numChains + toChain]: distance from the end of one chain to the start of another
+
+        DirectionalIndex(RailNetwork railNetwork, boolean byChildren) {
+            int numCircuits = railNetwork.getNumCircuits();
+
+            double[] lengths = new double[numCircuits];
+            int[][] nextIndices = new int[numCircuits][];
+            int[][] previousIndices = new int[numCircuits][];
+            for (int i = 0; i < numCircuits; i++) {
+                lengths[i] = railNetwork.getCircuitLength(i);
+                nextIndices[i] = new int[byChildren ? railNetwork.getNumChildCircuits(i) : railNetwork.getNumParentCircuits(i)];
+                for (int j = 0; j < nextIndices[i].length; j++) {
+                    nextIndices[i][j] = byChildren ? railNetwork.getChildCircuitId(i, j) : railNetwork.getParentCircuitId(i, j);
+                }
+                previousIndices[i] = new int[byChildren ? railNetwork.getNumParentCircuits(i) : railNetwork.getNumChildCircuits(i)];
+                for (int j = 0; j < previousIndices[i].length; j++) {
+                    previousIndices[i][j] = byChildren ? railNetwork.getParentCircuitId(i, j) : railNetwork.getChildCircuitId(i, j);
+                }
+            }
+
+            this.chainIdByCircuit = new int[numCircuits];
+            Arrays.fill(this.chainIdByCircuit, -1);
+            this.positionByCircuit = new int[numCircuits];
+            this.offsetByCircuit = new double[numCircuits];
+
+            // a circuit starts a new chain unless it's the only way forward from its one and only predecessor
+            List<Integer> chainHeads = new ArrayList<>();
+            List<Integer> chainTails = new ArrayList<>();
+            List<Double> chainLengths = new ArrayList<>();
+            for (int i = 0; i < numCircuits; i++) {
+                if (previousIndices[i].length != 1 || nextIndices[previousIndices[i][0]].length != 1) {
+                    buildChain(i, lengths, nextIndices, previousIndices, chainHeads, chainTails, chainLengths);
+                }
+            }
+            for (int i = 0; i < numCircuits; i++) {
+                // anything left over is part of a loop with no way in or out, so just start a chain anywhere in it
+                if (this.chainIdByCircuit[i] < 0) {
+                    buildChain(i, lengths, nextIndices, previousIndices, chainHeads, chainTails, chainLengths);
+                }
+            }
+
+            this.numChains = chainHeads.size();
+            this.lengthByChain = new double[this.numChains];
+            for (int c = 0; c < this.numChains; c++) {
+                this.lengthByChain[c] = chainLengths.get(c);
+            }
+
+            // all-pairs shortest distances between the start of each chain (Floyd–Warshall; there aren't many chains)
+            double[] entryToEntryDistances = new double[this.numChains * this.numChains];
+            Arrays.fill(entryToEntryDistances, Double.POSITIVE_INFINITY);
+            for (int c = 0; c < this.numChains; c++) {
+                entryToEntryDistances[c * this.numChains + c] = 0;
+                for (int nextIndex : nextIndices[chainTails.get(c)]) {
+                    int nextChainId = this.chainIdByCircuit[nextIndex];
+                    if (nextChainId != c) {
+                        entryToEntryDistances[c * this.numChains + nextChainId] = Math.min(entryToEntryDistances[c * this.numChains + nextChainId], this.lengthByChain[c]);
+                    }
+                }
+            }
+            for (int k = 0; k < this.numChains; k++) {
+                for (int i = 0; i < this.numChains; i++) {
+                    double ik = entryToEntryDistances[i * this.numChains + k];
+                    if (ik == Double.POSITIVE_INFINITY) {
+                        continue;
+                    }
+                    for (int j = 0; j < this.numChains; j++) {
+                        double ikj = ik + entryToEntryDistances[k * this.numChains + j];
+                        if (ikj < entryToEntryDistances[i * this.numChains + j]) {
+                            entryToEntryDistances[i * this.numChains + j] = ikj;
+                        }
+                    }
+                }
+            }
+
+            this.exitToEntryDistances = new double[this.numChains * this.numChains];
+            Arrays.fill(this.exitToEntryDistances, Double.POSITIVE_INFINITY);
+            for (int c = 0; c < this.numChains; c++) {
+                for (int nextIndex : nextIndices[chainTails.get(c)]) {
+                    int nextChainId = this.chainIdByCircuit[nextIndex];
+                    for (int j = 0; j < this.numChains; j++) {
+                        this.exitToEntryDistances[c * this.numChains + j] = Math.min(this.exitToEntryDistances[c * this.numChains + j], entryToEntryDistances[nextChainId * this.numChains + j]);
+                    }
+                }
+            }
+        }
+
+        private void buildChain(int headIndex, double[] lengths, int[][] nextIndices, int[][] previousIndices, List<Integer> chainHeads, List<Integer> chainTails, List<Double> chainLengths) {
+            int chainId = chainHeads.size();
+
+            int index = headIndex;
+            int position = 0;
+            double offset = 0;
+            while (true) {
+                this.chainIdByCircuit[index] = chainId;
+                this.positionByCircuit[index] = position++;
+                this.offsetByCircuit[index] = offset;
+                offset += lengths[index];
+
+                if (nextIndices[index].length != 1) {
+                    break;
+                }
+                int nextIndex = nextIndices[index][0];
+                if (previousIndices[nextIndex].length != 1 || this.chainIdByCircuit[nextIndex] >= 0) {
+                    break;
+                }
+                index = nextIndex;
+            }
+
+            chainHeads.add(headIndex);
+            chainTails.add(index);
+            chainLengths.add(offset);
+        }
+
+        double getDistance(int fromIndex, int toIndex) {
+            int fromChainId = this.chainIdByCircuit[fromIndex];
+            int toChainId = this.chainIdByCircuit[toIndex];
+
+            if (fromChainId == toChainId && this.positionByCircuit[toIndex] >= this.positionByCircuit[fromIndex]) {
+                return this.offsetByCircuit[toIndex] - this.offsetByCircuit[fromIndex];
+            }
+
+            double betweenChainsDistance = this.exitToEntryDistances[fromChainId * this.numChains + toChainId];
+            if (betweenChainsDistance == Double.POSITIVE_INFINITY) {
+                return NO_PATH;
+            }
+
+            return (this.lengthByChain[fromChainId] - this.offsetByCircuit[fromIndex]) + betweenChainsDistance + this.offsetByCircuit[toIndex];
+        }
+    }
+}
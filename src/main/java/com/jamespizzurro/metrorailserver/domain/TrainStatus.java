@@ -1,8 +1,14 @@
 package com.jamespizzurro.metrorailserver.domain;
 
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 import com.jamespizzurro.metrorailserver.Exclude;
+import com.jamespizzurro.metrorailserver.StreamingTypeAdapter;
 
 import javax.persistence.*;
+import java.io.IOException;
 import java.util.*;
 
 @Entity
@@ -11,7 +17,7 @@ import java.util.*;
                 @Index(name = "train_status_observed_date_index", columnList = "observed_date")
         }
 )
-public class TrainStatus {
+public class TrainStatus implements Cloneable {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -113,6 +119,7 @@ public class TrainStatus {
     private transient Integer directionNumberAtLastVisitedStation;
     private transient String lineCodeAtLastVisitedStation;
     private transient String destinationCodeAtLastVisitedStation;
+    private transient double etaSortKey;
     private UUID tripId;
     @Exclude private Calendar firstObservedTrain;
 
@@ -656,4 +663,117 @@ public class TrainStatus {
     public void setRecentTweets(ProblemTweetResponse recentTweets) {
         this.recentTweets = recentTweets;
     }
+
+    public double getEtaSortKey() {
+        return etaSortKey;
+    }
+
+    public void setEtaSortKey(double etaSortKey) {
+        this.etaSortKey = etaSortKey;
+    }
+
+    // shallow copy; see copy()
+    @Override
+    public TrainStatus clone() {
+        try {
+            return (TrainStatus) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // a copy that can be modified without affecting this one, e.g. to work out a train's next status from the one already published
+    // everything we modify in place is copied; anything else, e.g. dates, is only ever replaced, so it's safe to share
+    public TrainStatus copy() {
+        TrainStatus copy = clone();
+        if (this.numTagsByType != null) {
+            copy.numTagsByType = new HashMap<>(this.numTagsByType);
+        }
+        return copy;
+    }
+
+    // we serialize a lot of these, e.g. for every train on every station board, so skip the reflection (see StreamingTypeAdapter)
+    public static class GsonTypeAdapter extends StreamingTypeAdapter<TrainStatus> {
+
+        private static final List<String> FIELD_NAMES = Arrays.asList(
+                "trainId", "realTrainId", "Car", "Destination", "DestinationCode", "DestinationName", "Group", "Line", "LocationCode", "LocationName",
+                "Min", "minutesAway", "directionNumber", "isScheduled", "maxMinutesAway", "numPositiveTags", "numNegativeTags", "trackNumber",
+                "trackCircuitId", "currentStationCode", "currentStationName", "PreviousStationCode", "previousStationName", "ShouldRenderOnLeft",
+                "secondsSinceLastMoved", "isCurrentlyHoldingOrSlow", "delayedCount", "secondsOffSchedule", "trainSpeed", "isNotOnRevenueTrack",
+                "isKeyedDown", "wasKeyedDown", "parentMin", "rawTrackCircuitId", "circuitName", "distanceFromNextStation", "destinationId",
+                "areDoorsOpen", "areDoorsOpenOnLeft", "areDoorsOpenOnRight", "lat", "lon", "direction", "tripId", "destinationStationAbbreviation",
+                "estimatedMinutesAway", "numTagsByType", "recentTweets", "observedDate"
+        );
+
+        private final TypeAdapter<Map<TrainTag.TrainTagType, Integer>> numTagsByTypeTypeAdapter;
+        private final TypeAdapter<ProblemTweetResponse> recentTweetsTypeAdapter;
+        private final TypeAdapter<Date> observedDateTypeAdapter;
+
+        public GsonTypeAdapter(Gson gson) {
+            this.numTagsByTypeTypeAdapter = gson.getAdapter(new TypeToken<Map<TrainTag.TrainTagType, Integer>>() {});
+            this.recentTweetsTypeAdapter = gson.getAdapter(ProblemTweetResponse.class);
+            this.observedDateTypeAdapter = gson.getAdapter(Date.class);
+        }
+
+        @Override
+        protected List<String> getFieldNames() {
+            return FIELD_NAMES;
+        }
+
+        @Override
+        protected void writeFields(JsonWriter out, TrainStatus value) throws IOException {
+            out.name("trainId").value(value.trainId);
+            out.name("realTrainId").value(value.realTrainId);
+            out.name("Car").value(value.Car);
+            out.name("Destination").value(value.Destination);
+            out.name("DestinationCode").value(value.DestinationCode);
+            out.name("DestinationName").value(value.DestinationName);
+            out.name("Group").value(value.Group);
+            out.name("Line").value(value.Line);
+            out.name("LocationCode").value(value.LocationCode);
+            out.name("LocationName").value(value.LocationName);
+            out.name("Min").value(value.Min);
+            out.name("minutesAway").value(value.minutesAway);
+            out.name("directionNumber").value(value.directionNumber);
+            out.name("isScheduled").value(value.isScheduled);
+            out.name("maxMinutesAway").value(value.maxMinutesAway);
+            out.name("numPositiveTags").value(value.numPositiveTags);
+            out.name("numNegativeTags").value(value.numNegativeTags);
+            out.name("trackNumber").value(value.trackNumber);
+            out.name("trackCircuitId").value(value.trackCircuitId);
+            out.name("currentStationCode").value(value.currentStationCode);
+            out.name("currentStationName").value(value.currentStationName);
+            out.name("PreviousStationCode").value(value.PreviousStationCode);
+            out.name("previousStationName").value(value.previousStationName);
+            out.name("ShouldRenderOnLeft").value(value.ShouldRenderOnLeft);
+            out.name("secondsSinceLastMoved").value(value.secondsSinceLastMoved);
+            out.name("isCurrentlyHoldingOrSlow").value(value.isCurrentlyHoldingOrSlow);
+            out.name("delayedCount").value(value.delayedCount);
+            out.name("secondsOffSchedule").value(value.secondsOffSchedule);
+            out.name("trainSpeed").value(value.trainSpeed);
+            out.name("isNotOnRevenueTrack").value(value.isNotOnRevenueTrack);
+            out.name("isKeyedDown").value(value.isKeyedDown);
+            out.name("wasKeyedDown").value(value.wasKeyedDown);
+            out.name("parentMin").value(value.parentMin);
+            out.name("rawTrackCircuitId").value(value.rawTrackCircuitId);
+            out.name("circuitName").value(value.circuitName);
+            out.name("distanceFromNextStation").value(value.distanceFromNextStation);
+            out.name("destinationId").value(value.destinationId);
+            out.name("areDoorsOpen").value(value.areDoorsOpen);
+            out.name("areDoorsOpenOnLeft").value(value.areDoorsOpenOnLeft);
+            out.name("areDoorsOpenOnRight").value(value.areDoorsOpenOnRight);
+            out.name("lat").value(value.lat);
+            out.name("lon").value(value.lon);
+            out.name("direction").value(value.direction);
+            out.name("tripId").value((value.tripId != null) ? value.tripId.toString() : null);
+            out.name("destinationStationAbbreviation").value(value.destinationStationAbbreviation);
+            out.name("estimatedMinutesAway").value(value.estimatedMinutesAway);
+            out.name("numTagsByType");
+            this.numTagsByTypeTypeAdapter.write(out, value.numTagsByType);
+            out.name("recentTweets");
+            this.recentTweetsTypeAdapter.write(out, value.recentTweets);
+            out.name("observedDate");
+            this.observedDateTypeAdapter.write(out, value.observedDate);
+        }
+    }
 }
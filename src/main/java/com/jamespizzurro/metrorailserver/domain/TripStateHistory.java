@@ -0,0 +1,109 @@
+package com.jamespizzurro.metrorailserver.domain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+// the last hour of predicted and expected ride times for one station-to-station trip, averaged into 2-minute buckets
+// kept in a fixed-size ring buffer so it's always cheap to update and read, no matter how long we've been running
+// produces the same data as the per-trip trip_state aggregation query it replaces, without touching the database
+public class TripStateHistory {
+
+    private static final long BUCKET_SIZE_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final long MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int NUM_BUCKETS = (int) (MAX_AGE_MILLIS / BUCKET_SIZE_MILLIS) + 2;    // +2 for partially-expired and partially-filled buckets on either end
+
+    private final long[] bucketIds;    // number of bucket sizes since the epoch, rounded to the nearest bucket; Long.MIN_VALUE if unused
+    private final long[] latestSampleTimes;    // in epoch milliseconds
+    private final double[] predictedRideTimeSums;
+    private final int[] numPredictedRideTimes;
+    private final double[] expectedRideTimeSums;
+    private final int[] numExpectedRideTimes;
+
+    public TripStateHistory() {
+        this.bucketIds = new long[NUM_BUCKETS];
+        this.latestSampleTimes = new long[NUM_BUCKETS];
+        this.predictedRideTimeSums = new double[NUM_BUCKETS];
+        this.numPredictedRideTimes = new int[NUM_BUCKETS];
+        this.expectedRideTimeSums = new double[NUM_BUCKETS];
+        this.numExpectedRideTimes = new int[NUM_BUCKETS];
+        Arrays.fill(this.bucketIds, Long.MIN_VALUE);
+    }
+
+    public synchronized void add(long timeMillis, Double predictedRideTime, Double expectedRideTime) {
+        long bucketId = Math.round(timeMillis / (double) BUCKET_SIZE_MILLIS);
+        int index = (int) Math.floorMod(bucketId, (long) NUM_BUCKETS);
+
+        if (this.bucketIds[index] != bucketId) {
+            if (this.bucketIds[index] > bucketId) {
+                // too old to fit in the buffer anymore
+                return;
+            }
+
+            // recycle this bucket
+            this.bucketIds[index] = bucketId;
+            this.latestSampleTimes[index] = timeMillis;
+            this.predictedRideTimeSums[index] = 0;
+            this.numPredictedRideTimes[index] = 0;
+            this.expectedRideTimeSums[index] = 0;
+            this.numExpectedRideTimes[index] = 0;
+        }
+
+        this.latestSampleTimes[index] = Math.max(this.latestSampleTimes[index], timeMillis);
+        if (predictedRideTime != null) {
+            this.predictedRideTimeSums[index] += predictedRideTime;
+            this.numPredictedRideTimes[index]++;
+        }
+        if (expectedRideTime != null) {
+            this.expectedRideTimeSums[index] += expectedRideTime;
+            this.numExpectedRideTimes[index]++;
+        }
+    }
+
+    public synchronized RecentTripStateData getRecentData(long nowMillis) {
+        List<Integer> recentIndexes = new ArrayList<>(NUM_BUCKETS);
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            if (this.bucketIds[i] != Long.MIN_VALUE && this.latestSampleTimes[i] >= (nowMillis - MAX_AGE_MILLIS)) {
+                recentIndexes.add(i);
+            }
+        }
+        if (recentIndexes.isEmpty()) {
+            return new RecentTripStateData(null, null, null);
+        }
+        recentIndexes.sort((i1, i2) -> Long.compare(this.bucketIds[i1], this.bucketIds[i2]));
+
+        StringJoiner times = new StringJoiner(",");
+        StringJoiner predictedRideTimes = new StringJoiner(",");
+        StringJoiner expectedRideTimes = new StringJoiner(",");
+        for (int i = 0; i < recentIndexes.size(); i++) {
+            int index = recentIndexes.get(i);
+            times.add((i < recentIndexes.size() - 1) ? formatTime(this.bucketIds[index] * BUCKET_SIZE_MILLIS) : "now");
+            predictedRideTimes.add(formatAverage(this.predictedRideTimeSums[index], this.numPredictedRideTimes[index]));
+            expectedRideTimes.add(formatAverage(this.expectedRideTimeSums[index], this.numExpectedRideTimes[index]));
+        }
+
+        return new RecentTripStateData(times.toString(), predictedRideTimes.toString(), expectedRideTimes.toString());
+    }
+
+    // e.g. 7:04pm
+    private static String formatTime(long timeMillis) {
+        LocalTime time = Instant.ofEpochMilli(timeMillis).atZone(ZoneId.systemDefault()).toLocalTime();
+        int hour = (time.getHour() % 12 == 0) ? 12 : (time.getHour() % 12);
+        return hour + ":" + String.format("%02d", time.getMinute()) + ((time.getHour() < 12) ? "am" : "pm");
+    }
+
+    // rounded to two decimal places, or -1 if there's nothing to average
+    private static String formatAverage(double sum, int count) {
+        if (count <= 0) {
+            return "-1";
+        }
+        return BigDecimal.valueOf(sum / count).setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
+}
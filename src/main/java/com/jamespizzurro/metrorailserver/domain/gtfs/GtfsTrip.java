@@ -41,6 +41,30 @@ public class GtfsTrip {
         }
     }
 
+    // the reverse of getLineCode
+    public static String getRouteId(String lineCode) {
+        if (lineCode == null) {
+            return null;
+        }
+
+        switch (lineCode) {
+            case "RD":
+                return "RED";
+            case "OR":
+                return "ORANGE";
+            case "SV":
+                return "SILVER";
+            case "BL":
+                return "BLUE";
+            case "YL":
+                return "YELLOW";
+            case "GR":
+                return "GREEN";
+            default:
+                return null;
+        }
+    }
+
     public String[] getDestinationStationCodes() {
         return StationUtil.getStationCodesFromText(tripHeadsign.toLowerCase(), true);
     }
@@ -4,26 +4,42 @@ import java.util.Objects;
 
 public class TrainPosition {
 
+    // stands in for a missing (null) integer, so integers can be stored unboxed
+    private static final int NULL_INT = Integer.MIN_VALUE;
+
     private String TrainId;
     private String TrainNumber;
-    private Integer CarCount;
-    private Integer DirectionNum;
-    private Integer CircuitId;
+    private int CarCount = NULL_INT;
+    private int DirectionNum = NULL_INT;
+    private int CircuitId = NULL_INT;
     private String DestinationStationCode;
     private String LineCode;
-    private Integer SecondsAtLocation;
+    private int SecondsAtLocation = NULL_INT;
     private String ServiceType;
 
+    // resets this position so it can be reused by WmataFeedDecoder
+    void clear() {
+        this.TrainId = null;
+        this.TrainNumber = null;
+        this.CarCount = NULL_INT;
+        this.DirectionNum = NULL_INT;
+        this.CircuitId = NULL_INT;
+        this.DestinationStationCode = null;
+        this.LineCode = null;
+        this.SecondsAtLocation = NULL_INT;
+        this.ServiceType = null;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         TrainPosition that = (TrainPosition) o;
-        return Objects.equals(TrainId, that.TrainId) &&
+        return CarCount == that.CarCount &&
+                DirectionNum == that.DirectionNum &&
+                CircuitId == that.CircuitId &&
+                Objects.equals(TrainId, that.TrainId) &&
                 Objects.equals(TrainNumber, that.TrainNumber) &&
-                Objects.equals(CarCount, that.CarCount) &&
-                Objects.equals(DirectionNum, that.DirectionNum) &&
-                Objects.equals(CircuitId, that.CircuitId) &&
                 Objects.equals(DestinationStationCode, that.DestinationStationCode) &&
                 Objects.equals(LineCode, that.LineCode) &&
                 Objects.equals(ServiceType, that.ServiceType);
@@ -40,35 +56,71 @@ public class TrainPosition {
         return TrainId;
     }
 
+    void setTrainId(String trainId) {
+        TrainId = trainId;
+    }
+
     public String getTrainNumber() {
         return TrainNumber;
     }
 
+    void setTrainNumber(String trainNumber) {
+        TrainNumber = trainNumber;
+    }
+
     public Integer getCarCount() {
-        return CarCount;
+        return (CarCount != NULL_INT) ? CarCount : null;
+    }
+
+    void setCarCount(int carCount) {
+        CarCount = carCount;
     }
 
     public Integer getDirectionNum() {
-        return DirectionNum;
+        return (DirectionNum != NULL_INT) ? DirectionNum : null;
+    }
+
+    void setDirectionNum(int directionNum) {
+        DirectionNum = directionNum;
     }
 
     public Integer getCircuitId() {
-        return CircuitId;
+        return (CircuitId != NULL_INT) ? CircuitId : null;
+    }
+
+    void setCircuitId(int circuitId) {
+        CircuitId = circuitId;
     }
 
     public String getDestinationStationCode() {
         return DestinationStationCode;
     }
 
+    void setDestinationStationCode(String destinationStationCode) {
+        DestinationStationCode = destinationStationCode;
+    }
+
     public String getLineCode() {
         return LineCode;
     }
 
+    void setLineCode(String lineCode) {
+        LineCode = lineCode;
+    }
+
     public Integer getSecondsAtLocation() {
-        return SecondsAtLocation;
+        return (SecondsAtLocation != NULL_INT) ? SecondsAtLocation : null;
+    }
+
+    void setSecondsAtLocation(int secondsAtLocation) {
+        SecondsAtLocation = secondsAtLocation;
     }
 
     public String getServiceType() {
         return ServiceType;
     }
+
+    void setServiceType(String serviceType) {
+        ServiceType = serviceType;
+    }
 }
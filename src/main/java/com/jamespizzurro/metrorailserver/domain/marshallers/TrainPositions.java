@@ -1,5 +1,6 @@
 package com.jamespizzurro.metrorailserver.domain.marshallers;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -7,6 +8,37 @@ public class TrainPositions {
 
     private List<TrainPosition> TrainPositions;
 
+    // every position ever decoded into this object by WmataFeedDecoder, kept around to be reused by the next decode
+    private transient List<TrainPosition> pooledTrainPositions;
+
+    // the next position to decode into, reusing a pooled one if we have one
+    TrainPosition nextTrainPosition() {
+        if (this.TrainPositions == null) {
+            this.TrainPositions = new ArrayList<>();
+        }
+        if (this.pooledTrainPositions == null) {
+            this.pooledTrainPositions = new ArrayList<>();
+        }
+
+        TrainPosition trainPosition;
+        int index = this.TrainPositions.size();
+        if (index < this.pooledTrainPositions.size()) {
+            trainPosition = this.pooledTrainPositions.get(index);
+            trainPosition.clear();
+        } else {
+            trainPosition = new TrainPosition();
+            this.pooledTrainPositions.add(trainPosition);
+        }
+        this.TrainPositions.add(trainPosition);
+        return trainPosition;
+    }
+
+    void clear() {
+        if (this.TrainPositions != null) {
+            this.TrainPositions.clear();
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
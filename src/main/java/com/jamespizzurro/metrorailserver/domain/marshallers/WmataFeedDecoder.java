@@ -0,0 +1,248 @@
+package com.jamespizzurro.metrorailserver.domain.marshallers;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.jamespizzurro.metrorailserver.domain.ProcessedGISTrainData;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// decodes WMATA's train feeds by streaming through their JSON, instead of binding them to an object tree with Gson and copying that
+// train positions are decoded into reusable records, and the codes in them are interned, so a steady stream of identical feeds allocates very little
+// safe to use from multiple threads at once, as long as they don't decode into the same TrainPositions
+public class WmataFeedDecoder {
+
+    // there are only so many train IDs, line codes, station codes, etc., so this should never actually fill up
+    private static final int MAX_NUM_INTERNED_STRINGS = 10000;
+
+    private final Map<String, String> internedStrings;
+
+    public WmataFeedDecoder() {
+        this.internedStrings = new ConcurrentHashMap<>();
+    }
+
+    // decodes a response from WMATA's Train Positions API into the specified train positions, replacing whatever they had before
+    public TrainPositions decodeTrainPositions(InputStream json, TrainPositions trainPositions) throws IOException {
+        trainPositions.clear();
+
+        try (JsonReader reader = new JsonReader(new InputStreamReader(json, StandardCharsets.UTF_8))) {
+            reader.setLenient(true);
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("TrainPositions") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readTrainPosition(reader, trainPositions.nextTrainPosition());
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        return trainPositions;
+    }
+
+    private void readTrainPosition(JsonReader reader, TrainPosition trainPosition) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (skipNull(reader)) {
+                continue;
+            }
+
+            switch (name) {
+                case "TrainId":
+                    trainPosition.setTrainId(intern(reader.nextString()));
+                    break;
+                case "TrainNumber":
+                    trainPosition.setTrainNumber(intern(reader.nextString()));
+                    break;
+                case "CarCount":
+                    trainPosition.setCarCount(reader.nextInt());
+                    break;
+                case "DirectionNum":
+                    trainPosition.setDirectionNum(reader.nextInt());
+                    break;
+                case "CircuitId":
+                    trainPosition.setCircuitId(reader.nextInt());
+                    break;
+                case "DestinationStationCode":
+                    trainPosition.setDestinationStationCode(intern(reader.nextString()));
+                    break;
+                case "LineCode":
+                    trainPosition.setLineCode(intern(reader.nextString()));
+                    break;
+                case "SecondsAtLocation":
+                    trainPosition.setSecondsAtLocation(reader.nextInt());
+                    break;
+                case "ServiceType":
+                    trainPosition.setServiceType(intern(reader.nextString()));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    // decodes a response from WMATA's GIS TRAIN_LOC_WMS_PUB service straight into processed train data
+    public List<ProcessedGISTrainData> decodeGISTrainData(InputStream json) throws IOException {
+        List<ProcessedGISTrainData> processedGISTrainData = new ArrayList<>();
+
+        // most trains are observed at one of only a handful of times, so don't parse the same one over and over
+        SimpleDateFormat observedDateFormat = new SimpleDateFormat("M/dd/yyyy h:mm:ss a");
+        Map<String, Long> observedTimeByDateTimeString = new HashMap<>();
+
+        try (JsonReader reader = new JsonReader(new InputStreamReader(json, StandardCharsets.UTF_8))) {
+            reader.setLenient(true);
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("features") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        processedGISTrainData.add(readGISTrainData(reader, observedDateFormat, observedTimeByDateTimeString));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        return processedGISTrainData;
+    }
+
+    private ProcessedGISTrainData readGISTrainData(JsonReader reader, SimpleDateFormat observedDateFormat, Map<String, Long> observedTimeByDateTimeString) throws IOException {
+        String trainId = null;
+        String dateTimeString = null;
+        String destinationId = null;
+        String destinationStationCode = null;
+        String description = null;
+        Integer direction = null;
+        Double x = null;
+        Double y = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (skipNull(reader)) {
+                continue;
+            }
+
+            if (name.equals("attributes")) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String attributeName = reader.nextName();
+                    if (skipNull(reader)) {
+                        continue;
+                    }
+
+                    switch (attributeName) {
+                        case "ITT":
+                            trainId = intern(reader.nextString());
+                            break;
+                        case "DATE_TIME":
+                            dateTimeString = reader.nextString();
+                            break;
+                        case "DESTINATIONID":
+                            destinationId = intern(reader.nextString());
+                            break;
+                        case "DESTSTATIONCODE":
+                            destinationStationCode = intern(reader.nextString());
+                            break;
+                        case "DESCRIPTION":
+                            description = reader.nextString();
+                            break;
+                        case "DIRECTION":
+                            direction = reader.nextInt();
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+            } else if (name.equals("geometry")) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String geometryName = reader.nextName();
+                    if (skipNull(reader)) {
+                        continue;
+                    }
+
+                    switch (geometryName) {
+                        case "x":
+                            x = reader.nextDouble();
+                            break;
+                        case "y":
+                            y = reader.nextDouble();
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        Calendar observedDate = null;
+        if (dateTimeString != null) {
+            Long observedTime = observedTimeByDateTimeString.get(dateTimeString);
+            if (observedTime == null) {
+                try {
+                    observedTime = observedDateFormat.parse(dateTimeString).getTime();
+                    observedTimeByDateTimeString.put(dateTimeString, observedTime);
+                } catch (ParseException ignored) {
+                    // treated as stale, like any other train we don't know the observed date of
+                }
+            }
+            if (observedTime != null) {
+                observedDate = Calendar.getInstance();
+                observedDate.setTimeInMillis(observedTime);
+            }
+        }
+
+        return new ProcessedGISTrainData(trainId, destinationId, destinationStationCode, description, x, y, direction, observedDate);
+    }
+
+    // returns true if the next value was null, consuming it
+    private static boolean skipNull(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.NULL) {
+            return false;
+        }
+
+        reader.nextNull();
+        return true;
+    }
+
+    private String intern(String string) {
+        String internedString = this.internedStrings.get(string);
+        if (internedString != null) {
+            return internedString;
+        }
+
+        if (this.internedStrings.size() >= MAX_NUM_INTERNED_STRINGS) {
+            return string;
+        }
+
+        internedString = this.internedStrings.putIfAbsent(string, string);
+        return (internedString != null) ? internedString : string;
+    }
+}
@@ -0,0 +1,156 @@
+package com.jamespizzurro.metrorailserver.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// manages native Postgres range partitions for our largest, append-only tables
+// table and column names are only ever our own constants, never user input, so they're safe to splice into DDL
+@Repository
+public class PartitionRepository {
+
+    private static final DateTimeFormatter BOUND_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final Pattern UPPER_BOUND_PATTERN = Pattern.compile("TO \\('([^']+)'\\)");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public PartitionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public boolean doesTableExist(String tableName) {
+        return Boolean.TRUE.equals(this.jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, tableName));
+    }
+
+    public boolean isPartitioned(String tableName) {
+        return Boolean.TRUE.equals(this.jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(?))", Boolean.class, tableName));
+    }
+
+    public static String getLegacyPartitionName(String tableName) {
+        return tableName + "_legacy";
+    }
+
+    // returns the number of rows deleted
+    public int deleteRowsBefore(String tableName, String columnName, LocalDateTime dateTime) {
+        return this.jdbcTemplate.update("DELETE FROM " + tableName + " WHERE " + columnName + " < ?", Timestamp.valueOf(dateTime));
+    }
+
+    // gets an existing table ready for convertToPartitioned while it's still in use; none of this blocks anyone writing to it
+    // first, rows that have already expired, or that have no timestamp and so can't belong to any partition, are deleted, so they aren't carried over into the legacy partition
+    // then a constraint matching the legacy partition's bounds is checked against every row, so attaching the legacy partition later doesn't have to do it while holding everyone else off
+    // if the table isn't converted before the specified bound, inserts will start failing, so either convert it or call removePartitionBoundConstraint
+    public void prepareForPartitioning(String tableName, String columnName, LocalDateTime legacyPartitionUpperBound, LocalDateTime oldestRetainedDateTime) {
+        this.jdbcTemplate.update("DELETE FROM " + tableName + " WHERE " + columnName + " IS NULL OR " + columnName + " < ?", Timestamp.valueOf(oldestRetainedDateTime));
+
+        String constraintName = getPartitionBoundConstraintName(tableName);
+        this.jdbcTemplate.execute("ALTER TABLE " + tableName + " DROP CONSTRAINT IF EXISTS " + constraintName);
+        this.jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD CONSTRAINT " + constraintName + " CHECK (" + columnName + " IS NOT NULL AND " + columnName + " < '" + BOUND_FORMATTER.format(legacyPartitionUpperBound) + "') NOT VALID");
+        this.jdbcTemplate.execute("ALTER TABLE " + tableName + " VALIDATE CONSTRAINT " + constraintName);
+    }
+
+    public void removePartitionBoundConstraint(String tableName) {
+        this.jdbcTemplate.execute("ALTER TABLE " + tableName + " DROP CONSTRAINT IF EXISTS " + getPartitionBoundConstraintName(tableName));
+    }
+
+    private static String getPartitionBoundConstraintName(String tableName) {
+        return tableName + "_partition_bound";
+    }
+
+    // turns an existing (Hibernate-created) table into a table partitioned by range on the specified timestamp column
+    // any existing rows are kept by attaching the old table as a single partition covering everything before the specified bound,
+    // so it will eventually be dropped by retention like any other partition
+    // the table must have been prepared with prepareForPartitioning using the same bound first
+    // the table is locked for the duration, and attaching the old table still builds the new primary key's index on it, so this should only be run while nothing is writing to it
+    @Transactional
+    public void convertToPartitioned(String tableName, String columnName, LocalDateTime legacyPartitionUpperBound) {
+        String legacyTableName = getLegacyPartitionName(tableName);
+
+        List<String> indexDefinitions = this.jdbcTemplate.queryForList(
+                "SELECT pg_get_indexdef(i.indexrelid) FROM pg_index i WHERE i.indrelid = to_regclass(?) AND NOT i.indisprimary",
+                String.class, tableName
+        );
+        List<String> indexNames = this.jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid WHERE i.indrelid = to_regclass(?)",
+                String.class, tableName
+        );
+        String idSequenceName = this.jdbcTemplate.queryForObject("SELECT pg_get_serial_sequence(?, 'id')", String.class, tableName);
+
+        // move the old table and its indexes out of the way, freeing up their names for the new partitioned table
+        this.jdbcTemplate.execute("ALTER TABLE " + tableName + " RENAME TO " + legacyTableName);
+        for (String indexName : indexNames) {
+            this.jdbcTemplate.execute("ALTER INDEX " + indexName + " RENAME TO " + indexName + "_legacy");
+        }
+
+        // Postgres requires the primary key of a partitioned table to include the partition key
+        this.jdbcTemplate.execute("CREATE TABLE " + tableName + " (LIKE " + legacyTableName + " INCLUDING DEFAULTS) PARTITION BY RANGE (" + columnName + ")");
+        this.jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD PRIMARY KEY (id, " + columnName + ")");
+        for (String indexDefinition : indexDefinitions) {
+            this.jdbcTemplate.execute(indexDefinition);
+        }
+        if (idSequenceName != null) {
+            // otherwise dropping the old table later would take the ID sequence down with it
+            this.jdbcTemplate.execute("ALTER SEQUENCE " + idSequenceName + " OWNED BY " + tableName + ".id");
+        }
+
+        Boolean isLegacyTableEmpty = this.jdbcTemplate.queryForObject("SELECT NOT EXISTS (SELECT 1 FROM " + legacyTableName + ")", Boolean.class);
+        if (Boolean.TRUE.equals(isLegacyTableEmpty)) {
+            this.jdbcTemplate.execute("DROP TABLE " + legacyTableName);
+        } else {
+            // the validated constraint from prepareForPartitioning already proves every row is in bounds, so this doesn't scan the table
+            this.jdbcTemplate.execute("ALTER TABLE " + tableName + " ATTACH PARTITION " + legacyTableName + " FOR VALUES FROM (MINVALUE) TO ('" + BOUND_FORMATTER.format(legacyPartitionUpperBound) + "')");
+            // the partition's own bounds make it redundant now
+            this.jdbcTemplate.execute("ALTER TABLE " + legacyTableName + " DROP CONSTRAINT " + getPartitionBoundConstraintName(tableName));
+        }
+    }
+
+    public void createPartition(String tableName, String partitionName, LocalDateTime lowerBound, LocalDateTime upperBound) {
+        this.jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName + " PARTITION OF " + tableName + " FOR VALUES FROM ('" + BOUND_FORMATTER.format(lowerBound) + "') TO ('" + BOUND_FORMATTER.format(upperBound) + "')");
+    }
+
+    public void dropPartition(String partitionName) {
+        this.jdbcTemplate.execute("DROP TABLE IF EXISTS " + partitionName);
+    }
+
+    public List<Partition> getPartitions(String tableName) {
+        List<Partition> partitions = new ArrayList<>();
+        this.jdbcTemplate.query(
+                "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass(?)",
+                rs -> {
+                    Matcher matcher = UPPER_BOUND_PATTERN.matcher(rs.getString(2));
+                    if (matcher.find()) {
+                        partitions.add(new Partition(rs.getString(1), LocalDateTime.parse(matcher.group(1).replace(' ', 'T'))));
+                    }
+                },
+                tableName
+        );
+        return partitions;
+    }
+
+    public static class Partition {
+        private final String name;
+        private final LocalDateTime upperBound;    // exclusive
+
+        public Partition(String name, LocalDateTime upperBound) {
+            this.name = name;
+            this.upperBound = upperBound;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LocalDateTime getUpperBound() {
+            return upperBound;
+        }
+    }
+}
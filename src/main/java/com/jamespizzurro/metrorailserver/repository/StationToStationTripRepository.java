@@ -1,11 +1,9 @@
 package com.jamespizzurro.metrorailserver.repository;
 
 import com.jamespizzurro.metrorailserver.domain.StationToStationTrip;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 
@@ -30,9 +28,4 @@ public interface StationToStationTripRepository extends CrudRepository<StationTo
                     "WHERE stst.departing_station_code = ?1 AND stst.arriving_station_code = ?2"
     )
     BigDecimal getMedianTripDuration(String fromStationCode, String toStationCode);
-
-    @Modifying
-    @Transactional
-    @Query(nativeQuery = true, value = "DELETE FROM station_to_station_trip WHERE arriving_time < (NOW() - INTERVAL '24 months')")
-    void removeOld();
 }
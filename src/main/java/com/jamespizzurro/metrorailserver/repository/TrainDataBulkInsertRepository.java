@@ -0,0 +1,299 @@
+package com.jamespizzurro.metrorailserver.repository;
+
+import com.jamespizzurro.metrorailserver.domain.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.*;
+
+// bulk inserts for the rows TrainService produces on every update, bypassing Hibernate entirely
+// rows are sent as JDBC batches, which pgjdbc rewrites into multi-row inserts (see reWriteBatchedInserts in the datasource URL)
+// the column lists below must be kept in sync with the corresponding entities
+@Repository
+public class TrainDataBulkInsertRepository {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String INSERT_TRAIN_STATUS_SQL = buildInsertSql("train_status",
+            "train_id", "real_train_id", "num_cars", "destination_station", "destination_station_code", "destination_station_name", "group_number", "line_code", "location_station_code", "location_station_name",
+            "eta", "minutes_away", "direction_number", "is_scheduled", "max_minutes_away", "num_positive_tags", "num_negative_tags", "track_number", "track_circuit_id", "current_station_code",
+            "current_station_name", "previous_station_code", "previous_station_name", "should_render_on_left", "seconds_since_last_moved", "is_holding_or_slow", "num_times_delayed", "num_seconds_off_schedule", "last_visited_station_code", "last_visited_station",
+            "train_speed", "is_not_on_revenue_track", "is_keyed_down", "was_keyed_down", "parent_min", "raw_track_circuit_id", "circuit_name", "distance_from_next_station", "seconds_at_last_visited_station", "seconds_delayed",
+            "original_destination_code", "original_line_code", "destination_id", "are_doors_open", "are_doors_open_on_left", "are_doors_open_on_right", "is_adjusting_on_platform", "are_doors_operating_manually", "lat", "lon",
+            "direction", "trip_id", "first_observed_train", "destination_station_abbreviation", "estimated_minutes_away", "observed_date"
+    );
+    private static final String INSERT_STATION_TO_STATION_TRIP_SQL = buildInsertSql("station_to_station_trip",
+            "train_id", "real_train_id", "line_code", "destination_station_code", "num_cars", "departing_station_code", "departing_time", "arriving_station_code", "arriving_track_number", "arriving_time",
+            "trip_duration", "seconds_at_departing_station", "arriving_direction_number", "trip_id"
+    );
+    private static final String INSERT_TRAIN_OFFLOAD_SQL = buildInsertSql("train_offload",
+            "date", "train_id", "real_train_id", "line_code", "direction_number", "destination_station_code", "station_code"
+    );
+    private static final String INSERT_TRAIN_DISAPPEARANCE_SQL = buildInsertSql("train_disappearance",
+            "date", "train_id", "real_train_id", "line_code", "direction_number", "destination_station_code", "station_code", "track_circuit_id"
+    );
+    private static final String INSERT_TRAIN_EXPRESSED_STATION_EVENT_SQL = buildInsertSql("train_expressed_station_event",
+            "date", "train_id", "real_train_id", "line_code", "direction_number", "track_number", "destination_station_code", "station_code", "num_seconds_at_station", "num_cars"
+    );
+    private static final String INSERT_DUPLICATE_TRAIN_EVENT_SQL = buildInsertSql("duplicate_train_event",
+            "date", "real_train_id", "kept_train_id", "removed_train_id", "line_code", "kept_train_direction_number", "removed_train_direction_number", "destination_station_code", "station_code"
+    );
+    // train departures are keyed by line, direction, station and departure time, so (like saveAll) update any existing departure instead of failing
+    private static final String UPSERT_TRAIN_DEPARTURE_SQL = buildInsertSql("train_departure",
+            "line_code", "direction_number", "departure_station_code", "departure_time", "line_name", "direction_name", "departure_station_name", "destination_station_code", "destination_station_name", "type",
+            "trip_id", "train_id", "real_train_id", "num_cars"
+    ) + " ON CONFLICT (line_code, direction_number, departure_station_code, departure_time) DO UPDATE SET " +
+            "line_name = EXCLUDED.line_name, direction_name = EXCLUDED.direction_name, departure_station_name = EXCLUDED.departure_station_name, destination_station_code = EXCLUDED.destination_station_code, destination_station_name = EXCLUDED.destination_station_name, " +
+            "type = EXCLUDED.type, trip_id = EXCLUDED.trip_id, train_id = EXCLUDED.train_id, real_train_id = EXCLUDED.real_train_id, num_cars = EXCLUDED.num_cars";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public TrainDataBulkInsertRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    private static String buildInsertSql(String tableName, String... columnNames) {
+        return "INSERT INTO " + tableName + " (" + String.join(", ", columnNames) + ") VALUES (" + String.join(", ", Collections.nCopies(columnNames.length, "?")) + ")";
+    }
+
+    // all or nothing, so a failure partway through never leaves some tables written and others not
+    @Transactional
+    public void insertAll(Collection<TrainStatus> trainStatuses, Collection<StationToStationTrip> stationToStationTrips, Collection<TrainOffload> trainOffloads, Collection<TrainDisappearance> trainDisappearances, Collection<TrainExpressedStationEvent> trainExpressedStationEvents, Collection<DuplicateTrainEvent> duplicateTrainEvents, Collection<TrainDeparture> trainDepartures) {
+        insertTrainStatuses(trainStatuses);
+        insertStationToStationTrips(stationToStationTrips);
+        insertTrainOffloads(trainOffloads);
+        insertTrainDisappearances(trainDisappearances);
+        insertTrainExpressedStationEvents(trainExpressedStationEvents);
+        insertDuplicateTrainEvents(duplicateTrainEvents);
+        upsertTrainDepartures(trainDepartures);
+    }
+
+    @Transactional
+    public void insertTrainStatuses(Collection<TrainStatus> trainStatuses) {
+        batchUpdate(INSERT_TRAIN_STATUS_SQL, trainStatuses, (ps, ts) -> {
+            int i = 1;
+            ps.setString(i++, ts.getTrainId());
+            ps.setString(i++, ts.getRealTrainId());
+            ps.setString(i++, ts.getCar());
+            ps.setString(i++, ts.getDestination());
+            ps.setString(i++, ts.getDestinationCode());
+            ps.setString(i++, ts.getDestinationName());
+            ps.setString(i++, ts.getGroup());
+            ps.setString(i++, ts.getLine());
+            ps.setString(i++, ts.getLocationCode());
+            ps.setString(i++, ts.getLocationName());
+            ps.setString(i++, ts.getMin());
+            setDouble(ps, i++, ts.getMinutesAway());
+            setInteger(ps, i++, ts.getDirectionNumber());
+            ps.setBoolean(i++, ts.isScheduled());
+            setDouble(ps, i++, ts.getMaxMinutesAway());
+            ps.setInt(i++, ts.getNumPositiveTags());
+            ps.setInt(i++, ts.getNumNegativeTags());
+            ps.setInt(i++, ts.getTrackNumber());
+            ps.setInt(i++, ts.getTrackCircuitId());
+            ps.setString(i++, ts.getCurrentStationCode());
+            ps.setString(i++, ts.getCurrentStationName());
+            ps.setString(i++, ts.getPreviousStationCode());
+            ps.setString(i++, ts.getPreviousStationName());
+            ps.setBoolean(i++, false);  // deprecated; never set
+            ps.setInt(i++, ts.getSecondsSinceLastMoved());
+            ps.setBoolean(i++, ts.isCurrentlyHoldingOrSlow());
+            ps.setInt(i++, 0);  // deprecated; never set
+            ps.setInt(i++, ts.getSecondsOffSchedule());
+            ps.setString(i++, ts.getLastVisitedStationCode());
+            setTimestamp(ps, i++, ts.getLastVisitedStation());
+            setInteger(ps, i++, ts.getTrainSpeed());
+            ps.setBoolean(i++, ts.isNotOnRevenueTrack());
+            ps.setBoolean(i++, ts.isKeyedDown());
+            ps.setBoolean(i++, ts.wasKeyedDown());
+            ps.setString(i++, ts.getParentMin());
+            setInteger(ps, i++, ts.getRawTrackCircuitId());
+            ps.setString(i++, ts.getCircuitName());
+            setInteger(ps, i++, ts.getDistanceFromNextStation());
+            setInteger(ps, i++, ts.getSecondsAtLastVisitedStation());
+            setInteger(ps, i++, ts.getSecondsDelayed());
+            ps.setString(i++, ts.getOriginalDestinationCode());
+            ps.setString(i++, ts.getOriginalLineCode());
+            ps.setString(i++, ts.getDestinationId());
+            setBoolean(ps, i++, null);  // deprecated; never set
+            setBoolean(ps, i++, ts.areDoorsOpenOnLeft());
+            setBoolean(ps, i++, ts.areDoorsOpenOnRight());
+            setBoolean(ps, i++, ts.isAdjustingOnPlatform());
+            setBoolean(ps, i++, ts.areDoorsOperatingManually());
+            setDouble(ps, i++, ts.getLat());
+            setDouble(ps, i++, ts.getLon());
+            setInteger(ps, i++, ts.getDirection());
+            ps.setObject(i++, ts.getTripId(), Types.OTHER);
+            setTimestamp(ps, i++, ts.getFirstObservedTrain());
+            ps.setString(i++, ts.getDestinationStationAbbreviation());
+            setDouble(ps, i++, ts.getEstimatedMinutesAway());
+            setTimestamp(ps, i, ts.getObservedDate());
+        });
+    }
+
+    @Transactional
+    public void insertStationToStationTrips(Collection<StationToStationTrip> stationToStationTrips) {
+        batchUpdate(INSERT_STATION_TO_STATION_TRIP_SQL, stationToStationTrips, (ps, trip) -> {
+            int i = 1;
+            ps.setString(i++, trip.getTrainId());
+            ps.setString(i++, trip.getRealTrainId());
+            ps.setString(i++, trip.getLineCode());
+            ps.setString(i++, trip.getDestinationStationCode());
+            setInteger(ps, i++, trip.getNumCars());
+            ps.setString(i++, trip.getDepartingStationCode());
+            setTimestamp(ps, i++, trip.getDepartingTime());
+            ps.setString(i++, trip.getArrivingStationCode());
+            setInteger(ps, i++, trip.getArrivingTrackNumber());
+            setTimestamp(ps, i++, trip.getArrivingTime());
+            setDouble(ps, i++, trip.getTripDuration());
+            setInteger(ps, i++, trip.getSecondsAtDepartingStation());
+            setInteger(ps, i++, trip.getArrivingDirectionNumber());
+            ps.setObject(i, trip.getTripId(), Types.OTHER);
+        });
+    }
+
+    @Transactional
+    public void insertTrainOffloads(Collection<TrainOffload> trainOffloads) {
+        batchUpdate(INSERT_TRAIN_OFFLOAD_SQL, trainOffloads, (ps, offload) -> {
+            int i = 1;
+            setTimestamp(ps, i++, offload.getDate());
+            ps.setString(i++, offload.getTrainId());
+            ps.setString(i++, offload.getRealTrainId());
+            ps.setString(i++, offload.getLineCode());
+            setInteger(ps, i++, offload.getDirectionNumber());
+            ps.setString(i++, offload.getDestinationStationCode());
+            ps.setString(i, offload.getStationCode());
+        });
+    }
+
+    @Transactional
+    public void insertTrainDisappearances(Collection<TrainDisappearance> trainDisappearances) {
+        batchUpdate(INSERT_TRAIN_DISAPPEARANCE_SQL, trainDisappearances, (ps, disappearance) -> {
+            int i = 1;
+            setTimestamp(ps, i++, disappearance.getDate());
+            ps.setString(i++, disappearance.getTrainId());
+            ps.setString(i++, disappearance.getRealTrainId());
+            ps.setString(i++, disappearance.getLineCode());
+            setInteger(ps, i++, disappearance.getDirectionNumber());
+            ps.setString(i++, disappearance.getDestinationStationCode());
+            ps.setString(i++, disappearance.getStationCode());
+            setInteger(ps, i, disappearance.getTrackCircuitId());
+        });
+    }
+
+    @Transactional
+    public void insertTrainExpressedStationEvents(Collection<TrainExpressedStationEvent> trainExpressedStationEvents) {
+        batchUpdate(INSERT_TRAIN_EXPRESSED_STATION_EVENT_SQL, trainExpressedStationEvents, (ps, event) -> {
+            int i = 1;
+            setTimestamp(ps, i++, event.getDate());
+            ps.setString(i++, event.getTrainId());
+            ps.setString(i++, event.getRealTrainId());
+            ps.setString(i++, event.getLineCode());
+            setInteger(ps, i++, event.getDirectionNumber());
+            setInteger(ps, i++, event.getTrackNumber());
+            ps.setString(i++, event.getDestinationStationCode());
+            ps.setString(i++, event.getStationCode());
+            setInteger(ps, i++, event.getNumSecondsAtStation());
+            ps.setString(i, event.getNumCars());
+        });
+    }
+
+    @Transactional
+    public void insertDuplicateTrainEvents(Collection<DuplicateTrainEvent> duplicateTrainEvents) {
+        batchUpdate(INSERT_DUPLICATE_TRAIN_EVENT_SQL, duplicateTrainEvents, (ps, event) -> {
+            int i = 1;
+            setTimestamp(ps, i++, event.getDate());
+            ps.setString(i++, event.getRealTrainId());
+            ps.setString(i++, event.getKeptTrainId());
+            ps.setString(i++, event.getRemovedTrainId());
+            ps.setString(i++, event.getLineCode());
+            setInteger(ps, i++, event.getKeptTrainDirectionNumber());
+            setInteger(ps, i++, event.getRemovedTrainDirectionNumber());
+            ps.setString(i++, event.getDestinationStationCode());
+            ps.setString(i, event.getStationCode());
+        });
+    }
+
+    @Transactional
+    public void upsertTrainDepartures(Collection<TrainDeparture> trainDepartures) {
+        // a batch can't touch the same row twice with ON CONFLICT DO UPDATE, so keep only the last departure for each key, like saveAll would
+        Map<TrainDeparturePrimaryKey, TrainDeparture> trainDeparturesByKey = new LinkedHashMap<>(trainDepartures.size());
+        for (TrainDeparture trainDeparture : trainDepartures) {
+            trainDeparturesByKey.put(new TrainDeparturePrimaryKey(trainDeparture), trainDeparture);
+        }
+
+        batchUpdate(UPSERT_TRAIN_DEPARTURE_SQL, trainDeparturesByKey.values(), (ps, departure) -> {
+            int i = 1;
+            ps.setString(i++, departure.getLineCode());
+            setInteger(ps, i++, departure.getDirectionNumber());
+            ps.setString(i++, departure.getDepartureStationCode());
+            setTimestamp(ps, i++, departure.getDepartureTime());
+            ps.setString(i++, departure.getLineName());
+            ps.setString(i++, departure.getDirectionName());
+            ps.setString(i++, departure.getDepartureStationName());
+            ps.setString(i++, departure.getDestinationStationCode());
+            ps.setString(i++, departure.getDestinationStationName());
+            ps.setString(i++, (departure.getType() != null) ? departure.getType().name() : null);
+            ps.setString(i++, departure.getTripId());
+            ps.setString(i++, departure.getTrainId());
+            ps.setString(i++, departure.getRealTrainId());
+            setInteger(ps, i, departure.getNumCars());
+        });
+    }
+
+    private <T> void batchUpdate(String sql, Collection<T> rows, ParameterizedPreparedStatementSetter<T> setter) {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        this.jdbcTemplate.batchUpdate(sql, rows, BATCH_SIZE, setter);
+    }
+
+    private static void setInteger(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value != null) {
+            ps.setInt(index, value);
+        } else {
+            ps.setNull(index, Types.INTEGER);
+        }
+    }
+
+    private static void setDouble(PreparedStatement ps, int index, Double value) throws SQLException {
+        if (value != null) {
+            ps.setDouble(index, value);
+        } else {
+            ps.setNull(index, Types.DOUBLE);
+        }
+    }
+
+    private static void setBoolean(PreparedStatement ps, int index, Boolean value) throws SQLException {
+        if (value != null) {
+            ps.setBoolean(index, value);
+        } else {
+            ps.setNull(index, Types.BOOLEAN);
+        }
+    }
+
+    private static void setTimestamp(PreparedStatement ps, int index, Date value) throws SQLException {
+        if (value != null) {
+            ps.setTimestamp(index, new Timestamp(value.getTime()));
+        } else {
+            ps.setNull(index, Types.TIMESTAMP);
+        }
+    }
+
+    private static void setTimestamp(PreparedStatement ps, int index, Calendar value) throws SQLException {
+        if (value != null) {
+            ps.setTimestamp(index, new Timestamp(value.getTimeInMillis()), value);
+        } else {
+            ps.setNull(index, Types.TIMESTAMP);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.jamespizzurro.metrorailserver.service;
 
 import com.jamespizzurro.metrorailserver.ConfigUtil;
 import com.jamespizzurro.metrorailserver.NetworkUtil;
+import com.jamespizzurro.metrorailserver.RequestHandler;
 import com.jamespizzurro.metrorailserver.domain.ElevatorEscalatorOutage;
 import com.jamespizzurro.metrorailserver.domain.marshallers.ElevatorIncident;
 import com.jamespizzurro.metrorailserver.domain.marshallers.ElevatorIncidents;
@@ -13,8 +14,6 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.PostConstruct;
 import java.util.*;
@@ -25,6 +24,7 @@ public class ElevatorEscalatorService {
     private static final Logger logger = LoggerFactory.getLogger(ElevatorEscalatorService.class);
 
     private final ConfigUtil configUtil;
+    private final RequestHandler requestHandler;
 
     // exposed member variables (that therefore need to be thread-safe)
     private volatile Map<String, List<ElevatorEscalatorOutage>> elevatorOutagesByStation;
@@ -33,8 +33,9 @@ public class ElevatorEscalatorService {
     private volatile Map<String, Boolean> hasEscalatorOutagesByStation;
 
     @Autowired
-    public ElevatorEscalatorService(ConfigUtil configUtil) {
+    public ElevatorEscalatorService(ConfigUtil configUtil, RequestHandler requestHandler) {
         this.configUtil = configUtil;
+        this.requestHandler = requestHandler;
     }
 
     @PostConstruct
@@ -51,19 +52,11 @@ public class ElevatorEscalatorService {
         logger.info("Updating elevator/escalator outages from WMATA...");
 
         HttpEntity<String> requestEntity = NetworkUtil.createNewHttpEntity(configUtil.getWmataApiKey());
-        RestTemplate restTemplate;
         ResponseEntity<ElevatorIncidents> response;
         try {
-            restTemplate = NetworkUtil.createNewRestTemplate(true);
-            response = restTemplate.exchange(
+            response = this.requestHandler.getRestTemplate(RequestHandler.Feed.ELEVATOR_ESCALATOR_OUTAGES).exchange(
                     configUtil.getWmataElevatorEscalatorOutagesApiUrl(),
                     HttpMethod.GET, requestEntity, ElevatorIncidents.class);
-        } catch (RestClientException e) {
-            restTemplate = NetworkUtil.createNewRestTemplate(false);
-            response = restTemplate.exchange(
-                    configUtil.getWmataElevatorEscalatorOutagesApiUrl(),
-                    HttpMethod.GET, requestEntity, ElevatorIncidents.class);
-            logger.info("Response from WMATA Elevator/Escalator Outages API not gzipped!");
         } catch (Exception e) {
             logger.warn("Failed to get elevator/escalator outages from WMATA's API!", e);
             return;
@@ -44,6 +44,7 @@ public class GtfsService {
     private volatile Map<String /* lineCode */, Map<Integer /* directionNumber */, Map<String /* stationCode */, TreeMap<Calendar, Boolean /* hasAlreadyBeenObserved */>>>> scheduledTrainArrivalTimesByLineAndDirectionAndStation;
     private volatile Map<String /* lineCode */, Set<String /* stationCode */>> scheduledDestinationStationCodesByLine;
     private volatile Map<String /* lineCode_directionNumber */, Set<String /* stationCode */>> scheduledDestinationStationCodesByLineAndDirection;
+    private volatile Map<String /* stationCode_directionNumber */, String /* stopId */> stopIdsByStationAndDirection;
 
     @Autowired
     public GtfsService(ConfigUtil configUtil, TrainDepartureRepository scheduledTrainDeparturesRepository) {
@@ -52,6 +53,7 @@ public class GtfsService {
 
         this.scheduledDestinationStationCodesByLine = new HashMap<>(0);
         this.scheduledDestinationStationCodesByLineAndDirection = new HashMap<>(0);
+        this.stopIdsByStationAndDirection = new HashMap<>(0);
     }
 
     public Map<String, List<TrainStatus>> buildStationScheduledTrainStatusesMap() {
@@ -83,6 +85,7 @@ public class GtfsService {
         Map<String, Map<Integer, Map<String, TreeMap<Calendar, Boolean>>>> scheduledTrainArrivalTimesByLineAndDirectionAndStation = new HashMap<>();
         Map<String, Set<String>> scheduledDestinationStationCodesByLine = new HashMap<>();
         Map<String, Set<String>> scheduledDestinationStationCodesByLineAndDirection = new HashMap<>();
+        Map<String, String> stopIdsByStationAndDirection = new HashMap<>();
 
         Scanner scanner;
 
@@ -240,6 +243,8 @@ public class GtfsService {
             }
             int directionNum = Integer.parseInt(direction);
 
+            stopIdsByStationAndDirection.putIfAbsent(String.join("_", stationCode, direction), stopId);
+
             String destinationStationCode = null;
             String[] possibleDestinationStationCodes = trip.getDestinationStationCodes();
             if (possibleDestinationStationCodes != null && possibleDestinationStationCodes.length > 0) {
@@ -433,6 +438,7 @@ public class GtfsService {
         this.scheduledTrainArrivalTimesByLineAndDirectionAndStation = scheduledTrainArrivalTimesByLineAndDirectionAndStation;
         this.scheduledDestinationStationCodesByLine = scheduledDestinationStationCodesByLine;
         this.scheduledDestinationStationCodesByLineAndDirection = scheduledDestinationStationCodesByLineAndDirection;
+        this.stopIdsByStationAndDirection = stopIdsByStationAndDirection;
 
         // purge any future scheduled departures from any earlier GTFS parsing, and store off the new ones
         this.scheduledTrainDeparturesRepository.removeFutureScheduled(now.getTimeInMillis());
@@ -621,4 +627,9 @@ public class GtfsService {
     public Map<String, Set<String>> getScheduledDestinationStationCodesByLineAndDirection() {
         return scheduledDestinationStationCodesByLineAndDirection;
     }
+
+    // the ID of the platform stop WMATA's GTFS data uses for trains going in the given direction at the given station, or null if we don't know of one
+    public String getStopId(String stationCode, Integer directionNumber) {
+        return this.stopIdsByStationAndDirection.get(String.join("_", stationCode, String.valueOf(directionNumber)));
+    }
 }
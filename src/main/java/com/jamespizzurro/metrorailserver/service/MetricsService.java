@@ -65,7 +65,8 @@ public class MetricsService {
 
     @Scheduled(fixedRate = 30000)  // every 30 seconds (independent of last run)
     private void update() {
-        if (this.trainService.getStationTrainStatusesMap() == null || this.trainService.getStationTrainStatusesMap().size() <= 0) {
+        SystemSnapshot systemSnapshot = this.trainService.getSystemSnapshot();
+        if (systemSnapshot.getStationTrainStatusesMap().size() <= 0) {
             // no data to process yet
             return;
         }
@@ -112,11 +113,14 @@ public class MetricsService {
 
         Map<String, List<SystemMetrics.DirectionMetrics>> stationDirectionMetricsListByLineAndDirection = new HashMap<>();
 
+        RailNetwork railNetwork = this.trainService.getRailNetwork();
+
         Set<String> trainIdsAlreadyCounted = new HashSet<>();
-        for (String stationCode : this.trainService.getStationCodesSet()) {
+        for (int stationId = 0; stationId < railNetwork.getNumStations(); stationId++) {
+            String stationCode = railNetwork.getStationCode(stationId);
             Map<String, List<TrainStatus>> trainStatusesByLineAndDirection = new HashMap<>();
 
-            List<TrainStatus> stationTrainStatuses = this.trainService.getStationTrainStatusesMap().get(stationCode);
+            List<TrainStatus> stationTrainStatuses = systemSnapshot.getStationTrainStatusesMap().get(stationCode);
             if (stationTrainStatuses != null) {
                 // bucket each station's train statuses by line and direction
                 for (TrainStatus stationTrainStatus : stationTrainStatuses) {
@@ -605,8 +609,8 @@ public class MetricsService {
                 HashMap<String, ServiceGap> serviceGapByFromTrainId = new HashMap<>();
 
                 // for every destination station, calculate possible service gaps
-                for (String stationCode : this.trainService.getStationCodesSet()) {
-                    List<TrainStatus> stationTrainStatuses = this.trainService.getStationTrainStatusesMap().get(stationCode);
+                for (int stationId = 0; stationId < railNetwork.getNumStations(); stationId++) {
+                    List<TrainStatus> stationTrainStatuses = systemSnapshot.getStationTrainStatusesMap().get(railNetwork.getStationCode(stationId));
                     if (stationTrainStatuses == null) {
                         continue;
                     }
@@ -0,0 +1,210 @@
+package com.jamespizzurro.metrorailserver.service;
+
+import com.jamespizzurro.metrorailserver.ConfigUtil;
+import com.jamespizzurro.metrorailserver.repository.PartitionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+
+// keeps our largest tables partitioned by time so old data can be dropped a whole partition at a time
+// instead of with huge DELETEs that bloat the tables and keep vacuum busy
+// partitions are created a few periods ahead of time so inserts never have nowhere to go
+// existing tables are only converted when explicitly asked to (see partitions.convertexisting), as it locks them; until then, old rows are deleted instead
+@Service
+@DependsOn("entityManagerFactory")  // Hibernate has to have created (or updated) the tables first
+public class PartitionMaintenanceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionMaintenanceService.class);
+
+    private static final List<PartitionedTable> partitionedTables = Arrays.asList(
+            new PartitionedTable("train_status", "observed_date", PartitionPeriod.MONTHLY, 3, Period.ofMonths(24)),
+            new PartitionedTable("station_to_station_trip", "arriving_time", PartitionPeriod.MONTHLY, 3, Period.ofMonths(24)),
+            new PartitionedTable("trip_state", "date", PartitionPeriod.DAILY, 7, Period.ofDays(1)),
+            new PartitionedTable("api_request", "date", PartitionPeriod.DAILY, 7, Period.ofMonths(1))
+    );
+
+    private final ConfigUtil configUtil;
+    private final PartitionRepository partitionRepository;
+
+    @Autowired
+    public PartitionMaintenanceService(ConfigUtil configUtil, PartitionRepository partitionRepository) {
+        this.configUtil = configUtil;
+        this.partitionRepository = partitionRepository;
+    }
+
+    @PostConstruct
+    private void init() {
+        logger.info("Initializing partition maintenance service...");
+
+        for (PartitionedTable partitionedTable : partitionedTables) {
+            if (!this.partitionRepository.doesTableExist(partitionedTable.getTableName())) {
+                logger.warn("Table " + partitionedTable.getTableName() + " doesn't exist! Skipping partitioning it.");
+                continue;
+            }
+
+            if (!this.partitionRepository.isPartitioned(partitionedTable.getTableName())) {
+                if (!this.configUtil.isPartitionConversionEnabled()) {
+                    logger.warn("Table " + partitionedTable.getTableName() + " isn't partitioned yet! Old rows in it will be deleted instead of dropped until it's converted; see partitions.convertexisting.");
+                    continue;
+                }
+
+                logger.info("Converting " + partitionedTable.getTableName() + " to a partitioned table...");
+                LocalDate nextPeriodStartDate = partitionedTable.getPartitionPeriod().getNextPeriodStartDate(partitionedTable.getPartitionPeriod().getPeriodStartDate(LocalDate.now()));
+                try {
+                    this.partitionRepository.prepareForPartitioning(partitionedTable.getTableName(), partitionedTable.getColumnName(), nextPeriodStartDate.atStartOfDay(), partitionedTable.getOldestRetainedDateTime());
+                    this.partitionRepository.convertToPartitioned(partitionedTable.getTableName(), partitionedTable.getColumnName(), nextPeriodStartDate.atStartOfDay());
+                } catch (Exception e) {
+                    // the conversion itself is all one transaction, so the table is left as it was, except for the constraint we added to prepare it
+                    logger.error("Failed to convert " + partitionedTable.getTableName() + " to a partitioned table! Old rows in it will be deleted instead of dropped.", e);
+                    try {
+                        this.partitionRepository.removePartitionBoundConstraint(partitionedTable.getTableName());
+                    } catch (Exception e2) {
+                        logger.error("Failed to remove partition bound constraint from " + partitionedTable.getTableName() + "! Inserts into it will start failing at " + nextPeriodStartDate + ".", e2);
+                    }
+                    continue;
+                }
+                logger.info("...converted " + partitionedTable.getTableName() + " to a partitioned table!");
+            }
+        }
+
+        maintainPartitions();
+
+        logger.info("...partition maintenance service initialized!");
+    }
+
+    @Scheduled(cron = "0 5 * * * *")  // 5 minutes after the top of every hour
+    private void maintainPartitions() {
+        logger.info("Maintaining table partitions...");
+
+        for (PartitionedTable partitionedTable : partitionedTables) {
+            try {
+                if (!this.partitionRepository.isPartitioned(partitionedTable.getTableName())) {
+                    // not converted yet, so fall back to deleting old rows like we used to
+                    int numDeletedRows = this.partitionRepository.deleteRowsBefore(partitionedTable.getTableName(), partitionedTable.getColumnName(), partitionedTable.getOldestRetainedDateTime());
+                    logger.info("Deleted " + numDeletedRows + " expired rows from unpartitioned table " + partitionedTable.getTableName() + ".");
+                    continue;
+                }
+
+                createUpcomingPartitions(partitionedTable);
+                dropExpiredPartitions(partitionedTable);
+            } catch (Exception e) {
+                logger.error("Failed to maintain partitions for " + partitionedTable.getTableName() + "!", e);
+            }
+        }
+
+        logger.info("...maintained table partitions!");
+    }
+
+    private void createUpcomingPartitions(PartitionedTable partitionedTable) {
+        PartitionPeriod partitionPeriod = partitionedTable.getPartitionPeriod();
+
+        // partitions are contiguous, so pick up wherever the latest one leaves off (e.g. the end of a converted table's legacy partition)
+        LocalDateTime latestUpperBound = this.partitionRepository.getPartitions(partitionedTable.getTableName()).stream()
+                .map(PartitionRepository.Partition::getUpperBound)
+                .max(LocalDateTime::compareTo)
+                .orElse(null);
+
+        LocalDate periodStartDate = partitionPeriod.getPeriodStartDate(LocalDate.now());
+        if (latestUpperBound != null && latestUpperBound.toLocalDate().isAfter(periodStartDate)) {
+            periodStartDate = latestUpperBound.toLocalDate();
+        }
+
+        LocalDate lastPeriodStartDate = partitionPeriod.getPeriodStartDate(LocalDate.now());
+        for (int i = 0; i < partitionedTable.getNumPeriodsAhead(); i++) {
+            lastPeriodStartDate = partitionPeriod.getNextPeriodStartDate(lastPeriodStartDate);
+        }
+
+        while (!periodStartDate.isAfter(lastPeriodStartDate)) {
+            LocalDate nextPeriodStartDate = partitionPeriod.getNextPeriodStartDate(periodStartDate);
+            String partitionName = partitionedTable.getTableName() + "_p" + partitionPeriod.getPartitionNameSuffix(periodStartDate);
+            this.partitionRepository.createPartition(partitionedTable.getTableName(), partitionName, periodStartDate.atStartOfDay(), nextPeriodStartDate.atStartOfDay());
+            periodStartDate = nextPeriodStartDate;
+        }
+    }
+
+    private void dropExpiredPartitions(PartitionedTable partitionedTable) {
+        // only drop a partition once everything that could be in it has expired
+        LocalDateTime oldestRetainedDateTime = partitionedTable.getOldestRetainedDateTime();
+        for (PartitionRepository.Partition partition : this.partitionRepository.getPartitions(partitionedTable.getTableName())) {
+            if (!partition.getUpperBound().isAfter(oldestRetainedDateTime)) {
+                logger.info("Dropping expired partition " + partition.getName() + "...");
+                this.partitionRepository.dropPartition(partition.getName());
+            } else if (partition.getName().equals(PartitionRepository.getLegacyPartitionName(partitionedTable.getTableName()))) {
+                // a converted table's legacy partition spans everything up to when it was converted, which could be a whole retention period's worth,
+                // so keep deleting its old rows like we used to until it can be dropped
+                int numDeletedRows = this.partitionRepository.deleteRowsBefore(partition.getName(), partitionedTable.getColumnName(), oldestRetainedDateTime);
+                logger.info("Deleted " + numDeletedRows + " expired rows from legacy partition " + partition.getName() + ".");
+            }
+        }
+    }
+
+    private enum PartitionPeriod {
+        DAILY(DateTimeFormatter.ofPattern("yyyy_MM_dd")),
+        MONTHLY(DateTimeFormatter.ofPattern("yyyy_MM"));
+
+        private final DateTimeFormatter partitionNameFormatter;
+
+        PartitionPeriod(DateTimeFormatter partitionNameFormatter) {
+            this.partitionNameFormatter = partitionNameFormatter;
+        }
+
+        LocalDate getPeriodStartDate(LocalDate date) {
+            return (this == MONTHLY) ? date.withDayOfMonth(1) : date;
+        }
+
+        LocalDate getNextPeriodStartDate(LocalDate periodStartDate) {
+            return (this == MONTHLY) ? periodStartDate.plusMonths(1) : periodStartDate.plusDays(1);
+        }
+
+        String getPartitionNameSuffix(LocalDate periodStartDate) {
+            return this.partitionNameFormatter.format(periodStartDate);
+        }
+    }
+
+    private static class PartitionedTable {
+        private final String tableName;
+        private final String columnName;
+        private final PartitionPeriod partitionPeriod;
+        private final int numPeriodsAhead;
+        private final Period retentionPeriod;
+
+        PartitionedTable(String tableName, String columnName, PartitionPeriod partitionPeriod, int numPeriodsAhead, Period retentionPeriod) {
+            this.tableName = tableName;
+            this.columnName = columnName;
+            this.partitionPeriod = partitionPeriod;
+            this.numPeriodsAhead = numPeriodsAhead;
+            this.retentionPeriod = retentionPeriod;
+        }
+
+        String getTableName() {
+            return tableName;
+        }
+
+        String getColumnName() {
+            return columnName;
+        }
+
+        PartitionPeriod getPartitionPeriod() {
+            return partitionPeriod;
+        }
+
+        int getNumPeriodsAhead() {
+            return numPeriodsAhead;
+        }
+
+        LocalDateTime getOldestRetainedDateTime() {
+            return LocalDateTime.now().minus(this.retentionPeriod);
+        }
+    }
+}
@@ -5,7 +5,6 @@ import com.jamespizzurro.metrorailserver.repository.ApiRequestRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -45,15 +44,6 @@ public class PublicApiService {
         logger.info("...initialized public API service!");
     }
 
-    @Scheduled(fixedDelay = 3600000)  // every hour
-    protected void deleteOldApiRequests() {
-        logger.info("Deleting any old API requests...");
-
-        this.apiRequestRepository.removeOld();
-
-        logger.info("...deleted any old API requests!");
-    }
-
     public void logApiRequest(String apiKey, HttpServletRequest request, Calendar requestProcessedTime) {
         this.apiRequestRepository.save(new ApiRequest(apiKey, getRemoteAddress(request), request.getRequestURI(), getRequestParameterMap(request), requestProcessedTime));
     }
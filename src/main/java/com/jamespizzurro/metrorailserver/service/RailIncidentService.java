@@ -2,7 +2,6 @@ package com.jamespizzurro.metrorailserver.service;
 
 import com.google.common.collect.Multimap;
 import com.jamespizzurro.metrorailserver.ConfigUtil;
-import com.jamespizzurro.metrorailserver.GzipGsonHttpMessageConverter;
 import com.jamespizzurro.metrorailserver.IncidentTextParser;
 import com.jamespizzurro.metrorailserver.RequestHandler;
 import com.jamespizzurro.metrorailserver.domain.RailIncident;
@@ -13,11 +12,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
-import org.springframework.http.converter.json.GsonHttpMessageConverter;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.PostConstruct;
 import java.util.*;
@@ -28,6 +25,7 @@ public class RailIncidentService {
     private static final Logger logger = LoggerFactory.getLogger(RailIncidentService.class);
 
     private final ConfigUtil configUtil;
+    private final RequestHandler requestHandler;
     private final IncidentTextParser incidentTextParser;
     private final RailIncidentRepository railIncidentRepository;
 
@@ -37,8 +35,9 @@ public class RailIncidentService {
     private volatile Map<String, List<RailIncident>> railIncidentsByLine;
 
     @Autowired
-    public RailIncidentService(ConfigUtil configUtil, IncidentTextParser incidentTextParser, RailIncidentRepository railIncidentRepository) {
+    public RailIncidentService(ConfigUtil configUtil, RequestHandler requestHandler, IncidentTextParser incidentTextParser, RailIncidentRepository railIncidentRepository) {
         this.configUtil = configUtil;
+        this.requestHandler = requestHandler;
         this.incidentTextParser = incidentTextParser;
         this.railIncidentRepository = railIncidentRepository;
     }
@@ -62,23 +61,14 @@ public class RailIncidentService {
         requestHeaders.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
         HttpEntity<String> requestEntity = new HttpEntity<>("parameters", requestHeaders);
 
-        RestTemplate restTemplate;
         ResponseEntity<RailIncidentUpdates> response;
         try {
-            restTemplate = (new RequestHandler()).getRestTemplate();
-            restTemplate.getMessageConverters().clear();
-            restTemplate.getMessageConverters().add(new GzipGsonHttpMessageConverter());
-            response = restTemplate.exchange(
+            response = this.requestHandler.getRestTemplate(RequestHandler.Feed.RAIL_INCIDENTS).exchange(
                     this.configUtil.getWmataRailIncidentsApiUrl(),
                     HttpMethod.GET, requestEntity, RailIncidentUpdates.class);
         } catch (RestClientException e) {
-            restTemplate = (new RequestHandler()).getRestTemplate();
-            restTemplate.getMessageConverters().clear();
-            restTemplate.getMessageConverters().add(new GsonHttpMessageConverter());
-            response = restTemplate.exchange(
-                    this.configUtil.getWmataRailIncidentsApiUrl(),
-                    HttpMethod.GET, requestEntity, RailIncidentUpdates.class);
-            logger.warn("Response from WMATA Rail Incidents API not gzipped!");
+            logger.warn("Failed to get rail incidents from WMATA's API!", e);
+            return;
         }
 
         Map<String, List<RailIncident>> stationRailIncidentsMap = new HashMap<>();
@@ -1,6 +1,6 @@
 package com.jamespizzurro.metrorailserver.service;
 
-import com.jamespizzurro.metrorailserver.StationUtil;
+import com.jamespizzurro.metrorailserver.ConfigUtil;
 import com.jamespizzurro.metrorailserver.domain.*;
 import com.jamespizzurro.metrorailserver.repository.TripRepository;
 import org.slf4j.Logger;
@@ -10,14 +10,26 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+// saved trips are built on demand, the first time each one is asked for after a new system snapshot is published,
+// and then cached until the next one; that way we only ever do work for trips people are actually looking at
 @Service
 public class SavedTripService {
 
     private static final Logger logger = LoggerFactory.getLogger(SavedTripService.class);
 
+    // even if train data hasn't changed, everything else that goes into a saved trip (tweets, alerts, outages, etc.) may have
+    private static final long MAX_SAVED_TRIP_CACHE_AGE_MILLIS = 2000;
+
+    // when building in parallel, still build sequentially this often so we can keep comparing the two
+    private static final int SEQUENTIAL_BUILD_SAMPLE_INTERVAL = 10;
+
+    private final ConfigUtil configUtil;
     private final TrainService trainService;
     private final GtfsService gtfsService;
     private final TwitterService twitterService;
@@ -26,10 +38,17 @@ public class SavedTripService {
     private final MetricsService metricsService;
     private final TripRepository tripRepository;
 
-    private volatile Map<String, SavedTrip> savedTripMap;
+    private volatile SavedTripCache savedTripCache;
+    private Map<String, Double> savedTripPopularityMap;  // keyed by saved trip key, e.g. A01_B01; decays over time
+    private Map<String, TripStateHistory> tripStateHistoryMap;  // keyed by saved trip key, e.g. A01_B01
+    private ForkJoinPool savedTripBuilderPool;  // or null if we're building saved trips sequentially
+    private PipelineStageMetrics sequentialBuildMetrics;
+    private PipelineStageMetrics parallelBuildMetrics;
+    private int numFullBuilds;
 
     @Autowired
-    public SavedTripService(TrainService trainService, GtfsService gtfsService, TwitterService twitterService, RailIncidentService railIncidentService, ElevatorEscalatorService elevatorEscalatorService, MetricsService metricsService, TripRepository tripRepository) {
+    public SavedTripService(ConfigUtil configUtil, TrainService trainService, GtfsService gtfsService, TwitterService twitterService, RailIncidentService railIncidentService, ElevatorEscalatorService elevatorEscalatorService, MetricsService metricsService, TripRepository tripRepository) {
+        this.configUtil = configUtil;
         this.trainService = trainService;
         this.gtfsService = gtfsService;
         this.twitterService = twitterService;
@@ -43,260 +62,451 @@ public class SavedTripService {
     private void init() {
         logger.info("Initializing saved trip service...");
 
-        this.savedTripMap = new HashMap<>();
+        this.savedTripCache = null;
+        this.savedTripPopularityMap = new ConcurrentHashMap<>();
+        this.tripStateHistoryMap = new ConcurrentHashMap<>();
+        this.sequentialBuildMetrics = new PipelineStageMetrics("sequential");
+        this.parallelBuildMetrics = new PipelineStageMetrics("parallel");
+        this.numFullBuilds = 0;
+
+        int parallelism = this.configUtil.getSavedTripBuildParallelism();
+        if (parallelism > 1) {
+            this.savedTripBuilderPool = new ForkJoinPool(parallelism, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("MetroHeroSavedTripBuilder-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        } else {
+            this.savedTripBuilderPool = null;
+        }
+
+        // pick up where we left off before restarting
+        List<Object[]> recentTripStates = this.tripRepository.getRecentTripStates();
+        for (Object[] recentTripState : recentTripStates) {
+            String savedTripKey = String.join("_", (String) recentTripState[0], (String) recentTripState[1]);
+            Double predictedRideTime = (recentTripState[3] != null) ? ((Number) recentTripState[3]).doubleValue() : null;
+            Double expectedRideTime = (recentTripState[4] != null) ? ((Number) recentTripState[4]).doubleValue() : null;
+            this.tripStateHistoryMap.computeIfAbsent(savedTripKey, k -> new TripStateHistory()).add(((Date) recentTripState[2]).getTime(), predictedRideTime, expectedRideTime);
+        }
 
         logger.info("...train service initialized!");
     }
 
-    @Scheduled(fixedDelay = 2000)
-    private void updateSavedTripMap() {
-        logger.info("Updating saved trip map...");
+    @PreDestroy
+    private void shutdown() {
+        if (this.savedTripBuilderPool != null) {
+            this.savedTripBuilderPool.shutdownNow();
+        }
+    }
 
+    // returns null if there's no such trip, or if we have no train data to build it from yet
+    public SavedTrip getSavedTrip(String savedTripKey) {
+        SavedTripCache savedTripCache = getCurrentSavedTripCache();
+        if (savedTripCache == null) {
+            return null;
+        }
+
+        SavedTrip savedTrip = savedTripCache.getSavedTrip(savedTripKey);
+        if (savedTrip != null) {
+            this.savedTripPopularityMap.merge(savedTripKey, 1d, Double::sum);
+        }
+        return savedTrip;
+    }
+
+    private SavedTripCache getCurrentSavedTripCache() {
+        SavedTripCache savedTripCache = this.savedTripCache;
         if (this.trainService.isDataStale()) {
-            logger.warn("Failed to update saved trip map! Train data from WMATA is stale.");
+            // stick with whatever we had before the data went stale, if anything
+            if (savedTripCache == null) {
+                logger.warn("Failed to build saved trips! Train data from WMATA is stale.");
+            }
+            return savedTripCache;
+        }
+
+        SystemSnapshot systemSnapshot = this.trainService.getSystemSnapshot();
+        if (savedTripCache == null || savedTripCache.isOutdated(systemSnapshot)) {
+            synchronized (this) {
+                savedTripCache = this.savedTripCache;
+                if (savedTripCache == null || savedTripCache.isOutdated(systemSnapshot)) {
+                    savedTripCache = new SavedTripCache(systemSnapshot);
+                    this.savedTripCache = savedTripCache;
+                }
+            }
+        }
+        return savedTripCache;
+    }
+
+    // builds the most popular saved trips ahead of time so the people asking for them don't have to wait
+    @Scheduled(fixedDelay = 1000)   // every second
+    private void refreshPopularSavedTrips() {
+        int numPopularSavedTrips = this.configUtil.getNumPopularSavedTripsToRefresh();
+        if (numPopularSavedTrips <= 0 || this.savedTripPopularityMap.isEmpty()) {
             return;
         }
 
-        Map<String, SavedTrip> savedTripMap = new HashMap<>();
+        SavedTripCache savedTripCache = getCurrentSavedTripCache();
+        if (savedTripCache != null) {
+            List<String> popularSavedTripKeys = this.savedTripPopularityMap.entrySet().stream()
+                    .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                    .limit(numPopularSavedTrips)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+            if (this.savedTripBuilderPool != null) {
+                try {
+                    this.savedTripBuilderPool.submit(() -> popularSavedTripKeys.parallelStream().forEach(savedTripCache::getSavedTrip)).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    logger.error("Failed to refresh popular saved trips!", e.getCause());
+                }
+            } else {
+                for (String savedTripKey : popularSavedTripKeys) {
+                    savedTripCache.getSavedTrip(savedTripKey);
+                }
+            }
+        }
 
-        Calendar now = Calendar.getInstance();
-        for (String fromStationCode : this.trainService.getStationCodesSet()) {
-            for (String toStationCode : this.trainService.getStationCodesSet()) {
-                Double expectedRideTime = this.trainService.getStationToStationMedianDurationMap().get(String.join("_", fromStationCode, toStationCode));
-                List<String> tripStationCodes = this.trainService.getStationToStationTripMap().get(String.join("_", fromStationCode, toStationCode));
+        // halve the popularity of every trip roughly every minute so we follow what people are looking at now
+        this.savedTripPopularityMap.replaceAll((savedTripKey, popularity) -> popularity * 0.99d);
+        this.savedTripPopularityMap.values().removeIf(popularity -> popularity < 0.01d);
+    }
 
-                TrackCircuit fromStationTrackCircuit = this.trainService.getStationTrackCircuitMap().get(fromStationCode + "_1");  // HACK: it doesn't matter which track (1 or 2) we use here
-                TrackCircuit toStationTrackCircuit = this.trainService.getStationTrackCircuitMap().get(toStationCode + "_1");  // HACK: it doesn't matter which track (1 or 2) we use here
+    @Scheduled(fixedRate = 30000)  // every 30 seconds (independent of last run)
+    private void persistSavedTrips() {
+        if (this.trainService.isDataStale()) {
+            logger.warn("Failed to persist saved trips! Train data from WMATA is stale.");
+            return;
+        }
 
-                Set<String> lineCodes = new HashSet<>(fromStationTrackCircuit.getLineCodes());
-                lineCodes.retainAll(toStationTrackCircuit.getLineCodes());
+        // every trip is built from scratch here, regardless of whether anyone has asked for it,
+        // so we have a complete record of trip states (and so we never persist the same cached saved trip twice)
+        List<SavedTrip> savedTrips;
+        try {
+            savedTrips = buildAllSavedTrips(this.trainService.getSystemSnapshot(), Calendar.getInstance());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            logger.error("Failed to build saved trips to persist!", e.getCause());
+            return;
+        }
+        savedTrips.removeIf(savedTrip -> savedTrip.getExpectedRideTime() == null);
 
-                String fromStationName = StationUtil.getStationName(fromStationCode);
-                String toStationName = StationUtil.getStationName(toStationCode);
+        // the same samples we persist are what make up each trip's recent history
+        for (SavedTrip savedTrip : savedTrips) {
+            String savedTripKey = String.join("_", savedTrip.getFromStationCode(), savedTrip.getToStationCode());
+            this.tripStateHistoryMap.computeIfAbsent(savedTripKey, k -> new TripStateHistory()).add(savedTrip.getDate().getTimeInMillis(), savedTrip.getPredictedRideTime(), savedTrip.getExpectedRideTime());
+        }
 
-                if (expectedRideTime == null || tripStationCodes == null || tripStationCodes.isEmpty()) {
-                    String savedTripKey = String.join("_", fromStationCode, toStationCode);
-                    SavedTrip savedTrip = new SavedTrip(fromStationName, fromStationCode, toStationName, toStationCode, null, null, null, null, null, null, null, null, null, null, null, null, null, null, now, null);
-                    savedTripMap.put(savedTripKey, savedTrip);
-                    continue;
-                }
+        this.tripRepository.saveAll(savedTrips);
+    }
 
-                // use the train schedule to determine whether or not we should expect any trains to service this trip's origin station right now
-                boolean shouldExpectTrains = false;
-                for (String lineCode : Arrays.asList("RD", "OR", "SV", "BL", "YL", "GR")) {
-                    for (Integer directionNumber : Arrays.asList(1, 2)) {
-                        if (this.gtfsService.getExpectedTrainFrequency(lineCode, directionNumber, fromStationCode) != null) {
-                            shouldExpectTrains = true;
-                            break;
-                        }
+    // builds a saved trip for every pair of stations, in parallel across our fork-join pool if we have one
+    private List<SavedTrip> buildAllSavedTrips(SystemSnapshot systemSnapshot, Calendar now) throws InterruptedException, ExecutionException {
+        int numStations = this.trainService.getRailNetwork().getNumStations();
+        boolean shouldBuildInParallel = (this.savedTripBuilderPool != null) && (++this.numFullBuilds % SEQUENTIAL_BUILD_SAMPLE_INTERVAL != 0);
+
+        long startTime = System.nanoTime();
+        List<SavedTrip> savedTrips;
+        if (shouldBuildInParallel) {
+            // each pair only reads shared state, so pairs can be built in any order on any thread
+            savedTrips = this.savedTripBuilderPool.submit(() -> IntStream.range(0, numStations * numStations).parallel()
+                    .mapToObj(i -> buildSavedTrip(i / numStations, i % numStations, systemSnapshot, now))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toCollection(ArrayList::new))
+            ).get();
+        } else {
+            savedTrips = new ArrayList<>();
+            for (int fromStationId = 0; fromStationId < numStations; fromStationId++) {
+                for (int toStationId = 0; toStationId < numStations; toStationId++) {
+                    SavedTrip savedTrip = buildSavedTrip(fromStationId, toStationId, systemSnapshot, now);
+                    if (savedTrip != null) {
+                        savedTrips.add(savedTrip);
                     }
                 }
-                if (!shouldExpectTrains) {
-                    expectedRideTime = null;
-                } else {
-                    expectedRideTime -= 0.5d;  // 30 seconds from duration map for first station in trip - 30 seconds = no boarding time
-                }
+            }
+        }
+        long durationNanos = System.nanoTime() - startTime;
 
-                Set<String> possibleDestinationStationCodes = new HashSet<>();
-                for (Set<String> stationCodesPastFromStation : fromStationTrackCircuit.getChildStationCodes().values()) {
-                    if (stationCodesPastFromStation.contains(toStationCode)) {
-                        possibleDestinationStationCodes.addAll(stationCodesPastFromStation);
-                    }
-                }
-                for (Set<String> stationCodesPastFromStation : fromStationTrackCircuit.getParentStationCodes().values()) {
-                    if (stationCodesPastFromStation.contains(toStationCode)) {
-                        possibleDestinationStationCodes.addAll(stationCodesPastFromStation);
-                    }
-                }
-                for (Set<String> stationCodesPastToStation : toStationTrackCircuit.getChildStationCodes().values()) {
-                    if (!stationCodesPastToStation.contains(fromStationCode)) {
-                        possibleDestinationStationCodes.retainAll(stationCodesPastToStation);
-                    }
-                }
-                for (Set<String> stationCodesPastToStation : toStationTrackCircuit.getParentStationCodes().values()) {
-                    if (!stationCodesPastToStation.contains(fromStationCode)) {
-                        possibleDestinationStationCodes.retainAll(stationCodesPastToStation);
-                    }
-                }
-                possibleDestinationStationCodes.add(toStationCode);
+        PipelineStageMetrics buildMetrics = shouldBuildInParallel ? this.parallelBuildMetrics : this.sequentialBuildMetrics;
+        buildMetrics.record(durationNanos, -1);
+        logger.info("Built " + savedTrips.size() + " saved trips " + buildMetrics.getName() + " in " + TimeUnit.NANOSECONDS.toMillis(durationNanos) + "ms (sequential average: " + String.format("%.1f", this.sequentialBuildMetrics.getAverageDurationMillis()) + "ms, parallel average: " + String.format("%.1f", this.parallelBuildMetrics.getAverageDurationMillis()) + "ms)");
 
-                /////
-                // get time from last train that departed trip origin station platform
+        return savedTrips;
+    }
 
-                Double timeSinceLastTrain = null;
+    private SavedTrip buildSavedTrip(String savedTripKey, SystemSnapshot systemSnapshot) {
+        String[] savedTripKeyParts = savedTripKey.split("_");
+        if (savedTripKeyParts.length != 2) {
+            return null;
+        }
 
-                for (String possibleDestinationStationCode : possibleDestinationStationCodes) {
-                    for (String possibleLineCode : Arrays.asList("RD", "OR", "SV", "BL", "YL", "GR")) {
-                        DepartureInfo latestDepartureInfo = this.trainService.getLastStationDepartureMap().get(String.join("_", fromStationCode, possibleLineCode, possibleDestinationStationCode));
-                        if (latestDepartureInfo == null) {
-                            continue;
-                        }
+        RailNetwork railNetwork = this.trainService.getRailNetwork();
+        int fromStationId = railNetwork.getStationId(savedTripKeyParts[0]);
+        int toStationId = railNetwork.getStationId(savedTripKeyParts[1]);
+        if (fromStationId == RailNetwork.NO_ID || toStationId == RailNetwork.NO_ID) {
+            return null;
+        }
 
-                        double timeSinceLastTrainSoFar = ((now.getTimeInMillis() - latestDepartureInfo.getDepartureTime().getTimeInMillis()) / 1000d) / 60d; // milliseconds -> minutes
-                        if (timeSinceLastTrain == null || timeSinceLastTrainSoFar < timeSinceLastTrain) {
-                            timeSinceLastTrain = timeSinceLastTrainSoFar;
-                        }
-                    }
-                }
+        return buildSavedTrip(fromStationId, toStationId, systemSnapshot, Calendar.getInstance());
+    }
 
-                /////
-                // get time until next train arrives at trip origin station platform
-                // and all next train predictions from origin station platform that will service this trip
+    private SavedTrip buildSavedTrip(int fromStationId, int toStationId, SystemSnapshot systemSnapshot, Calendar now) {
+        RailNetwork railNetwork = this.trainService.getRailNetwork();
+        StationToStationPathIndex stationToStationPathIndex = this.trainService.getStationToStationPathIndex();
 
-                Double timeUntilNextTrain = null;
-                List<TrainStatus> filteredFromStationTrainStatuses = null;
-                Integer tripDirection = null;
+        TrackCircuit fromStationTrackCircuit = railNetwork.getStationTrackCircuit(fromStationId, 1);  // HACK: it doesn't matter which track (1 or 2) we use here
+        TrackCircuit toStationTrackCircuit = railNetwork.getStationTrackCircuit(toStationId, 1);  // HACK: it doesn't matter which track (1 or 2) we use here
+        if (fromStationTrackCircuit == null || toStationTrackCircuit == null) {
+            return null;
+        }
 
-                List<TrainStatus> fromStationTrainStatuses = this.trainService.getStationTrainStatusesMap().get(fromStationCode); // already sorted by ETA in ascending order
-                if (fromStationTrainStatuses != null) {
-                    filteredFromStationTrainStatuses = new ArrayList<>();
+        String fromStationCode = railNetwork.getStationCode(fromStationId);
+        String toStationCode = railNetwork.getStationCode(toStationId);
 
-                    for (TrainStatus fromStationTrainStatus : fromStationTrainStatuses) {
-                        if (possibleDestinationStationCodes.contains(fromStationTrainStatus.getDestinationCode())) {
-                            if (tripDirection == null) {
-                                tripDirection = fromStationTrainStatus.getDirectionNumber();
-                            }
+        double medianDuration = stationToStationPathIndex.getMedianDuration(fromStationId, toStationId);
+        Double expectedRideTime = !Double.isNaN(medianDuration) ? medianDuration : null;
+        String[] tripStationCodesArray = stationToStationPathIndex.getTripStationCodes(fromStationId, toStationId);
+        List<String> tripStationCodes = (tripStationCodesArray != null) ? Arrays.asList(tripStationCodesArray) : null;
 
-                            if (timeUntilNextTrain == null && !fromStationTrainStatus.isScheduled()) {
-                                timeUntilNextTrain = fromStationTrainStatus.getMinutesAway();
-                            }
+        Set<String> lineCodes = new HashSet<>(fromStationTrackCircuit.getLineCodes());
+        lineCodes.retainAll(toStationTrackCircuit.getLineCodes());
 
-                            filteredFromStationTrainStatuses.add(fromStationTrainStatus);
-                            lineCodes.add(fromStationTrainStatus.getLine());
-                        }
-                    }
+        String fromStationName = railNetwork.getStationName(fromStationId);
+        String toStationName = railNetwork.getStationName(toStationId);
+
+        if (expectedRideTime == null || tripStationCodes == null || tripStationCodes.isEmpty()) {
+            return new SavedTrip(fromStationName, fromStationCode, toStationName, toStationCode, null, null, null, null, null, null, null, null, null, null, null, null, null, null, now, null);
+        }
+
+        // use the train schedule to determine whether or not we should expect any trains to service this trip's origin station right now
+        boolean shouldExpectTrains = false;
+        for (String lineCode : Arrays.asList("RD", "OR", "SV", "BL", "YL", "GR")) {
+            for (Integer directionNumber : Arrays.asList(1, 2)) {
+                if (this.gtfsService.getExpectedTrainFrequency(lineCode, directionNumber, fromStationCode) != null) {
+                    shouldExpectTrains = true;
+                    break;
                 }
+            }
+        }
+        if (!shouldExpectTrains) {
+            expectedRideTime = null;
+        } else {
+            expectedRideTime -= 0.5d;  // 30 seconds from duration map for first station in trip - 30 seconds = no boarding time
+        }
+
+        Set<String> possibleDestinationStationCodes = new HashSet<>();
+        for (Set<String> stationCodesPastFromStation : fromStationTrackCircuit.getChildStationCodes().values()) {
+            if (stationCodesPastFromStation.contains(toStationCode)) {
+                possibleDestinationStationCodes.addAll(stationCodesPastFromStation);
+            }
+        }
+        for (Set<String> stationCodesPastFromStation : fromStationTrackCircuit.getParentStationCodes().values()) {
+            if (stationCodesPastFromStation.contains(toStationCode)) {
+                possibleDestinationStationCodes.addAll(stationCodesPastFromStation);
+            }
+        }
+        for (Set<String> stationCodesPastToStation : toStationTrackCircuit.getChildStationCodes().values()) {
+            if (!stationCodesPastToStation.contains(fromStationCode)) {
+                possibleDestinationStationCodes.retainAll(stationCodesPastToStation);
+            }
+        }
+        for (Set<String> stationCodesPastToStation : toStationTrackCircuit.getParentStationCodes().values()) {
+            if (!stationCodesPastToStation.contains(fromStationCode)) {
+                possibleDestinationStationCodes.retainAll(stationCodesPastToStation);
+            }
+        }
+        possibleDestinationStationCodes.add(toStationCode);
+
+        /////
+        // get time from last train that departed trip origin station platform
 
-                /////
-                // get predicted trip time
+        Double timeSinceLastTrain = null;
 
-                Double predictedRideTime = this.trainService.getPredictedRideTime(now, fromStationCode, toStationCode, null);
+        for (String possibleDestinationStationCode : possibleDestinationStationCodes) {
+            for (String possibleLineCode : Arrays.asList("RD", "OR", "SV", "BL", "YL", "GR")) {
+                DepartureInfo latestDepartureInfo = this.trainService.getLastStationDepartureMap().get(String.join("_", fromStationCode, possibleLineCode, possibleDestinationStationCode));
+                if (latestDepartureInfo == null) {
+                    continue;
+                }
+
+                double timeSinceLastTrainSoFar = ((now.getTimeInMillis() - latestDepartureInfo.getDepartureTime().getTimeInMillis()) / 1000d) / 60d; // milliseconds -> minutes
+                if (timeSinceLastTrain == null || timeSinceLastTrainSoFar < timeSinceLastTrain) {
+                    timeSinceLastTrain = timeSinceLastTrainSoFar;
+                }
+            }
+        }
 
-                /////
-                // get relevant MetroAlerts
+        /////
+        // get time until next train arrives at trip origin station platform
+        // and all next train predictions from origin station platform that will service this trip
 
-                List<RailIncident> tripMetroAlertsSorted = null;
+        Double timeUntilNextTrain = null;
+        List<TrainStatus> filteredFromStationTrainStatuses = null;
+        Integer tripDirection = null;
 
-                Set<RailIncident> tripMetroAlerts = new HashSet<>();
+        List<TrainStatus> fromStationTrainStatuses = systemSnapshot.getStationTrainStatusesMap().get(fromStationCode); // already sorted by ETA in ascending order
+        if (fromStationTrainStatuses != null) {
+            filteredFromStationTrainStatuses = new ArrayList<>();
 
-                // by lines that are scheduled to service this trip
-                for (String lineCode : lineCodes) {
-                    List<RailIncident> metroAlerts = this.railIncidentService.getRailIncidentsByLine().get(lineCode);
-                    if (metroAlerts != null && !metroAlerts.isEmpty()) {
-                        tripMetroAlerts.addAll(metroAlerts);
+            for (TrainStatus fromStationTrainStatus : fromStationTrainStatuses) {
+                if (possibleDestinationStationCodes.contains(fromStationTrainStatus.getDestinationCode())) {
+                    if (tripDirection == null) {
+                        tripDirection = fromStationTrainStatus.getDirectionNumber();
                     }
-                }
 
-                // by stations visited during the trip
-                for (String stationCode : tripStationCodes) {
-                    List<RailIncident> metroAlerts = this.railIncidentService.getStationRailIncidentsMap().get(stationCode);
-                    if (metroAlerts != null && !metroAlerts.isEmpty()) {
-                        tripMetroAlerts.addAll(metroAlerts);
+                    if (timeUntilNextTrain == null && !fromStationTrainStatus.isScheduled()) {
+                        timeUntilNextTrain = fromStationTrainStatus.getMinutesAway();
                     }
-                }
 
-                if (!tripMetroAlerts.isEmpty()) {
-                    tripMetroAlertsSorted = new ArrayList<>(tripMetroAlerts);
-                    tripMetroAlertsSorted.sort(RailIncidentService.getRailIncidentDescendingOrderComparator());
+                    filteredFromStationTrainStatuses.add(fromStationTrainStatus);
+                    lineCodes.add(fromStationTrainStatus.getLine());
                 }
+            }
+        }
 
-                /////
-                // get relevant tweets
+        /////
+        // get predicted trip time
 
-                List<StationProblem> relevantTweets = new ArrayList<>();
+        Double predictedRideTime = this.trainService.getPredictedRideTime(now, fromStationCode, toStationCode, null);
 
-                List<StationProblem> mostRecentTweets = this.twitterService.getMostRecentTweets();  // already sorted by tweet time in descending order
-                if (mostRecentTweets != null) {
-                    for (StationProblem mostRecentTweet : mostRecentTweets) {
-                        boolean isRelevant = false;
+        /////
+        // get relevant MetroAlerts
 
-                        for (String lineCode : mostRecentTweet.getLineCodes()) {
-                            if (lineCodes.contains(lineCode)) {
-                                isRelevant = true;
-                                break;
-                            }
-                        }
-                        if (!isRelevant) {
-                            for (String stationCode : mostRecentTweet.getStationCodes()) {
-                                if (tripStationCodes.contains(stationCode)) {
-                                    isRelevant = true;
-                                    break;
-                                }
-                            }
-                        }
+        List<RailIncident> tripMetroAlertsSorted = null;
 
-                        if (isRelevant) {
-                            relevantTweets.add(mostRecentTweet);
-                        }
-                    }
-                }
+        Set<RailIncident> tripMetroAlerts = new HashSet<>();
 
-                if (relevantTweets.isEmpty()) {
-                    relevantTweets = null;
-                }
+        // by lines that are scheduled to service this trip
+        for (String lineCode : lineCodes) {
+            List<RailIncident> metroAlerts = this.railIncidentService.getRailIncidentsByLine().get(lineCode);
+            if (metroAlerts != null && !metroAlerts.isEmpty()) {
+                tripMetroAlerts.addAll(metroAlerts);
+            }
+        }
+
+        // by stations visited during the trip
+        for (String stationCode : tripStationCodes) {
+            List<RailIncident> metroAlerts = this.railIncidentService.getStationRailIncidentsMap().get(stationCode);
+            if (metroAlerts != null && !metroAlerts.isEmpty()) {
+                tripMetroAlerts.addAll(metroAlerts);
+            }
+        }
 
-                /////
-                // get relevant service gaps
+        if (!tripMetroAlerts.isEmpty()) {
+            tripMetroAlertsSorted = new ArrayList<>(tripMetroAlerts);
+            tripMetroAlertsSorted.sort(RailIncidentService.getRailIncidentDescendingOrderComparator());
+        }
 
-                List<ServiceGap> relevantServiceGaps = new ArrayList<>();
+        /////
+        // get relevant tweets
 
-                if (tripDirection != null && this.metricsService.getSystemMetrics() != null && this.metricsService.getSystemMetrics().getLineMetricsByLine() != null) {
-                    for (SystemMetrics.LineMetrics lineMetrics : this.metricsService.getSystemMetrics().getLineMetricsByLine().values()) {
-                        if (lineMetrics.getServiceGaps() != null) {
-                            for (ServiceGap serviceGap : lineMetrics.getServiceGaps()) {
-                                if (!tripDirection.equals(serviceGap.getDirectionNumber())) {
-                                    continue;
-                                }
+        List<StationProblem> relevantTweets = new ArrayList<>();
 
-                                Set<String> serviceGapStationCodes = this.trainService.getStationCodes(serviceGap.getFromStationCode(), serviceGap.getToStationCode());
-                                serviceGapStationCodes.retainAll(tripStationCodes);
-                                if (serviceGapStationCodes.isEmpty()) {
-                                    continue;
-                                }
+        List<StationProblem> mostRecentTweets = this.twitterService.getMostRecentTweets();  // already sorted by tweet time in descending order
+        if (mostRecentTweets != null) {
+            for (StationProblem mostRecentTweet : mostRecentTweets) {
+                boolean isRelevant = false;
 
-                                relevantServiceGaps.add(serviceGap);
-                            }
+                for (String lineCode : mostRecentTweet.getLineCodes()) {
+                    if (lineCodes.contains(lineCode)) {
+                        isRelevant = true;
+                        break;
+                    }
+                }
+                if (!isRelevant) {
+                    for (String stationCode : mostRecentTweet.getStationCodes()) {
+                        if (tripStationCodes.contains(stationCode)) {
+                            isRelevant = true;
+                            break;
                         }
                     }
                 }
 
-                /////
-                // get elevator and escalator outages at origin and destination stations
+                if (isRelevant) {
+                    relevantTweets.add(mostRecentTweet);
+                }
+            }
+        }
+
+        if (relevantTweets.isEmpty()) {
+            relevantTweets = null;
+        }
+
+        /////
+        // get relevant service gaps
 
-                List<ElevatorEscalatorOutage> fromStationElevatorOutages = this.elevatorEscalatorService.getElevatorOutagesByStation().get(fromStationCode);
-                List<ElevatorEscalatorOutage> toStationElevatorOutages = this.elevatorEscalatorService.getElevatorOutagesByStation().get(toStationCode);
+        List<ServiceGap> relevantServiceGaps = new ArrayList<>();
 
-                List<ElevatorEscalatorOutage> fromStationEscalatorOutages = this.elevatorEscalatorService.getEscalatorOutagesByStation().get(fromStationCode);
-                List<ElevatorEscalatorOutage> toStationEscalatorOutages = this.elevatorEscalatorService.getEscalatorOutagesByStation().get(toStationCode);
+        if (tripDirection != null && this.metricsService.getSystemMetrics() != null && this.metricsService.getSystemMetrics().getLineMetricsByLine() != null) {
+            for (SystemMetrics.LineMetrics lineMetrics : this.metricsService.getSystemMetrics().getLineMetricsByLine().values()) {
+                if (lineMetrics.getServiceGaps() != null) {
+                    for (ServiceGap serviceGap : lineMetrics.getServiceGaps()) {
+                        if (!tripDirection.equals(serviceGap.getDirectionNumber())) {
+                            continue;
+                        }
 
-                /////
+                        Set<String> serviceGapStationCodes = this.trainService.getStationCodes(serviceGap.getFromStationCode(), serviceGap.getToStationCode());
+                        serviceGapStationCodes.retainAll(tripStationCodes);
+                        if (serviceGapStationCodes.isEmpty()) {
+                            continue;
+                        }
 
-                String savedTripKey = String.join("_", fromStationCode, toStationCode);
-                SavedTrip savedTrip = new SavedTrip(fromStationName, fromStationCode, toStationName, toStationCode, tripStationCodes, predictedRideTime, expectedRideTime, lineCodes, timeSinceLastTrain, timeUntilNextTrain, tripMetroAlertsSorted, relevantTweets, fromStationElevatorOutages, toStationElevatorOutages, fromStationEscalatorOutages, toStationEscalatorOutages, filteredFromStationTrainStatuses, relevantServiceGaps, now, getRecentTripStateData(fromStationCode, toStationCode));
-                savedTripMap.put(savedTripKey, savedTrip);
+                        relevantServiceGaps.add(serviceGap);
+                    }
+                }
             }
         }
 
-        this.savedTripMap = savedTripMap;
+        /////
+        // get elevator and escalator outages at origin and destination stations
+
+        List<ElevatorEscalatorOutage> fromStationElevatorOutages = this.elevatorEscalatorService.getElevatorOutagesByStation().get(fromStationCode);
+        List<ElevatorEscalatorOutage> toStationElevatorOutages = this.elevatorEscalatorService.getElevatorOutagesByStation().get(toStationCode);
+
+        List<ElevatorEscalatorOutage> fromStationEscalatorOutages = this.elevatorEscalatorService.getEscalatorOutagesByStation().get(fromStationCode);
+        List<ElevatorEscalatorOutage> toStationEscalatorOutages = this.elevatorEscalatorService.getEscalatorOutagesByStation().get(toStationCode);
+
+        /////
 
-        logger.info("...successfully updated saved trip map!");
+        String savedTripKey = String.join("_", fromStationCode, toStationCode);
+        return new SavedTrip(fromStationName, fromStationCode, toStationName, toStationCode, tripStationCodes, predictedRideTime, expectedRideTime, lineCodes, timeSinceLastTrain, timeUntilNextTrain, tripMetroAlertsSorted, relevantTweets, fromStationElevatorOutages, toStationElevatorOutages, fromStationEscalatorOutages, toStationEscalatorOutages, filteredFromStationTrainStatuses, relevantServiceGaps, now, getRecentTripStateData(savedTripKey, now));
     }
 
-    @Scheduled(fixedRate = 30000)  // every 30 seconds (independent of last run)
-    private void persistSavedTripMap() {
-        this.tripRepository.saveAll(this.savedTripMap.values().stream().filter(st -> st.getExpectedRideTime() != null).collect(Collectors.toList()));
+    // how long it takes to build every saved trip sequentially vs. in parallel
+    public List<PipelineStageMetrics> getSavedTripBuildMetrics() {
+        return Arrays.asList(this.sequentialBuildMetrics, this.parallelBuildMetrics);
     }
 
-    private RecentTripStateData getRecentTripStateData(String fromStationCode, String toStationCode) {
-        List<Object[]> results = this.tripRepository.getRecentData(fromStationCode, toStationCode);
-        if (results == null || results.size() != 1) {
-            return null;
+    private RecentTripStateData getRecentTripStateData(String savedTripKey, Calendar now) {
+        TripStateHistory tripStateHistory = this.tripStateHistoryMap.get(savedTripKey);
+        if (tripStateHistory == null) {
+            return new RecentTripStateData(null, null, null);
         }
 
-        return new RecentTripStateData(results.get(0));
+        return tripStateHistory.getRecentData(now.getTimeInMillis());
     }
 
-    public Map<String, SavedTrip> getSavedTripMap() {
-        return savedTripMap;
+    // every saved trip built from one system snapshot
+    private class SavedTripCache {
+        private final SystemSnapshot systemSnapshot;
+        private final long createdTimeMillis;
+        private final Map<String, SavedTrip> savedTripMap;   // keyed by saved trip key, e.g. A01_B01
+
+        SavedTripCache(SystemSnapshot systemSnapshot) {
+            this.systemSnapshot = systemSnapshot;
+            this.createdTimeMillis = System.currentTimeMillis();
+            this.savedTripMap = new ConcurrentHashMap<>();
+        }
+
+        boolean isOutdated(SystemSnapshot latestSystemSnapshot) {
+            return (this.systemSnapshot.getVersion() != latestSystemSnapshot.getVersion()) || ((System.currentTimeMillis() - this.createdTimeMillis) > MAX_SAVED_TRIP_CACHE_AGE_MILLIS);
+        }
+
+        // builds the saved trip if it hasn't been built yet; concurrent requests for the same trip wait for the same build
+        SavedTrip getSavedTrip(String savedTripKey) {
+            return this.savedTripMap.computeIfAbsent(savedTripKey, k -> buildSavedTrip(k, this.systemSnapshot));
+        }
     }
 }
@@ -15,6 +15,7 @@ import javax.annotation.PostConstruct;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class StationTaggingService {
@@ -27,6 +28,7 @@ public class StationTaggingService {
     private Map<String /* userId */, Set<StationTag>> tagsByUser;
     private AtomicLongMap<String /* stationCode */> numPositiveTagsByStation;
     private AtomicLongMap<String /* stationCode */> numNegativeTagsByStation;
+    private final AtomicLong tagCountsVersion = new AtomicLong();   // increases every time any station's tag counts change
 
     private final StationTagRepository stationTagRepository;
 
@@ -108,6 +110,8 @@ public class StationTaggingService {
                 } else {
                     this.numNegativeTagsByStation.getAndIncrement(stationCode);
                 }
+
+                this.tagCountsVersion.incrementAndGet();
             }
         }
 
@@ -140,6 +144,8 @@ public class StationTaggingService {
                 } else {
                     this.numNegativeTagsByStation.getAndDecrement(stationCode);
                 }
+
+                this.tagCountsVersion.incrementAndGet();
             }
         }
 
@@ -192,6 +198,8 @@ public class StationTaggingService {
                             this.numNegativeTagsByStation.getAndDecrement(stationCode);
                         }
 
+                        this.tagCountsVersion.incrementAndGet();
+
                         tagsIterator.remove();
                     }
                 }
@@ -216,6 +224,10 @@ public class StationTaggingService {
         return numNegativeTagsByStation.asMap();
     }
 
+    public long getTagCountsVersion() {
+        return tagCountsVersion.get();
+    }
+
     public Map<String, StationTagReport> getStationTagReports() {
         Map<String, StationTagReport> stationTagReports = new HashMap<>(this.tagsByTypeByStation.size());
         for (String stationCode : this.tagsByTypeByStation.keySet()) {
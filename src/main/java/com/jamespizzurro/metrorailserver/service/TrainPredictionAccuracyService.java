@@ -2,6 +2,8 @@ package com.jamespizzurro.metrorailserver.service;
 
 import com.jamespizzurro.metrorailserver.ConfigUtil;
 import com.jamespizzurro.metrorailserver.NetworkUtil;
+import com.jamespizzurro.metrorailserver.RequestHandler;
+import com.jamespizzurro.metrorailserver.domain.SystemSnapshot;
 import com.jamespizzurro.metrorailserver.domain.TrainPredictionAccuracyMeasurement;
 import com.jamespizzurro.metrorailserver.domain.TrainStatus;
 import com.jamespizzurro.metrorailserver.repository.TrainPredictionAccuracyMeasurementRepository;
@@ -13,8 +15,6 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 
 import java.util.*;
 
@@ -31,6 +31,7 @@ public class TrainPredictionAccuracyService {
     }
 
     private ConfigUtil configUtil;
+    private RequestHandler requestHandler;
     private TrainService trainService;
     private TrainPredictionAccuracyMeasurementRepository trainPredictionAccuracyMeasurementRepository;
 
@@ -38,8 +39,9 @@ public class TrainPredictionAccuracyService {
     private HashMap<String, List<TrainPrediction>> mhTrainPredictionsByPredictionOriginStationAndLineAndDestination;
 
     @Autowired
-    public TrainPredictionAccuracyService(ConfigUtil configUtil, TrainService trainService, TrainPredictionAccuracyMeasurementRepository trainPredictionAccuracyMeasurementRepository) {
+    public TrainPredictionAccuracyService(ConfigUtil configUtil, RequestHandler requestHandler, TrainService trainService, TrainPredictionAccuracyMeasurementRepository trainPredictionAccuracyMeasurementRepository) {
         this.configUtil = configUtil;
+        this.requestHandler = requestHandler;
         this.trainService = trainService;
         this.trainPredictionAccuracyMeasurementRepository = trainPredictionAccuracyMeasurementRepository;
 
@@ -54,16 +56,9 @@ public class TrainPredictionAccuracyService {
         }
 
         ResponseEntity<WmataTrainPredictions> response;
-        String url = "https://api.wmata.com/beta/StationPrediction.svc/json/GetPrediction/All";
+        String url = this.configUtil.getWmataTrainPredictionsApiUrl();
         HttpEntity<String> requestEntity = NetworkUtil.createNewHttpEntity(this.configUtil.getWmataApiKey());
-        RestTemplate restTemplate;
-        try {
-            restTemplate = NetworkUtil.createNewRestTemplate(true);
-            response = restTemplate.exchange(url, HttpMethod.GET, requestEntity, WmataTrainPredictions.class);
-        } catch (RestClientException e) {
-            restTemplate = NetworkUtil.createNewRestTemplate(false);
-            response = restTemplate.exchange(url, HttpMethod.GET, requestEntity, WmataTrainPredictions.class);
-        }
+        response = this.requestHandler.getRestTemplate(RequestHandler.Feed.TRAIN_PREDICTIONS).exchange(url, HttpMethod.GET, requestEntity, WmataTrainPredictions.class);
 
         Calendar now = Calendar.getInstance();
 
@@ -71,7 +66,8 @@ public class TrainPredictionAccuracyService {
             return;
         }
 
-        if (this.trainService.getStationTrainStatusesMap() == null || this.trainService.getStationTrainStatusesMap().isEmpty()) {
+        SystemSnapshot systemSnapshot = this.trainService.getSystemSnapshot();
+        if (systemSnapshot.getStationTrainStatusesMap().isEmpty()) {
             return;
         }
 
@@ -108,11 +104,11 @@ public class TrainPredictionAccuracyService {
         // fetch and parse MH predictions
         Set<String> parsedMhPredictionOriginStationAndLineAndDestinationKeys = new HashSet<>();
         for (String stationCode : this.trainService.getStationCodesSet()) {
-            if (this.trainService.getStationTrainStatusesMap().get(stationCode) == null) {
+            if (systemSnapshot.getStationTrainStatusesMap().get(stationCode) == null) {
                 continue;
             }
 
-            for (TrainStatus trainStatus : this.trainService.getStationTrainStatusesMap().get(stationCode)) {
+            for (TrainStatus trainStatus : systemSnapshot.getStationTrainStatusesMap().get(stationCode)) {
                 TrainPrediction mhTrainPrediction = new TrainPrediction(trainStatus, now, stationCode);
 
                 if (!isTrainInRevenueService(mhTrainPrediction)) {
@@ -15,15 +15,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.http.*;
-import org.springframework.http.converter.json.GsonHttpMessageConverter;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.*;
 import java.math.BigDecimal;
 import java.net.URLEncoder;
@@ -31,29 +29,39 @@ import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 
 @Service
 public class TrainService {
 
     private static final Logger logger = LoggerFactory.getLogger(TrainService.class);
 
+    private static final long MAX_UNUSED_GIS_TRAIN_DATA_AGE_NANOS = TimeUnit.SECONDS.toNanos(5);    // about two updates' worth
+
+    // the stages of each update, in order
+    public enum UpdateStage {
+        FETCH,
+        DECODE,
+        ENRICH,
+        TRACK,
+        DERIVE,
+        PUBLISH,
+        PERSIST
+    }
+
     private final ConfigUtil configUtil;
+    private final RequestHandler requestHandler;
     private final TrainStatusRepository trainStatusRepository;
     private final TrainTaggingService trainTaggingService;
     private final StationToStationTravelTimeRepository stationToStationTravelTimeRepository;
     private final StationToStationTripRepository stationToStationTripRepository;
     private final TrackCircuitInfoRepository trackCircuitInfoRepository;
-    private final TripRepository tripRepository;
     private final GtfsService gtfsService;
-    private final TrainOffloadRepository trainOffloadRepository;
-    private final TrainDisappearanceRepository trainDisappearanceRepository;
-    private final TrainExpressedStationEventRepository trainExpressedStationEventRepository;
-    private final DuplicateTrainEventRepository duplicateTrainEventRepository;
-    private final TrainDepartureRepository trainDepartureRepository;
     private final TwitterBotService twitterBotService;
+    private final WriteBehindPersistenceService writeBehindPersistenceService;
     private final DestinationCodeMappingRepository destinationCodeMappingRepository;
     private final TrackCircuitService trackCircuitService;
     private final TwitterService twitterService;
@@ -61,17 +69,20 @@ public class TrainService {
 
     // variables exposed outside of this service
     // (these still don't necessarily have to be volatile or thread safe; variables that are only ever modified before any other thread could possibly access them, e.g. during initialization, don't need to be)
-    private volatile Map<String, TrainStatus> trainStatusesMap;
-    private volatile Map<String, List<TrainStatus>> stationTrainStatusesMap;
-    private volatile Map<String, SystemInfo.BetweenStationDelayStatus> betweenStationDelayStatuses;
+    private volatile SystemSnapshot systemSnapshot;
+    private final List<Consumer<SystemSnapshot>> systemSnapshotListeners = new CopyOnWriteArrayList<>();
     private Set<String> stationCodesSet;
     private Map<String, TrackCircuit> stationTrackCircuitMap;
+    private RailNetwork railNetwork;
+    private TrackCircuitDistanceIndex trackCircuitDistanceIndex;
+    private volatile int numDuplicateTrainCandidateComparisons;   // in the last update
+    private Map<UpdateStage, PipelineStageMetrics> updateStageMetrics;
     private Map<String /* departingStationCode_lineCode_destinationStationCode */, DepartureInfo> lastStationDepartureMap;
     private Map<String /* departingStationCode_lineCode_directionNumber */, ArrivalInfo> lastStationArrivalMap;
     private volatile Map<String, Double> stationToStationMedianDurationMap;
     private volatile Map<String, List<String>> stationToStationTripMap;
+    private volatile StationToStationPathIndex stationToStationPathIndex;
     private Set<Integer> terminalStationTrackCircuitIdSet;
-    private AtomicLong lastUpdatedTimestamp;  // in epoch seconds
     private volatile List<TrainStatusForMareyDiagram> trainDataOverLastHour;
 
     // variables not exposed outside of this service
@@ -84,6 +95,15 @@ public class TrainService {
     private volatile Map<String, List<TrainStatus>> terminalStationScheduledTrainStatusesMap;
     private volatile Map<DestinationCodeMappingPrimaryKey, DestinationCodeMapping> destinationCodeMap;
     private TrainPositions lastTrainPositions;
+    private ExecutorService gisTrainDataFetcher;
+    private byte[] lastTrainPositionsBody;  // decompressed
+    private String lastTrainPositionsETag;
+    private long lastTrainPositionsLastModified;
+    private volatile long numSkippedUnchangedUpdates;
+    private TrainPositions spareTrainPositions;    // decoded into by the next update, then swapped with lastTrainPositions if they've changed
+    private Future<List<ProcessedGISTrainData>> gisTrainDataFuture;   // the latest request for GIS train data, which may still be in flight, or null if it's been used
+    private long gisTrainDataRequestTime;
+    private volatile long numLateGISTrainDataResponses;
     private BiMap<String, String> keptTrainIdByRemovedTrainId;
     private Map<String /* fromStationCode_toStationCode */, Double> lastStationToStationTripTimeMap;
     private Map<String /* fromStationCode_toStationCode */, Double> lastStationToStationTimeAtStationMap;
@@ -91,23 +111,20 @@ public class TrainService {
     private Map<String, String> crowdingStatusByStation;
     private TrainPredictions previousTrainPredictions;
     private Map<String, String> derivedLineCodeByDestinationId;
+    private WmataFeedDecoder wmataFeedDecoder;
 
     @Autowired
-    public TrainService(ConfigUtil configUtil, TrainStatusRepository trainStatusRepository, TrainTaggingService trainTaggingService, StationToStationTravelTimeRepository stationToStationTravelTimeRepository, StationToStationTripRepository stationToStationTripRepository, TrackCircuitInfoRepository trackCircuitInfoRepository, TripRepository tripRepository, GtfsService gtfsService, TrainOffloadRepository trainOffloadRepository, TrainDisappearanceRepository trainDisappearanceRepository, TrainExpressedStationEventRepository trainExpressedStationEventRepository, DuplicateTrainEventRepository duplicateTrainEventRepository, TrainDepartureRepository trainDepartureRepository, TwitterBotService twitterBotService, DestinationCodeMappingRepository destinationCodeMappingRepository, TrackCircuitService trackCircuitService, @Lazy TwitterService twitterService, NamedParameterJdbcTemplate namedParameterJdbcTemplate) {
+    public TrainService(ConfigUtil configUtil, RequestHandler requestHandler, TrainStatusRepository trainStatusRepository, TrainTaggingService trainTaggingService, StationToStationTravelTimeRepository stationToStationTravelTimeRepository, StationToStationTripRepository stationToStationTripRepository, TrackCircuitInfoRepository trackCircuitInfoRepository, GtfsService gtfsService, TwitterBotService twitterBotService, WriteBehindPersistenceService writeBehindPersistenceService, DestinationCodeMappingRepository destinationCodeMappingRepository, TrackCircuitService trackCircuitService, @Lazy TwitterService twitterService, NamedParameterJdbcTemplate namedParameterJdbcTemplate) {
         this.configUtil = configUtil;
+        this.requestHandler = requestHandler;
         this.trainStatusRepository = trainStatusRepository;
         this.trainTaggingService = trainTaggingService;
         this.stationToStationTravelTimeRepository = stationToStationTravelTimeRepository;
         this.stationToStationTripRepository  = stationToStationTripRepository;
         this.trackCircuitInfoRepository = trackCircuitInfoRepository;
-        this.tripRepository = tripRepository;
         this.gtfsService = gtfsService;
-        this.trainOffloadRepository = trainOffloadRepository;
-        this.trainDisappearanceRepository = trainDisappearanceRepository;
-        this.trainExpressedStationEventRepository = trainExpressedStationEventRepository;
-        this.duplicateTrainEventRepository = duplicateTrainEventRepository;
-        this.trainDepartureRepository = trainDepartureRepository;
         this.twitterBotService = twitterBotService;
+        this.writeBehindPersistenceService = writeBehindPersistenceService;
         this.destinationCodeMappingRepository = destinationCodeMappingRepository;
         this.trackCircuitService = trackCircuitService;
         this.twitterService = twitterService;
@@ -118,9 +135,7 @@ public class TrainService {
     private void init() {
         logger.info("Initializing train service...");
 
-        this.trainStatusesMap = new HashMap<>();
-        this.stationTrainStatusesMap = new HashMap<>();
-        this.betweenStationDelayStatuses = new HashMap<>();
+        this.systemSnapshot = SystemSnapshot.empty();
         this.stationCodesSet = buildStationCodesSet();
         this.lastStationDepartureMap = new ConcurrentHashMap<>();
         this.lastStationArrivalMap = new ConcurrentHashMap<>();
@@ -128,8 +143,12 @@ public class TrainService {
         this.lastStationToStationTimeAtStationMap = new ConcurrentHashMap<>();
         this.lastStationToStationTripTimeCalendarMap = new ConcurrentHashMap<>();
         this.crowdingStatusByStation = new ConcurrentHashMap<>(StationUtil.getStationCodeMap().size());
-        this.lastUpdatedTimestamp = null;
         this.trainDataOverLastHour = null;
+        this.updateStageMetrics = new EnumMap<>(UpdateStage.class);
+        for (UpdateStage stage : UpdateStage.values()) {
+            this.updateStageMetrics.put(stage, new PipelineStageMetrics(stage.name().toLowerCase()));
+        }
+        this.wmataFeedDecoder = new WmataFeedDecoder();
 
         this.trackCircuitService.updateTrackCircuitLocationData();  // async; this will take a while...
 
@@ -137,18 +156,38 @@ public class TrainService {
         this.trackCircuitMap = buildTrackCircuitMap();
         this.stationToStationCircuitsMap = buildStationToStationCircuitsMap();
         this.stationTrackCircuitMap = buildStationTrackCircuitMap(this.trackCircuitMap);
+        this.railNetwork = buildRailNetwork();
+        this.trackCircuitDistanceIndex = buildTrackCircuitDistanceIndex();
         this.buildStationScheduledTrainStatusesMap();   // buildStationScheduledTrainStatusesMap() is also automatically invoked at scheduled times of day
         this.buildStationToStationMaps(); // buildStationToStationMaps() is also automatically invoked on scheduled intervals and immediately after init() is done (it's called here for TrainService.update, which can be invoked *before* buildStationToStationMaps() after init() is done
         // buildTerminalStationTrackCircuitIdSet() is invoked once at the end of buildStationScheduledTrainStatusesMap() the first time it is executed
         this.lastTrainPositions = null;
+        this.lastTrainPositionsBody = null;
+        this.lastTrainPositionsETag = null;
+        this.lastTrainPositionsLastModified = -1;
+        this.numSkippedUnchangedUpdates = 0;
+        this.spareTrainPositions = new TrainPositions();
+        this.gisTrainDataFetcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MetroHeroGISFetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.gisTrainDataFuture = null;
+        this.numLateGISTrainDataResponses = 0;
         this.keptTrainIdByRemovedTrainId = HashBiMap.create();
         this.derivedLineCodeByDestinationId = new HashMap<>();
 
         logger.info("...train service initialized!");
     }
 
+    @PreDestroy
+    private void shutdown() {
+        this.gisTrainDataFetcher.shutdownNow();
+    }
+
     public boolean isDataStale() {
-        return (this.lastUpdatedTimestamp != null) && ((Instant.now().getEpochSecond() - this.lastUpdatedTimestamp.get()) > 30);
+        Long lastUpdatedTimestamp = this.systemSnapshot.getLastUpdatedTimestamp();
+        return (lastUpdatedTimestamp != null) && ((Instant.now().getEpochSecond() - lastUpdatedTimestamp) > 30);
     }
 
     public List<TrainStatus> getTrainStatusesForTimestamp(long timestamp) {
@@ -161,9 +200,9 @@ public class TrainService {
         }
 
         int trackNumber = ts.getCurrentTrackCircuit().getTrackNumber();
-        TrackCircuit fromCircuit = this.stationTrackCircuitMap.get(ts.getLocationCode() + "_" + trackNumber);
-        TrackCircuit toCircuit = this.stationTrackCircuitMap.get(stationCode + "_" + trackNumber);
-        TrackCircuit destinationCircuit = this.stationTrackCircuitMap.get(ts.getDestinationCode() + "_" + trackNumber);
+        TrackCircuit fromCircuit = this.railNetwork.getStationTrackCircuit(ts.getLocationCode(), trackNumber);
+        TrackCircuit toCircuit = this.railNetwork.getStationTrackCircuit(stationCode, trackNumber);
+        TrackCircuit destinationCircuit = this.railNetwork.getStationTrackCircuit(ts.getDestinationCode(), trackNumber);
 
         Collection<Set<String>> fromCircuitNextStationCodeSets;
         Collection<Set<String>> toCircuitNextStationCodeSets;
@@ -216,8 +255,8 @@ public class TrainService {
 
         Set<String> stationCodes = null;
 
-        TrackCircuit fromCircuit = this.stationTrackCircuitMap.get(fromStationCode + "_1");  // HACK: it doesn't matter which track (1 or 2) we use here
-        TrackCircuit toCircuit = this.stationTrackCircuitMap.get(toStationCode + "_1");  // HACK: it doesn't matter which track (1 or 2) we use here
+        TrackCircuit fromCircuit = this.railNetwork.getStationTrackCircuit(fromStationCode, 1);  // HACK: it doesn't matter which track (1 or 2) we use here
+        TrackCircuit toCircuit = this.railNetwork.getStationTrackCircuit(toStationCode, 1);  // HACK: it doesn't matter which track (1 or 2) we use here
 
         for (Set<String> fromCircuitChildStationCodes : fromCircuit.getChildStationCodes().values()) {
             for (Set<String> toCircuitParentStationCodes : toCircuit.getParentStationCodes().values()) {
@@ -367,125 +406,275 @@ public class TrainService {
     private void update() {
         logger.info("Updating train data from WMATA...");
 
-        HttpHeaders requestHeaders = new HttpHeaders();
-        requestHeaders.setAccept(Collections.singletonList(new MediaType("application", "json")));
-        requestHeaders.set("api_key", configUtil.getWmataApiKey());
-        requestHeaders.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
-        HttpEntity<String> requestEntity = new HttpEntity<>("parameters", requestHeaders);
-        RestTemplate restTemplate;
-        ResponseEntity<TrainPositions> response;
-        try {
-            restTemplate = (new RequestHandler()).getRestTemplate();
-            restTemplate.getMessageConverters().clear();
-            restTemplate.getMessageConverters().add(new GzipGsonHttpMessageConverter());
-            response = restTemplate.exchange(
-                    configUtil.getWmataTrainPositionsApiUrl(),
-                    HttpMethod.GET, requestEntity, TrainPositions.class);
-        } catch (RestClientException e) {
-            restTemplate = (new RequestHandler()).getRestTemplate();
-            restTemplate.getMessageConverters().clear();
-            restTemplate.getMessageConverters().add(new GsonHttpMessageConverter());
-            requestEntity = new HttpEntity<>("parameters", new HttpHeaders());
-            response = restTemplate.exchange(
-                    configUtil.getWmataTrainPositionsApiUrl(),
-                    HttpMethod.GET, requestEntity, TrainPositions.class);
-            logger.warn("Response from WMATA Train Positions API not gzipped!");
-        }
-
-        Calendar now = Calendar.getInstance();
-        Date observedDate = now.getTime();
+        long updateStartTime = System.nanoTime();
 
-        if (response == null || response.getBody() == null ||
-                response.getBody().getTrainPositions() == null || response.getBody().getTrainPositions().size() <= 0 ||
-                (this.lastTrainPositions != null && this.lastTrainPositions.equals(response.getBody()))) {
-            // no data, or data is the same as when we last queried WMATA, so there's minimal work to be done
+        // fetch GIS train data in the background while we fetch train positions, so one slow request doesn't wait on the other
+        // it's only used if train positions have changed, so until then, we hang onto whatever we last requested, in flight or not, instead of requesting more
+        if (this.gisTrainDataFuture == null) {
+            requestGISTrainData();
+        }
 
-            boolean isDataStale = isDataStale();
-            if (isDataStale) {
-                this.twitterBotService.setIsDataStale(isDataStale);
-            }
-
-            for (TrainStatus trainStatus : this.trainStatusesMap.values()) {
-                // update tags
-                trainStatus.setNumPositiveTags(Math.toIntExact(this.trainTaggingService.getNumPositiveTags(trainStatus.getTrainId())));
-                trainStatus.setNumNegativeTags(Math.toIntExact(this.trainTaggingService.getNumNegativeTags(trainStatus.getTrainId())));
-
-                if (isDataStale) {
-                    // reset "stopwatch" on any trip durations; the data is now invalid
-                    trainStatus.setLastVisitedStation(null);
-                    trainStatus.setLastVisitedStationCode(null);
-                    trainStatus.setLastMovedCircuits(null);
-                    trainStatus.setTrainSpeed(null);
-                    trainStatus.setSecondsAtLastVisitedStation(null);
-                    trainStatus.setSecondsDelayed(0);
-                    trainStatus.setTrackNumberAtLastVisitedStation(null);
-                    trainStatus.setDirectionNumberAtLastVisitedStation(null);
-                    trainStatus.setLineCodeAtLastVisitedStation(null);
-                    trainStatus.setDestinationCodeAtLastVisitedStation(null);
-                }
+        FetchedTrainPositions fetchedTrainPositions = runUpdateStage(UpdateStage.FETCH, this::fetchTrainPositions);
+        Calendar now = fetchedTrainPositions.getObservedDate();
+
+        // if WMATA sent us exactly what it sent us last time, it can't decode to anything different, so don't even bother
+        boolean isUnchanged = fetchedTrainPositions.isUnchanged();
+        if (isUnchanged) {
+            this.numSkippedUnchangedUpdates++;
+        }
+        TrainPositions trainPositions = isUnchanged ? null : runUpdateStage(UpdateStage.DECODE, () -> decodeTrainPositions(fetchedTrainPositions));
+
+        if (isUnchanged || trainPositions == null || trainPositions.getTrainPositions() == null || trainPositions.getTrainPositions().size() <= 0 ||
+                (this.lastTrainPositions != null && this.lastTrainPositions.equals(trainPositions))) {
+            // no data, or data is the same as when we last queried WMATA, so there's minimal work to be done
+            if (trainPositions != null) {
+                this.spareTrainPositions = trainPositions;
             }
-            for (List<TrainStatus> trainStatusesForStation : this.stationTrainStatusesMap.values()) {
-                for (TrainStatus trainStatusForStation : trainStatusesForStation) {
-                    // update tags
-                    trainStatusForStation.setNumPositiveTags(Math.toIntExact(this.trainTaggingService.getNumPositiveTags(trainStatusForStation.getTrainId())));
-                    trainStatusForStation.setNumNegativeTags(Math.toIntExact(this.trainTaggingService.getNumNegativeTags(trainStatusForStation.getTrainId())));
-
-                    if (isDataStale) {
-                        // reset "stopwatch" on any trip durations; the data is now invalid
-                        trainStatusForStation.setLastVisitedStation(null);
-                        trainStatusForStation.setLastVisitedStationCode(null);
-                        trainStatusForStation.setLastMovedCircuits(null);
-                        trainStatusForStation.setTrainSpeed(null);
-                        trainStatusForStation.setSecondsAtLastVisitedStation(null);
-                        trainStatusForStation.setSecondsDelayed(0);
-                        trainStatusForStation.setTrackNumberAtLastVisitedStation(null);
-                        trainStatusForStation.setDirectionNumberAtLastVisitedStation(null);
-                        trainStatusForStation.setLineCodeAtLastVisitedStation(null);
-                        trainStatusForStation.setDestinationCodeAtLastVisitedStation(null);
-                    }
-                }
+            SystemSnapshot updatedSystemSnapshot = updateUnchangedTrainStatuses();
+            if (updatedSystemSnapshot != null) {
+                publishSystemSnapshot(updatedSystemSnapshot);
             }
-
             logger.info("No train data, or all train data is the same as when we last queried WMATA's API.");
             return;
         }
 
-        this.lastTrainPositions = response.getBody();
+        this.spareTrainPositions = (this.lastTrainPositions != null) ? this.lastTrainPositions : new TrainPositions();
+        this.lastTrainPositions = trainPositions;
         this.twitterBotService.setIsDataStale(false);
 
-        Map<String, ProcessedGISTrainData> processedGISTrainDataMap = new HashMap<>();
+        if (this.gisTrainDataFuture.isDone() && (System.nanoTime() - this.gisTrainDataRequestTime) > MAX_UNUSED_GIS_TRAIN_DATA_AGE_NANOS) {
+            // what we have has been sitting around unused for too long to trust, so get some fresh data
+            requestGISTrainData();
+        }
+        Future<List<ProcessedGISTrainData>> gisTrainDataFuture = this.gisTrainDataFuture;
+        Map<String, ProcessedGISTrainData> processedGISTrainDataMap = runUpdateStage(UpdateStage.ENRICH, () -> processGISTrainData(now, awaitGISTrainData(gisTrainDataFuture, updateStartTime)));
+        if (gisTrainDataFuture.isDone()) {
+            // used up; the next update can request more
+            // (if it's still in flight, it's left for the next update to use instead of piling up more requests behind it)
+            this.gisTrainDataFuture = null;
+        }
+        TrackedTrains trackedTrains = runUpdateStage(UpdateStage.TRACK, () -> trackTrains(now, trainPositions, processedGISTrainDataMap));
+        DerivedTrainData derivedTrainData = runUpdateStage(UpdateStage.DERIVE, () -> deriveTrainData(now, trackedTrains.getTrainStatusesMap()));
+        runUpdateStage(UpdateStage.PUBLISH, () -> publish(now, trackedTrains, derivedTrainData));
+        runUpdateStage(UpdateStage.PERSIST, () -> persist(trackedTrains));
 
-        try {
-            HttpHeaders gisRequestHeaders = new HttpHeaders();
-            gisRequestHeaders.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
-            HttpEntity<String> gisRequestEntity = new HttpEntity<>("parameters", gisRequestHeaders);
-            RestTemplate gisRestTemplate;
-            ResponseEntity<GISTrainsData> gisResponse;
-            try {
-                gisRestTemplate = (new RequestHandler()).getRestTemplate();
-                gisRestTemplate.getMessageConverters().clear();
-                gisRestTemplate.getMessageConverters().add(new GzipGsonHttpMessageConverter());
-                gisResponse = gisRestTemplate.exchange(
-                        "https://gisservices.wmata.com/gisservices/rest/services/Public/TRAIN_LOC_WMS_PUB/MapServer/0/query?f=json&where=ITT is not null&returnGeometry=true&outFields=*",
-                        HttpMethod.GET, gisRequestEntity, GISTrainsData.class);
-            } catch (Exception e) {
-                gisRestTemplate = (new RequestHandler()).getRestTemplate();
-                gisRestTemplate.getMessageConverters().clear();
-                gisRestTemplate.getMessageConverters().add(new GsonHttpMessageConverter());
-                gisRequestEntity = new HttpEntity<>("parameters", new HttpHeaders());
-                gisResponse = gisRestTemplate.exchange(
-                        "https://gisservices.wmata.com/gisservices/rest/services/Public/TRAIN_LOC_WMS_PUB/MapServer/0/query?f=json&where=ITT is not null&returnGeometry=true&outFields=*",
-                        HttpMethod.GET, gisRequestEntity, GISTrainsData.class);
-                logger.warn("Response from WMATA GIS TRAIN_LOC_WMS_PUB service not gzipped!");
-            }
-            if (gisResponse != null && gisResponse.getBody() != null && gisResponse.getBody().getTrainsData() != null) {
-                for (GISTrainData trainData : gisResponse.getBody().getTrainsData()) {
-                    ProcessedGISTrainData processedGISTrainData = new ProcessedGISTrainData(trainData);
-                    processedGISTrainDataMap.put(processedGISTrainData.getId(), processedGISTrainData);
+        // TODO: disabled for now as it can make mistakes with regards to at least No Passenger destination codes
+        // consider either fixing in the future or removing entirely, depending on how things go
+//        updateDerivedLineCodeByDestinationIdMap();
+
+        long updateDuration = System.nanoTime() - updateStartTime;
+        if (updateDuration > TimeUnit.SECONDS.toNanos(2)) {
+            logger.warn("Updating train data from WMATA took " + TimeUnit.NANOSECONDS.toMillis(updateDuration) + "ms: " + this.updateStageMetrics.values());
+        }
+
+        logger.info("...successfully updated train data from WMATA!");
+    }
+
+    private <T> T runUpdateStage(UpdateStage stage, Supplier<T> stageFunction) {
+        long startAllocatedBytes = PipelineStageMetrics.getCurrentThreadAllocatedBytes();
+        long startTime = System.nanoTime();
+
+        T output = stageFunction.get();
+
+        long duration = System.nanoTime() - startTime;
+        long allocatedBytes = (startAllocatedBytes >= 0) ? (PipelineStageMetrics.getCurrentThreadAllocatedBytes() - startAllocatedBytes) : -1;
+        this.updateStageMetrics.get(stage).record(duration, allocatedBytes);
+
+        return output;
+    }
+
+    private void runUpdateStage(UpdateStage stage, Runnable stageFunction) {
+        runUpdateStage(stage, () -> {
+            stageFunction.run();
+            return null;
+        });
+    }
+
+    // fetch: raw, decompressed response body from WMATA's Train Positions API, and whether it's the same as last time
+    private FetchedTrainPositions fetchTrainPositions() {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.setAccept(Collections.singletonList(new MediaType("application", "json")));
+        requestHeaders.set("api_key", configUtil.getWmataApiKey());
+        requestHeaders.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        if (this.lastTrainPositionsETag != null) {
+            requestHeaders.setIfNoneMatch(this.lastTrainPositionsETag);
+        }
+        if (this.lastTrainPositionsLastModified >= 0) {
+            requestHeaders.setIfModifiedSince(this.lastTrainPositionsLastModified);
+        }
+        HttpEntity<String> requestEntity = new HttpEntity<>("parameters", requestHeaders);
+        ResponseEntity<byte[]> response = this.requestHandler.getRestTemplate(RequestHandler.Feed.TRAIN_POSITIONS).exchange(
+                configUtil.getWmataTrainPositionsApiUrl(),
+                HttpMethod.GET, requestEntity, byte[].class);
+        Calendar observedDate = Calendar.getInstance();
+
+        if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+            return new FetchedTrainPositions(this.lastTrainPositionsBody, observedDate, true);
+        }
+        this.lastTrainPositionsETag = response.getHeaders().getETag();
+        this.lastTrainPositionsLastModified = response.getHeaders().getLastModified();
+
+        byte[] body = response.getBody();
+        if (body != null && body.length > 0) {
+            boolean isGzipped = (body.length >= 2) && ((body[0] & 0xff) | ((body[1] & 0xff) << 8)) == GZIPInputStream.GZIP_MAGIC;
+            if (isGzipped) {
+                try (InputStream json = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                    body = json.readAllBytes();
+                } catch (IOException e) {
+                    logger.warn("Failed to decompress response from WMATA Train Positions API!", e);
+                    body = null;
                 }
+            } else {
+                logger.warn("Response from WMATA Train Positions API not gzipped!");
+            }
+        }
+
+        // compared byte-for-byte instead of hashed; we have to keep a copy of it around either way, and this can't collide
+        boolean isUnchanged = (body != null) && Arrays.equals(body, this.lastTrainPositionsBody);
+        this.lastTrainPositionsBody = body;
+
+        return new FetchedTrainPositions(body, observedDate, isUnchanged);
+    }
+
+    // decode: decompressed response body to train positions, or null if there's nothing usable
+    // decodes into spareTrainPositions, reusing its records, so lastTrainPositions is left alone for comparison
+    private TrainPositions decodeTrainPositions(FetchedTrainPositions fetchedTrainPositions) {
+        byte[] body = fetchedTrainPositions.getBody();
+        if (body == null || body.length <= 0) {
+            return null;
+        }
+
+        try (InputStream json = new ByteArrayInputStream(body)) {
+            return this.wmataFeedDecoder.decodeTrainPositions(json, this.spareTrainPositions);
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            logger.warn("Failed to decode response from WMATA Train Positions API!", e);
+            return null;
+        }
+    }
+
+    // the latest snapshot with tags brought up to date and, if our data has gone stale, any trip "stopwatches" reset, or null if none of that changes anything
+    // published train statuses may be being read on other threads, so the ones that change are copied instead of modified in place
+    private SystemSnapshot updateUnchangedTrainStatuses() {
+        SystemSnapshot systemSnapshot = this.systemSnapshot;
+
+        boolean isDataStale = isDataStale();
+        if (isDataStale) {
+            this.twitterBotService.setIsDataStale(isDataStale);
+        }
+
+        boolean hasChanged = isDataStale;
+        Map<String, TrainStatus> trainStatusesMap = new HashMap<>(systemSnapshot.getTrainStatusesMap().size());
+        for (Map.Entry<String, TrainStatus> entry : systemSnapshot.getTrainStatusesMap().entrySet()) {
+            TrainStatus trainStatus = updateUnchangedTrainStatus(entry.getValue(), isDataStale);
+            hasChanged |= (trainStatus != entry.getValue());
+            trainStatusesMap.put(entry.getKey(), trainStatus);
+        }
+        Map<String, List<TrainStatus>> stationTrainStatusesMap = new HashMap<>(systemSnapshot.getStationTrainStatusesMap().size());
+        for (Map.Entry<String, List<TrainStatus>> entry : systemSnapshot.getStationTrainStatusesMap().entrySet()) {
+            List<TrainStatus> trainStatusesForStation = new ArrayList<>(entry.getValue().size());
+            for (TrainStatus trainStatusForStation : entry.getValue()) {
+                TrainStatus updatedTrainStatusForStation = updateUnchangedTrainStatus(trainStatusForStation, isDataStale);
+                hasChanged |= (updatedTrainStatusForStation != trainStatusForStation);
+                trainStatusesForStation.add(updatedTrainStatusForStation);
             }
+            stationTrainStatusesMap.put(entry.getKey(), trainStatusesForStation);
+        }
+
+        return hasChanged ? systemSnapshot.withTrainStatuses(trainStatusesMap, stationTrainStatusesMap) : null;
+    }
+
+    // a copy of the train's status with its tags brought up to date and, if our data has gone stale, its trip "stopwatch" reset,
+    // or the same train status if neither changes anything
+    private TrainStatus updateUnchangedTrainStatus(TrainStatus trainStatus, boolean isDataStale) {
+        int numPositiveTags = Math.toIntExact(this.trainTaggingService.getNumPositiveTags(trainStatus.getTrainId()));
+        int numNegativeTags = Math.toIntExact(this.trainTaggingService.getNumNegativeTags(trainStatus.getTrainId()));
+        if (!isDataStale && numPositiveTags == trainStatus.getNumPositiveTags() && numNegativeTags == trainStatus.getNumNegativeTags()) {
+            return trainStatus;
+        }
+
+        TrainStatus updatedTrainStatus = trainStatus.copy();
+        updatedTrainStatus.setNumPositiveTags(numPositiveTags);
+        updatedTrainStatus.setNumNegativeTags(numNegativeTags);
+
+        if (isDataStale) {
+            // reset "stopwatch" on any trip durations; the data is now invalid
+            updatedTrainStatus.setLastVisitedStation(null);
+            updatedTrainStatus.setLastVisitedStationCode(null);
+            updatedTrainStatus.setLastMovedCircuits(null);
+            updatedTrainStatus.setTrainSpeed(null);
+            updatedTrainStatus.setSecondsAtLastVisitedStation(null);
+            updatedTrainStatus.setSecondsDelayed(0);
+            updatedTrainStatus.setTrackNumberAtLastVisitedStation(null);
+            updatedTrainStatus.setDirectionNumberAtLastVisitedStation(null);
+            updatedTrainStatus.setLineCodeAtLastVisitedStation(null);
+            updatedTrainStatus.setDestinationCodeAtLastVisitedStation(null);
+        }
+
+        return updatedTrainStatus;
+    }
+
+    private void requestGISTrainData() {
+        this.gisTrainDataFuture = this.gisTrainDataFetcher.submit(this::fetchGISTrainData);
+        this.gisTrainDataRequestTime = System.nanoTime();
+    }
+
+    // train data from WMATA's GIS service, decoded as it streams in, or null if it couldn't be fetched
+    private List<ProcessedGISTrainData> fetchGISTrainData() {
+        try {
+            return this.requestHandler.getRestTemplate(RequestHandler.Feed.GIS_TRAIN_LOCATIONS).execute(
+                    this.configUtil.getWmataGISTrainLocationsApiUrl(),
+                    HttpMethod.GET,
+                    request -> request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, "gzip"),
+                    response -> this.wmataFeedDecoder.decodeGISTrainData(NetworkUtil.decompressIfGzipped(response.getBody())));
         } catch (Exception e) {
             logger.warn("Failed to fetch data from WMATA GIS TRAIN_LOC_WMS_PUB service!", e);
+            return null;
+        }
+    }
+
+    // waits for GIS train data until the deadline for this update, or returns null if it doesn't arrive in time
+    // a late response is left to finish in the background; train data just won't be enriched with it this update
+    private List<ProcessedGISTrainData> awaitGISTrainData(Future<List<ProcessedGISTrainData>> gisTrainDataFuture, long updateStartTime) {
+        long remainingNanos = (updateStartTime + TimeUnit.MILLISECONDS.toNanos(this.configUtil.getGisTrainDataDeadlineMillis())) - System.nanoTime();
+        try {
+            return gisTrainDataFuture.get(Math.max(remainingNanos, 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            this.numLateGISTrainDataResponses++;
+            logger.warn("WMATA GIS TRAIN_LOC_WMS_PUB service didn't respond in time! Continuing without it.");
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            logger.warn("Failed to fetch data from WMATA GIS TRAIN_LOC_WMS_PUB service!", e.getCause());
+            return null;
+        }
+    }
+
+    // enrich: extra, non-stale data about each train from WMATA's GIS service, keyed by train ID
+    private Map<String, ProcessedGISTrainData> processGISTrainData(Calendar now, List<ProcessedGISTrainData> gisTrainData) {
+        Map<String, ProcessedGISTrainData> processedGISTrainDataMap = new HashMap<>();
+
+        if (gisTrainData != null) {
+            for (ProcessedGISTrainData trainData : gisTrainData) {
+                processedGISTrainDataMap.put(trainData.getId(), trainData);
+            }
+        }
+
+        // WMATA GIS data for some trains may be stale
+        processedGISTrainDataMap.values().removeIf(processedGISTrainData -> (processedGISTrainData.getObservedDate() == null) || ((now.getTimeInMillis() - processedGISTrainData.getObservedDate().getTimeInMillis()) > TimeUnit.SECONDS.toMillis(30)));
+
+        return processedGISTrainDataMap;
+    }
+
+    // track: the latest status of each train, along with any events observed since the last update
+    private TrackedTrains trackTrains(Calendar now, TrainPositions trainPositions, Map<String, ProcessedGISTrainData> processedGISTrainDataMap) {
+        Date observedDate = now.getTime();
+        // the last update's train statuses have already been published, and may be being read on other threads as we speak,
+        // so we work from copies of them instead, which are free to become this update's train statuses
+        Map<String, TrainStatus> previousTrainStatusesMap = new HashMap<>(this.systemSnapshot.getTrainStatusesMap().size());
+        for (TrainStatus previousTrainStatus : this.systemSnapshot.getTrainStatusesMap().values()) {
+            previousTrainStatusesMap.put(previousTrainStatus.getTrainId(), previousTrainStatus.copy());
         }
 
         List<TrainOffload> trainOffloads = new ArrayList<>();
@@ -496,23 +685,15 @@ public class TrainService {
 
         List<StationToStationTrip> stationToStationTrips = new ArrayList<>();
         Map<String, TrainStatus> trainStatusesMap = new HashMap<>();
-        for (TrainPosition trainPosition : response.getBody().getTrainPositions()) {
+        for (TrainPosition trainPosition : trainPositions.getTrainPositions()) {
             if (trainPosition.getCarCount() == 0 && trainPosition.getServiceType().equals("Unknown")) {
                 // filter out what we believe to be invalid data
                 continue;
             }
 
-            TrackCircuit trackCircuit = this.trackCircuitMap.get(trainPosition.getCircuitId());
-            TrainStatus previousTrainStatus = this.trainStatusesMap.get(trainPosition.getTrainId());
+            TrackCircuit trackCircuit = this.railNetwork.getTrackCircuitByApiId(trainPosition.getCircuitId());
+            TrainStatus previousTrainStatus = previousTrainStatusesMap.get(trainPosition.getTrainId());
             ProcessedGISTrainData extraTrainData = processedGISTrainDataMap.get(trainPosition.getTrainId());
-            if (extraTrainData != null) {
-                Calendar extraTrainDataObservedDate = extraTrainData.getObservedDate();
-                if ((extraTrainDataObservedDate == null) || ((now.getTimeInMillis() - extraTrainDataObservedDate.getTimeInMillis()) > TimeUnit.SECONDS.toMillis(30))) {
-                    // WMATA GIS data for this train is stale
-                    extraTrainData = null;
-                }
-            }
-
             if (trackCircuit == null) {
                 // train is probably not on revenue track
 
@@ -848,7 +1029,7 @@ public class TrainService {
                                 Double expectedTripDuration = this.stationToStationMedianDurationMap.get(stationCodesKey);
                                 if (expectedTripDuration != null) {
                                     expectedTripDuration += 0.5d;   // 30 seconds from duration map + 30 additional seconds = 60-second expected boarding time
-                                    TrackCircuit stationCircuitByTrack = this.stationTrackCircuitMap.get(previousTrainStatus.getLastVisitedStationCode() + "_" + previousTrainStatus.getTrackNumber());
+                                    TrackCircuit stationCircuitByTrack = this.railNetwork.getStationTrackCircuit(previousTrainStatus.getLastVisitedStationCode(), previousTrainStatus.getTrackNumber());
                                     if (stationCircuitByTrack != null) {
                                         double observedTripDuration = ((previousTrainStatus.getObservedDate().getTime() - previousTrainStatus.getLastVisitedStation().getTime()) / 1000d) / 60d;    // milliseconds => minutes
                                         observedTripDuration += (!this.terminalStationScheduledTrainStatusesMap.keySet().contains(previousTrainStatus.getLastVisitedStationCode()) && previousTrainStatus.getSecondsAtLastVisitedStation() != null) ? (previousTrainStatus.getSecondsAtLastVisitedStation() / 60d /* seconds => minutes */) : 0;
@@ -1078,8 +1259,8 @@ public class TrainService {
 
                         Integer milesPerHour = null;
                         if (trainStatus.getCurrentTrackCircuit().getStationCode() == null && previousTrainStatus.getCurrentTrackCircuit().getStationCode() == null) {
-                            TrackCircuit fromTrackCircuit = this.trackCircuitMap.get(previousTrainStatus.getTrackCircuitId());
-                            TrackCircuit toTrackCircuit = this.trackCircuitMap.get(trainStatus.getTrackCircuitId());
+                            TrackCircuit fromTrackCircuit = this.railNetwork.getTrackCircuitByApiId(previousTrainStatus.getTrackCircuitId());
+                            TrackCircuit toTrackCircuit = this.railNetwork.getTrackCircuitByApiId(trainStatus.getTrackCircuitId());
                             Double minDistanceCovered = getMinDistanceCovered(fromTrackCircuit, toTrackCircuit);
                             if (minDistanceCovered != null) {
                                 milesPerHour = (int) Math.round((minDistanceCovered /* feet */ * /* to miles */ 0.000189393939d) / (travelTime /* minutes */ * /* to hours */ 0.0166667d));
@@ -1114,9 +1295,9 @@ public class TrainService {
                 for (String stationCode : nextForwardStationCodes) {
                     Set<String> nextStationForwardStationCodes;
                     if (trainStatus.getDirectionNumber() == 1) {
-                        nextStationForwardStationCodes = this.stationTrackCircuitMap.get(stationCode + "_" + trackCircuit.getTrackNumber()).findChildStationCodes();
+                        nextStationForwardStationCodes = this.railNetwork.getStationTrackCircuit(stationCode, trackCircuit.getTrackNumber()).findChildStationCodes();
                     } else {
-                        nextStationForwardStationCodes = this.stationTrackCircuitMap.get(stationCode + "_" + trackCircuit.getTrackNumber()).findParentStationCodes();
+                        nextStationForwardStationCodes = this.railNetwork.getStationTrackCircuit(stationCode, trackCircuit.getTrackNumber()).findParentStationCodes();
                     }
                     if (nextStationForwardStationCodes.contains(trainPosition.getDestinationStationCode())) {
                         locationStationCode = stationCode;
@@ -1361,13 +1542,13 @@ public class TrainService {
                     } else {
                         Set<TrackCircuit> expandedLastVisitedStationCircuits = new HashSet<>();
 
-                        TrackCircuit lastVisitedStationTrack1Circuit = this.stationTrackCircuitMap.get(trainStatus.getLastVisitedStationCode() + "_1");
+                        TrackCircuit lastVisitedStationTrack1Circuit = this.railNetwork.getStationTrackCircuit(trainStatus.getLastVisitedStationCode(), 1);
                         if (lastVisitedStationTrack1Circuit != null) {
                             expandedLastVisitedStationCircuits.add(lastVisitedStationTrack1Circuit);
                             expandedLastVisitedStationCircuits.addAll(lastVisitedStationTrack1Circuit.getChildNeighbors());
                             expandedLastVisitedStationCircuits.addAll(lastVisitedStationTrack1Circuit.getParentNeighbors());
                         }
-                        TrackCircuit lastVisitedStationTrack2Circuit = this.stationTrackCircuitMap.get(trainStatus.getLastVisitedStationCode() + "_2");
+                        TrackCircuit lastVisitedStationTrack2Circuit = this.railNetwork.getStationTrackCircuit(trainStatus.getLastVisitedStationCode(), 2);
                         if (lastVisitedStationTrack2Circuit != null) {
                             expandedLastVisitedStationCircuits.add(lastVisitedStationTrack2Circuit);
                             expandedLastVisitedStationCircuits.addAll(lastVisitedStationTrack2Circuit.getChildNeighbors());
@@ -1379,13 +1560,13 @@ public class TrainService {
                         } else {
                             Set<TrackCircuit> expandedPreviousStationCircuits = new HashSet<>();
 
-                            TrackCircuit previousStationTrack1Circuit = this.stationTrackCircuitMap.get(trainStatus.getPreviousStationCode() + "_1");
+                            TrackCircuit previousStationTrack1Circuit = this.railNetwork.getStationTrackCircuit(trainStatus.getPreviousStationCode(), 1);
                             if (previousStationTrack1Circuit != null) {
                                 expandedPreviousStationCircuits.add(previousStationTrack1Circuit);
                                 expandedPreviousStationCircuits.addAll(previousStationTrack1Circuit.getChildNeighbors());
                                 expandedPreviousStationCircuits.addAll(previousStationTrack1Circuit.getParentNeighbors());
                             }
-                            TrackCircuit previousStationTrack2Circuit = this.stationTrackCircuitMap.get(trainStatus.getPreviousStationCode() + "_2");
+                            TrackCircuit previousStationTrack2Circuit = this.railNetwork.getStationTrackCircuit(trainStatus.getPreviousStationCode(), 2);
                             if (previousStationTrack2Circuit != null) {
                                 expandedPreviousStationCircuits.add(previousStationTrack2Circuit);
                                 expandedPreviousStationCircuits.addAll(previousStationTrack2Circuit.getChildNeighbors());
@@ -1480,7 +1661,7 @@ public class TrainService {
                             Double expectedTripDuration = this.stationToStationMedianDurationMap.get(stationCodesKey);
                             if (expectedTripDuration != null) {
                                 expectedTripDuration += 0.5d;   // 30 seconds from duration map + 30 additional seconds = 60-second expected boarding time
-                                TrackCircuit stationCircuitByTrack = this.stationTrackCircuitMap.get(trainStatus.getLastVisitedStationCode() + "_" + trainStatus.getTrackNumber());
+                                TrackCircuit stationCircuitByTrack = this.railNetwork.getStationTrackCircuit(trainStatus.getLastVisitedStationCode(), trainStatus.getTrackNumber());
                                 if (stationCircuitByTrack != null) {
                                     double observedTripDuration = ((trainStatus.getObservedDate().getTime() - trainStatus.getLastVisitedStation().getTime()) / 1000d) / 60d;    // milliseconds => minutes
                                     observedTripDuration += (!this.terminalStationScheduledTrainStatusesMap.keySet().contains(trainStatus.getLastVisitedStationCode()) && trainStatus.getSecondsAtLastVisitedStation() != null) ? (trainStatus.getSecondsAtLastVisitedStation() / 60d /* seconds => minutes */) : 0;
@@ -1576,7 +1757,7 @@ public class TrainService {
                     boolean isInApproachToScheduledDestinationStation = this.gtfsService.getScheduledDestinationStationCodesByLine() != null && this.gtfsService.getScheduledDestinationStationCodesByLine().get(trainStatus.getLine()) != null && this.gtfsService.getScheduledDestinationStationCodesByLine().get(trainStatus.getLine()).contains(trainAtStation);
                     boolean isInApproachToTerminalStation = this.terminalStationTrackCircuitIdSet != null && this.terminalStationTrackCircuitIdSet.contains(trainStatus.getTrackCircuitId());
                     boolean didLastVisitScheduledDestinationStation = trainStatus.getLastVisitedStationCode() != null && this.gtfsService.getScheduledDestinationStationCodesByLine() != null && this.gtfsService.getScheduledDestinationStationCodesByLine().get(trainStatus.getLine()) != null && this.gtfsService.getScheduledDestinationStationCodesByLine().get(trainStatus.getLine()).contains(trainStatus.getLastVisitedStationCode());
-                    TrackCircuit lastVisitedStationTrackCircuit = this.stationTrackCircuitMap.get(trainStatus.getLastVisitedStationCode() + "_" + trainStatus.getDirectionNumber());
+                    TrackCircuit lastVisitedStationTrackCircuit = this.railNetwork.getStationTrackCircuit(trainStatus.getLastVisitedStationCode(), trainStatus.getDirectionNumber());
                     boolean didLastVisitTerminalStation = trainStatus.getLastVisitedStationCode() != null && lastVisitedStationTrackCircuit != null && this.terminalStationTrackCircuitIdSet != null && this.terminalStationTrackCircuitIdSet.contains(lastVisitedStationTrackCircuit.getId());
                     if ((!isInApproachToScheduledDestinationStation || isInApproachToTerminalStation) && (!didLastVisitScheduledDestinationStation || didLastVisitTerminalStation) && trainStatus.getLastVisitedStation() != null) {
                         Double expectedStationToStationTripTime = this.stationToStationMedianDurationMap.get(trainStatus.getLastVisitedStationCode() + "_" + trainStatus.getLocationCode());
@@ -1631,7 +1812,7 @@ public class TrainService {
         }
 
         // determine which train statuses are missing from the last tick
-        for (TrainStatus previousTrainStatus : this.trainStatusesMap.values()) {
+        for (TrainStatus previousTrainStatus : previousTrainStatusesMap.values()) {
             if (!trainStatusesMap.containsKey(previousTrainStatus.getTrainId()) && previousTrainStatus.getPreviousStationCode() != null && previousTrainStatus.getLocationCode() != null && previousTrainStatus.getDestinationCode() != null && !previousTrainStatus.isNotOnRevenueTrack() && !this.terminalStationTrackCircuitIdSet.contains(previousTrainStatus.getTrackCircuitId()) && !"N/A".equals(previousTrainStatus.getLine())) {
                 trainDisappearances.add(new TrainDisappearance(now, previousTrainStatus.getTrainId(), previousTrainStatus.getRealTrainId(), previousTrainStatus.getLine(), previousTrainStatus.getDirectionNumber(), previousTrainStatus.getDestinationCode(), previousTrainStatus.getLocationCode(), previousTrainStatus.getTrackCircuitId()));
 //                this.disappearedTrainStatus = previousTrainStatus;
@@ -1686,17 +1867,30 @@ public class TrainService {
         }
 
         // remove/merge duplicate trains
+        // only trains sharing the same real train ID are ever merged, so index them by it rather than comparing every train against every other train
+        Map<String, List<TrainStatus>> trainStatusesByRealTrainId = new HashMap<>();
+        for (TrainStatus trainStatus : trainStatusesMap.values()) {
+            if (trainStatus.getRealTrainId() != null) {
+                trainStatusesByRealTrainId.computeIfAbsent(trainStatus.getRealTrainId(), k -> new ArrayList<>(2)).add(trainStatus);
+            }
+        }
+        int numDuplicateTrainCandidateComparisons = 0;
         for (TrainStatus trainStatus : trainStatusesMap.values()) {
             // we're only interested in potentially merging:
             // - trains that have already been merged (they may need to be merged again with some other train);
             // - trains that have not been merged that we haven't observed yet
 
-            TrainStatus previousTrainStatus = this.trainStatusesMap.get(trainStatus.getTrainId());
+            TrainStatus previousTrainStatus = previousTrainStatusesMap.get(trainStatus.getTrainId());
             if (!this.keptTrainIdByRemovedTrainId.containsKey(trainStatus.getTrainId()) && previousTrainStatus != null) {
                 continue;
             }
 
-            for (TrainStatus trainStatus2 : trainStatusesMap.values()) {
+            List<TrainStatus> candidateTrainStatuses = (trainStatus.getRealTrainId() != null) ? trainStatusesByRealTrainId.get(trainStatus.getRealTrainId()) : null;
+            if (candidateTrainStatuses == null || candidateTrainStatuses.size() <= 1) {
+                continue;
+            }
+
+            for (TrainStatus trainStatus2 : candidateTrainStatuses) {
                 if (trainStatus2.equals(trainStatus)) {
                     // don't merge ourselves
                     continue;
@@ -1707,211 +1901,84 @@ public class TrainService {
                     continue;
                 }
 
-                TrainStatus previousTrainStatus2 = this.trainStatusesMap.get(trainStatus2.getTrainId());
+                TrainStatus previousTrainStatus2 = previousTrainStatusesMap.get(trainStatus2.getTrainId());
                 if (previousTrainStatus2 == null) {
                     // make sure the potential train to merge into has been observed already
                     continue;
                 }
 
-                if (trainStatus.getRealTrainId() != null && trainStatus.getRealTrainId().equals(trainStatus2.getRealTrainId())) {
-                    Double minDistanceCovered = getMinDistanceCovered(trainStatus.getCurrentTrackCircuit(), trainStatus2.getCurrentTrackCircuit());
-                    if (minDistanceCovered != null && minDistanceCovered <= 1800 /* 600 feet = length of station platforms, x3 to account for latency */ ) {
-                        Double trainStatusDistanceToDestination = getMinDistanceCovered(trainStatus.getCurrentTrackCircuit(), trainStatus.getOriginalDestinationCode());
-                        Double trainStatus2DistanceToDestination = getMinDistanceCovered(trainStatus2.getCurrentTrackCircuit(), trainStatus2.getOriginalDestinationCode());
-                        if (trainStatusDistanceToDestination != null && trainStatus2DistanceToDestination != null) {
-                            TrainStatus trainStatusToKeep = null;
-                            TrainStatus trainStatusToRemove = null;
-
-                            if (trainStatusDistanceToDestination > trainStatus2DistanceToDestination) {
-                                trainStatusToKeep = trainStatus2;
-                                trainStatusToRemove = trainStatus;
-                            } else if (trainStatusDistanceToDestination < trainStatus2DistanceToDestination) {
-                                trainStatusToKeep = trainStatus;
-                                trainStatusToRemove = trainStatus2;
-                            }
+                numDuplicateTrainCandidateComparisons++;
 
-                            if (trainStatusToKeep != null && trainStatusToRemove != null) {
-                                duplicateTrainEvents.add(new DuplicateTrainEvent(now, trainStatusToKeep.getRealTrainId(), trainStatusToKeep.getTrainId(), trainStatusToRemove.getTrainId(), trainStatusToKeep.getLine(), trainStatusToKeep.getDirectionNumber(), trainStatusToRemove.getDirectionNumber(), trainStatusToKeep.getOriginalDestinationCode(), trainStatusToKeep.getLocationCode()));
+                Double minDistanceCovered = getMinDistanceCovered(trainStatus.getCurrentTrackCircuit(), trainStatus2.getCurrentTrackCircuit());
+                if (minDistanceCovered != null && minDistanceCovered <= 1800 /* 600 feet = length of station platforms, x3 to account for latency */ ) {
+                    Double trainStatusDistanceToDestination = getMinDistanceCovered(trainStatus.getCurrentTrackCircuit(), trainStatus.getOriginalDestinationCode());
+                    Double trainStatus2DistanceToDestination = getMinDistanceCovered(trainStatus2.getCurrentTrackCircuit(), trainStatus2.getOriginalDestinationCode());
+                    if (trainStatusDistanceToDestination != null && trainStatus2DistanceToDestination != null) {
+                        TrainStatus trainStatusToKeep = null;
+                        TrainStatus trainStatusToRemove = null;
 
-                                if (trainStatusToRemove.equals(trainStatus2)) {
-                                    // we have some data about this train contained in the train status that we're about to delete
-                                    // move that data over to the train status we're going to keep, otherwise we'd lose this data
+                        if (trainStatusDistanceToDestination > trainStatus2DistanceToDestination) {
+                            trainStatusToKeep = trainStatus2;
+                            trainStatusToRemove = trainStatus;
+                        } else if (trainStatusDistanceToDestination < trainStatus2DistanceToDestination) {
+                            trainStatusToKeep = trainStatus;
+                            trainStatusToRemove = trainStatus2;
+                        }
 
-                                    trainStatusToKeep.setSecondsOffSchedule(trainStatusToRemove.getSecondsOffSchedule());
-                                    if (trainStatusToKeep.getLastVisitedStation() == null) {
-                                        trainStatusToKeep.setLastVisitedStation(trainStatusToRemove.getLastVisitedStation());
-                                    }
-                                    if (trainStatusToKeep.getLastVisitedStationCode() == null) {
-                                        trainStatusToKeep.setLastVisitedStationCode(trainStatusToRemove.getLastVisitedStationCode());
-                                    }
-                                    if (trainStatusToKeep.getSecondsAtLastVisitedStation() == null) {
-                                        trainStatusToKeep.setSecondsAtLastVisitedStation(trainStatusToRemove.getSecondsAtLastVisitedStation());
-                                    }
-                                    if (trainStatusToKeep.getSecondsDelayed() == null) {
-                                        trainStatusToKeep.setSecondsDelayed(trainStatusToRemove.getSecondsDelayed());
-                                    }
-                                    if (trainStatusToKeep.getTrackNumberAtLastVisitedStation() == null) {
-                                        trainStatusToKeep.setTrackNumberAtLastVisitedStation(trainStatusToRemove.getTrackNumberAtLastVisitedStation());
-                                    }
-                                    if (trainStatusToKeep.getDirectionNumberAtLastVisitedStation() == null) {
-                                        trainStatusToKeep.setDirectionNumberAtLastVisitedStation(trainStatusToRemove.getDirectionNumberAtLastVisitedStation());
-                                    }
-                                    if (trainStatusToKeep.getLineCodeAtLastVisitedStation() == null) {
-                                        trainStatusToKeep.setLineCodeAtLastVisitedStation(trainStatusToRemove.getLineCodeAtLastVisitedStation());
-                                    }
-                                    if (trainStatusToKeep.getDestinationCodeAtLastVisitedStation() == null) {
-                                        trainStatusToKeep.setDestinationCodeAtLastVisitedStation(trainStatusToRemove.getDestinationCodeAtLastVisitedStation());
-                                    }
-                                    trainStatusToKeep.setTripId(trainStatusToRemove.getTripId());
+                        if (trainStatusToKeep != null && trainStatusToRemove != null) {
+                            duplicateTrainEvents.add(new DuplicateTrainEvent(now, trainStatusToKeep.getRealTrainId(), trainStatusToKeep.getTrainId(), trainStatusToRemove.getTrainId(), trainStatusToKeep.getLine(), trainStatusToKeep.getDirectionNumber(), trainStatusToRemove.getDirectionNumber(), trainStatusToKeep.getOriginalDestinationCode(), trainStatusToKeep.getLocationCode()));
 
-                                    this.trainTaggingService.migrateTrainTags(trainStatusToRemove, trainStatusToKeep);
+                            if (trainStatusToRemove.equals(trainStatus2)) {
+                                // we have some data about this train contained in the train status that we're about to delete
+                                // move that data over to the train status we're going to keep, otherwise we'd lose this data
+
+                                trainStatusToKeep.setSecondsOffSchedule(trainStatusToRemove.getSecondsOffSchedule());
+                                if (trainStatusToKeep.getLastVisitedStation() == null) {
+                                    trainStatusToKeep.setLastVisitedStation(trainStatusToRemove.getLastVisitedStation());
+                                }
+                                if (trainStatusToKeep.getLastVisitedStationCode() == null) {
+                                    trainStatusToKeep.setLastVisitedStationCode(trainStatusToRemove.getLastVisitedStationCode());
                                 }
+                                if (trainStatusToKeep.getSecondsAtLastVisitedStation() == null) {
+                                    trainStatusToKeep.setSecondsAtLastVisitedStation(trainStatusToRemove.getSecondsAtLastVisitedStation());
+                                }
+                                if (trainStatusToKeep.getSecondsDelayed() == null) {
+                                    trainStatusToKeep.setSecondsDelayed(trainStatusToRemove.getSecondsDelayed());
+                                }
+                                if (trainStatusToKeep.getTrackNumberAtLastVisitedStation() == null) {
+                                    trainStatusToKeep.setTrackNumberAtLastVisitedStation(trainStatusToRemove.getTrackNumberAtLastVisitedStation());
+                                }
+                                if (trainStatusToKeep.getDirectionNumberAtLastVisitedStation() == null) {
+                                    trainStatusToKeep.setDirectionNumberAtLastVisitedStation(trainStatusToRemove.getDirectionNumberAtLastVisitedStation());
+                                }
+                                if (trainStatusToKeep.getLineCodeAtLastVisitedStation() == null) {
+                                    trainStatusToKeep.setLineCodeAtLastVisitedStation(trainStatusToRemove.getLineCodeAtLastVisitedStation());
+                                }
+                                if (trainStatusToKeep.getDestinationCodeAtLastVisitedStation() == null) {
+                                    trainStatusToKeep.setDestinationCodeAtLastVisitedStation(trainStatusToRemove.getDestinationCodeAtLastVisitedStation());
+                                }
+                                trainStatusToKeep.setTripId(trainStatusToRemove.getTripId());
 
-                                this.keptTrainIdByRemovedTrainId.remove(trainStatusToKeep.getTrainId());
-                                this.keptTrainIdByRemovedTrainId.forcePut(trainStatusToRemove.getTrainId(), trainStatusToKeep.getTrainId());
+                                this.trainTaggingService.migrateTrainTags(trainStatusToRemove, trainStatusToKeep);
                             }
+
+                            this.keptTrainIdByRemovedTrainId.remove(trainStatusToKeep.getTrainId());
+                            this.keptTrainIdByRemovedTrainId.forcePut(trainStatusToRemove.getTrainId(), trainStatusToKeep.getTrainId());
                         }
                     }
                 }
             }
         }
+        this.numDuplicateTrainCandidateComparisons = numDuplicateTrainCandidateComparisons;
         this.keptTrainIdByRemovedTrainId.keySet().removeIf(removedTrainId -> trainStatusesMap.remove(removedTrainId) == null);
 
-        // construct a list of train statuses for each station by deriving global train statuses
-
-        Map<String, List<TrainStatus>> stationTrainStatusesMap = new HashMap<>();
-        for (String stationCode : this.stationCodesSet) {
-            String stationName = StationUtil.getStationName(stationCode);
-            for (TrainStatus ts : trainStatusesMap.values()) {
-                if (ts.isKeyedDown()) {
-                    continue;
-                }
-
-                if ("No Passenger".equals(ts.getDestinationName())) {
-                    // filter out No Passenger trains
-                    continue;
-                }
-
-                // if this train is at a terminal station, we should filter out this train status
-                if (this.terminalStationTrackCircuitIdSet != null && this.terminalStationTrackCircuitIdSet.contains(ts.getTrackCircuitId())) {
-                    continue;
-                }
-
-                // get ETA to this station
-                String status = "N/A";
-                Double eta = getEstimatedTimeToStation(ts, stationCode);
-                Calendar adjustedScheduleTime = null;
-                if (eta == null) {
-                    // filter out trains that physically could not ever reach this station directly
-                    // this check is directional, so this will also filter out trains in the same direction who have passed this station already
-
-                    // ...except trains that have tripped the next circuit beyond a station circuit for a given direction,
-                    // as those trains may have done so without actually leaving the station corresponding to that circuit and thus should still show as BRD
-
-                    boolean shouldSkipTrain = true;
-                    if (ts.getMin() != null && !"?".equals(ts.getMin()) && ts.getLine() != null && ts.getDestinationCode() != null && ts.getLastVisitedStationCode() != null && ts.getDirectionNumber() != null && ts.getLastVisitedStationCode().equals(stationCode)) {
-                        TrackCircuit lastVisitedStationTrackCircuit = this.stationTrackCircuitMap.get(ts.getLastVisitedStationCode() + "_" + ts.getDirectionNumber());
-                        if (lastVisitedStationTrackCircuit != null) {
-                            if ((ts.getDirectionNumber() == 1 && lastVisitedStationTrackCircuit.getChildNeighbors().contains(ts.getCurrentTrackCircuit())) ||
-                                    (ts.getDirectionNumber() == 2 && lastVisitedStationTrackCircuit.getParentNeighbors().contains(ts.getCurrentTrackCircuit()))) {
-                                status = "BRD";
-                                eta = 0d;
-                                shouldSkipTrain = false;
-                            }
-                        }
-                    }
-                    if (shouldSkipTrain) {
-                        continue;
-                    }
-                } else {
-                    long roundedEta = Math.round(eta);
-                    if (ts.getScheduledTime() != null) {
-                        long additionalMillis = TimeUnit.MINUTES.toMillis(Math.round(eta - ts.getMinutesAway()));
-                        adjustedScheduleTime = Calendar.getInstance();
-                        adjustedScheduleTime.setTimeInMillis(ts.getScheduledTime().getTimeInMillis() + additionalMillis);
-                        status = new SimpleDateFormat("h:mm").format(adjustedScheduleTime.getTime());
-                    } else if (eta == 0) {
-                        status = "BRD";
-                    } else if (roundedEta <= 0) {
-                        status = "ARR";
-                    } else {
-                        status = String.valueOf(roundedEta);
-                    }
-                }
-
-                TrainStatus newTrainStatus = new TrainStatus(ts.getTrainId());
-                newTrainStatus.setRecentTweets(ts.getRecentTweets());
-                newTrainStatus.setRealTrainId(ts.getRealTrainId());
-                newTrainStatus.setId(ts.getId());
-                newTrainStatus.setCar(ts.getCar());
-                newTrainStatus.setDestination(ts.getDestination());
-                newTrainStatus.setDestinationCode(ts.getDestinationCode());
-                newTrainStatus.setOriginalDestinationCode(ts.getOriginalLineCode());
-                newTrainStatus.setOriginalDestinationCode(ts.getOriginalDestinationCode());
-                newTrainStatus.setDestinationName(ts.getDestinationName());
-                newTrainStatus.setGroup(ts.getGroup());
-                newTrainStatus.setLine(ts.getLine());
-                newTrainStatus.setCurrentStationCode(ts.getCurrentStationCode());
-                newTrainStatus.setCurrentStationName(ts.getCurrentStationName());
-                newTrainStatus.setLocationCode(stationCode); // important bit right here! (that's not just a wrote copy)
-                newTrainStatus.setLocationName(stationName); // important bit right here! (that's not just a wrote copy)
-                newTrainStatus.setMin(status); // important bit right here! (that's not just a wrote copy)
-                newTrainStatus.setParentMin(ts.getMin());
-                newTrainStatus.setMinutesAway(eta); // important bit right here! (that's not just a wrote copy)
-                newTrainStatus.setNumPositiveTags(ts.getNumPositiveTags());
-                newTrainStatus.setNumNegativeTags(ts.getNumNegativeTags());
-                newTrainStatus.setTrackNumber(ts.getTrackNumber());
-                newTrainStatus.setCurrentTrackCircuit(ts.getCurrentTrackCircuit());
-                newTrainStatus.setTrackCircuitId(ts.getTrackCircuitId());
-                newTrainStatus.setRawTrackCircuitId(ts.getRawTrackCircuitId());
-                newTrainStatus.setNotOnRevenueTrack(ts.isNotOnRevenueTrack());
-                newTrainStatus.setDirectionNumber(ts.getDirectionNumber());
-                newTrainStatus.setScheduledTime(adjustedScheduleTime);  // important bit right here! (that's not just a wrote copy)
-                newTrainStatus.setIsScheduled(adjustedScheduleTime != null);    // important bit right here! (that's not just a wrote copy)
-                newTrainStatus.setMaxMinutesAway(this.stationToStationDurationMap.get(ts.getPreviousStationCode() + "_" + ts.getLocationCode()) != null ? this.stationToStationDurationMap.get(ts.getPreviousStationCode() + "_" + ts.getLocationCode()) - 0.5d : null);
-                newTrainStatus.setPreviousStationCode(ts.getPreviousStationCode());
-                newTrainStatus.setPreviousStationName(ts.getPreviousStationName());
-                newTrainStatus.setSecondsSinceLastMoved(ts.getSecondsSinceLastMoved());
-                newTrainStatus.setIsCurrentlyHoldingOrSlow(ts.isCurrentlyHoldingOrSlow());
-                newTrainStatus.setSecondsOffSchedule(ts.getSecondsOffSchedule());
-                newTrainStatus.setSecondsDelayed(ts.getSecondsDelayed());
-                newTrainStatus.setLastMovedCircuits(ts.getLastMovedCircuits());
-                newTrainStatus.setTrainSpeed(ts.getTrainSpeed());
-                newTrainStatus.setCircuitName(ts.getCircuitName());
-                newTrainStatus.setDistanceFromNextStation(ts.getDistanceFromNextStation());
-                newTrainStatus.setKeyedDown(ts.isKeyedDown());
-                newTrainStatus.setWasKeyedDown(ts.wasKeyedDown());
-                newTrainStatus.setLastVisitedStation(ts.getLastVisitedStation());
-                newTrainStatus.setLastVisitedStationCode(ts.getLastVisitedStationCode());
-                newTrainStatus.setSecondsAtLastVisitedStation(ts.getSecondsAtLastVisitedStation());
-                newTrainStatus.setTripId(ts.getTripId());
-                newTrainStatus.setFirstObservedTrain(ts.getFirstObservedTrain());
-                newTrainStatus.setDestinationStationAbbreviation(ts.getDestinationStationAbbreviation());
-                newTrainStatus.setObservedDate(ts.getObservedDate());
-
-                newTrainStatus.setDestinationId(ts.getDestinationId());
-                newTrainStatus.setAreDoorsOpenOnLeft(ts.areDoorsOpenOnLeft());
-                newTrainStatus.setAreDoorsOpenOnRight(ts.areDoorsOpenOnRight());
-                newTrainStatus.setAdjustingOnPlatform(ts.isAdjustingOnPlatform());
-                newTrainStatus.setAreDoorsOperatingManually(ts.areDoorsOperatingManually());
-                newTrainStatus.setLat(ts.getLat());
-                newTrainStatus.setLon(ts.getLon());
-                newTrainStatus.setDirection(ts.getDirection());
-
-                newTrainStatus.setNumTagsByType(this.trainTaggingService.getNumTrainTagsByType(ts.getTrainId()));
-
-                newTrainStatus.setEstimatedMinutesAway(getPredictedRideTime(now, newTrainStatus.getLastVisitedStationCode(), newTrainStatus.getLocationCode(), newTrainStatus));
+        return new TrackedTrains(trainStatusesMap, stationToStationTrips, trainOffloads, trainDisappearances, observedTrainDepartures, trainExpressedStationEvents, duplicateTrainEvents);
+    }
 
-                List<TrainStatus> stationTrainStatuses = stationTrainStatusesMap.get(stationCode);
-                if (stationTrainStatuses == null) {
-                    stationTrainStatuses = new ArrayList<>();
-                    stationTrainStatuses.add(newTrainStatus);
-                    stationTrainStatusesMap.put(stationCode, stationTrainStatuses);
-                } else {
-                    stationTrainStatuses.add(newTrainStatus);
-                }
-            }
-        }
+    // derive: station boards and delay statuses between stations
+    private DerivedTrainData deriveTrainData(Calendar now, Map<String, TrainStatus> trainStatusesMap) {
+        // construct a list of train statuses for each station by deriving global train statuses
+        Map<String, List<TrainStatus>> stationTrainStatusesMap = buildStationTrainStatusesMap(now, trainStatusesMap);
 
         // sprinkle in scheduled train statuses derived from GTFS data
         if (this.stationScheduledTrainStatusesMap != null) {
@@ -1976,45 +2043,10 @@ public class TrainService {
 
         // sort train statuses by ETA for each station (in ascending order)
         for (List<TrainStatus> trainStatuses : stationTrainStatusesMap.values()) {
-            trainStatuses.sort((ts1, ts2) -> {
-                Double ts1Min;
-                try {
-                    ts1Min = (ts1.getMinutesAway() != null) ? ts1.getMinutesAway() : Double.parseDouble(ts1.getMin());
-                } catch (NumberFormatException e) {
-                    switch (ts1.getMin()) {
-                        case "BRD":
-                            ts1Min = -1d;
-                            break;
-                        case "ARR":
-                            ts1Min = 0d;
-                            break;
-                        default:
-                            // trains with unknown durations should be considered equally indefinitely far away
-                            ts1Min = 999d;
-                            break;
-                    }
-                }
-
-                Double ts2Min;
-                try {
-                    ts2Min = (ts2.getMinutesAway() != null) ? ts2.getMinutesAway() : Double.parseDouble(ts2.getMin());
-                } catch (NumberFormatException e) {
-                    switch (ts2.getMin()) {
-                        case "BRD":
-                            ts2Min = -1d;
-                            break;
-                        case "ARR":
-                            ts2Min = 0d;
-                            break;
-                        default:
-                            // trains with unknown durations should be considered equally indefinitely far away
-                            ts2Min = 999d;
-                            break;
-                    }
-                }
-
-                return ts1Min.compareTo(ts2Min);
-            });
+            for (TrainStatus trainStatus : trainStatuses) {
+                trainStatus.setEtaSortKey(getEtaSortKey(trainStatus));
+            }
+            trainStatuses.sort(Comparator.comparingDouble(TrainStatus::getEtaSortKey));
         }
 
         // tweet about long times between train arrivals compared to schedule
@@ -2074,10 +2106,10 @@ public class TrainService {
         Map<String, SystemInfo.BetweenStationDelayStatus> betweenStationDelayStatuses = new HashMap<>();
         for (String fromStationCode : this.stationCodesSet) {
             // for track 1
-            TrackCircuit fromStationCircuit = this.stationTrackCircuitMap.get(fromStationCode + "_1");
+            TrackCircuit fromStationCircuit = this.railNetwork.getStationTrackCircuit(fromStationCode, 1);
             if (fromStationCircuit != null) {
                 for (String toStationCode : fromStationCircuit.getNextChildStationCodes()) {
-                    TrackCircuit toStationCircuit = this.stationTrackCircuitMap.get(toStationCode + "_1");
+                    TrackCircuit toStationCircuit = this.railNetwork.getStationTrackCircuit(toStationCode, 1);
                     if (toStationCircuit != null) {
                         SystemInfo.BetweenStationDelayStatus status = null;
                         if (fromStationCircuit.getNumSecondsEstimatedTrackDelays() >= 120) {
@@ -2110,10 +2142,10 @@ public class TrainService {
                 }
             }
 
-            fromStationCircuit = this.stationTrackCircuitMap.get(fromStationCode + "_2");
+            fromStationCircuit = this.railNetwork.getStationTrackCircuit(fromStationCode, 2);
             if (fromStationCircuit != null) {
                 for (String toStationCode : fromStationCircuit.getNextParentStationCodes()) {
-                    TrackCircuit toStationCircuit = this.stationTrackCircuitMap.get(toStationCode + "_2");
+                    TrackCircuit toStationCircuit = this.railNetwork.getStationTrackCircuit(toStationCode, 2);
                     if (toStationCircuit != null) {
                         SystemInfo.BetweenStationDelayStatus status = null;
                         if (fromStationCircuit.getNumSecondsEstimatedTrackDelays() >= 120) {
@@ -2147,30 +2179,33 @@ public class TrainService {
             }
         }
 
-        // persist changes to our database
-        this.trainStatusRepository.saveAll(trainStatusesMap.values());
-        this.stationToStationTripRepository.saveAll(stationToStationTrips);
-        this.trainOffloadRepository.saveAll(trainOffloads);
-        this.trainDisappearanceRepository.saveAll(trainDisappearances);
-        this.trainExpressedStationEventRepository.saveAll(trainExpressedStationEvents);
-        this.duplicateTrainEventRepository.saveAll(duplicateTrainEvents);
-        this.trainDepartureRepository.saveAll(observedTrainDepartures);
+        return new DerivedTrainData(stationTrainStatusesMap, betweenStationDelayStatuses);
+    }
+
+    private void publish(Calendar now, TrackedTrains trackedTrains, DerivedTrainData derivedTrainData) {
+        publishSystemSnapshot(new SystemSnapshot(this.systemSnapshot.getVersion() + 1, trackedTrains.getTrainStatusesMap(), derivedTrainData.getStationTrainStatusesMap(), derivedTrainData.getBetweenStationDelayStatuses(), TimeUnit.MILLISECONDS.toSeconds(now.getTimeInMillis())));
+    }
+
+    private void publishSystemSnapshot(SystemSnapshot systemSnapshot) {
+        this.systemSnapshot = systemSnapshot;
 
-        this.trainStatusesMap = trainStatusesMap;
-        this.stationTrainStatusesMap = stationTrainStatusesMap;
-        this.betweenStationDelayStatuses = betweenStationDelayStatuses;
-        if (this.lastUpdatedTimestamp == null) {
-            this.lastUpdatedTimestamp = new AtomicLong();
+        for (Consumer<SystemSnapshot> systemSnapshotListener : this.systemSnapshotListeners) {
+            try {
+                systemSnapshotListener.accept(systemSnapshot);
+            } catch (RuntimeException e) {
+                logger.warn("System snapshot listener failed!", e);
+            }
         }
-        this.lastUpdatedTimestamp.set(TimeUnit.MILLISECONDS.toSeconds(observedDate.getTime()));
+    }
 
-        // TODO: disabled for now as it can make mistakes with regards to at least No Passenger destination codes
-        // consider either fixing in the future or removing entirely, depending on how things go
-//        updateDerivedLineCodeByDestinationIdMap();
+    private void persist(TrackedTrains trackedTrains) {
+        // these train statuses have been published, so they'll never be modified again (see trackTrains); no need to copy them
+        List<TrainStatus> trainStatuses = new ArrayList<>(trackedTrains.getTrainStatusesMap().values());
 
-        logger.info("...successfully updated train data from WMATA!");
+        this.writeBehindPersistenceService.enqueue(new WriteBehindPersistenceService.PendingWrite(trainStatuses, trackedTrains.getStationToStationTrips(), trackedTrains.getTrainOffloads(), trackedTrains.getTrainDisappearances(), trackedTrains.getTrainExpressedStationEvents(), trackedTrains.getDuplicateTrainEvents(), trackedTrains.getObservedTrainDepartures()));
     }
 
+
     @Scheduled(fixedDelay = 30000)  // every 30 seconds
     private void updateTrainDataOverLastHour() {
         logger.info("Updating train data over last hour...");
@@ -2222,7 +2257,7 @@ public class TrainService {
             List<TrainStatus> trainStatuses = entry.getValue();
 
             for (TrainStatus trainStatus : trainStatuses) {
-                TrackCircuit trackCircuit = this.stationTrackCircuitMap.get(trainStatus.getCurrentStationCode() + "_" + trainStatus.getDirectionNumber());
+                TrackCircuit trackCircuit = this.railNetwork.getStationTrackCircuit(trainStatus.getCurrentStationCode(), trainStatus.getDirectionNumber());
 
                 trainStatus.setCurrentTrackCircuit(trackCircuit);
                 trainStatus.setTrackCircuitId(trackCircuit.getId());
@@ -2247,27 +2282,6 @@ public class TrainService {
         }
     }
 
-    @Scheduled(fixedDelay = 3600000)    // every hour
-    private void deleteOldTrainStatuses() {
-        logger.info("Deleting any old train statuses...");
-        this.trainStatusRepository.removeOld();
-        logger.info("...deleted any old train statuses!");
-    }
-
-    @Scheduled(fixedDelay = 3600000)    // every hour
-    private void deleteOldStationToStationTrips() {
-        logger.info("Deleting any old station-to-station trips...");
-        this.stationToStationTripRepository.removeOld();
-        logger.info("...deleted any old station-to-station trips!");
-    }
-
-    @Scheduled(fixedDelay = 3600000)    // every hour
-    private void deleteOldTripStates() {
-        logger.info("Deleting any old trip states...");
-        this.tripRepository.removeOld();
-        logger.info("...deleted any old trip states!");
-    }
-
     @Scheduled(fixedDelay = 60000)  // every minute
     private void deleteOldLastStationDepartureAndTripTimes() {
         logger.info("Hiding any old last station departures and trip times...");
@@ -2294,6 +2308,214 @@ public class TrainService {
         logger.info("...successfully hid any old last station departures and trip times!");
     }
 
+    // walks each train forward along its own remaining path, deriving a train status for each station it's going to serve
+    // (rather than evaluating every train against every station)
+    private Map<String, List<TrainStatus>> buildStationTrainStatusesMap(Calendar now, Map<String, TrainStatus> trainStatusesMap) {
+        Map<String, List<TrainStatus>> stationTrainStatusesMap = new HashMap<>();
+        for (TrainStatus ts : trainStatusesMap.values()) {
+            if (ts.isKeyedDown()) {
+                continue;
+            }
+
+            if ("No Passenger".equals(ts.getDestinationName())) {
+                // filter out No Passenger trains
+                continue;
+            }
+
+            // if this train is at a terminal station, we should filter out this train status
+            if (this.terminalStationTrackCircuitIdSet != null && this.terminalStationTrackCircuitIdSet.contains(ts.getTrackCircuitId())) {
+                continue;
+            }
+
+            for (String stationCode : getStationCodesServedByTrain(ts)) {
+                String stationName = StationUtil.getStationName(stationCode);
+
+                // get ETA to this station
+                String status = "N/A";
+                Double eta = getEstimatedTimeToStation(ts, stationCode);
+                Calendar adjustedScheduleTime = null;
+                if (eta == null) {
+                    // filter out trains that physically could not ever reach this station directly
+                    // this check is directional, so this will also filter out trains in the same direction who have passed this station already
+
+                    // ...except trains that have tripped the next circuit beyond a station circuit for a given direction,
+                    // as those trains may have done so without actually leaving the station corresponding to that circuit and thus should still show as BRD
+
+                    boolean shouldSkipTrain = true;
+                    if (ts.getMin() != null && !"?".equals(ts.getMin()) && ts.getLine() != null && ts.getDestinationCode() != null && ts.getLastVisitedStationCode() != null && ts.getDirectionNumber() != null && ts.getLastVisitedStationCode().equals(stationCode)) {
+                        TrackCircuit lastVisitedStationTrackCircuit = this.railNetwork.getStationTrackCircuit(ts.getLastVisitedStationCode(), ts.getDirectionNumber());
+                        if (lastVisitedStationTrackCircuit != null) {
+                            if ((ts.getDirectionNumber() == 1 && lastVisitedStationTrackCircuit.getChildNeighbors().contains(ts.getCurrentTrackCircuit())) ||
+                                    (ts.getDirectionNumber() == 2 && lastVisitedStationTrackCircuit.getParentNeighbors().contains(ts.getCurrentTrackCircuit()))) {
+                                status = "BRD";
+                                eta = 0d;
+                                shouldSkipTrain = false;
+                            }
+                        }
+                    }
+                    if (shouldSkipTrain) {
+                        continue;
+                    }
+                } else {
+                    long roundedEta = Math.round(eta);
+                    if (ts.getScheduledTime() != null) {
+                        long additionalMillis = TimeUnit.MINUTES.toMillis(Math.round(eta - ts.getMinutesAway()));
+                        adjustedScheduleTime = Calendar.getInstance();
+                        adjustedScheduleTime.setTimeInMillis(ts.getScheduledTime().getTimeInMillis() + additionalMillis);
+                        status = new SimpleDateFormat("h:mm").format(adjustedScheduleTime.getTime());
+                    } else if (eta == 0) {
+                        status = "BRD";
+                    } else if (roundedEta <= 0) {
+                        status = "ARR";
+                    } else {
+                        status = String.valueOf(roundedEta);
+                    }
+                }
+
+                TrainStatus newTrainStatus = new TrainStatus(ts.getTrainId());
+                newTrainStatus.setRecentTweets(ts.getRecentTweets());
+                newTrainStatus.setRealTrainId(ts.getRealTrainId());
+                newTrainStatus.setId(ts.getId());
+                newTrainStatus.setCar(ts.getCar());
+                newTrainStatus.setDestination(ts.getDestination());
+                newTrainStatus.setDestinationCode(ts.getDestinationCode());
+                newTrainStatus.setOriginalDestinationCode(ts.getOriginalLineCode());
+                newTrainStatus.setOriginalDestinationCode(ts.getOriginalDestinationCode());
+                newTrainStatus.setDestinationName(ts.getDestinationName());
+                newTrainStatus.setGroup(ts.getGroup());
+                newTrainStatus.setLine(ts.getLine());
+                newTrainStatus.setCurrentStationCode(ts.getCurrentStationCode());
+                newTrainStatus.setCurrentStationName(ts.getCurrentStationName());
+                newTrainStatus.setLocationCode(stationCode); // important bit right here! (that's not just a wrote copy)
+                newTrainStatus.setLocationName(stationName); // important bit right here! (that's not just a wrote copy)
+                newTrainStatus.setMin(status); // important bit right here! (that's not just a wrote copy)
+                newTrainStatus.setParentMin(ts.getMin());
+                newTrainStatus.setMinutesAway(eta); // important bit right here! (that's not just a wrote copy)
+                newTrainStatus.setNumPositiveTags(ts.getNumPositiveTags());
+                newTrainStatus.setNumNegativeTags(ts.getNumNegativeTags());
+                newTrainStatus.setTrackNumber(ts.getTrackNumber());
+                newTrainStatus.setCurrentTrackCircuit(ts.getCurrentTrackCircuit());
+                newTrainStatus.setTrackCircuitId(ts.getTrackCircuitId());
+                newTrainStatus.setRawTrackCircuitId(ts.getRawTrackCircuitId());
+                newTrainStatus.setNotOnRevenueTrack(ts.isNotOnRevenueTrack());
+                newTrainStatus.setDirectionNumber(ts.getDirectionNumber());
+                newTrainStatus.setScheduledTime(adjustedScheduleTime);  // important bit right here! (that's not just a wrote copy)
+                newTrainStatus.setIsScheduled(adjustedScheduleTime != null);    // important bit right here! (that's not just a wrote copy)
+                newTrainStatus.setMaxMinutesAway(this.stationToStationDurationMap.get(ts.getPreviousStationCode() + "_" + ts.getLocationCode()) != null ? this.stationToStationDurationMap.get(ts.getPreviousStationCode() + "_" + ts.getLocationCode()) - 0.5d : null);
+                newTrainStatus.setPreviousStationCode(ts.getPreviousStationCode());
+                newTrainStatus.setPreviousStationName(ts.getPreviousStationName());
+                newTrainStatus.setSecondsSinceLastMoved(ts.getSecondsSinceLastMoved());
+                newTrainStatus.setIsCurrentlyHoldingOrSlow(ts.isCurrentlyHoldingOrSlow());
+                newTrainStatus.setSecondsOffSchedule(ts.getSecondsOffSchedule());
+                newTrainStatus.setSecondsDelayed(ts.getSecondsDelayed());
+                newTrainStatus.setLastMovedCircuits(ts.getLastMovedCircuits());
+                newTrainStatus.setTrainSpeed(ts.getTrainSpeed());
+                newTrainStatus.setCircuitName(ts.getCircuitName());
+                newTrainStatus.setDistanceFromNextStation(ts.getDistanceFromNextStation());
+                newTrainStatus.setKeyedDown(ts.isKeyedDown());
+                newTrainStatus.setWasKeyedDown(ts.wasKeyedDown());
+                newTrainStatus.setLastVisitedStation(ts.getLastVisitedStation());
+                newTrainStatus.setLastVisitedStationCode(ts.getLastVisitedStationCode());
+                newTrainStatus.setSecondsAtLastVisitedStation(ts.getSecondsAtLastVisitedStation());
+                newTrainStatus.setTripId(ts.getTripId());
+                newTrainStatus.setFirstObservedTrain(ts.getFirstObservedTrain());
+                newTrainStatus.setDestinationStationAbbreviation(ts.getDestinationStationAbbreviation());
+                newTrainStatus.setObservedDate(ts.getObservedDate());
+
+                newTrainStatus.setDestinationId(ts.getDestinationId());
+                newTrainStatus.setAreDoorsOpenOnLeft(ts.areDoorsOpenOnLeft());
+                newTrainStatus.setAreDoorsOpenOnRight(ts.areDoorsOpenOnRight());
+                newTrainStatus.setAdjustingOnPlatform(ts.isAdjustingOnPlatform());
+                newTrainStatus.setAreDoorsOperatingManually(ts.areDoorsOperatingManually());
+                newTrainStatus.setLat(ts.getLat());
+                newTrainStatus.setLon(ts.getLon());
+                newTrainStatus.setDirection(ts.getDirection());
+
+                newTrainStatus.setNumTagsByType(this.trainTaggingService.getNumTrainTagsByType(ts.getTrainId()));
+
+                newTrainStatus.setEstimatedMinutesAway(getPredictedRideTime(now, newTrainStatus.getLastVisitedStationCode(), newTrainStatus.getLocationCode(), newTrainStatus));
+
+                List<TrainStatus> stationTrainStatuses = stationTrainStatusesMap.get(stationCode);
+                if (stationTrainStatuses == null) {
+                    stationTrainStatuses = new ArrayList<>();
+                    stationTrainStatuses.add(newTrainStatus);
+                    stationTrainStatusesMap.put(stationCode, stationTrainStatuses);
+                } else {
+                    stationTrainStatuses.add(newTrainStatus);
+                }
+            }
+        }
+        return stationTrainStatusesMap;
+    }
+
+    // every station a train could still stop at, i.e. the stations ahead of it on its track (whether or not they're past its destination),
+    // plus the station it last visited, since it may have tripped the next circuit beyond that station's circuit without actually leaving it
+    private Set<String> getStationCodesServedByTrain(TrainStatus ts) {
+        Set<String> stationCodes = new HashSet<>();
+
+        if (ts.getLastVisitedStationCode() != null && this.stationCodesSet.contains(ts.getLastVisitedStationCode())) {
+            stationCodes.add(ts.getLastVisitedStationCode());
+        }
+
+        if (ts.getLocationCode() != null && ts.getDestinationCode() != null && ts.getMinutesAway() != null && ts.getCurrentTrackCircuit() != null) {
+            TrackCircuit locationStationCircuit = this.railNetwork.getStationTrackCircuit(ts.getLocationCode(), ts.getCurrentTrackCircuit().getTrackNumber());
+            if (locationStationCircuit != null) {
+                stationCodes.add(ts.getLocationCode());
+
+                Collection<Set<String>> forwardStationCodeSets = Objects.equals(ts.getDirectionNumber(), 1) ? locationStationCircuit.getChildStationCodes().values() : locationStationCircuit.getParentStationCodes().values();
+                for (Set<String> forwardStationCodes : forwardStationCodeSets) {
+                    stationCodes.addAll(forwardStationCodes);
+                }
+            }
+        }
+
+        return stationCodes;
+    }
+
+    // trains are listed in order of their ETA to a station, with boarding trains first and trains with unknown ETAs last
+    private static double getEtaSortKey(TrainStatus ts) {
+        if (ts.getMinutesAway() != null) {
+            return ts.getMinutesAway();
+        }
+
+        String min = ts.getMin();
+        if ("BRD".equals(min)) {
+            return -1d;
+        } else if ("ARR".equals(min)) {
+            return 0d;
+        } else if (isNumeric(min)) {
+            return Double.parseDouble(min);
+        } else {
+            // trains with unknown durations should be considered equally indefinitely far away
+            return 999d;
+        }
+    }
+
+    // whether Double.parseDouble would accept this as a plain decimal number, e.g. "5", "-1" or "2.5", without throwing and catching an exception to find out
+    private static boolean isNumeric(String text) {
+        if (text == null) {
+            return false;
+        }
+        text = text.trim();
+
+        // an optional sign, like parseDouble allows
+        int start = (text.startsWith("-") || text.startsWith("+")) ? 1 : 0;
+
+        boolean hasDigit = false;
+        boolean hasDecimalPoint = false;
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigit = true;
+            } else if (c == '.' && !hasDecimalPoint) {
+                hasDecimalPoint = true;
+            } else {
+                return false;
+            }
+        }
+        return hasDigit;
+    }
+
     private List<TrainStatus> getCurrentScheduledTrainStatusesForStation(Calendar now, String stationCode, List<TrainStatus> realTimeTrainStatusesForStation) {
         List<TrainStatus> scheduledTrainStatuses = this.stationScheduledTrainStatusesMap.get(stationCode);
         if (scheduledTrainStatuses == null) {
@@ -2429,29 +2651,30 @@ public class TrainService {
         }
 
         // derive trip durations for every combination of valid to/from stations using cached neighboring station trip durations
+        StationToStationPathIndex stationToStationPathIndex = new StationToStationPathIndex(this.railNetwork, stationCodes, stationToStationDurationMap, stationToStationMedianDurationMap, this::getStationCodes);
         Map<String, Double> derivedStationToStationDurationMap = new HashMap<>(stationToStationDurationMap);
         Map<String, Double> derivedStationToStationMedianDurationMap = new HashMap<>(stationToStationMedianDurationMap);
         Map<String, List<String>> stationToStationTripMap = new HashMap<>();
         for (String stationCode1 : stationCodes) {
+            int stationId1 = this.railNetwork.getStationId(stationCode1);
             for (String stationCode2 : stationCodes) {
-                Set<String> tripStationCodes = getStationCodes(stationCode1, stationCode2);
-                Double duration = getStationToStationTripDuration(stationToStationDurationMap, tripStationCodes, stationCode1, stationCode2);
-                if (duration == null) {
+                int stationId2 = this.railNetwork.getStationId(stationCode2);
+                if (stationId1 == RailNetwork.NO_ID || stationId2 == RailNetwork.NO_ID) {
+                    continue;
+                }
+
+                double duration = stationToStationPathIndex.getDuration(stationId1, stationId2);
+                if (Double.isNaN(duration)) {
                     continue;
                 }
                 derivedStationToStationDurationMap.put(stationCode1 + "_" + stationCode2, duration);
-                Double medianDuration = getStationToStationTripDuration(stationToStationMedianDurationMap, tripStationCodes, stationCode1, stationCode2);
-                if (medianDuration == null) {
+                double medianDuration = stationToStationPathIndex.getMedianDuration(stationId1, stationId2);
+                if (Double.isNaN(medianDuration)) {
                     continue;
                 }
                 derivedStationToStationMedianDurationMap.put(stationCode1 + "_" + stationCode2, medianDuration);
 
-                List<String> stationToStationTrip = getStationToStationTrip(stationToStationDurationMap, stationCode1, stationCode2, tripStationCodes);
-                if (stationToStationTrip == null || stationToStationTrip.isEmpty()) {
-                    // this should never happen
-                    continue;
-                }
-                stationToStationTripMap.put(stationCode1 + "_" + stationCode2, stationToStationTrip);
+                stationToStationTripMap.put(stationCode1 + "_" + stationCode2, Arrays.asList(stationToStationPathIndex.getTripStationCodes(stationId1, stationId2)));
             }
         }
 
@@ -2459,94 +2682,10 @@ public class TrainService {
         this.stationToStationDurationMap = derivedStationToStationDurationMap;
         this.stationToStationMedianDurationMap = derivedStationToStationMedianDurationMap;
         this.stationToStationTripMap = stationToStationTripMap;
+        this.stationToStationPathIndex = stationToStationPathIndex;
 
         logger.info("...successfully built station-to-station duration and trip maps!");
     }
-    private Double getStationToStationTripDuration(Map<String, Double> stationToStationDurationMap, Set<String> availableStationCodes, String fromStationCode, String toStationCode) {
-        if (StringUtils.isEmpty(fromStationCode) || StringUtils.isEmpty(toStationCode) || fromStationCode.equals(toStationCode) || availableStationCodes == null || availableStationCodes.isEmpty()) {
-            return null;
-        }
-
-        return getStationToStationTripDuration(stationToStationDurationMap, availableStationCodes, fromStationCode, toStationCode, 0, new HashSet<>());
-    }
-    private Double getStationToStationTripDuration(Map<String, Double> stationToStationDurationMap, Set<String> availableStationCodes, String fromStationCode, String toStationCode, double tripDuration, Set<String> visitedStations) {
-        if (fromStationCode.equals(toStationCode)) {
-            return tripDuration;
-        }
-
-        Set<String> newVisitedStations = new HashSet<>(visitedStations);
-        newVisitedStations.add(fromStationCode);
-
-        for (String stationCode : availableStationCodes) {
-            if (newVisitedStations.contains(stationCode)) {
-                continue;
-            }
-
-            Double additionalTripDuration = stationToStationDurationMap.get(fromStationCode + "_" + stationCode);
-            if (additionalTripDuration == null) {
-                continue;
-            }
-
-            Set<String> newAvailableStationCodes = new HashSet<>(availableStationCodes);
-            newAvailableStationCodes.remove(stationCode);
-
-            // factor in estimated station boarding time
-            if (newVisitedStations.size() > 1) {
-                additionalTripDuration += 1d;
-            } else {
-                // at any given time, we can expect a train boarding at its current station to be there for about
-                // half the time we normally factor in for boarding time (assuming a normal distribution)
-                additionalTripDuration += 0.5d;
-            }
-
-            Double totalTripDuration = getStationToStationTripDuration(stationToStationDurationMap, newAvailableStationCodes, stationCode, toStationCode, tripDuration + additionalTripDuration, newVisitedStations);
-            if (totalTripDuration == null) {
-                continue;
-            }
-
-            return totalTripDuration;
-        }
-
-        return null;
-    }
-    private List<String> getStationToStationTrip(Map<String, Double> stationToStationDurationMap, String fromStationCode, String toStationCode, Set<String> availableStationCodes) {
-        if (StringUtils.isEmpty(fromStationCode) || StringUtils.isEmpty(toStationCode) || fromStationCode.equals(toStationCode) || availableStationCodes == null || availableStationCodes.isEmpty()) {
-            return null;
-        }
-
-        return getStationToStationTrip(stationToStationDurationMap, fromStationCode, toStationCode, availableStationCodes, new ArrayList<>());
-    }
-    private List<String> getStationToStationTrip(Map<String, Double> stationToStationDurationMap, String fromStationCode, String toStationCode, Set<String> availableStationCodes, List<String> visitedStationCodes) {
-        List<String> newVisitedStationCodes = new ArrayList<>(visitedStationCodes);
-        newVisitedStationCodes.add(fromStationCode);
-
-        if (fromStationCode.equals(toStationCode)) {
-            return newVisitedStationCodes;
-        }
-
-        for (String stationCode : availableStationCodes) {
-            if (newVisitedStationCodes.contains(stationCode)) {
-                continue;
-            }
-
-            Double additionalTripDuration = stationToStationDurationMap.get(fromStationCode + "_" + stationCode);
-            if (additionalTripDuration == null) {
-                continue;
-            }
-
-            Set<String> newAvailableStationCodes = new HashSet<>(availableStationCodes);
-            newAvailableStationCodes.remove(stationCode);
-
-            List<String> stationToStationTrip = getStationToStationTrip(stationToStationDurationMap, stationCode, toStationCode, newAvailableStationCodes, newVisitedStationCodes);
-            if (stationToStationTrip == null) {
-                continue;
-            }
-
-            return stationToStationTrip;
-        }
-
-        return null;
-    }
 
     @Scheduled(fixedDelay = 300000)  // every 5 minutes
     private void buildDestinationCodeMap() {
@@ -2762,6 +2901,20 @@ public class TrainService {
         return stationTrackCircuitMap;
     }
 
+    private RailNetwork buildRailNetwork() {
+        logger.info("Building rail network...");
+        RailNetwork railNetwork = new RailNetwork(this.trackCircuitMap, this.trackCircuitInfoMap, this.stationTrackCircuitMap);
+        logger.info("...rail network built successfully!");
+        return railNetwork;
+    }
+
+    private TrackCircuitDistanceIndex buildTrackCircuitDistanceIndex() {
+        logger.info("Building track circuit distance index...");
+        TrackCircuitDistanceIndex trackCircuitDistanceIndex = new TrackCircuitDistanceIndex(this.railNetwork);
+        logger.info("...track circuit distance index built successfully!");
+        return trackCircuitDistanceIndex;
+    }
+
     private Set<String> buildStationCodesSet() {
         logger.info("Building station codes set...");
 
@@ -2815,64 +2968,16 @@ public class TrainService {
             return null;
         }
 
-        TrackCircuit toTrackCircuit = this.stationTrackCircuitMap.get(nextStationCode + "_" + fromTrackCircuit.getTrackNumber());
-        return getMinDistanceCovered(fromTrackCircuit, toTrackCircuit);
+        double minDistanceCovered = this.trackCircuitDistanceIndex.getDistanceToStation(fromTrackCircuit, nextStationCode);
+        return (minDistanceCovered != TrackCircuitDistanceIndex.NO_PATH) ? minDistanceCovered : null;
     }
     private Double getMinDistanceCovered(TrackCircuit fromTrackCircuit, TrackCircuit toTrackCircuit) {
         if (fromTrackCircuit == null || toTrackCircuit == null) {
             return null;
         }
 
-        Double minDistanceCovered = getMinDistanceCovered(fromTrackCircuit, toTrackCircuit, true, new HashSet<>(), new HashSet<>(), 0);
-        if (minDistanceCovered == null) {
-            minDistanceCovered = getMinDistanceCovered(fromTrackCircuit, toTrackCircuit, false, new HashSet<>(), new HashSet<>(), 0);
-        }
-
-        return minDistanceCovered;
-    }
-    private Double getMinDistanceCovered(TrackCircuit fromTrackCircuit, TrackCircuit toTrackCircuit, boolean visitByChildren, Set<Integer> visitedTrackCircuitApiIds, Set<String> visitedTrackCircuitTrackIds, double distanceCovered) {
-        if (fromTrackCircuit == null || toTrackCircuit == null) {
-            return null;
-        }
-
-        if (fromTrackCircuit.equals(toTrackCircuit)) {
-            return distanceCovered;
-        }
-
-        // traverse track circuits by API ID, but only cover distance by track ID
-        // (this is because different API IDs can map to the same physical track ID)
-
-        Set<Integer> newVisitedTrackCircuitApiIds = new HashSet<>(visitedTrackCircuitApiIds);
-        newVisitedTrackCircuitApiIds.add(fromTrackCircuit.getId());
-
-        Set<String> newVisitedTrackCircuitTrackIds = new HashSet<>(visitedTrackCircuitTrackIds);
-        Double newDistanceCovered = distanceCovered;
-        TrackCircuitInfo fromTrackCircuitInfo = this.trackCircuitInfoMap.get(fromTrackCircuit.getId());
-        if (fromTrackCircuitInfo != null && !newVisitedTrackCircuitTrackIds.contains(fromTrackCircuitInfo.getTrackId())) {
-            newVisitedTrackCircuitTrackIds.add(fromTrackCircuitInfo.getTrackId());
-            newDistanceCovered += fromTrackCircuitInfo.getLength();
-        }
-
-        Set<TrackCircuit> neighbors;
-        if (visitByChildren) {
-            neighbors = fromTrackCircuit.getChildNeighbors();
-        } else {
-            neighbors = fromTrackCircuit.getParentNeighbors();
-        }
-        for (TrackCircuit neighboringTrackCircuit : neighbors) {
-            if (newVisitedTrackCircuitApiIds.contains(neighboringTrackCircuit.getId())) {
-                continue;
-            }
-
-            Double totalDistanceCovered = getMinDistanceCovered(neighboringTrackCircuit, toTrackCircuit, visitByChildren, newVisitedTrackCircuitApiIds, newVisitedTrackCircuitTrackIds, newDistanceCovered);
-            if (totalDistanceCovered == null) {
-                continue;
-            }
-
-            return totalDistanceCovered;
-        }
-
-        return null;
+        double minDistanceCovered = this.trackCircuitDistanceIndex.getDistance(fromTrackCircuit, toTrackCircuit);
+        return (minDistanceCovered != TrackCircuitDistanceIndex.NO_PATH) ? minDistanceCovered : null;
     }
 
     public Double getPredictedRideTime(Calendar now, String fromStationCode, String toStationCode, TrainStatus trainStatus) {
@@ -2884,7 +2989,14 @@ public class TrainService {
             return null;
         }
 
-        List<String> tripStationCodes = this.stationToStationTripMap.get(String.join("_", fromStationCode, toStationCode));
+        StationToStationPathIndex stationToStationPathIndex = this.stationToStationPathIndex;
+        int fromStationId = this.railNetwork.getStationId(fromStationCode);
+        int toStationId = this.railNetwork.getStationId(toStationCode);
+        if (fromStationId == RailNetwork.NO_ID || toStationId == RailNetwork.NO_ID || Double.isNaN(stationToStationPathIndex.getMedianDuration(fromStationId, toStationId))) {
+            return null;
+        }
+        String[] tripStationCodes = stationToStationPathIndex.getTripStationCodes(fromStationId, toStationId);
+        String[] tripLegKeys = stationToStationPathIndex.getTripLegKeys(fromStationId, toStationId);
         if (tripStationCodes == null) {
             return null;
         }
@@ -2892,11 +3004,11 @@ public class TrainService {
         Double predictedRideTime = null;
         Double predictedRideTimeToFirstStationStop = null;
 
-        for (int i = 0, j = 1; j < tripStationCodes.size(); i++, j++) {
-            String tripStation1Code = tripStationCodes.get(i);
-            String tripStation2Code = tripStationCodes.get(j);
+        for (int i = 0, j = 1; j < tripStationCodes.length; i++, j++) {
+            String tripStation1Code = tripStationCodes[i];
+            String tripStation2Code = tripStationCodes[j];
 
-            String key = String.join("_", tripStation1Code, tripStation2Code);
+            String key = tripLegKeys[i];
             Double lastTripTime = this.lastStationToStationTripTimeMap.get(key);
             if (lastTripTime != null) {
                 if (predictedRideTime == null) {
@@ -2910,7 +3022,7 @@ public class TrainService {
 
                 Double currentRunningTripTime = null;
 
-                List<TrainStatus> tripStation2TrainStatuses = this.stationTrainStatusesMap.get(tripStation2Code);   // already sorted by ETA in ascending order
+                List<TrainStatus> tripStation2TrainStatuses = this.systemSnapshot.getStationTrainStatusesMap().get(tripStation2Code);   // already sorted by ETA in ascending order
                 if (tripStation2TrainStatuses != null) {
                     for (TrainStatus tripStation2TrainStatus : tripStation2TrainStatuses) {
                         if (tripStation2TrainStatus.isKeyedDown() || tripStation2TrainStatus.wasKeyedDown() || tripStation2TrainStatus.getLastVisitedStation() == null) {
@@ -2953,17 +3065,9 @@ public class TrainService {
             // fetch train predictions from WMATA for analysis and comparison to our own train predictions
 
             ResponseEntity<TrainPredictions> responseEntity;
-            String url = "https://api.wmata.com/beta/StationPrediction.svc/json/GetPrediction/All";
+            String url = this.configUtil.getWmataTrainPredictionsApiUrl();
             HttpEntity<String> requestEntity = NetworkUtil.createNewHttpEntity(this.configUtil.getWmataApiKey());
-            RestTemplate restTemplate;
-            try {
-                restTemplate = NetworkUtil.createNewRestTemplate(true);
-                responseEntity = restTemplate.exchange(url, HttpMethod.GET, requestEntity, TrainPredictions.class);
-            } catch (RestClientException e) {
-                restTemplate = NetworkUtil.createNewRestTemplate(false);
-                responseEntity = restTemplate.exchange(url, HttpMethod.GET, requestEntity, TrainPredictions.class);
-                logger.warn("Response from WMATA Train Predictions API not gzipped!");
-            }
+            responseEntity = this.requestHandler.getRestTemplate(RequestHandler.Feed.TRAIN_PREDICTIONS).exchange(url, HttpMethod.GET, requestEntity, TrainPredictions.class);
 
             if (responseEntity.getBody() == null || responseEntity.getBody().getTrains() == null || responseEntity.getBody().getTrains().isEmpty()) {
                 // no train predictions available from WMATA
@@ -2995,7 +3099,7 @@ public class TrainService {
                     continue;
                 }
 
-                List<TrainStatus> trainStatuses = this.stationTrainStatusesMap.get(trainPrediction.getLocationCode());
+                List<TrainStatus> trainStatuses = this.systemSnapshot.getStationTrainStatusesMap().get(trainPrediction.getLocationCode());
                 if (trainStatuses == null) {
                     continue;
                 }
@@ -3032,24 +3136,37 @@ public class TrainService {
         }
     }
 
-    public Map<String, TrainStatus> getTrainStatusesMap() {
-        return trainStatusesMap;
-    }
-
-    public Map<String, List<TrainStatus>> getStationTrainStatusesMap() {
-        return stationTrainStatusesMap;
+    // listeners are called on the update thread as soon as each new snapshot is published, so they should hand off anything slow
+    public void addSystemSnapshotListener(Consumer<SystemSnapshot> systemSnapshotListener) {
+        this.systemSnapshotListeners.add(systemSnapshotListener);
     }
 
-    public Map<String, SystemInfo.BetweenStationDelayStatus> getBetweenStationDelayStatuses() {
-        return betweenStationDelayStatuses;
+    public SystemSnapshot getSystemSnapshot() {
+        return systemSnapshot;
     }
 
     public Set<String> getStationCodesSet() {
         return stationCodesSet;
     }
 
-    public Map<String, TrackCircuit> getStationTrackCircuitMap() {
-        return stationTrackCircuitMap;
+    public RailNetwork getRailNetwork() {
+        return railNetwork;
+    }
+
+    public int getNumDuplicateTrainCandidateComparisons() {
+        return numDuplicateTrainCandidateComparisons;
+    }
+
+    public Map<UpdateStage, PipelineStageMetrics> getUpdateStageMetrics() {
+        return updateStageMetrics;
+    }
+
+    public long getNumLateGISTrainDataResponses() {
+        return numLateGISTrainDataResponses;
+    }
+
+    public long getNumSkippedUnchangedUpdates() {
+        return numSkippedUnchangedUpdates;
     }
 
     public Map<String, ArrivalInfo> getLastStationArrivalMap() {
@@ -3060,10 +3177,6 @@ public class TrainService {
         return crowdingStatusByStation;
     }
 
-    public Long getLastUpdatedTimestamp() {
-        return (lastUpdatedTimestamp != null) ? lastUpdatedTimestamp.get() : null;
-    }
-
     public List<TrainStatusForMareyDiagram> getTrainDataOverLastHour() {
         return trainDataOverLastHour;
     }
@@ -3080,7 +3193,101 @@ public class TrainService {
         return stationToStationTripMap;
     }
 
+    public StationToStationPathIndex getStationToStationPathIndex() {
+        return stationToStationPathIndex;
+    }
+
     public Map<String, DepartureInfo> getLastStationDepartureMap() {
         return lastStationDepartureMap;
     }
+
+    private static class FetchedTrainPositions {
+        private final byte[] body;
+        private final Calendar observedDate;
+        private final boolean isUnchanged;  // since the last fetch
+
+        FetchedTrainPositions(byte[] body, Calendar observedDate, boolean isUnchanged) {
+            this.body = body;
+            this.observedDate = observedDate;
+            this.isUnchanged = isUnchanged;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+
+        Calendar getObservedDate() {
+            return observedDate;
+        }
+
+        boolean isUnchanged() {
+            return isUnchanged;
+        }
+    }
+
+    private static class TrackedTrains {
+        private final Map<String, TrainStatus> trainStatusesMap;
+        private final List<StationToStationTrip> stationToStationTrips;
+        private final List<TrainOffload> trainOffloads;
+        private final List<TrainDisappearance> trainDisappearances;
+        private final List<TrainDeparture> observedTrainDepartures;
+        private final List<TrainExpressedStationEvent> trainExpressedStationEvents;
+        private final List<DuplicateTrainEvent> duplicateTrainEvents;
+
+        TrackedTrains(Map<String, TrainStatus> trainStatusesMap, List<StationToStationTrip> stationToStationTrips, List<TrainOffload> trainOffloads, List<TrainDisappearance> trainDisappearances, List<TrainDeparture> observedTrainDepartures, List<TrainExpressedStationEvent> trainExpressedStationEvents, List<DuplicateTrainEvent> duplicateTrainEvents) {
+            this.trainStatusesMap = trainStatusesMap;
+            this.stationToStationTrips = stationToStationTrips;
+            this.trainOffloads = trainOffloads;
+            this.trainDisappearances = trainDisappearances;
+            this.observedTrainDepartures = observedTrainDepartures;
+            this.trainExpressedStationEvents = trainExpressedStationEvents;
+            this.duplicateTrainEvents = duplicateTrainEvents;
+        }
+
+        Map<String, TrainStatus> getTrainStatusesMap() {
+            return trainStatusesMap;
+        }
+
+        List<StationToStationTrip> getStationToStationTrips() {
+            return stationToStationTrips;
+        }
+
+        List<TrainOffload> getTrainOffloads() {
+            return trainOffloads;
+        }
+
+        List<TrainDisappearance> getTrainDisappearances() {
+            return trainDisappearances;
+        }
+
+        List<TrainDeparture> getObservedTrainDepartures() {
+            return observedTrainDepartures;
+        }
+
+        List<TrainExpressedStationEvent> getTrainExpressedStationEvents() {
+            return trainExpressedStationEvents;
+        }
+
+        List<DuplicateTrainEvent> getDuplicateTrainEvents() {
+            return duplicateTrainEvents;
+        }
+    }
+
+    private static class DerivedTrainData {
+        private final Map<String, List<TrainStatus>> stationTrainStatusesMap;
+        private final Map<String, SystemInfo.BetweenStationDelayStatus> betweenStationDelayStatuses;
+
+        DerivedTrainData(Map<String, List<TrainStatus>> stationTrainStatusesMap, Map<String, SystemInfo.BetweenStationDelayStatus> betweenStationDelayStatuses) {
+            this.stationTrainStatusesMap = stationTrainStatusesMap;
+            this.betweenStationDelayStatuses = betweenStationDelayStatuses;
+        }
+
+        Map<String, List<TrainStatus>> getStationTrainStatusesMap() {
+            return stationTrainStatusesMap;
+        }
+
+        Map<String, SystemInfo.BetweenStationDelayStatus> getBetweenStationDelayStatuses() {
+            return betweenStationDelayStatuses;
+        }
+    }
 }
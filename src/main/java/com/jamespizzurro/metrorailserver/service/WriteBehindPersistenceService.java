@@ -0,0 +1,260 @@
+package com.jamespizzurro.metrorailserver.service;
+
+import com.jamespizzurro.metrorailserver.ConfigUtil;
+import com.jamespizzurro.metrorailserver.domain.*;
+import com.jamespizzurro.metrorailserver.repository.TrainDataBulkInsertRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// writes the train data produced by each of TrainService's updates to the database on a dedicated thread,
+// so that database latency never holds up publishing live train data
+// pending writes are batched across updates; if the database falls too far behind, the oldest pending writes are dropped
+// each batch is written in a single transaction; if that fails twice in a row, the batch is dropped
+@Service
+public class WriteBehindPersistenceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindPersistenceService.class);
+
+    private static final int MAX_FLUSH_ATTEMPTS = 2;
+
+    private final ConfigUtil configUtil;
+    private final TrainDataBulkInsertRepository trainDataBulkInsertRepository;
+
+    private BlockingDeque<PendingWrite> pendingWrites;
+    private Thread writerThread;
+    private volatile boolean isShuttingDown;
+
+    private final AtomicLong numEnqueuedWrites = new AtomicLong();
+    private final AtomicLong numShedWrites = new AtomicLong();
+    private final AtomicLong numShedRows = new AtomicLong();
+    private final AtomicLong numFlushedRows = new AtomicLong();
+    private final AtomicLong numFailedFlushes = new AtomicLong();
+    private final AtomicLong numDroppedRows = new AtomicLong();
+    private volatile long lastFlushDurationMillis;
+    private volatile long maxFlushDurationMillis;
+    private volatile int lastFlushNumWrites;
+
+    @Autowired
+    public WriteBehindPersistenceService(ConfigUtil configUtil, TrainDataBulkInsertRepository trainDataBulkInsertRepository) {
+        this.configUtil = configUtil;
+        this.trainDataBulkInsertRepository = trainDataBulkInsertRepository;
+    }
+
+    @PostConstruct
+    private void init() {
+        logger.info("Initializing write-behind persistence service...");
+
+        this.pendingWrites = new LinkedBlockingDeque<>(this.configUtil.getPersistenceQueueCapacity());
+        this.isShuttingDown = false;
+
+        this.writerThread = new Thread(this::write, "MetroHeroWriter");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+
+        logger.info("...write-behind persistence service initialized!");
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        logger.info("Shutting down write-behind persistence service...");
+
+        this.isShuttingDown = true;
+        this.writerThread.interrupt();
+        try {
+            this.writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (this.pendingWrites.size() > 0) {
+            logger.warn("...shut down write-behind persistence service with " + this.pendingWrites.size() + " pending writes left unwritten!");
+        } else {
+            logger.info("...write-behind persistence service shut down!");
+        }
+    }
+
+    // never blocks; if the queue is full, the oldest pending write is dropped to make room
+    public void enqueue(PendingWrite pendingWrite) {
+        this.numEnqueuedWrites.incrementAndGet();
+
+        while (!this.pendingWrites.offerLast(pendingWrite)) {
+            PendingWrite shedWrite = this.pendingWrites.pollFirst();
+            if (shedWrite != null) {
+                this.numShedWrites.incrementAndGet();
+                this.numShedRows.addAndGet(shedWrite.getNumRows());
+                logger.warn("Write-behind persistence queue is full! Dropped " + shedWrite.getNumRows() + " rows of train data from the oldest pending write.");
+            }
+        }
+    }
+
+    private void write() {
+        int maxWritesPerFlush = this.configUtil.getPersistenceQueueMaxTicksPerFlush();
+
+        while (!this.isShuttingDown) {
+            List<PendingWrite> writes = new ArrayList<>(maxWritesPerFlush);
+            try {
+                writes.add(this.pendingWrites.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            this.pendingWrites.drainTo(writes, maxWritesPerFlush - 1);
+
+            flush(writes);
+        }
+
+        // write whatever's left before we go
+        List<PendingWrite> writes = new ArrayList<>(maxWritesPerFlush);
+        while (this.pendingWrites.drainTo(writes, maxWritesPerFlush) > 0) {
+            flush(writes);
+            writes.clear();
+        }
+    }
+
+    private void flush(List<PendingWrite> writes) {
+        List<TrainStatus> trainStatuses = new ArrayList<>();
+        List<StationToStationTrip> stationToStationTrips = new ArrayList<>();
+        List<TrainOffload> trainOffloads = new ArrayList<>();
+        List<TrainDisappearance> trainDisappearances = new ArrayList<>();
+        List<TrainExpressedStationEvent> trainExpressedStationEvents = new ArrayList<>();
+        List<DuplicateTrainEvent> duplicateTrainEvents = new ArrayList<>();
+        List<TrainDeparture> trainDepartures = new ArrayList<>();
+        int numRows = 0;
+        for (PendingWrite write : writes) {
+            trainStatuses.addAll(write.getTrainStatuses());
+            stationToStationTrips.addAll(write.getStationToStationTrips());
+            trainOffloads.addAll(write.getTrainOffloads());
+            trainDisappearances.addAll(write.getTrainDisappearances());
+            trainExpressedStationEvents.addAll(write.getTrainExpressedStationEvents());
+            duplicateTrainEvents.addAll(write.getDuplicateTrainEvents());
+            trainDepartures.addAll(write.getTrainDepartures());
+            numRows += write.getNumRows();
+        }
+
+        long startTime = System.nanoTime();
+        for (int attemptNumber = 1; attemptNumber <= MAX_FLUSH_ATTEMPTS; attemptNumber++) {
+            try {
+                this.trainDataBulkInsertRepository.insertAll(trainStatuses, stationToStationTrips, trainOffloads, trainDisappearances, trainExpressedStationEvents, duplicateTrainEvents, trainDepartures);
+                this.numFlushedRows.addAndGet(numRows);
+                break;
+            } catch (Exception e) {
+                this.numFailedFlushes.incrementAndGet();
+                if (attemptNumber < MAX_FLUSH_ATTEMPTS) {
+                    logger.warn("Failed to write " + numRows + " rows of train data from " + writes.size() + " pending writes to the database! Retrying...", e);
+                } else {
+                    this.numDroppedRows.addAndGet(numRows);
+                    logger.error("Failed to write " + numRows + " rows of train data from " + writes.size() + " pending writes to the database after " + MAX_FLUSH_ATTEMPTS + " attempts! Dropped them.", e);
+                }
+            }
+        }
+
+        long flushDurationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        this.lastFlushDurationMillis = flushDurationMillis;
+        this.maxFlushDurationMillis = Math.max(this.maxFlushDurationMillis, flushDurationMillis);
+        this.lastFlushNumWrites = writes.size();
+    }
+
+    public int getQueueDepth() {
+        return this.pendingWrites.size();
+    }
+
+    public long getNumEnqueuedWrites() {
+        return numEnqueuedWrites.get();
+    }
+
+    public long getNumShedWrites() {
+        return numShedWrites.get();
+    }
+
+    public long getNumShedRows() {
+        return numShedRows.get();
+    }
+
+    public long getNumFlushedRows() {
+        return numFlushedRows.get();
+    }
+
+    public long getNumFailedFlushes() {
+        return numFailedFlushes.get();
+    }
+
+    public long getNumDroppedRows() {
+        return numDroppedRows.get();
+    }
+
+    public long getLastFlushDurationMillis() {
+        return lastFlushDurationMillis;
+    }
+
+    public long getMaxFlushDurationMillis() {
+        return maxFlushDurationMillis;
+    }
+
+    public int getLastFlushNumWrites() {
+        return lastFlushNumWrites;
+    }
+
+    // everything to be written to the database from one update
+    // nothing in here should be modified after it's been enqueued
+    public static class PendingWrite {
+        private final List<TrainStatus> trainStatuses;
+        private final List<StationToStationTrip> stationToStationTrips;
+        private final List<TrainOffload> trainOffloads;
+        private final List<TrainDisappearance> trainDisappearances;
+        private final List<TrainExpressedStationEvent> trainExpressedStationEvents;
+        private final List<DuplicateTrainEvent> duplicateTrainEvents;
+        private final List<TrainDeparture> trainDepartures;
+
+        public PendingWrite(List<TrainStatus> trainStatuses, List<StationToStationTrip> stationToStationTrips, List<TrainOffload> trainOffloads, List<TrainDisappearance> trainDisappearances, List<TrainExpressedStationEvent> trainExpressedStationEvents, List<DuplicateTrainEvent> duplicateTrainEvents, List<TrainDeparture> trainDepartures) {
+            this.trainStatuses = trainStatuses;
+            this.stationToStationTrips = stationToStationTrips;
+            this.trainOffloads = trainOffloads;
+            this.trainDisappearances = trainDisappearances;
+            this.trainExpressedStationEvents = trainExpressedStationEvents;
+            this.duplicateTrainEvents = duplicateTrainEvents;
+            this.trainDepartures = trainDepartures;
+        }
+
+        public int getNumRows() {
+            return trainStatuses.size() + stationToStationTrips.size() + trainOffloads.size() + trainDisappearances.size() + trainExpressedStationEvents.size() + duplicateTrainEvents.size() + trainDepartures.size();
+        }
+
+        public List<TrainStatus> getTrainStatuses() {
+            return trainStatuses;
+        }
+
+        public List<StationToStationTrip> getStationToStationTrips() {
+            return stationToStationTrips;
+        }
+
+        public List<TrainOffload> getTrainOffloads() {
+            return trainOffloads;
+        }
+
+        public List<TrainDisappearance> getTrainDisappearances() {
+            return trainDisappearances;
+        }
+
+        public List<TrainExpressedStationEvent> getTrainExpressedStationEvents() {
+            return trainExpressedStationEvents;
+        }
+
+        public List<DuplicateTrainEvent> getDuplicateTrainEvents() {
+            return duplicateTrainEvents;
+        }
+
+        public List<TrainDeparture> getTrainDepartures() {
+            return trainDepartures;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.jamespizzurro.metrorailserver.web;
+
+import com.google.transit.realtime.GtfsRealtime;
+import com.jamespizzurro.metrorailserver.domain.SystemSnapshot;
+import com.jamespizzurro.metrorailserver.domain.TrackCircuitLocationData;
+import com.jamespizzurro.metrorailserver.domain.TrainStatus;
+import com.jamespizzurro.metrorailserver.domain.gtfs.GtfsTrip;
+import com.jamespizzurro.metrorailserver.service.GtfsService;
+import com.jamespizzurro.metrorailserver.service.TrackCircuitService;
+import com.jamespizzurro.metrorailserver.service.TrainService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+// serves our real-time train data as GTFS-Realtime vehicle positions and trip updates, encoded once per system snapshot, instead of once per request
+// our trips are tracked independently of WMATA's schedule, so they're all described as added trips, identified by our own trip IDs
+@Component
+public class GtfsRealtimeFeedCache {
+
+    private static final double METERS_PER_SECOND_PER_MILE_PER_HOUR = 0.44704;
+
+    private final TrainService trainService;
+    private final GtfsService gtfsService;
+    private final TrackCircuitService trackCircuitService;
+
+    private volatile CachedFeeds cachedFeeds;
+
+    @Autowired
+    public GtfsRealtimeFeedCache(TrainService trainService, GtfsService gtfsService, TrackCircuitService trackCircuitService) {
+        this.trainService = trainService;
+        this.gtfsService = gtfsService;
+        this.trackCircuitService = trackCircuitService;
+    }
+
+    public CachedFeeds getCachedFeeds() {
+        SystemSnapshot systemSnapshot = this.trainService.getSystemSnapshot();
+
+        CachedFeeds cachedFeeds = this.cachedFeeds;
+        if (cachedFeeds != null && cachedFeeds.systemSnapshot == systemSnapshot) {
+            return cachedFeeds;
+        }
+
+        synchronized (this) {
+            // another request may have just built them
+            cachedFeeds = this.cachedFeeds;
+            if (cachedFeeds != null && cachedFeeds.systemSnapshot == systemSnapshot) {
+                return cachedFeeds;
+            }
+
+            cachedFeeds = new CachedFeeds(systemSnapshot, buildVehiclePositionsFeed(systemSnapshot).toByteArray(), buildTripUpdatesFeed(systemSnapshot).toByteArray());
+            this.cachedFeeds = cachedFeeds;
+            return cachedFeeds;
+        }
+    }
+
+    private GtfsRealtime.FeedMessage buildVehiclePositionsFeed(SystemSnapshot systemSnapshot) {
+        GtfsRealtime.FeedMessage.Builder feed = GtfsRealtime.FeedMessage.newBuilder().setHeader(buildFeedHeader(systemSnapshot));
+
+        Map<Integer, TrackCircuitLocationData> trackCircuitLocationDataByTrackCircuitId = this.trackCircuitService.getTrackCircuitLocationDataByTrackCircuitId();
+        for (TrainStatus trainStatus : systemSnapshot.getTrainStatusesMap().values()) {
+            Double lat = trainStatus.getLat();
+            Double lon = trainStatus.getLon();
+            if (lat == null || lon == null) {
+                // fall back to wherever the train's track circuit is
+                TrackCircuitLocationData trackCircuitLocationData = (trackCircuitLocationDataByTrackCircuitId != null) ? trackCircuitLocationDataByTrackCircuitId.get(trainStatus.getTrackCircuitId()) : null;
+                if (trackCircuitLocationData == null || trackCircuitLocationData.getLat() == null || trackCircuitLocationData.getLon() == null) {
+                    continue;
+                }
+                lat = trackCircuitLocationData.getLat();
+                lon = trackCircuitLocationData.getLon();
+            }
+
+            GtfsRealtime.Position.Builder position = GtfsRealtime.Position.newBuilder()
+                    .setLatitude(lat.floatValue())
+                    .setLongitude(lon.floatValue());
+            if (trainStatus.getDirection() != null) {
+                position.setBearing(trainStatus.getDirection());
+            }
+            if (trainStatus.getTrainSpeed() != null) {
+                position.setSpeed((float) (trainStatus.getTrainSpeed() * METERS_PER_SECOND_PER_MILE_PER_HOUR));
+            }
+
+            GtfsRealtime.VehiclePosition.Builder vehiclePosition = GtfsRealtime.VehiclePosition.newBuilder()
+                    .setVehicle(buildVehicleDescriptor(trainStatus))
+                    .setPosition(position);
+            GtfsRealtime.TripDescriptor trip = buildTripDescriptor(trainStatus);
+            if (trip != null) {
+                vehiclePosition.setTrip(trip);
+            }
+            String stopId = getStopId(trainStatus.getLocationCode(), trainStatus.getDirectionNumber());
+            if (stopId != null) {
+                vehiclePosition.setStopId(stopId);
+                vehiclePosition.setCurrentStatus("BRD".equals(trainStatus.getMin()) ? GtfsRealtime.VehiclePosition.VehicleStopStatus.STOPPED_AT : GtfsRealtime.VehiclePosition.VehicleStopStatus.IN_TRANSIT_TO);
+            }
+            if (systemSnapshot.getLastUpdatedTimestamp() != null) {
+                vehiclePosition.setTimestamp(systemSnapshot.getLastUpdatedTimestamp());
+            }
+
+            feed.addEntity(GtfsRealtime.FeedEntity.newBuilder().setId(trainStatus.getTrainId()).setVehicle(vehiclePosition));
+        }
+
+        return feed.build();
+    }
+
+    private GtfsRealtime.FeedMessage buildTripUpdatesFeed(SystemSnapshot systemSnapshot) {
+        GtfsRealtime.FeedMessage.Builder feed = GtfsRealtime.FeedMessage.newBuilder().setHeader(buildFeedHeader(systemSnapshot));
+        if (systemSnapshot.getLastUpdatedTimestamp() == null) {
+            // we don't have any predictions yet
+            return feed.build();
+        }
+
+        // gather up every prediction for every train from the station boards, skipping the combined boards for transfer stations, e.g. A01|C01,
+        // since they only repeat predictions from the boards they're made of
+        Map<String, List<TrainStatus>> predictionsByTrainId = new HashMap<>();
+        for (Map.Entry<String, List<TrainStatus>> entry : systemSnapshot.getStationTrainStatusesMap().entrySet()) {
+            if (entry.getKey().contains("|")) {
+                continue;
+            }
+
+            for (TrainStatus prediction : entry.getValue()) {
+                if (prediction.isScheduled() || prediction.getMinutesAway() == null) {
+                    // not a real-time prediction
+                    continue;
+                }
+
+                predictionsByTrainId.computeIfAbsent(prediction.getTrainId(), k -> new ArrayList<>()).add(prediction);
+            }
+        }
+
+        for (TrainStatus trainStatus : systemSnapshot.getTrainStatusesMap().values()) {
+            List<TrainStatus> predictions = predictionsByTrainId.get(trainStatus.getTrainId());
+            GtfsRealtime.TripDescriptor trip = buildTripDescriptor(trainStatus);
+            if (predictions == null || trip == null) {
+                continue;
+            }
+
+            predictions.sort(Comparator.comparing(TrainStatus::getMinutesAway));
+
+            GtfsRealtime.TripUpdate.Builder tripUpdate = GtfsRealtime.TripUpdate.newBuilder()
+                    .setTrip(trip)
+                    .setVehicle(buildVehicleDescriptor(trainStatus))
+                    .setTimestamp(systemSnapshot.getLastUpdatedTimestamp());
+            for (TrainStatus prediction : predictions) {
+                String stopId = getStopId(prediction.getLocationCode(), prediction.getDirectionNumber());
+                if (stopId == null) {
+                    continue;
+                }
+
+                long arrivalTime = systemSnapshot.getLastUpdatedTimestamp() + Math.round(prediction.getMinutesAway() * 60);
+                tripUpdate.addStopTimeUpdate(GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder()
+                        .setStopId(stopId)
+                        .setArrival(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setTime(arrivalTime)));
+            }
+            if (tripUpdate.getStopTimeUpdateCount() <= 0) {
+                continue;
+            }
+
+            feed.addEntity(GtfsRealtime.FeedEntity.newBuilder().setId(trainStatus.getTrainId()).setTripUpdate(tripUpdate));
+        }
+
+        return feed.build();
+    }
+
+    private static GtfsRealtime.FeedHeader buildFeedHeader(SystemSnapshot systemSnapshot) {
+        GtfsRealtime.FeedHeader.Builder header = GtfsRealtime.FeedHeader.newBuilder()
+                .setGtfsRealtimeVersion("2.0")
+                .setIncrementality(GtfsRealtime.FeedHeader.Incrementality.FULL_DATASET);
+        if (systemSnapshot.getLastUpdatedTimestamp() != null) {
+            header.setTimestamp(systemSnapshot.getLastUpdatedTimestamp());
+        }
+        return header.build();
+    }
+
+    private static GtfsRealtime.VehicleDescriptor buildVehicleDescriptor(TrainStatus trainStatus) {
+        GtfsRealtime.VehicleDescriptor.Builder vehicle = GtfsRealtime.VehicleDescriptor.newBuilder().setId(trainStatus.getTrainId());
+        if (trainStatus.getRealTrainId() != null) {
+            vehicle.setLabel(trainStatus.getRealTrainId());
+        }
+        return vehicle.build();
+    }
+
+    // returns null for trains that aren't in revenue service on a known line, e.g. ones going to or from a yard
+    private static GtfsRealtime.TripDescriptor buildTripDescriptor(TrainStatus trainStatus) {
+        String routeId = GtfsTrip.getRouteId(trainStatus.getLine());
+        if (routeId == null || trainStatus.isNotOnRevenueTrack() || trainStatus.getDirectionNumber() == null) {
+            return null;
+        }
+
+        return GtfsRealtime.TripDescriptor.newBuilder()
+                .setTripId((trainStatus.getTripId() != null) ? trainStatus.getTripId().toString() : trainStatus.getTrainId())
+                .setRouteId(routeId)
+                .setDirectionId(trainStatus.getDirectionNumber() - 1)   // WMATA's GTFS direction IDs are 0 and 1, rather than 1 and 2
+                .setScheduleRelationship(GtfsRealtime.TripDescriptor.ScheduleRelationship.ADDED)
+                .build();
+    }
+
+    private String getStopId(String stationCode, Integer directionNumber) {
+        if (stationCode == null || directionNumber == null) {
+            return null;
+        }
+
+        // null until we've parsed WMATA's GTFS data; a station code isn't a stop ID consumers would recognize, so we omit the stop instead
+        return this.gtfsService.getStopId(stationCode, directionNumber);
+    }
+
+    public static class CachedFeeds {
+        private final SystemSnapshot systemSnapshot;
+        private final byte[] vehiclePositions;
+        private final byte[] tripUpdates;
+
+        CachedFeeds(SystemSnapshot systemSnapshot, byte[] vehiclePositions, byte[] tripUpdates) {
+            this.systemSnapshot = systemSnapshot;
+            this.vehiclePositions = vehiclePositions;
+            this.tripUpdates = tripUpdates;
+        }
+
+        public long getVersion() {
+            return systemSnapshot.getVersion();
+        }
+
+        public byte[] getVehiclePositions() {
+            return vehiclePositions;
+        }
+
+        public byte[] getTripUpdates() {
+            return tripUpdates;
+        }
+    }
+}
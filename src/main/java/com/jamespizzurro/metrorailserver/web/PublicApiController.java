@@ -13,6 +13,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -33,9 +35,10 @@ public class PublicApiController {
     private final SavedTripService savedTripService;
     private final TwitterService twitterService;
     private final PublicApiService publicApiService;
+    private final GtfsRealtimeFeedCache gtfsRealtimeFeedCache;
 
     @Autowired
-    public PublicApiController(TrainService trainService, TrainTaggingService trainTaggingService, StationTaggingService stationTaggingService, MetricsService metricsService, SavedTripService savedTripService, TwitterService twitterService, PublicApiService publicApiService) {
+    public PublicApiController(TrainService trainService, TrainTaggingService trainTaggingService, StationTaggingService stationTaggingService, MetricsService metricsService, SavedTripService savedTripService, TwitterService twitterService, PublicApiService publicApiService, GtfsRealtimeFeedCache gtfsRealtimeFeedCache) {
         this.trainService = trainService;
         this.trainTaggingService = trainTaggingService;
         this.stationTaggingService = stationTaggingService;
@@ -43,6 +46,7 @@ public class PublicApiController {
         this.savedTripService = savedTripService;
         this.twitterService = twitterService;
         this.publicApiService = publicApiService;
+        this.gtfsRealtimeFeedCache = gtfsRealtimeFeedCache;
     }
 
     @RequestMapping(method = RequestMethod.GET, value = "/metrorail/metrics")
@@ -72,7 +76,7 @@ public class PublicApiController {
         }
 
         String tripStationCodesKey = fromStationCode + "_" + toStationCode;
-        SavedTrip savedTrip = this.savedTripService.getSavedTripMap().get(tripStationCodesKey);
+        SavedTrip savedTrip = this.savedTripService.getSavedTrip(tripStationCodesKey);
         if (savedTrip == null) {
             // invalid station code(s) or trip
             // note: trips involving a transfer are currently not directly supported and are considered invalid
@@ -95,7 +99,23 @@ public class PublicApiController {
 
     @RequestMapping(method = RequestMethod.GET, value = "/metrorail/trains")
     public ResponseEntity<Collection<TrainStatus>> getTrains() {
-        return ResponseEntity.status(HttpStatus.OK).body(this.trainService.getTrainStatusesMap().values());
+        return ResponseEntity.status(HttpStatus.OK).body(this.trainService.getSystemSnapshot().getTrainStatusesMap().values());
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/metrorail/gtfs-rt/vehicle-positions")
+    public void getGtfsRealtimeVehiclePositions(HttpServletResponse response) throws IOException {
+        writeGtfsRealtimeFeed(response, this.gtfsRealtimeFeedCache.getCachedFeeds().getVehiclePositions());
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/metrorail/gtfs-rt/trip-updates")
+    public void getGtfsRealtimeTripUpdates(HttpServletResponse response) throws IOException {
+        writeGtfsRealtimeFeed(response, this.gtfsRealtimeFeedCache.getCachedFeeds().getTripUpdates());
+    }
+
+    private static void writeGtfsRealtimeFeed(HttpServletResponse response, byte[] feed) throws IOException {
+        response.setContentType("application/x-protobuf");
+        response.setContentLength(feed.length);
+        response.getOutputStream().write(feed);
     }
 
     @RequestMapping(method = RequestMethod.GET, value = "/metrorail/trains/tags")
@@ -112,7 +132,7 @@ public class PublicApiController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         }
 
-        if (!this.trainService.getTrainStatusesMap().containsKey(trainId)) {
+        if (!this.trainService.getSystemSnapshot().getTrainStatusesMap().containsKey(trainId)) {
             // invalid train id specified
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         }
@@ -124,7 +144,7 @@ public class PublicApiController {
     public ResponseEntity<Map<String, List<TrainStatus>>> getTrainsByStation(
             @RequestParam(value = "includeScheduledPredictions", required = false, defaultValue = "false") boolean includeScheduledPredictions
     ) {
-        Map<String, List<TrainStatus>> stationTrainStatusesMap = this.trainService.getStationTrainStatusesMap();
+        Map<String, List<TrainStatus>> stationTrainStatusesMap = this.trainService.getSystemSnapshot().getStationTrainStatusesMap();
 
         Map<String, List<TrainStatus>> filteredStationTrainStatusesMap = new HashMap<>(stationTrainStatusesMap.size());
 
@@ -177,7 +197,7 @@ public class PublicApiController {
             }
         }
 
-        List<TrainStatus> trainStatuses = this.trainService.getStationTrainStatusesMap().get(stationCode.replace(",", "|"));
+        List<TrainStatus> trainStatuses = this.trainService.getSystemSnapshot().getStationTrainStatusesMap().get(stationCode.replace(",", "|"));
 
         if (trainStatuses != null && !includeScheduledPredictions) {
             List<TrainStatus> realtimeTrainStatuses = new ArrayList<>();
@@ -0,0 +1,121 @@
+package com.jamespizzurro.metrorailserver.web;
+
+import com.jamespizzurro.metrorailserver.ConfigUtil;
+import com.jamespizzurro.metrorailserver.FeedRecorder;
+import com.jamespizzurro.metrorailserver.InstrumentedTaskScheduler;
+import com.jamespizzurro.metrorailserver.RequestHandler;
+import com.jamespizzurro.metrorailserver.domain.ServerMetrics;
+import com.jamespizzurro.metrorailserver.service.SavedTripService;
+import com.jamespizzurro.metrorailserver.service.TrainService;
+import com.jamespizzurro.metrorailserver.service.WriteBehindPersistenceService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+
+// how the server itself is doing, e.g. whether our scheduled jobs are keeping up; only available to whoever has the configured server metrics API key
+@RestController
+@EnableAutoConfiguration
+public class ServerMetricsController {
+
+    private final ConfigUtil configUtil;
+    private final InstrumentedTaskScheduler taskScheduler;
+    private final TrainService trainService;
+    private final SavedTripService savedTripService;
+    private final WriteBehindPersistenceService writeBehindPersistenceService;
+    private final RequestHandler requestHandler;
+    private final FeedRecorder feedRecorder;
+    private final SystemInfoResponseCache systemInfoResponseCache;
+    private final SystemUpdateStream systemUpdateStream;
+
+    @Autowired
+    public ServerMetricsController(ConfigUtil configUtil, InstrumentedTaskScheduler taskScheduler, TrainService trainService, SavedTripService savedTripService, WriteBehindPersistenceService writeBehindPersistenceService, RequestHandler requestHandler, FeedRecorder feedRecorder, SystemInfoResponseCache systemInfoResponseCache, SystemUpdateStream systemUpdateStream) {
+        this.configUtil = configUtil;
+        this.taskScheduler = taskScheduler;
+        this.trainService = trainService;
+        this.savedTripService = savedTripService;
+        this.writeBehindPersistenceService = writeBehindPersistenceService;
+        this.requestHandler = requestHandler;
+        this.feedRecorder = feedRecorder;
+        this.systemInfoResponseCache = systemInfoResponseCache;
+        this.systemUpdateStream = systemUpdateStream;
+    }
+
+    @RequestMapping(value = "/server/metrics", method = RequestMethod.GET)
+    public ResponseEntity<ServerMetrics> getServerMetrics(HttpServletRequest request) {
+        if (!isAuthorized(request)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        ServerMetrics.SchedulerMetrics schedulerMetrics = new ServerMetrics.SchedulerMetrics(
+                this.taskScheduler.getScheduledThreadPoolExecutor().getCorePoolSize(),
+                this.taskScheduler.getNumRunningJobs(),
+                this.taskScheduler.getPeakNumRunningJobs(),
+                this.taskScheduler.getNumRunsStartedWithNoThreadsLeft(),
+                this.taskScheduler.getNumOverdueJobs(),
+                this.taskScheduler.getJobMetrics()
+        );
+        ServerMetrics.WriteBehindMetrics writeBehindMetrics = new ServerMetrics.WriteBehindMetrics(
+                this.writeBehindPersistenceService.getQueueDepth(),
+                this.writeBehindPersistenceService.getNumEnqueuedWrites(),
+                this.writeBehindPersistenceService.getNumShedWrites(),
+                this.writeBehindPersistenceService.getNumShedRows(),
+                this.writeBehindPersistenceService.getNumFlushedRows(),
+                this.writeBehindPersistenceService.getNumFailedFlushes(),
+                this.writeBehindPersistenceService.getNumDroppedRows(),
+                this.writeBehindPersistenceService.getLastFlushDurationMillis(),
+                this.writeBehindPersistenceService.getMaxFlushDurationMillis(),
+                this.writeBehindPersistenceService.getLastFlushNumWrites()
+        );
+        ServerMetrics.WmataRequestMetrics wmataRequestMetrics = new ServerMetrics.WmataRequestMetrics(
+                this.requestHandler.getNumRequests(),
+                this.requestHandler.getNumConnectionsOpened(),
+                this.requestHandler.getConnectionReuseRatio(),
+                this.requestHandler.getConnectionPoolStats()
+        );
+
+        ServerMetrics serverMetrics = new ServerMetrics(
+                System.currentTimeMillis(),
+                schedulerMetrics,
+                new ArrayList<>(this.trainService.getUpdateStageMetrics().values()),
+                this.trainService.getNumLateGISTrainDataResponses(),
+                this.trainService.getNumSkippedUnchangedUpdates(),
+                this.trainService.getNumDuplicateTrainCandidateComparisons(),
+                writeBehindMetrics,
+                this.savedTripService.getSavedTripBuildMetrics(),
+                wmataRequestMetrics,
+                this.feedRecorder.getNumRecordedResponses(),
+                this.systemInfoResponseCache.getNumBuilds(),
+                new ServerMetrics.SystemUpdateStreamMetrics(
+                        this.systemUpdateStream.getNumSubscribers(),
+                        this.systemUpdateStream.getNumSentEvents(),
+                        this.systemUpdateStream.getNumEvictedSubscribers()
+                )
+        );
+        return ResponseEntity.status(HttpStatus.OK).body(serverMetrics);
+    }
+
+    // we can't go by where the request came from, as behind a reverse proxy everything looks like it came from the server itself
+    private boolean isAuthorized(HttpServletRequest request) {
+        String serverMetricsApiKey = this.configUtil.getServerMetricsApiKey();
+        if (StringUtils.isEmpty(serverMetricsApiKey)) {
+            return false;
+        }
+
+        String apiKey = request.getHeader("apiKey");
+        if (StringUtils.isEmpty(apiKey)) {
+            return false;
+        }
+
+        return MessageDigest.isEqual(apiKey.getBytes(StandardCharsets.UTF_8), serverMetricsApiKey.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,163 @@
+package com.jamespizzurro.metrorailserver.web;
+
+import com.jamespizzurro.metrorailserver.Application;
+import com.jamespizzurro.metrorailserver.domain.SystemDelta;
+import com.jamespizzurro.metrorailserver.domain.SystemSnapshot;
+import com.jamespizzurro.metrorailserver.domain.SystemView;
+import com.jamespizzurro.metrorailserver.service.TrainService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// builds a view of every system snapshot TrainService publishes, and a delta from the one before it, off of TrainService's update thread
+// the last minute or so of deltas are kept around so clients that are only a little behind can catch up without having to download everything again
+@Component
+public class SystemDeltaCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SystemDeltaCache.class);
+
+    private static final int MAX_NUM_DELTAS = 30;   // about a minute's worth of updates
+    private static final long FULL_RESYNC = -1;
+
+    private final TrainService trainService;
+
+    private final List<Consumer<SystemView>> systemViewListeners = new CopyOnWriteArrayList<>();
+    private String bootId;
+    private ExecutorService builder;
+    private volatile CachedDeltas cachedDeltas;
+
+    @Autowired
+    public SystemDeltaCache(TrainService trainService) {
+        this.trainService = trainService;
+    }
+
+    @PostConstruct
+    private void init() {
+        logger.info("Initializing system delta cache...");
+
+        this.bootId = Long.toString(System.currentTimeMillis(), 36);
+        this.builder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MetroHeroSystemDeltaBuilder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.trainService.addSystemSnapshotListener(systemSnapshot -> {
+            try {
+                this.builder.execute(() -> update(systemSnapshot));
+            } catch (RejectedExecutionException ignored) {
+                // we're shutting down
+            }
+        });
+
+        logger.info("...system delta cache initialized!");
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        this.builder.shutdownNow();
+    }
+
+    private void update(SystemSnapshot systemSnapshot) {
+        SystemView systemView;
+        try {
+            systemView = SystemView.of(systemSnapshot, Application.getGson());
+        } catch (RuntimeException e) {
+            logger.error("Failed to build view of system snapshot " + systemSnapshot.getVersion() + "!", e);
+            return;
+        }
+
+        CachedDeltas previousCachedDeltas = this.cachedDeltas;
+        List<SystemDelta> deltas = new ArrayList<>();
+        if (previousCachedDeltas != null) {
+            deltas.addAll(previousCachedDeltas.deltas.subList(Math.max(0, previousCachedDeltas.deltas.size() - (MAX_NUM_DELTAS - 1)), previousCachedDeltas.deltas.size()));
+            deltas.add(SystemDelta.between(this.bootId, previousCachedDeltas.systemView, systemView));
+        }
+        this.cachedDeltas = new CachedDeltas(systemView, deltas);
+
+        for (Consumer<SystemView> systemViewListener : this.systemViewListeners) {
+            try {
+                systemViewListener.accept(systemView);
+            } catch (RuntimeException e) {
+                logger.warn("System view listener failed!", e);
+            }
+        }
+    }
+
+    // a delta from the given version to the latest one as JSON, or a full resync if we don't have one, e.g. because it's too old or from before a restart
+    // returns null if we don't have any data yet
+    public String getDeltaJson(String bootId, Long sinceVersion) {
+        CachedDeltas cachedDeltas = this.cachedDeltas;
+        if (cachedDeltas == null) {
+            return null;
+        }
+
+        long key = FULL_RESYNC;
+        if (sinceVersion != null && this.bootId.equals(bootId) && (sinceVersion == cachedDeltas.systemView.getVersion() || cachedDeltas.getDeltaIndex(sinceVersion) >= 0)) {
+            key = sinceVersion;
+        }
+
+        // most clients will be asking for the same few deltas, so only build and serialize each once
+        return cachedDeltas.deltaJsonBySinceVersion.computeIfAbsent(key, k -> Application.getGson().toJson(cachedDeltas.buildDelta(this.bootId, k)));
+    }
+
+    // the latest view, or null if we don't have any data yet
+    public SystemView getSystemView() {
+        CachedDeltas cachedDeltas = this.cachedDeltas;
+        return (cachedDeltas != null) ? cachedDeltas.systemView : null;
+    }
+
+    public String getBootId() {
+        return bootId;
+    }
+
+    // listeners are called on the thread building deltas as soon as each new view is built, so they should hand off anything slow
+    public void addSystemViewListener(Consumer<SystemView> systemViewListener) {
+        this.systemViewListeners.add(systemViewListener);
+    }
+
+    private static class CachedDeltas {
+        private final SystemView systemView;
+        private final List<SystemDelta> deltas;     // oldest first, each one from the version before it
+        private final Map<Long, String> deltaJsonBySinceVersion = new ConcurrentHashMap<>();
+
+        CachedDeltas(SystemView systemView, List<SystemDelta> deltas) {
+            this.systemView = systemView;
+            this.deltas = deltas;
+        }
+
+        int getDeltaIndex(long sinceVersion) {
+            for (int i = 0; i < this.deltas.size(); i++) {
+                if (this.deltas.get(i).getSinceVersion() == sinceVersion) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        SystemDelta buildDelta(String bootId, long sinceVersion) {
+            if (sinceVersion == FULL_RESYNC) {
+                return SystemDelta.between(bootId, null, this.systemView);
+            }
+            if (sinceVersion == this.systemView.getVersion()) {
+                // nothing's changed
+                return SystemDelta.between(bootId, this.systemView, this.systemView);
+            }
+
+            int i = getDeltaIndex(sinceVersion);
+            SystemDelta delta = this.deltas.get(i);
+            for (i++; i < this.deltas.size(); i++) {
+                delta = delta.then(this.deltas.get(i));
+            }
+            return delta;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.jamespizzurro.metrorailserver.web;
+
+import com.jamespizzurro.metrorailserver.Application;
+import com.jamespizzurro.metrorailserver.domain.*;
+import com.jamespizzurro.metrorailserver.service.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// serves /system from bytes serialized and compressed once per version of the data in it, instead of once per request
+// the part of the response every client gets is kept both as plain JSON and as a gzip stream flushed just short of its closing brace, so a
+// client's saved trips can be spliced onto the end of either one by only serializing and compressing those trips
+@Component
+public class SystemInfoResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SystemInfoResponseCache.class);
+
+    // the header of a gzip stream with no file name, modification time, etc., same as GZIPOutputStream writes
+    private static final byte[] GZIP_HEADER = new byte[]{(byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private final TrainService trainService;
+    private final MetricsService metricsService;
+    private final TwitterService twitterService;
+    private final RailIncidentService railIncidentService;
+    private final StationTaggingService stationTaggingService;
+    private final SpeedRestrictionService speedRestrictionService;
+    private final ElevatorEscalatorService elevatorEscalatorService;
+    private final SavedTripService savedTripService;
+
+    private String bootId;  // so ETags from before a restart never match ones from after it
+    private volatile long numBuilds;
+    private volatile CachedSystemInfo cachedSystemInfo;
+
+    @Autowired
+    public SystemInfoResponseCache(TrainService trainService, MetricsService metricsService, TwitterService twitterService, RailIncidentService railIncidentService, StationTaggingService stationTaggingService, SpeedRestrictionService speedRestrictionService, ElevatorEscalatorService elevatorEscalatorService, SavedTripService savedTripService) {
+        this.trainService = trainService;
+        this.metricsService = metricsService;
+        this.twitterService = twitterService;
+        this.railIncidentService = railIncidentService;
+        this.stationTaggingService = stationTaggingService;
+        this.speedRestrictionService = speedRestrictionService;
+        this.elevatorEscalatorService = elevatorEscalatorService;
+        this.savedTripService = savedTripService;
+    }
+
+    @PostConstruct
+    private void init() {
+        logger.info("Initializing system info response cache...");
+
+        this.bootId = Long.toString(System.currentTimeMillis(), 36);
+
+        logger.info("...system info response cache initialized!");
+    }
+
+    public CachedSystemInfo getCachedSystemInfo() {
+        SystemInfoSources sources = new SystemInfoSources();
+
+        CachedSystemInfo cachedSystemInfo = this.cachedSystemInfo;
+        if (cachedSystemInfo != null && cachedSystemInfo.sources.equals(sources)) {
+            return cachedSystemInfo;
+        }
+
+        synchronized (this) {
+            // another request may have just built it
+            cachedSystemInfo = this.cachedSystemInfo;
+            if (cachedSystemInfo != null && cachedSystemInfo.sources.equals(sources)) {
+                return cachedSystemInfo;
+            }
+
+            this.numBuilds++;
+            cachedSystemInfo = new CachedSystemInfo(sources, "\"" + this.bootId + "-" + sources.systemSnapshot.getVersion() + "-" + this.numBuilds + "\"");
+            this.cachedSystemInfo = cachedSystemInfo;
+            return cachedSystemInfo;
+        }
+    }
+
+    // saved trips in the order requested, skipping any we don't know about, same as SystemInfo.savedTrips
+    public Map<String, SavedTrip> getSavedTrips(String[] tripStationCodesKeys) {
+        Map<String, SavedTrip> savedTrips = new LinkedHashMap<>();
+        for (String tripStationCodesKey : tripStationCodesKeys) {
+            SavedTrip savedTrip = this.savedTripService.getSavedTrip(tripStationCodesKey);
+            if (savedTrip == null) {
+                continue;
+            }
+
+            savedTrips.put(tripStationCodesKey, savedTrip);
+        }
+        return savedTrips;
+    }
+
+    public long getNumBuilds() {
+        return numBuilds;
+    }
+
+    // everything that goes into the part of the response every client gets; all of it is replaced rather than modified when it changes,
+    // except station tag counts, which are versioned instead
+    private class SystemInfoSources {
+        private final SystemSnapshot systemSnapshot;
+        private final SystemMetrics systemMetrics;
+        private final List<RailIncident> lineRailIncidents;
+        private final long stationTagCountsVersion;
+        private final List<SpeedRestriction> speedRestrictions;
+        private final Map<String, Boolean> stationHasRailIncidentsMap;
+        private final Map<String, Boolean> stationHasTwitterProblemMap;
+        private final Map<String, Boolean> hasElevatorOutagesByStation;
+        private final Map<String, Boolean> hasEscalatorOutagesByStation;
+        private final RecentTrainFrequencyData recentTrainFrequencyData;
+
+        SystemInfoSources() {
+            this.systemSnapshot = trainService.getSystemSnapshot();
+            this.systemMetrics = metricsService.getSystemMetrics();
+            this.lineRailIncidents = railIncidentService.getLineRailIncidents();
+            this.stationTagCountsVersion = stationTaggingService.getTagCountsVersion();
+            this.speedRestrictions = speedRestrictionService.getSpeedRestrictions();
+            this.stationHasRailIncidentsMap = railIncidentService.getStationHasRailIncidentsMap();
+            this.stationHasTwitterProblemMap = twitterService.getStationHasTwitterProblemMap();
+            this.hasElevatorOutagesByStation = elevatorEscalatorService.getHasElevatorOutagesByStation();
+            this.hasEscalatorOutagesByStation = elevatorEscalatorService.getHasEscalatorOutagesByStation();
+            this.recentTrainFrequencyData = metricsService.getRecentTrainFrequencyData();
+        }
+
+        SystemInfo toSystemInfo() {
+            SystemInfo systemInfo = new SystemInfo();
+            systemInfo.setTrainStatuses(new ArrayList<>(this.systemSnapshot.getTrainStatusesMap().values()));
+            systemInfo.setBetweenStationDelayStatuses(this.systemSnapshot.getBetweenStationDelayStatuses());
+            systemInfo.setSystemMetrics(this.systemMetrics);
+            systemInfo.setLastUpdatedTimestamp(this.systemSnapshot.getLastUpdatedTimestamp());
+            systemInfo.setLineRailIncidents(this.lineRailIncidents);
+            systemInfo.setStationNumPositiveTagsMap(stationTaggingService.getNumPositiveTagsByStation());
+            systemInfo.setStationNumNegativeTagsMap(stationTaggingService.getNumNegativeTagsByStation());
+            systemInfo.setSpeedRestrictions(this.speedRestrictions);
+            systemInfo.setStationHasRailIncidentsMap(this.stationHasRailIncidentsMap);
+            systemInfo.setStationHasTwitterProblemMap(this.stationHasTwitterProblemMap);
+            systemInfo.setHasElevatorOutagesByStation(this.hasElevatorOutagesByStation);
+            systemInfo.setHasEscalatorOutagesByStation(this.hasEscalatorOutagesByStation);
+            systemInfo.setRecentTrainFrequencyData(this.recentTrainFrequencyData);
+            return systemInfo;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SystemInfoSources that = (SystemInfoSources) o;
+            return systemSnapshot == that.systemSnapshot &&
+                    systemMetrics == that.systemMetrics &&
+                    lineRailIncidents == that.lineRailIncidents &&
+                    stationTagCountsVersion == that.stationTagCountsVersion &&
+                    speedRestrictions == that.speedRestrictions &&
+                    stationHasRailIncidentsMap == that.stationHasRailIncidentsMap &&
+                    stationHasTwitterProblemMap == that.stationHasTwitterProblemMap &&
+                    hasElevatorOutagesByStation == that.hasElevatorOutagesByStation &&
+                    hasEscalatorOutagesByStation == that.hasEscalatorOutagesByStation &&
+                    recentTrainFrequencyData == that.recentTrainFrequencyData;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(systemSnapshot.getVersion(), stationTagCountsVersion);
+        }
+    }
+
+    public static class CachedSystemInfo {
+        private final SystemInfoSources sources;
+        private final String eTag;
+
+        private final byte[] json;  // without saved trips
+        private final byte[] gzippedJson;   // same, gzipped
+
+        // json up to (but not including) its closing brace, as a raw deflate stream that's been flushed but not finished
+        private final byte[] deflatedJsonPrefix;
+        private final long jsonPrefixCrc;
+
+        CachedSystemInfo(SystemInfoSources sources, String eTag) {
+            this.sources = sources;
+            this.eTag = eTag;
+
+            this.json = Application.getGson().toJson(sources.toSystemInfo()).getBytes(StandardCharsets.UTF_8);
+
+            CRC32 crc = new CRC32();
+            crc.update(this.json, 0, this.json.length - 1);
+            this.jsonPrefixCrc = crc.getValue();
+
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(this.json, 0, this.json.length - 1);
+                ByteArrayOutputStream deflatedJsonPrefix = new ByteArrayOutputStream(this.json.length / 4);
+                byte[] buffer = new byte[8192];
+                int numBytesDeflated;
+                do {
+                    numBytesDeflated = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    deflatedJsonPrefix.write(buffer, 0, numBytesDeflated);
+                } while (numBytesDeflated == buffer.length);
+                this.deflatedJsonPrefix = deflatedJsonPrefix.toByteArray();
+            } finally {
+                deflater.end();
+            }
+
+            this.gzippedJson = gzipWithSuffix(new byte[]{'}'});
+        }
+
+        // the rest of the JSON after everything but its closing brace, with the specified saved trips added to it
+        public byte[] getJsonSuffix(Map<String, SavedTrip> savedTrips) {
+            String separator = (this.json.length > 2) ? "," : "";
+            return (separator + "\"savedTrips\":" + Application.getGson().toJson(savedTrips) + "}").getBytes(StandardCharsets.UTF_8);
+        }
+
+        // the full response, gzipped, with the specified bytes in place of json's closing brace
+        public byte[] gzipWithSuffix(byte[] jsonSuffix) {
+            ByteArrayOutputStream gzippedJson = new ByteArrayOutputStream(GZIP_HEADER.length + this.deflatedJsonPrefix.length + jsonSuffix.length + 64);
+            gzippedJson.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+            gzippedJson.write(this.deflatedJsonPrefix, 0, this.deflatedJsonPrefix.length);
+
+            // a deflate stream of its own, picking up right where the flushed prefix left off
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(jsonSuffix);
+                deflater.finish();
+                byte[] buffer = new byte[Math.max(jsonSuffix.length, 64)];
+                while (!deflater.finished()) {
+                    gzippedJson.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } finally {
+                deflater.end();
+            }
+
+            CRC32 suffixCrc = new CRC32();
+            suffixCrc.update(jsonSuffix);
+            writeIntLittleEndian(gzippedJson, crc32Combine(this.jsonPrefixCrc, suffixCrc.getValue(), jsonSuffix.length));
+            writeIntLittleEndian(gzippedJson, (this.json.length - 1) + jsonSuffix.length);
+            return gzippedJson.toByteArray();
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        // for a response with the specified bytes in place of json's closing brace
+        public String getETag(byte[] jsonSuffix) {
+            CRC32 suffixCrc = new CRC32();
+            suffixCrc.update(jsonSuffix);
+            return this.eTag.substring(0, this.eTag.length() - 1) + "-" + Long.toHexString(suffixCrc.getValue()) + "\"";
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        public byte[] getGzippedJson() {
+            return gzippedJson;
+        }
+
+        private static void writeIntLittleEndian(ByteArrayOutputStream output, long value) {
+            output.write((int) (value & 0xff));
+            output.write((int) ((value >> 8) & 0xff));
+            output.write((int) ((value >> 16) & 0xff));
+            output.write((int) ((value >> 24) & 0xff));
+        }
+
+        // the CRC-32 of two byte sequences concatenated, given the CRC-32 of each and the length of the second; ported from zlib's crc32_combine
+        private static long crc32Combine(long crc1, long crc2, long length2) {
+            if (length2 <= 0) {
+                return crc1;
+            }
+
+            long[] even = new long[32];    // even-power-of-two zeros operator
+            long[] odd = new long[32];     // odd-power-of-two zeros operator
+
+            // put operator for one zero bit in odd
+            odd[0] = 0xedb88320L;   // CRC-32 polynomial
+            long row = 1;
+            for (int n = 1; n < 32; n++) {
+                odd[n] = row;
+                row <<= 1;
+            }
+
+            // put operator for two zero bits in even, then four zero bits in odd
+            gf2MatrixSquare(even, odd);
+            gf2MatrixSquare(odd, even);
+
+            // apply length2 zeros to crc1 (the first squaring puts the operator for one zero byte, eight zero bits, in even)
+            do {
+                gf2MatrixSquare(even, odd);
+                if ((length2 & 1) != 0) {
+                    crc1 = gf2MatrixTimes(even, crc1);
+                }
+                length2 >>= 1;
+                if (length2 == 0) {
+                    break;
+                }
+
+                gf2MatrixSquare(odd, even);
+                if ((length2 & 1) != 0) {
+                    crc1 = gf2MatrixTimes(odd, crc1);
+                }
+                length2 >>= 1;
+            } while (length2 != 0);
+
+            return crc1 ^ crc2;
+        }
+
+        private static long gf2MatrixTimes(long[] matrix, long vector) {
+            long sum = 0;
+            for (int i = 0; vector != 0; i++, vector >>>= 1) {
+                if ((vector & 1) != 0) {
+                    sum ^= matrix[i];
+                }
+            }
+            return sum;
+        }
+
+        private static void gf2MatrixSquare(long[] square, long[] matrix) {
+            for (int n = 0; n < 32; n++) {
+                square[n] = gf2MatrixTimes(matrix, matrix[n]);
+            }
+        }
+    }
+}
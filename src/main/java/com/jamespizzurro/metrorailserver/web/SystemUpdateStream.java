@@ -0,0 +1,377 @@
+package com.jamespizzurro.metrorailserver.web;
+
+import com.jamespizzurro.metrorailserver.Application;
+import com.jamespizzurro.metrorailserver.domain.SystemDelta;
+import com.jamespizzurro.metrorailserver.domain.SystemView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// pushes every system snapshot TrainService publishes to subscribers as server-sent events, so they don't have to keep polling for them
+// subscribers get a full resync first, then only deltas from one update to the next (see SystemDelta)
+// each update is diffed and serialized once per distinct subscription, then queued for each subscriber and written with non-blocking I/O,
+// so a slow subscriber never holds up TrainService, anyone else, or even a thread; a subscriber who falls too far behind is dropped, and is expected to reconnect
+@Component
+public class SystemUpdateStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(SystemUpdateStream.class);
+
+    private static final int MAX_NUM_QUEUED_EVENTS_PER_SUBSCRIBER = 5;  // about 10 seconds' worth of updates
+    private static final int MAX_NUM_SUBSCRIBERS = 10000;
+    private static final long SUBSCRIPTION_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);  // EventSource reconnects on its own
+    private static final long HEARTBEAT_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(15);  // keeps proxies from timing out quiet streams, e.g. when data is stale
+
+    private static final Event HEARTBEAT = new Event(-1, ":heartbeat\n\n");
+
+    private final SystemDeltaCache systemDeltaCache;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong numSentEvents = new AtomicLong();
+    private final AtomicLong numEvictedSubscribers = new AtomicLong();
+    private ExecutorService broadcaster;    // diffs, serializes, and queues updates; everything subscribers do in order happens on here
+    private Map<Subscription, SystemView> previousSystemViews = new HashMap<>();    // only touched by the broadcaster
+
+    @Autowired
+    public SystemUpdateStream(SystemDeltaCache systemDeltaCache) {
+        this.systemDeltaCache = systemDeltaCache;
+    }
+
+    @PostConstruct
+    private void init() {
+        logger.info("Initializing system update stream...");
+
+        this.broadcaster = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MetroHeroSystemUpdateBroadcaster");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.systemDeltaCache.addSystemViewListener(systemView -> execute(this.broadcaster, () -> broadcast(systemView)));
+
+        logger.info("...system update stream initialized!");
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        this.broadcaster.shutdownNow();
+        for (Subscriber subscriber : this.subscribers) {
+            subscriber.evict();
+        }
+    }
+
+    // starts streaming updates as the response to the given request
+    // returns false, without touching the response, if we already have as many subscribers as we can handle
+    // empty line and station codes mean no filtering by either, i.e. everything
+    public boolean subscribe(HttpServletRequest request, HttpServletResponse response, Set<String> lineCodes, Set<String> stationCodes) throws IOException {
+        if (this.subscribers.size() >= MAX_NUM_SUBSCRIBERS) {
+            logger.warn("Too many system update stream subscribers! Turning away another.");
+            return false;
+        }
+
+        // we write the response ourselves, rather than with an SseEmitter, since SseEmitter can only do blocking writes
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+        response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(SUBSCRIPTION_TIMEOUT_MILLIS);
+        Subscriber subscriber = new Subscriber(asyncContext, response.getOutputStream(), new Subscription(lineCodes, stationCodes));
+        asyncContext.addListener(subscriber);
+        this.subscribers.add(subscriber);
+        subscriber.outputStream.setWriteListener(subscriber);
+
+        // catch them up right away rather than making them wait for the next update
+        execute(this.broadcaster, () -> {
+            SystemView systemView = this.systemDeltaCache.getSystemView();
+            if (systemView != null) {
+                subscriber.offer(buildEvent(null, systemView.filter(subscriber.subscription.lineCodes, subscriber.subscription.stationCodes)));
+            }
+        });
+
+        return true;
+    }
+
+    private void broadcast(SystemView systemView) {
+        // most subscribers want the same handful of things, e.g. everything, or one popular station, so only diff and serialize each once
+        Map<Subscription, SubscriptionEvents> eventsBySubscription = new HashMap<>();
+        for (Subscriber subscriber : this.subscribers) {
+            SubscriptionEvents events = eventsBySubscription.computeIfAbsent(subscriber.subscription, subscription -> new SubscriptionEvents(this.previousSystemViews.get(subscription), systemView.filter(subscription.lineCodes, subscription.stationCodes)));
+            if (events.previousSystemView != null && events.previousSystemView.getVersion() == subscriber.lastQueuedVersion) {
+                subscriber.offer(events.getDeltaEvent());
+            } else {
+                // e.g. they just subscribed, and got a full resync from an earlier or later version than everyone else
+                subscriber.offer(events.getFullResyncEvent());
+            }
+        }
+
+        // only hold on to views of what someone's still subscribed to
+        Map<Subscription, SystemView> previousSystemViews = new HashMap<>();
+        eventsBySubscription.forEach((subscription, events) -> previousSystemViews.put(subscription, events.systemView));
+        this.previousSystemViews = previousSystemViews;
+    }
+
+    private Event buildEvent(SystemView previousSystemView, SystemView systemView) {
+        SystemDelta delta = SystemDelta.between(this.systemDeltaCache.getBootId(), previousSystemView, systemView);
+        return new Event(systemView.getVersion(), "delta", Application.getGson().toJson(delta));
+    }
+
+    @Scheduled(fixedDelay = 5000)   // every 5 seconds
+    private void sendHeartbeats() {
+        execute(this.broadcaster, () -> {
+            long now = System.currentTimeMillis();
+            for (Subscriber subscriber : this.subscribers) {
+                if ((now - subscriber.lastQueuedTimeMillis) >= HEARTBEAT_INTERVAL_MILLIS) {
+                    subscriber.offer(HEARTBEAT);
+                }
+            }
+        });
+    }
+
+    private static void execute(ExecutorService executor, Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ignored) {
+            // we're shutting down
+        }
+    }
+
+    public int getNumSubscribers() {
+        return subscribers.size();
+    }
+
+    public long getNumSentEvents() {
+        return numSentEvents.get();
+    }
+
+    public long getNumEvictedSubscribers() {
+        return numEvictedSubscribers.get();
+    }
+
+    private static class Subscription {
+        private final Set<String> lineCodes;
+        private final Set<String> stationCodes;
+
+        Subscription(Set<String> lineCodes, Set<String> stationCodes) {
+            this.lineCodes = lineCodes;
+            this.stationCodes = stationCodes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Subscription that = (Subscription) o;
+            return Objects.equals(lineCodes, that.lineCodes) &&
+                    Objects.equals(stationCodes, that.stationCodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lineCodes, stationCodes);
+        }
+    }
+
+    private class SubscriptionEvents {
+        private final SystemView previousSystemView;
+        private final SystemView systemView;
+        private Event deltaEvent;
+        private Event fullResyncEvent;
+
+        SubscriptionEvents(SystemView previousSystemView, SystemView systemView) {
+            this.previousSystemView = previousSystemView;
+            this.systemView = systemView;
+        }
+
+        Event getDeltaEvent() {
+            if (this.deltaEvent == null) {
+                this.deltaEvent = buildEvent(this.previousSystemView, this.systemView);
+            }
+            return this.deltaEvent;
+        }
+
+        Event getFullResyncEvent() {
+            if (this.fullResyncEvent == null) {
+                this.fullResyncEvent = buildEvent(null, this.systemView);
+            }
+            return this.fullResyncEvent;
+        }
+    }
+
+    private static class Event {
+        private final long version;
+        private final byte[] bytes;     // encoded once, then written as-is to everyone it's for
+
+        Event(long version, String text) {
+            this.version = version;
+            this.bytes = text.getBytes(StandardCharsets.UTF_8);
+        }
+
+        // our JSON never has any line breaks in it, so it fits on one data line
+        Event(long version, String name, String json) {
+            this(version, "id:" + version + "\nevent:" + name + "\ndata:" + json + "\n\n");
+        }
+    }
+
+    // written to with non-blocking I/O, by whichever thread has something for it: the broadcaster when something's queued for it,
+    // or the container once it's ready for more after a write that didn't go through right away
+    private class Subscriber implements WriteListener, AsyncListener {
+        private final AsyncContext asyncContext;
+        private final ServletOutputStream outputStream;
+        private final Subscription subscription;
+        private final BlockingQueue<Event> queuedEvents;
+        private final AtomicInteger numWriteRequests;
+        private long lastQueuedVersion;     // only touched by the broadcaster
+        private volatile long lastQueuedTimeMillis;
+        private volatile boolean isWritable;    // i.e. the container has let us know we can start writing
+        private volatile boolean isWritePending;    // i.e. the container has some of what we've written still waiting to go out
+        private volatile boolean isEvicted;
+
+        Subscriber(AsyncContext asyncContext, ServletOutputStream outputStream, Subscription subscription) {
+            this.asyncContext = asyncContext;
+            this.outputStream = outputStream;
+            this.subscription = subscription;
+            this.queuedEvents = new ArrayBlockingQueue<>(MAX_NUM_QUEUED_EVENTS_PER_SUBSCRIBER);
+            this.numWriteRequests = new AtomicInteger();
+            this.lastQueuedVersion = -1;
+            this.lastQueuedTimeMillis = System.currentTimeMillis();
+        }
+
+        // only ever called by the broadcaster
+        void offer(Event event) {
+            if (this.isEvicted) {
+                return;
+            }
+
+            if (event != HEARTBEAT) {
+                if (event.version <= this.lastQueuedVersion) {
+                    // e.g. they subscribed just as this update was being broadcast, so they already have it
+                    return;
+                }
+                this.lastQueuedVersion = event.version;
+            }
+
+            if (!this.queuedEvents.offer(event)) {
+                // they're not keeping up; don't let them hold on to any more memory waiting for them to
+                logger.warn("System update stream subscriber fell " + MAX_NUM_QUEUED_EVENTS_PER_SUBSCRIBER + " updates behind! Dropping them.");
+                numEvictedSubscribers.incrementAndGet();
+                evict();
+                return;
+            }
+            this.lastQueuedTimeMillis = System.currentTimeMillis();
+
+            write();
+        }
+
+        // writes as much of what's queued as we can without blocking; if that isn't everything, the container calls onWritePossible once we can write more
+        // only one thread writes at a time; anyone who finds someone else already writing has them go around again, in case they'd just stopped
+        private void write() {
+            if (this.numWriteRequests.getAndIncrement() > 0) {
+                return;
+            }
+
+            int numWriteRequests = 1;
+            do {
+                try {
+                    while (this.isWritable && !this.isEvicted) {
+                        if (!this.outputStream.isReady()) {
+                            this.isWritePending = true;
+                            break;
+                        }
+                        this.isWritePending = false;
+
+                        Event event = this.queuedEvents.poll();
+                        if (event == null) {
+                            this.outputStream.flush();
+                            break;
+                        }
+
+                        this.outputStream.write(event.bytes);
+                        numSentEvents.incrementAndGet();
+                    }
+
+                    if (this.isEvicted && !this.isWritePending) {
+                        // completing with a write still pending would have the container finish it by blocking one of its threads on their socket,
+                        // so we wait for that write to go out first, or for the container to give up on it and call onError
+                        complete();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // they went away, or their subscription already completed
+                    close();
+                }
+
+                numWriteRequests = this.numWriteRequests.addAndGet(-numWriteRequests);
+            } while (numWriteRequests > 0);
+        }
+
+        void evict() {
+            this.isEvicted = true;
+            subscribers.remove(this);
+            this.queuedEvents.clear();
+            write();
+        }
+
+        // nothing more is going out to them, e.g. their connection failed or timed out
+        private void close() {
+            this.isEvicted = true;
+            subscribers.remove(this);
+            this.queuedEvents.clear();
+            complete();
+        }
+
+        private void complete() {
+            try {
+                this.asyncContext.complete();
+            } catch (IllegalStateException ignored) {
+                // already completed
+            }
+        }
+
+        @Override
+        public void onWritePossible() {
+            this.isWritable = true;
+            write();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            this.isEvicted = true;
+            subscribers.remove(this);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
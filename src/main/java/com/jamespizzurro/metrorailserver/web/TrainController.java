@@ -1,17 +1,25 @@
 package com.jamespizzurro.metrorailserver.web;
 
+import com.jamespizzurro.metrorailserver.NetworkUtil;
+import com.jamespizzurro.metrorailserver.StationUtil;
 import com.jamespizzurro.metrorailserver.domain.*;
 import com.jamespizzurro.metrorailserver.service.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
 
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 
 @RestController
 @EnableAutoConfiguration
@@ -20,64 +28,129 @@ public class TrainController {
     private static final Logger logger = LoggerFactory.getLogger(TrainController.class);
 
     private final TrainService trainService;
-    private final MetricsService metricsService;
     private final TwitterService twitterService;
     private final RailIncidentService railIncidentService;
     private final TrainTaggingService trainTaggingService;
     private final StationTaggingService stationTaggingService;
-    private final SpeedRestrictionService speedRestrictionService;
     private final ElevatorEscalatorService elevatorEscalatorService;
     private final SavedTripService savedTripService;
     private final TrainDepartureService trainDepartureService;
+    private final SystemInfoResponseCache systemInfoResponseCache;
+    private final SystemDeltaCache systemDeltaCache;
+    private final SystemUpdateStream systemUpdateStream;
 
     @Autowired
-    public TrainController(TrainService trainService, MetricsService metricsService, TwitterService twitterService, RailIncidentService railIncidentService, TrainTaggingService trainTaggingService, StationTaggingService stationTaggingService, SpeedRestrictionService speedRestrictionService, ElevatorEscalatorService elevatorEscalatorService, SavedTripService savedTripService, TrainDepartureService trainDepartureService) {
+    public TrainController(TrainService trainService, TwitterService twitterService, RailIncidentService railIncidentService, TrainTaggingService trainTaggingService, StationTaggingService stationTaggingService, ElevatorEscalatorService elevatorEscalatorService, SavedTripService savedTripService, TrainDepartureService trainDepartureService, SystemInfoResponseCache systemInfoResponseCache, SystemDeltaCache systemDeltaCache, SystemUpdateStream systemUpdateStream) {
         this.trainService = trainService;
-        this.metricsService = metricsService;
         this.twitterService = twitterService;
         this.railIncidentService = railIncidentService;
         this.trainTaggingService = trainTaggingService;
         this.stationTaggingService = stationTaggingService;
-        this.speedRestrictionService = speedRestrictionService;
         this.elevatorEscalatorService = elevatorEscalatorService;
         this.savedTripService = savedTripService;
         this.trainDepartureService = trainDepartureService;
+        this.systemInfoResponseCache = systemInfoResponseCache;
+        this.systemDeltaCache = systemDeltaCache;
+        this.systemUpdateStream = systemUpdateStream;
     }
 
     @CrossOrigin(origins = "http://localhost:3000")
     @RequestMapping(value = "/system", method = RequestMethod.GET)
-    public SystemInfo getSystemInfo(
-            @RequestParam(required = false) String[] tripStationCodesKeys
+    public void getSystemInfo(
+            @RequestParam(required = false) String[] tripStationCodesKeys,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        // we already have a strong ETag, and we'd rather not buffer the entire response just to compute another one
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+
+        SystemInfoResponseCache.CachedSystemInfo cachedSystemInfo = this.systemInfoResponseCache.getCachedSystemInfo();
+
+        byte[] jsonSuffix = null;
+        String eTag;
+        if (tripStationCodesKeys != null) {
+            jsonSuffix = cachedSystemInfo.getJsonSuffix(this.systemInfoResponseCache.getSavedTrips(tripStationCodesKeys));
+            eTag = cachedSystemInfo.getETag(jsonSuffix);
+        } else {
+            eTag = cachedSystemInfo.getETag();
+        }
+
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(eTag) || ifNoneMatch.trim().equals("*"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        // clients can send more than one Accept-Encoding header, which means the same as one with all of their values
+        String acceptEncoding = String.join(",", Collections.list(request.getHeaders(HttpHeaders.ACCEPT_ENCODING)));
+        if (NetworkUtil.acceptsGzip(acceptEncoding)) {
+            byte[] gzippedJson = (jsonSuffix != null) ? cachedSystemInfo.gzipWithSuffix(jsonSuffix) : cachedSystemInfo.getGzippedJson();
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            response.setContentLength(gzippedJson.length);
+            response.getOutputStream().write(gzippedJson);
+        } else if (jsonSuffix != null) {
+            byte[] json = cachedSystemInfo.getJson();
+            response.setContentLength((json.length - 1) + jsonSuffix.length);
+            response.getOutputStream().write(json, 0, json.length - 1);
+            response.getOutputStream().write(jsonSuffix);
+        } else {
+            byte[] json = cachedSystemInfo.getJson();
+            response.setContentLength(json.length);
+            response.getOutputStream().write(json);
+        }
+    }
+
+    @CrossOrigin(origins = "http://localhost:3000")
+    @RequestMapping(value = "/system/delta", method = RequestMethod.GET)
+    public ResponseEntity<String> getSystemDelta(
+            @RequestParam(required = false) String bootId,
+            @RequestParam(required = false) Long sinceVersion
     ) {
-        SystemInfo systemInfo = new SystemInfo();
-        systemInfo.setTrainStatuses(new ArrayList<>(this.trainService.getTrainStatusesMap().values()));
-        systemInfo.setBetweenStationDelayStatuses(this.trainService.getBetweenStationDelayStatuses());
-        systemInfo.setSystemMetrics(this.metricsService.getSystemMetrics());
-        systemInfo.setLastUpdatedTimestamp(this.trainService.getLastUpdatedTimestamp());
-        systemInfo.setLineRailIncidents(this.railIncidentService.getLineRailIncidents());
-        systemInfo.setStationNumPositiveTagsMap(this.stationTaggingService.getNumPositiveTagsByStation());
-        systemInfo.setStationNumNegativeTagsMap(this.stationTaggingService.getNumNegativeTagsByStation());
-        systemInfo.setSpeedRestrictions(this.speedRestrictionService.getSpeedRestrictions());
-        systemInfo.setStationHasRailIncidentsMap(this.railIncidentService.getStationHasRailIncidentsMap());
-        systemInfo.setStationHasTwitterProblemMap(this.twitterService.getStationHasTwitterProblemMap());
-        systemInfo.setHasElevatorOutagesByStation(this.elevatorEscalatorService.getHasElevatorOutagesByStation());
-        systemInfo.setHasEscalatorOutagesByStation(this.elevatorEscalatorService.getHasEscalatorOutagesByStation());
-        systemInfo.setRecentTrainFrequencyData(this.metricsService.getRecentTrainFrequencyData());
-
-        if (tripStationCodesKeys != null && this.savedTripService.getSavedTripMap() != null) {
-            Map<String, SavedTrip> savedTrips = new LinkedHashMap<>();
-            for (String tripStationCodesKey : tripStationCodesKeys) {
-                SavedTrip savedTrip = this.savedTripService.getSavedTripMap().get(tripStationCodesKey);
-                if (savedTrip == null) {
-                    continue;
+        String deltaJson = this.systemDeltaCache.getDeltaJson(bootId, sinceVersion);
+        if (deltaJson == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(null);
+        }
+
+        return ResponseEntity.status(HttpStatus.OK).contentType(MediaType.APPLICATION_JSON).body(deltaJson);
+    }
+
+    @CrossOrigin(origins = "http://localhost:3000")
+    @RequestMapping(value = "/system/stream", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public void streamSystemUpdates(
+            @RequestParam(required = false) String[] lineCodes,
+            @RequestParam(required = false) String[] stationCodes,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        Set<String> lineCodesSet = new TreeSet<>();
+        if (lineCodes != null) {
+            for (String lineCode : lineCodes) {
+                if (!Arrays.asList("RD", "OR", "SV", "BL", "YL", "GR").contains(lineCode)) {
+                    response.setStatus(HttpStatus.BAD_REQUEST.value());
+                    return;
                 }
+                lineCodesSet.add(lineCode);
+            }
+        }
 
-                savedTrips.put(tripStationCodesKey, savedTrip);
+        Set<String> stationCodesSet = new TreeSet<>();
+        if (stationCodes != null) {
+            for (String stationCode : stationCodes) {
+                if (!StationUtil.getStationCodeMap().containsKey(stationCode)) {
+                    response.setStatus(HttpStatus.BAD_REQUEST.value());
+                    return;
+                }
+                stationCodesSet.add(stationCode);
             }
-            systemInfo.setSavedTrips(savedTrips);
         }
 
-        return systemInfo;
+        if (!this.systemUpdateStream.subscribe(request, response, lineCodesSet, stationCodesSet)) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
     }
 
     @CrossOrigin(origins = "http://localhost:3000")
@@ -94,7 +167,7 @@ public class TrainController {
             @PathVariable("stationCode") String stationCode
     ) {
         return new StationReport(
-                this.trainService.getStationTrainStatusesMap().get(stationCode),
+                this.trainService.getSystemSnapshot().getStationTrainStatusesMap().get(stationCode),
                 this.twitterService.getStationTwitterProblemMap().get(stationCode),
                 this.railIncidentService.getStationRailIncidentsMap().get(stationCode),
                 this.elevatorEscalatorService.getElevatorOutagesByStation().get(stationCode),
@@ -109,7 +182,7 @@ public class TrainController {
             @PathVariable("trainId") String trainId,
             @RequestParam String userId
     ) {
-        TrainStatus trainStatus = this.trainService.getTrainStatusesMap().get(trainId);
+        TrainStatus trainStatus = this.trainService.getSystemSnapshot().getTrainStatusesMap().get(trainId);
         if (trainStatus == null || trainStatus.getScheduledTime() != null) {
             return null;
         }
@@ -124,7 +197,7 @@ public class TrainController {
             @RequestParam String userId,
             @RequestParam TrainTag.TrainTagType tagType
     ) {
-        TrainStatus trainStatus = this.trainService.getTrainStatusesMap().get(trainId);
+        TrainStatus trainStatus = this.trainService.getSystemSnapshot().getTrainStatusesMap().get(trainId);
         if (trainStatus == null || trainStatus.getScheduledTime() != null) {
             return null;
         }
@@ -143,7 +216,7 @@ public class TrainController {
             @RequestParam String userId,
             @RequestParam TrainTag.TrainTagType tagType
     ) {
-        TrainStatus trainStatus = this.trainService.getTrainStatusesMap().get(trainId);
+        TrainStatus trainStatus = this.trainService.getSystemSnapshot().getTrainStatusesMap().get(trainId);
         if (trainStatus == null || trainStatus.getScheduledTime() != null) {
             return null;
         }
@@ -184,7 +257,7 @@ public class TrainController {
         }
 
         String[] lineCodes;
-        TrackCircuit stationTrackCircuit = this.trainService.getStationTrackCircuitMap().get(stationCode + "_1");  // HACK: it doesn't matter which track (1 or 2) we use here
+        TrackCircuit stationTrackCircuit = this.trainService.getRailNetwork().getStationTrackCircuit(stationCode, 1);  // HACK: it doesn't matter which track (1 or 2) we use here
         if (stationTrackCircuit != null && stationTrackCircuit.getLineCodes() != null) {
             lineCodes = stationTrackCircuit.getLineCodes().toArray(new String[0]);
         } else {
@@ -217,7 +290,7 @@ public class TrainController {
     public SavedTrip getSavedTrip(
             @PathVariable("tripStationCodesKey") String tripStationCodesKey
     ) {
-        return this.savedTripService.getSavedTripMap().get(tripStationCodesKey);
+        return this.savedTripService.getSavedTrip(tripStationCodesKey);
     }
 
     @CrossOrigin(origins = "http://localhost:3000")